@@ -0,0 +1,40 @@
+package ca.gc.aafc.dina.search.cli.commands;
+
+import ca.gc.aafc.dina.search.cli.exceptions.SearchApiException;
+import ca.gc.aafc.dina.search.cli.indexing.TypeReIndexService;
+import lombok.extern.log4j.Log4j2;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.shell.standard.ShellComponent;
+import org.springframework.shell.standard.ShellMethod;
+import org.springframework.shell.standard.ShellOption;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+
+@Log4j2
+@Component
+@ShellComponent
+public class ReIndexType {
+
+  private final TypeReIndexService typeReIndexService;
+
+  public ReIndexType(TypeReIndexService typeReIndexService) {
+    this.typeReIndexService = typeReIndexService;
+  }
+
+  @ShellMethod(value = "Re-index all documents of a type into a new index and move the alias to it", key = "reindex-type")
+  public void reIndexType(
+                  @ShellOption(help = "Document type", value = { "-t", "--type" }) String type,
+                  @ShellOption(help = "Settings and mappings file of the new index (default: copy the current index)",
+                      value = { "-s", "--settings" }, defaultValue = "") String settingsFile,
+                  @ShellOption(help = "Resume from the checkpoint file", value = { "-r", "--resume" }) boolean resume,
+                  @ShellOption(help = "Move the alias even if some documents failed", value = { "-f", "--force" }) boolean force) {
+
+    try {
+      typeReIndexService.reIndexType(type, StringUtils.isBlank(settingsFile) ? null : Path.of(settingsFile), resume,
+          force);
+    } catch (SearchApiException e) {
+      log.error("Re-index error: ", e);
+    }
+  }
+}
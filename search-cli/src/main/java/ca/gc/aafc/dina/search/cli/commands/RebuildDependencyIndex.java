@@ -0,0 +1,30 @@
+package ca.gc.aafc.dina.search.cli.commands;
+
+import ca.gc.aafc.dina.search.cli.exceptions.SearchApiException;
+import ca.gc.aafc.dina.search.cli.indexing.DocumentManager;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.shell.standard.ShellComponent;
+import org.springframework.shell.standard.ShellMethod;
+import org.springframework.stereotype.Component;
+
+@Log4j2
+@Component
+@ShellComponent
+public class RebuildDependencyIndex {
+
+  private final DocumentManager documentManager;
+
+  public RebuildDependencyIndex(DocumentManager documentManager) {
+    this.documentManager = documentManager;
+  }
+
+  @ShellMethod(value = "Rebuild the dependency index from the documents of all indices", key = "rebuild-dependency-index")
+  public void rebuildDependencyIndex() {
+    try {
+      int count = documentManager.rebuildDependencyIndex();
+      log.info("Dependency index rebuilt from {} document(s)", count);
+    } catch (SearchApiException e) {
+      log.error("Dependency index rebuild error: ", e);
+    }
+  }
+}
@@ -0,0 +1,32 @@
+package ca.gc.aafc.dina.search.cli.commands;
+
+import ca.gc.aafc.dina.search.cli.indexing.CascadeProgress;
+import ca.gc.aafc.dina.search.cli.indexing.DocumentManager;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.shell.standard.ShellComponent;
+import org.springframework.shell.standard.ShellMethod;
+import org.springframework.stereotype.Component;
+
+@Log4j2
+@Component
+@ShellComponent
+public class ReplayPendingDocuments {
+
+  private final DocumentManager documentManager;
+
+  public ReplayPendingDocuments(DocumentManager documentManager) {
+    this.documentManager = documentManager;
+  }
+
+  @ShellMethod(value = "Re-index the documents that failed after all their retries or were indexed while a related API was unavailable",
+      key = "replay-pending-documents")
+  public void replayPendingDocuments() {
+    // documents failing again are added back
+    CascadeProgress progress = documentManager.replayPendingDocuments();
+    if (progress == null) {
+      log.info("No document pending re-indexing");
+      return;
+    }
+    log.info("Replay of pending documents: {}", progress);
+  }
+}
@@ -0,0 +1,74 @@
+package ca.gc.aafc.dina.search.cli.commands;
+
+import org.springframework.shell.standard.ShellComponent;
+import org.springframework.shell.standard.ShellMethod;
+import org.springframework.stereotype.Component;
+
+import ca.gc.aafc.dina.search.cli.commands.messaging.DocumentProcessor;
+import ca.gc.aafc.dina.search.cli.http.ApiMetrics;
+import ca.gc.aafc.dina.search.cli.http.CacheableApiAccess;
+import ca.gc.aafc.dina.search.cli.http.OpenIDHttpClient;
+import ca.gc.aafc.dina.search.cli.indexing.DocumentManager;
+import ca.gc.aafc.dina.search.cli.indexing.ElasticSearchDocumentIndexer;
+import ca.gc.aafc.dina.search.cli.indexing.PendingDocumentRegistry;
+
+@Component
+@ShellComponent
+public class ShowStats {
+
+  private final CacheableApiAccess apiAccess;
+  private final DocumentManager documentManager;
+  private final DocumentProcessor documentProcessor;
+  private final OpenIDHttpClient httpClient;
+  private final PendingDocumentRegistry pendingDocuments;
+  private final ElasticSearchDocumentIndexer indexer;
+  private final ApiMetrics apiMetrics;
+
+  public ShowStats(CacheableApiAccess apiAccess, DocumentManager documentManager,
+                   DocumentProcessor documentProcessor, OpenIDHttpClient httpClient,
+                   PendingDocumentRegistry pendingDocuments, ElasticSearchDocumentIndexer indexer,
+                   ApiMetrics apiMetrics) {
+    this.apiAccess = apiAccess;
+    this.documentManager = documentManager;
+    this.documentProcessor = documentProcessor;
+    this.httpClient = httpClient;
+    this.pendingDocuments = pendingDocuments;
+    this.indexer = indexer;
+    this.apiMetrics = apiMetrics;
+  }
+
+  @ShellMethod(value = "Show http connections, api cache, retries, notification debounce and re-indexing statistics", key = "show-stats")
+  public String showStats() {
+
+    StringBuilder aBuilder = new StringBuilder();
+    aBuilder.append(System.lineSeparator());
+    aBuilder.append("****** Http Connections ******" + System.lineSeparator());
+    aBuilder.append(httpClient.getConnectionStats() + System.lineSeparator());
+    aBuilder.append("Revalidation: " + httpClient.getRevalidationStats() + System.lineSeparator());
+    aBuilder.append("Compression: " + httpClient.getCompressionStats() + System.lineSeparator());
+    httpClient.getLimiterStats()
+        .forEach(s -> aBuilder.append(s.toString() + System.lineSeparator()));
+    aBuilder.append("****** Api Calls ******" + System.lineSeparator());
+    apiMetrics.getStats()
+        .forEach(s -> aBuilder.append(s.toString() + System.lineSeparator()));
+    aBuilder.append("****** Api Cache ******" + System.lineSeparator());
+    aBuilder.append(apiAccess.getCacheStats() + System.lineSeparator());
+    aBuilder.append("****** Api Circuit Breakers ******" + System.lineSeparator());
+    apiAccess.getCircuitBreakerStats()
+        .forEach(s -> aBuilder.append(s.toString() + System.lineSeparator()));
+    aBuilder.append("****** Retries ******" + System.lineSeparator());
+    aBuilder.append(httpClient.getRetryStats() + System.lineSeparator());
+    aBuilder.append(indexer.getRetryStats() + System.lineSeparator());
+    aBuilder.append(pendingDocuments.getStats() + System.lineSeparator());
+    aBuilder.append("****** Notification Debounce ******" + System.lineSeparator());
+    aBuilder.append(documentProcessor.getDebounceStats() + System.lineSeparator());
+    aBuilder.append("****** Active Re-indexing ******" + System.lineSeparator());
+    documentManager.getActiveCascadesProgress()
+        .forEach(p -> aBuilder.append(p.toString() + System.lineSeparator()));
+    aBuilder.append("Failed background re-indexing: " + documentManager.getFailedAsyncCascadeCount() +
+        System.lineSeparator());
+    aBuilder.append("*************************************" + System.lineSeparator());
+
+    return aBuilder.toString();
+  }
+}
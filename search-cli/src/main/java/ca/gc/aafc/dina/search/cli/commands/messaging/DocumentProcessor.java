@@ -1,14 +1,27 @@
 package ca.gc.aafc.dina.search.cli.commands.messaging;
 
 import ca.gc.aafc.dina.messaging.message.DocumentOperationNotification;
+import ca.gc.aafc.dina.messaging.message.DocumentOperationType;
+import ca.gc.aafc.dina.search.cli.config.SearchQueueListenerProperties;
+import ca.gc.aafc.dina.search.cli.exceptions.SearchApiException;
 import ca.gc.aafc.dina.search.cli.indexing.DocumentManager;
 import ca.gc.aafc.dina.search.cli.messaging.IMessageProcessor;
+import ca.gc.aafc.dina.search.cli.messaging.NotificationCoalescer;
+import jakarta.annotation.PreDestroy;
 import lombok.SneakyThrows;
 import lombok.extern.log4j.Log4j2;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Translates message into method calls on {@link DocumentManager}.
@@ -19,8 +32,19 @@ public class DocumentProcessor implements IMessageProcessor {
 
   private final DocumentManager documentManager;
 
-  public DocumentProcessor(DocumentManager documentManager) {
+  // null when the debounce is disabled
+  private final NotificationCoalescer coalescer;
+
+  public DocumentProcessor(DocumentManager documentManager, SearchQueueListenerProperties listenerProperties) {
     this.documentManager = documentManager;
+
+    SearchQueueListenerProperties.Debounce debounce = listenerProperties.getDebounce();
+    Duration debounceWindow = debounce.getWindow();
+    if (debounceWindow != null && debounceWindow.isPositive()) {
+      coalescer = new NotificationCoalescer(debounceWindow, debounce.getMaxPending(), this::processNotification);
+    } else {
+      coalescer = null;
+    }
   }
 
   /**
@@ -30,29 +54,39 @@ public class DocumentProcessor implements IMessageProcessor {
    * 
    */
   @Override
-  @SneakyThrows
   public void processMessage(DocumentOperationNotification docOpMessage) {
 
-    if (docOpMessage == null) {
-      log.warn("Invalid document operation message received, will not process it");
+    if (!isProcessable(docOpMessage)) {
       return;
     }
+    processNotification(docOpMessage);
+  }
 
-    // Validate mandatory attributes
-    if (!StringUtils.isNotBlank(docOpMessage.getDocumentId())
-      || !StringUtils.isNotBlank(docOpMessage.getDocumentType())
-      || docOpMessage.getOperationType() == null) {
-      log.warn("Invalid document operation message received, mandatory attributes missing {} - will not process it",
-          docOpMessage);
-      return;
+  /**
+   * Same as {@link #processMessage(DocumentOperationNotification)} but, if the debounce is enabled, the
+   * notification is added to the debounce window and the returned future completes when the last notification
+   * of the document received within the window is processed.
+   */
+  @Override
+  public CompletableFuture<Void> processMessageAsync(DocumentOperationNotification docOpMessage) {
+    if (coalescer == null || !isProcessable(docOpMessage)) {
+      return IMessageProcessor.super.processMessageAsync(docOpMessage);
     }
+    log.debug("Delaying: {}", docOpMessage);
+    return coalescer.submit(docOpMessage);
+  }
 
-    // Validate if the operation is a dryRun. If it is simply emit a log and returns
-    if (docOpMessage.isDryRun()) {
-      log.info("Message processor received document notification with dryRun option set to true, processing will not be done for message:{}", docOpMessage);
-      return;
-    }
+  /**
+   * Process a validated notification.
+   * @param docOpMessage
+   */
+  @SneakyThrows
+  private void processNotification(DocumentOperationNotification docOpMessage) {
     log.info("Processing: {}", docOpMessage);
+
+    // the document changed, cached copies can't be used anymore
+    documentManager.evictCachedDocument(docOpMessage.getDocumentType(), docOpMessage.getDocumentId());
+
     // make sure we can process the type
     if (documentManager.isTypeConfigured(docOpMessage.getDocumentType())) {
       switch (docOpMessage.getOperationType()) {
@@ -78,4 +112,146 @@ public class DocumentProcessor implements IMessageProcessor {
 
   }
 
+  /**
+   * Processing of a batch of notifications as a unit.
+   * Duplicated notifications (same type, id and operation) are collapsed keeping the position of the last one.
+   * Consecutive index operations are assembled and sent using bulk requests while the order relative to deletes
+   * is preserved. Embedded documents are then processed once per document.
+   *
+   * The notifications of the documents that could not be processed are returned so only them are rejected.
+   * The debounce window is not used: duplicates are only collapsed within the batch.
+   */
+  @Override
+  public List<DocumentOperationNotification> processMessages(List<DocumentOperationNotification> docOpMessages) {
+
+    Map<NotificationKey, DocumentOperationNotification> collapsed = new LinkedHashMap<>();
+    for (DocumentOperationNotification docOpMessage : docOpMessages) {
+      if (isProcessable(docOpMessage)) {
+        NotificationKey key = new NotificationKey(docOpMessage.getDocumentType(), docOpMessage.getDocumentId(),
+            docOpMessage.getOperationType());
+        // remove first to keep the position of the last occurrence
+        collapsed.remove(key);
+        collapsed.put(key, docOpMessage);
+      }
+    }
+
+    if (collapsed.isEmpty()) {
+      return List.of();
+    }
+    log.info("Processing batch of {} notification(s), {} after collapsing duplicates", docOpMessages.size(),
+        collapsed.size());
+
+    Set<DocumentManager.DocumentInfo> changedDocuments = new LinkedHashSet<>();
+    collapsed.keySet().forEach(k -> changedDocuments.add(new DocumentManager.DocumentInfo(k.type(), k.id())));
+    changedDocuments.forEach(d -> documentManager.evictCachedDocument(d.type(), d.id()));
+
+    Set<DocumentManager.DocumentInfo> failedDocuments = ConcurrentHashMap.newKeySet();
+    List<DocumentManager.DocumentInfo> toIndex = new ArrayList<>();
+    for (NotificationKey key : collapsed.keySet()) {
+      if (!documentManager.isTypeConfigured(key.type())) {
+        continue;
+      }
+      switch (key.operationType()) {
+        case ADD:
+        case UPDATE:
+        case REFRESH:
+          toIndex.add(new DocumentManager.DocumentInfo(key.type(), key.id()));
+          break;
+        case DELETE:
+          // index operations received before the delete must be sent first
+          indexDocuments(toIndex, failedDocuments);
+          toIndex = new ArrayList<>();
+          DocumentManager.DocumentInfo deleted = new DocumentManager.DocumentInfo(key.type(), key.id());
+          try {
+            documentManager.deleteDocument(key.type(), key.id());
+          } catch (SearchApiException | RuntimeException e) {
+            log.error("Document id {} of type {} could not be deleted", key.id(), key.type(), e);
+            failedDocuments.add(deleted);
+          }
+          break;
+        case NOT_DEFINED:
+        default:
+          log.warn("Unsupported document operation, documentId:{} of type:{} will not be processed", key.id(), key.type());
+      }
+    }
+    indexDocuments(toIndex, failedDocuments);
+
+    // check for potential usage of the types in relationships
+    for (DocumentManager.DocumentInfo changed : changedDocuments) {
+      List<String> indices = documentManager.getIndexForRelationshipType(changed.type());
+      if (!indices.isEmpty()) {
+        try {
+          documentManager.processEmbeddedDocument(indices, changed.type(), changed.id());
+        } catch (SearchApiException | RuntimeException e) {
+          log.error("Embedded document id {} of type {} could not be processed", changed.id(), changed.type(), e);
+          failedDocuments.add(changed);
+        }
+      }
+    }
+
+    if (failedDocuments.isEmpty()) {
+      return List.of();
+    }
+    log.warn("{} document(s) of the batch could not be processed", failedDocuments.size());
+    // all the notifications of a failed document, including the collapsed ones
+    return docOpMessages.stream()
+        .filter(m -> m != null && failedDocuments.contains(
+            new DocumentManager.DocumentInfo(m.getDocumentType(), m.getDocumentId())))
+        .toList();
+  }
+
+  /**
+   * Statistics of the debounce window or null if the debounce is disabled.
+   * @return
+   */
+  public NotificationCoalescer.CoalescerStats getDebounceStats() {
+    return coalescer == null ? null : coalescer.getStats();
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    if (coalescer != null) {
+      coalescer.close();
+    }
+  }
+
+  /**
+   * Assemble and send the documents using bulk requests.
+   * @param documents
+   * @param failedDocuments receives the documents that could not be assembled or indexed
+   */
+  private void indexDocuments(List<DocumentManager.DocumentInfo> documents,
+                              Set<DocumentManager.DocumentInfo> failedDocuments) {
+    if (documents.isEmpty()) {
+      return;
+    }
+    documentManager.reIndexDocuments(documents, null, failedDocuments::add);
+  }
+
+  private static boolean isProcessable(DocumentOperationNotification docOpMessage) {
+    if (docOpMessage == null) {
+      log.warn("Invalid document operation message received, will not process it");
+      return false;
+    }
+
+    // Validate mandatory attributes
+    if (!StringUtils.isNotBlank(docOpMessage.getDocumentId())
+      || !StringUtils.isNotBlank(docOpMessage.getDocumentType())
+      || docOpMessage.getOperationType() == null) {
+      log.warn("Invalid document operation message received, mandatory attributes missing {} - will not process it",
+          docOpMessage);
+      return false;
+    }
+
+    // Validate if the operation is a dryRun. If it is simply emit a log and returns
+    if (docOpMessage.isDryRun()) {
+      log.info("Message processor received document notification with dryRun option set to true, processing will not be done for message:{}", docOpMessage);
+      return false;
+    }
+    return true;
+  }
+
+  private record NotificationKey(String type, String id, DocumentOperationType operationType) {
+  }
+
 }
@@ -0,0 +1,33 @@
+package ca.gc.aafc.dina.search.cli.config;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Settings of the cache of documents retrieved from the APIs.
+ * Entries are evicted when a notification for the document is processed.
+ */
+@Component
+@ConfigurationProperties(prefix = "api-cache")
+@Getter
+@Setter
+@NoArgsConstructor
+public class ApiCacheProperties {
+
+  private boolean enabled = false;
+
+  /**
+   * Maximum number of responses (document and variant of includes/fields) kept in the cache.
+   */
+  private long maximumSize = 10_000;
+
+  /**
+   * Safety net in case a notification is missed.
+   */
+  private Duration expireAfterWrite = Duration.ofMinutes(10);
+}
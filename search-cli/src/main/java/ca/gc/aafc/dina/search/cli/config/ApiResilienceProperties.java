@@ -0,0 +1,57 @@
+package ca.gc.aafc.dina.search.cli.config;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Settings protecting the indexing from missing documents and failing APIs.
+ */
+@Component
+@ConfigurationProperties(prefix = "api-resilience")
+@Getter
+@Setter
+@NoArgsConstructor
+public class ApiResilienceProperties {
+
+  private final NotFoundCache notFoundCache = new NotFoundCache();
+  private final CircuitBreaker circuitBreaker = new CircuitBreaker();
+
+  /**
+   * Remembers the lookups (by id or by filter) that returned a 404 for a short time.
+   */
+  @Getter
+  @Setter
+  public static class NotFoundCache {
+
+    private boolean enabled = false;
+
+    private long maximumSize = 10_000;
+
+    private Duration expireAfterWrite = Duration.ofMinutes(1);
+  }
+
+  /**
+   * Stops calling an API (by type) after consecutive failures for a cool-down period.
+   */
+  @Getter
+  @Setter
+  public static class CircuitBreaker {
+
+    private boolean enabled = false;
+
+    /**
+     * Number of consecutive failures (connection errors, 5xx, 429) opening the circuit.
+     */
+    private int failureThreshold = 5;
+
+    /**
+     * Time the circuit stays open before a single call is allowed to probe the API.
+     */
+    private Duration coolDown = Duration.ofSeconds(30);
+  }
+}
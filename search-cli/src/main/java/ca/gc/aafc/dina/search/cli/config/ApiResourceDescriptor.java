@@ -1,15 +1,48 @@
 package ca.gc.aafc.dina.search.cli.config;
 
 import org.apache.commons.lang3.BooleanUtils;
+import org.springframework.boot.context.properties.bind.ConstructorBinding;
+
+import java.util.List;
+import java.util.Map;
 
 /**
  * Contains information about how to reach a specific resource API
  * @param type the json:api type
  * @param url the url to reach the resource's API
+ * @param enabled optional, is the resource enabled
+ * @param batchFetch optional, can the API return multiple resources by id (filter[id][IN]). Default to true.
+ * @param fields optional sparse fieldset (fields[type]) used when the resource is fetched as a related document.
+ *               Must include the relationships used by augmentation since they are also filtered.
  */
-public record ApiResourceDescriptor(String type, String url, Boolean enabled) {
+public record ApiResourceDescriptor(String type, String url, Boolean enabled, Boolean batchFetch,
+                                    List<String> fields) {
+
+  @ConstructorBinding
+  public ApiResourceDescriptor {
+  }
+
+  public ApiResourceDescriptor(String type, String url, Boolean enabled) {
+    this(type, url, enabled, null, null);
+  }
+
+  public ApiResourceDescriptor(String type, String url, Boolean enabled, Boolean batchFetch) {
+    this(type, url, enabled, batchFetch, null);
+  }
 
   public boolean isEnabled(boolean defaultValue) {
     return BooleanUtils.toBooleanDefaultIfNull(enabled, defaultValue);
   }
+
+  public boolean isBatchFetchEnabled(boolean defaultValue) {
+    return BooleanUtils.toBooleanDefaultIfNull(batchFetch, defaultValue);
+  }
+
+  /**
+   * Sparse fieldset of the resource to use when it is fetched as a related document.
+   * @return the fields by type or an empty map if all the fields should be returned
+   */
+  public Map<String, List<String>> getRelatedSparseFields() {
+    return fields == null || fields.isEmpty() ? Map.of() : Map.of(type, fields);
+  }
 }
@@ -7,10 +7,139 @@ import lombok.Setter;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
+
 @Component
 @ConfigurationProperties(prefix = "http-client")
 @Getter
 @Setter
 @NoArgsConstructor
 public class HttpClientConfig extends OpenIdConnectConfig {
+
+  private final Connection connection = new Connection();
+  private final Revalidation revalidation = new Revalidation();
+  private final Limiter limiter = new Limiter();
+  private final Compression compression = new Compression();
+  private final Metrics metrics = new Metrics();
+
+  /**
+   * Connection pool, dispatcher and timeouts of the client used to call the DINA APIs.
+   */
+  @Getter
+  @Setter
+  public static class Connection {
+
+    /**
+     * Maximum number of idle connections kept in the pool (all hosts).
+     */
+    private int maxIdleConnections = 32;
+
+    /**
+     * How long an idle connection is kept in the pool.
+     */
+    private Duration keepAlive = Duration.ofMinutes(5);
+
+    /**
+     * Maximum number of concurrent asynchronous requests.
+     */
+    private int maxRequests = 64;
+
+    /**
+     * Maximum number of concurrent asynchronous requests per host.
+     */
+    private int maxRequestsPerHost = 16;
+
+    private Duration connectTimeout = Duration.ofSeconds(10);
+    private Duration readTimeout = Duration.ofSeconds(30);
+
+    /**
+     * Negotiate HTTP/2 (ALPN) on TLS connections. HTTP/1.1 is used when the server doesn't support it.
+     */
+    private boolean http2 = true;
+  }
+
+  /**
+   * Conditional requests (ETag/Last-Modified) for responses already received.
+   */
+  @Getter
+  @Setter
+  public static class Revalidation {
+
+    private boolean enabled = false;
+
+    /**
+     * Maximum total size in bytes of the kept bodies.
+     */
+    private long maximumBytes = 64L * 1024 * 1024;
+
+    private Duration expireAfterAccess = Duration.ofMinutes(30);
+
+    /**
+     * Responses with a larger body are not kept.
+     */
+    private long maxEntryBytes = 256L * 1024;
+  }
+
+  /**
+   * Adaptive (AIMD) concurrency limit of the calls to each API.
+   */
+  @Getter
+  @Setter
+  public static class Limiter {
+
+    private boolean enabled = false;
+
+    private int initialLimit = 8;
+    private int minLimit = 1;
+    /**
+     * Capped to http-client.connection.maxRequestsPerHost, the calls above it would wait in the dispatcher.
+     */
+    private int maxLimit = 16;
+
+    /**
+     * Factor applied to the limit when a call fails or is slower than the latency threshold.
+     */
+    private double backoffRatio = 0.5;
+
+    private Duration latencyThreshold = Duration.ofSeconds(5);
+
+    /**
+     * Maximum pause honoured from a Retry-After header.
+     */
+    private Duration maxRetryAfter = Duration.ofMinutes(1);
+
+    /**
+     * Maximum time a call waits for the limiter before failing. The call is not queued in the dispatcher
+     * while it waits.
+     */
+    private Duration acquireTimeout = Duration.ofMinutes(2);
+  }
+
+  /**
+   * Explicit negotiation of compressed responses (Accept-Encoding: gzip, deflate).
+   * When disabled, okhttp still asks for gzip transparently but deflate is not accepted and no statistics
+   * are available.
+   */
+  @Getter
+  @Setter
+  public static class Compression {
+
+    private boolean enabled = false;
+  }
+
+  /**
+   * Metrics (latency, status codes, bytes) of the calls by API and logging of the calls.
+   */
+  @Getter
+  @Setter
+  public static class Metrics {
+
+    private boolean enabled = false;
+
+    /**
+     * Calls are logged at debug level. When debug is disabled, 1 call every logSampleRate calls is logged
+     * at info level. 0 disables the sampling.
+     */
+    private int logSampleRate = 0;
+  }
 }
@@ -1,5 +1,7 @@
 package ca.gc.aafc.dina.search.cli.config;
 
+import org.springframework.boot.context.properties.bind.ConstructorBinding;
+
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -13,13 +15,29 @@ import java.util.Set;
  * @param relationshipsType
  * @param reverseRelationships
  * @param augmentedRelationships
+ * @param sparseFields optional sparse fieldsets (fields[type]) by type used when the document is retrieved.
+ *                     The fieldset of the document type must include its relationships.
  */
 public record IndexSettingDescriptor(String indexName, String type,
                                      Set<String> relationships,
                                      Set<String> relationshipsType,
                                      Map<String, List<String>> optionalFields,
                                      List<ReverseRelationship> reverseRelationships,
-                                     List<AugmentedRelationship> augmentedRelationships) {
+                                     List<AugmentedRelationship> augmentedRelationships,
+                                     Map<String, List<String>> sparseFields) {
+
+  @ConstructorBinding
+  public IndexSettingDescriptor {
+  }
+
+  public IndexSettingDescriptor(String indexName, String type, Set<String> relationships,
+                                Set<String> relationshipsType, Map<String, List<String>> optionalFields,
+                                List<ReverseRelationship> reverseRelationships,
+                                List<AugmentedRelationship> augmentedRelationships) {
+    this(indexName, type, relationships, relationshipsType, optionalFields, reverseRelationships,
+        augmentedRelationships, null);
+  }
+
   /**
    * null-safe contains for relationshipsType
    * @param type
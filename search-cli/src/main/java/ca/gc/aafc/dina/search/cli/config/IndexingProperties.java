@@ -0,0 +1,162 @@
+package ca.gc.aafc.dina.search.cli.config;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Tuning of the indexing pipeline (assembling and sending documents to elasticsearch).
+ */
+@Component
+@ConfigurationProperties(prefix = "indexing")
+@Getter
+@Setter
+@NoArgsConstructor
+public class IndexingProperties {
+
+  private final Bulk bulk = new Bulk();
+  private final Assembly assembly = new Assembly();
+  private final Reindex reindex = new Reindex();
+  private final FullReindex fullReindex = new FullReindex();
+  private final DependencyIndex dependencyIndex = new DependencyIndex();
+  private final Replay replay = new Replay();
+
+  /**
+   * Settings of the _bulk requests sent to elasticsearch.
+   */
+  @Getter
+  @Setter
+  public static class Bulk {
+
+    /**
+     * Maximum number of operations sent in a single _bulk request.
+     */
+    private int maxActions = 500;
+
+    /**
+     * Maximum size in bytes of the serialized documents sent in a single _bulk request.
+     */
+    private long maxBytes = 5L * 1024 * 1024;
+
+    /**
+     * Maximum time an operation can wait in the buffer before the buffer is flushed.
+     */
+    private Duration flushInterval = Duration.ofSeconds(1);
+  }
+
+  /**
+   * Settings of the document assembling.
+   */
+  @Getter
+  @Setter
+  public static class Assembly {
+
+    /**
+     * Maximum number of related documents fetched at the same time for a single document.
+     */
+    private int maxConcurrentFetches = 8;
+
+    /**
+     * Maximum number of related documents of the same type fetched in a single request (filter[id][IN]).
+     * 1 or less disables batch fetching.
+     */
+    private int batchSize = 50;
+  }
+
+  /**
+   * Settings of the re-indexing of documents embedding a changed document (cascade).
+   */
+  @Getter
+  @Setter
+  public static class Reindex {
+
+    /**
+     * Number of threads assembling documents, shared by all cascades.
+     */
+    private int workers = 4;
+
+    /**
+     * Maximum number of documents of a cascade waiting to be assembled before the paging is paused.
+     */
+    private int maxPendingDocuments = 100;
+
+    /**
+     * Should the cascades run in the background (not blocking the caller).
+     */
+    private boolean async = false;
+
+    /**
+     * Maximum number of cascades running at the same time when async is enabled.
+     */
+    private int maxConcurrentCascades = 2;
+
+    /**
+     * Maximum number of cascades waiting to run when async is enabled. When reached, the cascade runs on the
+     * calling thread.
+     */
+    private int maxQueuedCascades = 10;
+
+    /**
+     * Number of documents requested per page when looking for documents embedding a changed document.
+     */
+    private int scanPageSize = 500;
+  }
+
+  /**
+   * Settings of the re-indexing of all the documents of a type from the source API.
+   */
+  @Getter
+  @Setter
+  public static class FullReindex {
+
+    /**
+     * page[limit] used to walk the source API.
+     */
+    private int pageSize = 100;
+
+    /**
+     * Directory where the checkpoint files are written.
+     */
+    private String checkpointDirectory = ".";
+  }
+
+  /**
+   * Settings of the side index keeping, for each indexed document, the documents it includes.
+   * When enabled, it is used instead of a nested query to find the documents to re-index.
+   */
+  @Getter
+  @Setter
+  public static class DependencyIndex {
+
+    /**
+     * The index must be rebuilt (rebuild-dependency-index) when enabled on existing indices.
+     */
+    private boolean enabled = false;
+
+    private String name = "dina_dependency_index";
+  }
+
+  /**
+   * Settings of the documents waiting to be re-indexed: documents that failed with a transient error after all
+   * their retries and documents indexed while the API of a related document was unavailable.
+   */
+  @Getter
+  @Setter
+  public static class Replay {
+
+    /**
+     * Maximum number of documents waiting, documents added once it is reached are dropped.
+     */
+    private int maxDocuments = 10_000;
+
+    /**
+     * Delay between the automatic replays of the waiting documents. No automatic replay if not set, the
+     * replay-pending-documents command can still be used.
+     */
+    private Duration interval;
+  }
+}
@@ -0,0 +1,67 @@
+package ca.gc.aafc.dina.search.cli.config;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Retry of the calls failing with a transient error (connectivity issue, overloaded or unavailable server).
+ */
+@Component
+@ConfigurationProperties(prefix = "retry")
+@Getter
+@Setter
+@NoArgsConstructor
+public class RetryProperties {
+
+  /**
+   * Calls made to the DINA APIs.
+   */
+  private final Policy api = new Policy();
+
+  /**
+   * Calls made to elasticsearch (index, delete and bulk requests).
+   */
+  private final Policy elasticsearch = new Policy();
+
+  @Getter
+  @Setter
+  public static class Policy {
+
+    private boolean enabled = false;
+
+    /**
+     * Maximum number of attempts, including the first one.
+     */
+    private int maxAttempts = 3;
+
+    /**
+     * Upper bound of the wait before the first retry, doubled for every following retry.
+     * The actual wait is a random value between 0 and the upper bound (full jitter).
+     */
+    private Duration initialBackoff = Duration.ofMillis(100);
+
+    private Duration maxBackoff = Duration.ofSeconds(5);
+
+    /**
+     * Maximum wait honoured when the server tells when to retry (Retry-After), used instead of the back-off
+     * when longer.
+     */
+    private Duration maxRetryAfter = Duration.ofMinutes(1);
+
+    /**
+     * Retries allowed per call. Each call adds this ratio to the budget and each retry takes 1 from it
+     * so retries can't multiply the load on a failing server.
+     */
+    private double budgetRatio = 0.1;
+
+    /**
+     * Initial (and maximum) number of retries available in the budget.
+     */
+    private int budgetReserve = 10;
+  }
+}
@@ -2,25 +2,57 @@ package ca.gc.aafc.dina.search.cli.config;
 
 import ca.gc.aafc.dina.messaging.config.RabbitMQConsumerConfiguration;
 import ca.gc.aafc.dina.messaging.config.RabbitMQQueueProperties;
+import org.springframework.amqp.core.AcknowledgeMode;
 import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 import jakarta.inject.Named;
+import lombok.extern.log4j.Log4j2;
 
+import java.util.concurrent.Executors;
+
+@Log4j2
 @Configuration
 @ConditionalOnProperty(prefix = "dina.messaging", name = "isConsumer", havingValue = "true")
 public class SearchQueueConsumerConfiguration extends RabbitMQConsumerConfiguration {
 
-  public SearchQueueConsumerConfiguration(@Named("searchQueueProperties") RabbitMQQueueProperties queueProperties) {
+  public static final String CONTAINER_FACTORY = "searchQueueContainerFactory";
+  public static final String BATCH_CONTAINER_FACTORY = "searchQueueBatchContainerFactory";
+  public static final String SINGLE_ACTIVE_CONSUMER_ARGUMENT = "x-single-active-consumer";
+
+  private final SearchQueueListenerProperties listenerProperties;
+
+  public SearchQueueConsumerConfiguration(@Named("searchQueueProperties") RabbitMQQueueProperties queueProperties,
+                                          SearchQueueListenerProperties listenerProperties) {
     super(queueProperties);
+    this.listenerProperties = listenerProperties;
   }
 
+  /**
+   * The order of the notifications of a document is only kept by the broker when a single consumer receives
+   * them: one consumer, or a single active consumer declared on the queue. A single active consumer also means
+   * the other consumers stay idle so concurrency can't be combined with ordering.
+   */
   @Bean("searchQueue")
   @Override
   public Queue createQueue() {
-    return super.createQueue();
+    Queue queue = super.createQueue();
+    int maxConsumers = Math.max(listenerProperties.getConcurrency(), listenerProperties.getMaxConcurrency());
+    if (listenerProperties.isSingleActiveConsumer()) {
+      queue.addArgument(SINGLE_ACTIVE_CONSUMER_ARGUMENT, true);
+      if (maxConsumers > 1) {
+        log.warn("Single active consumer: only 1 of the {} consumers receives notifications", maxConsumers);
+      }
+    } else if (!listenerProperties.isOrderingGuaranteed()) {
+      log.warn("{} concurrent consumers without single active consumer: notifications of the same document are " +
+          "NOT processed in order", maxConsumers);
+    }
+    return queue;
   }
 
   @Bean("searchDeadLetterQueue")
@@ -28,4 +60,57 @@ public class SearchQueueConsumerConfiguration extends RabbitMQConsumerConfigurat
   public Queue createDeadLetterQueue() {
     return super.createDeadLetterQueue();
   }
+
+  /**
+   * Container factory of the search queue listener using dina.messaging.listener settings.
+   * The listener returns a future (debounced notifications are processed later), the message is acknowledged
+   * when it completes.
+   */
+  @Bean(CONTAINER_FACTORY)
+  public SimpleRabbitListenerContainerFactory createContainerFactory(
+      SimpleRabbitListenerContainerFactoryConfigurer configurer, ConnectionFactory connectionFactory,
+      SearchQueueListenerProperties listenerProperties) {
+    SimpleRabbitListenerContainerFactory factory = newContainerFactory(configurer, connectionFactory,
+        listenerProperties);
+    factory.setAcknowledgeMode(AcknowledgeMode.MANUAL);
+    return factory;
+  }
+
+  /**
+   * Container factory used when the batch listener is enabled.
+   * Messages are consumed until the batch size is reached or the receive timeout expires.
+   * The listener acknowledges the messages itself so only the failed ones are rejected.
+   */
+  @Bean(BATCH_CONTAINER_FACTORY)
+  @ConditionalOnProperty(prefix = "dina.messaging.listener.batch", name = "enabled", havingValue = "true")
+  public SimpleRabbitListenerContainerFactory createBatchContainerFactory(
+      SimpleRabbitListenerContainerFactoryConfigurer configurer, ConnectionFactory connectionFactory,
+      SearchQueueListenerProperties listenerProperties) {
+    SearchQueueListenerProperties.Batch batch = listenerProperties.getBatch();
+
+    SimpleRabbitListenerContainerFactory factory = newContainerFactory(configurer, connectionFactory,
+        listenerProperties);
+    factory.setBatchListener(true);
+    factory.setConsumerBatchEnabled(true);
+    factory.setBatchSize(batch.getSize());
+    factory.setReceiveTimeout(batch.getReceiveTimeout().toMillis());
+    factory.setAcknowledgeMode(AcknowledgeMode.MANUAL);
+    return factory;
+  }
+
+  private static SimpleRabbitListenerContainerFactory newContainerFactory(
+      SimpleRabbitListenerContainerFactoryConfigurer configurer, ConnectionFactory connectionFactory,
+      SearchQueueListenerProperties listenerProperties) {
+    SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+    configurer.configure(factory, connectionFactory);
+    factory.setConcurrentConsumers(listenerProperties.getConcurrency());
+    factory.setMaxConcurrentConsumers(Math.max(listenerProperties.getConcurrency(),
+        listenerProperties.getMaxConcurrency()));
+    factory.setPrefetchCount(listenerProperties.getPrefetch());
+    if (listenerProperties.isVirtualThreads()) {
+      factory.setTaskExecutor(Executors.newThreadPerTaskExecutor(
+          Thread.ofVirtual().name("search-queue-consumer-", 0).factory()));
+    }
+    return factory;
+  }
 }
@@ -0,0 +1,102 @@
+package ca.gc.aafc.dina.search.cli.config;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Settings of the listener consuming the search queue.
+ */
+@Component
+@ConfigurationProperties(prefix = "dina.messaging.listener")
+@Getter
+@Setter
+@NoArgsConstructor
+public class SearchQueueListenerProperties {
+
+  /**
+   * Number of concurrent consumers started for the search queue.
+   * More than 1 consumer (concurrency or maxConcurrency) means notifications of a document are not processed in
+   * the order they were sent.
+   */
+  private int concurrency = 1;
+
+  /**
+   * Maximum number of concurrent consumers, consumers are added on demand up to that number.
+   */
+  private int maxConcurrency = 1;
+
+  /**
+   * Number of unacknowledged messages each consumer can receive.
+   */
+  private int prefetch = 250;
+
+  /**
+   * Use virtual threads for the consumers.
+   */
+  private boolean virtualThreads = false;
+
+  /**
+   * Declare the queue with x-single-active-consumer: the broker delivers to one consumer at a time (across all
+   * instances) so notifications of a document are processed in the order they were sent. The other consumers
+   * only take over when the active one goes away, so concurrency and maxConcurrency have no effect.
+   * The argument can't be added to an existing queue, it has to be deleted first.
+   */
+  private boolean singleActiveConsumer = false;
+
+  private final Batch batch = new Batch();
+  private final Debounce debounce = new Debounce();
+
+  /**
+   * Notifications of the same document are only processed in order if a single consumer receives them.
+   * @return
+   */
+  public boolean isOrderingGuaranteed() {
+    return singleActiveConsumer || Math.max(concurrency, maxConcurrency) <= 1;
+  }
+
+  /**
+   * When enabled, messages are received by batch and handed to the processor as a unit.
+   */
+  @Getter
+  @Setter
+  public static class Batch {
+
+    private boolean enabled = false;
+
+    /**
+     * Maximum number of messages in a batch.
+     */
+    private int size = 50;
+
+    /**
+     * Maximum time to wait for the batch to be filled.
+     */
+    private Duration receiveTimeout = Duration.ofMillis(500);
+  }
+
+  /**
+   * When a window is set, ADD/UPDATE/REFRESH/DELETE notifications are delayed and only the last one per document
+   * (type and id) received within the window is processed.
+   * Messages are acknowledged once the notification that replaced them is processed so the number of open windows
+   * is also bounded by the prefetch. Not used by the batch listener: duplicates are collapsed within each batch.
+   */
+  @Getter
+  @Setter
+  public static class Debounce {
+
+    /**
+     * Duration of the window, starting with the first notification of a document. Zero disables the debounce.
+     */
+    private Duration window = Duration.ZERO;
+
+    /**
+     * Maximum number of windows open at the same time. Past that, notifications are processed immediately.
+     */
+    private int maxPending = 1000;
+  }
+}
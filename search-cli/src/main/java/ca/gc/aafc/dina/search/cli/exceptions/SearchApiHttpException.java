@@ -0,0 +1,37 @@
+package ca.gc.aafc.dina.search.cli.exceptions;
+
+import java.time.Duration;
+
+/**
+ * Thrown when an API answered with an unsuccessful status code (other than 404).
+ */
+public class SearchApiHttpException extends SearchApiException {
+
+  private static final long serialVersionUID = -3391874465210637725L;
+
+  private final int statusCode;
+  private final Duration retryAfter;
+
+  public SearchApiHttpException(String message, int statusCode) {
+    this(message, statusCode, null);
+  }
+
+  /**
+   * @param message
+   * @param statusCode
+   * @param retryAfter when the API asked to retry (Retry-After header) or null
+   */
+  public SearchApiHttpException(String message, int statusCode, Duration retryAfter) {
+    super(message);
+    this.statusCode = statusCode;
+    this.retryAfter = retryAfter;
+  }
+
+  public int getStatusCode() {
+    return statusCode;
+  }
+
+  public Duration getRetryAfter() {
+    return retryAfter;
+  }
+}
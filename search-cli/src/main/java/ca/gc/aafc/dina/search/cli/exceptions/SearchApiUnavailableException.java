@@ -0,0 +1,13 @@
+package ca.gc.aafc.dina.search.cli.exceptions;
+
+/**
+ * Thrown when an API is not called because it is considered unavailable (circuit open).
+ */
+public class SearchApiUnavailableException extends SearchApiException {
+
+  private static final long serialVersionUID = 4410383961542035125L;
+
+  public SearchApiUnavailableException(String message) {
+    super(message);
+  }
+}
@@ -0,0 +1,248 @@
+package ca.gc.aafc.dina.search.cli.http;
+
+import lombok.extern.log4j.Log4j2;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Concurrency limiter adjusting its limit using AIMD (additive increase, multiplicative decrease).
+ *
+ * The limit is increased by 1 after a successful call made while the limiter was at least half used and
+ * multiplied by the backoff ratio when a call is dropped (error, overload answer) or slower than the latency
+ * threshold. Calls started before the last decrease saw the same congestion, so the limit is decreased at most
+ * once per round trip. When the API asks to retry later (Retry-After), no new call is allowed until that time.
+ *
+ * Permits are given asynchronously: no thread waits for the limiter, waiting calls are queued and their
+ * future completed, in order, when a permit is available.
+ *
+ * This class is thread-safe.
+ */
+@Log4j2
+public class AdaptiveConcurrencyLimiter {
+
+  public enum Outcome {
+    SUCCESS,
+    DROPPED
+  }
+
+  private final String name;
+  private final int minLimit;
+  private final int maxLimit;
+  private final double backoffRatio;
+  private final long latencyThresholdNanos;
+  private final LongSupplier nanoClock;
+
+  private final ReentrantLock lock = new ReentrantLock();
+
+  // guarded by lock
+  private final Deque<CompletableFuture<Permit>> waiting = new ArrayDeque<>();
+  private double limit;
+  private int inFlight = 0;
+  private long pausedUntil;
+  private long lastDecrease;
+  private boolean resumeScheduled = false;
+
+  public AdaptiveConcurrencyLimiter(String name, int initialLimit, int minLimit, int maxLimit,
+                                    double backoffRatio, Duration latencyThreshold) {
+    this(name, initialLimit, minLimit, maxLimit, backoffRatio, latencyThreshold, System::nanoTime);
+  }
+
+  AdaptiveConcurrencyLimiter(String name, int initialLimit, int minLimit, int maxLimit,
+                             double backoffRatio, Duration latencyThreshold, LongSupplier nanoClock) {
+    this.name = name;
+    this.minLimit = minLimit;
+    this.maxLimit = maxLimit;
+    this.backoffRatio = backoffRatio;
+    this.latencyThresholdNanos = latencyThreshold.toNanos();
+    this.nanoClock = nanoClock;
+    this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    this.pausedUntil = nanoClock.getAsLong();
+    this.lastDecrease = pausedUntil;
+  }
+
+  /**
+   * Get a permit to make a call.
+   * @param timeout maximum time to wait
+   * @return future completed with the permit, that must be released, when the call can be made or completed
+   *     exceptionally with a {@link java.util.concurrent.TimeoutException} on timeout
+   */
+  public CompletableFuture<Permit> acquire(Duration timeout) {
+    CompletableFuture<Permit> permit = new CompletableFuture<>();
+    lock.lock();
+    try {
+      waiting.add(permit);
+    } finally {
+      lock.unlock();
+    }
+    dispatch();
+    if (!permit.isDone()) {
+      permit.orTimeout(timeout.toNanos(), TimeUnit.NANOSECONDS)
+          .exceptionally(ex -> {
+            removeWaiting(permit);
+            return null;
+          });
+    }
+    return permit;
+  }
+
+  /**
+   * Release a call and adjust the limit.
+   * @param permit permit of the call
+   * @param outcome outcome of the call
+   */
+  public void release(Permit permit, Outcome outcome) {
+    lock.lock();
+    try {
+      long now = nanoClock.getAsLong();
+      int callsInFlight = inFlight;
+      inFlight--;
+      double previousLimit = limit;
+      if (outcome == Outcome.DROPPED || now - permit.startNanos() > latencyThresholdNanos) {
+        if (permit.startNanos() - lastDecrease > 0) {
+          limit = Math.max(minLimit, limit * backoffRatio);
+          lastDecrease = now;
+        }
+      } else if (callsInFlight * 2 >= limit) {
+        limit = Math.min(maxLimit, limit + 1);
+      }
+      if ((int) limit != (int) previousLimit) {
+        log.debug("Concurrency limit of {} changed from {} to {}", name, (int) previousLimit, (int) limit);
+      }
+    } finally {
+      lock.unlock();
+    }
+    dispatch();
+  }
+
+  /**
+   * Give back a permit that was not used, the limit is not adjusted.
+   * @param permit
+   */
+  public void cancel(Permit permit) {
+    giveBack();
+  }
+
+  /**
+   * Stop allowing new calls for the provided duration (Retry-After).
+   * @param duration
+   */
+  public void pause(Duration duration) {
+    lock.lock();
+    try {
+      long until = nanoClock.getAsLong() + duration.toNanos();
+      if (until - pausedUntil > 0) {
+        pausedUntil = until;
+        log.info("Calls to {} paused for {} ms as requested by the API", name, duration.toMillis());
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Give the available permits to the waiting calls. The futures are completed outside the lock since they
+   * start the calls.
+   */
+  private void dispatch() {
+    List<CompletableFuture<Permit>> granted = new ArrayList<>();
+    long now;
+    lock.lock();
+    try {
+      now = nanoClock.getAsLong();
+      long pausedFor = pausedUntil - now;
+      if (pausedFor > 0) {
+        scheduleResume(pausedFor);
+        return;
+      }
+      while (!waiting.isEmpty() && inFlight < (int) limit) {
+        CompletableFuture<Permit> next = waiting.poll();
+        if (!next.isDone()) {
+          inFlight++;
+          granted.add(next);
+        }
+      }
+    } finally {
+      lock.unlock();
+    }
+
+    for (CompletableFuture<Permit> permit : granted) {
+      if (!permit.complete(new Permit(now))) {
+        // timed out in the meantime
+        giveBack();
+      }
+    }
+  }
+
+  /**
+   * Dispatch again once the pause is over. Must be called while holding the lock.
+   */
+  private void scheduleResume(long pausedForNanos) {
+    if (resumeScheduled || waiting.isEmpty()) {
+      return;
+    }
+    resumeScheduled = true;
+    CompletableFuture.delayedExecutor(pausedForNanos, TimeUnit.NANOSECONDS).execute(() -> {
+      lock.lock();
+      try {
+        resumeScheduled = false;
+      } finally {
+        lock.unlock();
+      }
+      dispatch();
+    });
+  }
+
+  private void giveBack() {
+    lock.lock();
+    try {
+      inFlight--;
+    } finally {
+      lock.unlock();
+    }
+    dispatch();
+  }
+
+  private void removeWaiting(CompletableFuture<Permit> permit) {
+    lock.lock();
+    try {
+      waiting.remove(permit);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public LimiterStats getStats() {
+    lock.lock();
+    try {
+      return new LimiterStats(name, (int) limit, inFlight, waiting.size(),
+          TimeUnit.NANOSECONDS.toMillis(Math.max(0, pausedUntil - nanoClock.getAsLong())));
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Permit to make a call.
+   * @param startNanos when the permit was given
+   */
+  public record Permit(long startNanos) {
+  }
+
+  /**
+   * @param name name of the API (type)
+   * @param limit current concurrency limit
+   * @param inFlight calls currently running
+   * @param queued calls waiting for the limiter
+   * @param pausedForMs remaining pause requested by the API (Retry-After)
+   */
+  public record LimiterStats(String name, int limit, int inFlight, int queued, long pausedForMs) {
+  }
+}
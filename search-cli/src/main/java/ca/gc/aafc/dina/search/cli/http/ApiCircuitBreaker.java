@@ -0,0 +1,117 @@
+package ca.gc.aafc.dina.search.cli.http;
+
+import ca.gc.aafc.dina.search.cli.exceptions.SearchApiHttpException;
+import ca.gc.aafc.dina.search.cli.exceptions.SearchApiNotFoundException;
+import lombok.extern.log4j.Log4j2;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+/**
+ * Circuit breaker of a single API (type).
+ *
+ * After the configured number of consecutive failures the circuit opens and calls are skipped for the
+ * cool-down period. Then, a single call is allowed (half-open): if it succeeds the circuit closes,
+ * otherwise it opens again for another cool-down period.
+ *
+ * This class is thread-safe.
+ */
+@Log4j2
+public class ApiCircuitBreaker {
+
+  public enum State {
+    CLOSED,
+    OPEN,
+    HALF_OPEN
+  }
+
+  private final String name;
+  private final int failureThreshold;
+  private final long coolDownNanos;
+  private final LongSupplier nanoClock;
+
+  private State state = State.CLOSED;
+  private int consecutiveFailures = 0;
+  private long openedAt;
+  private long skippedCalls = 0;
+  private long openedCount = 0;
+
+  public ApiCircuitBreaker(String name, int failureThreshold, Duration coolDown) {
+    this(name, failureThreshold, coolDown, System::nanoTime);
+  }
+
+  ApiCircuitBreaker(String name, int failureThreshold, Duration coolDown, LongSupplier nanoClock) {
+    this.name = name;
+    this.failureThreshold = failureThreshold;
+    this.coolDownNanos = coolDown.toNanos();
+    this.nanoClock = nanoClock;
+  }
+
+  /**
+   * Check if a call can be made. If true is returned, the outcome of the call must be reported using
+   * {@link #onSuccess()} or {@link #onFailure()}.
+   * @return true if the call can be made, false if it should be skipped
+   */
+  public synchronized boolean tryAcquire() {
+    if (state == State.CLOSED) {
+      return true;
+    }
+    if (state == State.OPEN && nanoClock.getAsLong() - openedAt >= coolDownNanos) {
+      // let a single call probe the API
+      state = State.HALF_OPEN;
+      return true;
+    }
+    skippedCalls++;
+    return false;
+  }
+
+  public synchronized void onSuccess() {
+    if (state != State.CLOSED) {
+      log.info("API {} is available again, circuit closed", name);
+    }
+    state = State.CLOSED;
+    consecutiveFailures = 0;
+  }
+
+  public synchronized void onFailure() {
+    consecutiveFailures++;
+    if (state == State.HALF_OPEN || state == State.CLOSED && consecutiveFailures >= failureThreshold) {
+      if (state == State.CLOSED) {
+        log.warn("API {} failed {} times in a row, calls are skipped for {} ms", name, consecutiveFailures,
+            coolDownNanos / 1_000_000);
+        openedCount++;
+      }
+      state = State.OPEN;
+      openedAt = nanoClock.getAsLong();
+    }
+  }
+
+  /**
+   * Report the outcome of a call that completed with an exception.
+   * Not found and client errors (other than 429) mean the API is answering, they are not failures.
+   * @param ex
+   */
+  public void onException(Throwable ex) {
+    if (ex instanceof SearchApiNotFoundException ||
+        ex instanceof SearchApiHttpException httpEx && httpEx.getStatusCode() < 500 && httpEx.getStatusCode() != 429) {
+      onSuccess();
+    } else {
+      onFailure();
+    }
+  }
+
+  public synchronized CircuitBreakerStats getStats() {
+    return new CircuitBreakerStats(name, state, consecutiveFailures, skippedCalls, openedCount);
+  }
+
+  /**
+   * @param name name of the API (type)
+   * @param state current state of the circuit
+   * @param consecutiveFailures number of failures since the last success
+   * @param skippedCalls calls not made because the circuit was open
+   * @param openedCount number of times the circuit opened
+   */
+  public record CircuitBreakerStats(String name, State state, int consecutiveFailures, long skippedCalls,
+                                    long openedCount) {
+  }
+}
@@ -0,0 +1,128 @@
+package ca.gc.aafc.dina.search.cli.http;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import ca.gc.aafc.dina.search.cli.config.HttpClientConfig;
+import lombok.extern.log4j.Log4j2;
+import okhttp3.Response;
+
+/**
+ * Limits the number of concurrent calls per API (type) using an {@link AdaptiveConcurrencyLimiter}.
+ *
+ * The permit is acquired before the call is sent (or queued in the okhttp dispatcher) so no dispatcher thread
+ * waits for the limiter. 429 and 5xx answers, connection errors and slow answers reduce the limit. The
+ * Retry-After header of 429 and 503 answers pauses the calls to the API.
+ *
+ * The maximum limit is capped to the number of requests per host of the dispatcher since the calls above it
+ * would only wait in the dispatcher queue.
+ */
+@Log4j2
+public class ApiConcurrencyLimits {
+
+  private final HttpClientConfig.Limiter settings;
+  private final int maxLimit;
+  private final ConcurrentMap<String, AdaptiveConcurrencyLimiter> limiters = new ConcurrentHashMap<>();
+
+  public ApiConcurrencyLimits(HttpClientConfig.Limiter settings, int maxRequestsPerHost) {
+    this.settings = settings;
+    if (settings.getMaxLimit() > maxRequestsPerHost) {
+      log.warn("Concurrency limiter maxLimit {} is capped to the maximum number of requests per host {}",
+          settings.getMaxLimit(), maxRequestsPerHost);
+    }
+    this.maxLimit = Math.min(settings.getMaxLimit(), maxRequestsPerHost);
+  }
+
+  /**
+   * Get a permit to call the API.
+   * @param type type of the API
+   * @return future completed with the permit or completed exceptionally with a
+   *     {@link java.util.concurrent.TimeoutException} after http-client.limiter.acquireTimeout
+   */
+  public CompletableFuture<AdaptiveConcurrencyLimiter.Permit> acquire(String type) {
+    return getLimiter(type).acquire(settings.getAcquireTimeout());
+  }
+
+  /**
+   * Release the permit according to the response of the call.
+   * @param type type of the API
+   * @param permit
+   * @param response response of the call or null if the call failed
+   */
+  public void release(String type, AdaptiveConcurrencyLimiter.Permit permit, Response response) {
+    AdaptiveConcurrencyLimiter limiter = getLimiter(type);
+    AdaptiveConcurrencyLimiter.Outcome outcome = AdaptiveConcurrencyLimiter.Outcome.DROPPED;
+    if (response != null) {
+      if (response.code() == 429 || response.code() >= 500) {
+        Duration retryAfter = parseRetryAfter(response.header("Retry-After"));
+        if (retryAfter != null) {
+          limiter.pause(min(retryAfter, settings.getMaxRetryAfter()));
+        }
+      } else {
+        outcome = AdaptiveConcurrencyLimiter.Outcome.SUCCESS;
+      }
+    }
+    limiter.release(permit, outcome);
+  }
+
+  /**
+   * Give back a permit that was not used, the limit is not adjusted.
+   * @param type type of the API
+   * @param permit
+   */
+  public void cancel(String type, AdaptiveConcurrencyLimiter.Permit permit) {
+    getLimiter(type).cancel(permit);
+  }
+
+  private AdaptiveConcurrencyLimiter getLimiter(String type) {
+    return limiters.computeIfAbsent(type,
+        t -> new AdaptiveConcurrencyLimiter(t, settings.getInitialLimit(), settings.getMinLimit(),
+            maxLimit, settings.getBackoffRatio(), settings.getLatencyThreshold()));
+  }
+
+  public List<AdaptiveConcurrencyLimiter.LimiterStats> getStats() {
+    return limiters.values().stream().map(AdaptiveConcurrencyLimiter::getStats).toList();
+  }
+
+  /**
+   * Parse the value of a Retry-After header (delay in seconds or http date).
+   * @param value
+   * @return the delay or null if the value is missing or invalid
+   */
+  public static Duration parseRetryAfter(String value) {
+    if (value == null || value.isBlank()) {
+      return null;
+    }
+    try {
+      return Duration.ofSeconds(Math.max(0, Long.parseLong(value.trim())));
+    } catch (NumberFormatException e) {
+      // not a number, should be an http date
+    }
+    try {
+      Instant date = ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+      Duration delay = Duration.between(Instant.now(), date);
+      return delay.isNegative() ? Duration.ZERO : delay;
+    } catch (DateTimeParseException e) {
+      log.debug("Invalid Retry-After header: {}", value);
+      return null;
+    }
+  }
+
+  private static Duration min(Duration a, Duration b) {
+    return a.compareTo(b) <= 0 ? a : b;
+  }
+
+  /**
+   * Tag identifying the API (type) of a request.
+   * @param type
+   */
+  public record ApiType(String type) {
+  }
+}
@@ -1,6 +1,7 @@
 package ca.gc.aafc.dina.search.cli.http;
 
 import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
 
 import lombok.extern.log4j.Log4j2;
 import okhttp3.Interceptor;
@@ -8,15 +9,39 @@ import okhttp3.Request;
 import okhttp3.Response;
 
 /**
- * okhttp {@link Interceptor} implementation that will log calls (info level) using log4j2.
+ * okhttp {@link Interceptor} implementation that will log calls using log4j2.
+ * All calls are logged at debug level, when debug is disabled 1 call every sampleRate calls is logged at
+ * info level (0 to disable sampling).
  */
 @Log4j2
 public class ApiLoggingInterceptor implements Interceptor {
 
+  private final int sampleRate;
+  private final AtomicLong callCount = new AtomicLong();
+
+  public ApiLoggingInterceptor() {
+    this(0);
+  }
+
+  public ApiLoggingInterceptor(int sampleRate) {
+    this.sampleRate = sampleRate;
+  }
+
+  /**
+   * @return true if the interceptor would log something with the current log level
+   */
+  public boolean isLogging() {
+    return log.isDebugEnabled() || sampleRate > 0 && log.isInfoEnabled();
+  }
+
   @Override
   public Response intercept(Chain chain) throws IOException {
     Request request = chain.request();
-    log.info("Operation: {} onto API url: {}", request.method(), request.url());
+    if (log.isDebugEnabled()) {
+      log.debug("Operation: {} onto API url: {}", request.method(), request.url());
+    } else if (sampleRate > 0 && callCount.getAndIncrement() % sampleRate == 0) {
+      log.info("Operation: {} onto API url: {} (sampled 1/{})", request.method(), request.url(), sampleRate);
+    }
     return chain.proceed(request);
   }
 }
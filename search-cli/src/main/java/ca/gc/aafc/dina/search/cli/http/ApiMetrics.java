@@ -0,0 +1,111 @@
+package ca.gc.aafc.dina.search.cli.http;
+
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics of the calls made to the DINA APIs, by endpoint (type): latency histogram, status codes and
+ * bytes sent/received. Recorded by {@link ApiMetricsInterceptor}.
+ *
+ * Exposed through JMX (when spring.jmx.enabled is true) and the show-stats command.
+ */
+@Component
+@ManagedResource(objectName = "ca.gc.aafc.dina.search:type=ApiMetrics", description = "DINA API calls metrics")
+public class ApiMetrics {
+
+  private final ConcurrentMap<String, EndpointMetrics> endpoints = new ConcurrentHashMap<>();
+
+  EndpointMetrics forEndpoint(String endpoint) {
+    return endpoints.computeIfAbsent(endpoint, k -> new EndpointMetrics());
+  }
+
+  public List<EndpointStats> getStats() {
+    return new TreeMap<>(endpoints).entrySet().stream()
+        .map(e -> e.getValue().snapshot(e.getKey()))
+        .toList();
+  }
+
+  /**
+   * Summary of each endpoint, for JMX clients.
+   * @return
+   */
+  @ManagedAttribute(description = "Latency percentiles, status codes and bytes by endpoint")
+  public Map<String, String> getEndpoints() {
+    Map<String, String> summaries = new TreeMap<>();
+    for (EndpointStats stats : getStats()) {
+      summaries.put(stats.endpoint(), stats.toString());
+    }
+    return summaries;
+  }
+
+  @ManagedOperation(description = "Discard all the recorded metrics")
+  public void reset() {
+    endpoints.clear();
+  }
+
+  /**
+   * Metrics of a single endpoint. Thread-safe.
+   */
+  static class EndpointMetrics {
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final ConcurrentMap<Integer, LongAdder> statusCodes = new ConcurrentHashMap<>();
+    private final LongAdder ioErrors = new LongAdder();
+    private final AtomicLong bytesIn = new AtomicLong();
+    private final AtomicLong bytesOut = new AtomicLong();
+
+    void recordResponse(int statusCode, long latencyNanos, long requestBytes) {
+      latency.record(latencyNanos);
+      statusCodes.computeIfAbsent(statusCode, k -> new LongAdder()).increment();
+      bytesOut.addAndGet(requestBytes);
+    }
+
+    void recordIoError(long latencyNanos, long requestBytes) {
+      latency.record(latencyNanos);
+      ioErrors.increment();
+      bytesOut.addAndGet(requestBytes);
+    }
+
+    /**
+     * Counter of the response bytes, incremented as the body is read.
+     */
+    AtomicLong bytesIn() {
+      return bytesIn;
+    }
+
+    EndpointStats snapshot(String endpoint) {
+      Map<Integer, Long> codes = new TreeMap<>();
+      statusCodes.forEach((code, count) -> codes.put(code, count.sum()));
+      return new EndpointStats(endpoint, latency.count(), codes, ioErrors.sum(), latency.percentileMs(0.5),
+          latency.percentileMs(0.9), latency.percentileMs(0.99), latency.maxMs(), latency.meanMs(),
+          bytesIn.get(), bytesOut.get());
+    }
+  }
+
+  /**
+   * @param endpoint type of the API
+   * @param requests requests sent (including the ones that failed)
+   * @param statusCodes responses by status code
+   * @param ioErrors requests without response (connection or timeout error)
+   * @param p50Ms median latency (until the response headers are received)
+   * @param p90Ms 90th percentile latency
+   * @param p99Ms 99th percentile latency
+   * @param maxMs highest latency
+   * @param meanMs average latency
+   * @param bytesIn bytes of the response bodies, as received (compressed)
+   * @param bytesOut bytes of the request bodies
+   */
+  public record EndpointStats(String endpoint, long requests, Map<Integer, Long> statusCodes, long ioErrors,
+                              long p50Ms, long p90Ms, long p99Ms, long maxMs, long meanMs,
+                              long bytesIn, long bytesOut) {
+  }
+}
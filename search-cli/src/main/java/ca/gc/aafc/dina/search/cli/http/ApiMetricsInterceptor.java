@@ -0,0 +1,57 @@
+package ca.gc.aafc.dina.search.cli.http;
+
+import java.io.IOException;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Okio;
+
+/**
+ * okhttp network {@link Interceptor} implementation recording the latency, status code and bytes of each
+ * request sent to an API in {@link ApiMetrics}.
+ *
+ * The endpoint is the {@link ApiConcurrencyLimits.ApiType} tag of the request or the host if the
+ * request is not tagged. As a network interceptor, it sees every request actually sent (including
+ * authentication retries) and the bodies as received on the wire.
+ */
+public class ApiMetricsInterceptor implements Interceptor {
+
+  private final ApiMetrics metrics;
+
+  public ApiMetricsInterceptor(ApiMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  @Override
+  public Response intercept(Chain chain) throws IOException {
+    Request request = chain.request();
+    ApiConcurrencyLimits.ApiType apiType = request.tag(ApiConcurrencyLimits.ApiType.class);
+    ApiMetrics.EndpointMetrics endpoint =
+        metrics.forEndpoint(apiType != null ? apiType.type() : request.url().host());
+
+    RequestBody requestBody = request.body();
+    long requestBytes = requestBody != null ? Math.max(0, requestBody.contentLength()) : 0;
+
+    long start = System.nanoTime();
+    Response response;
+    try {
+      response = chain.proceed(request);
+    } catch (IOException e) {
+      endpoint.recordIoError(System.nanoTime() - start, requestBytes);
+      throw e;
+    }
+    endpoint.recordResponse(response.code(), System.nanoTime() - start, requestBytes);
+
+    ResponseBody body = response.body();
+    if (body == null) {
+      return response;
+    }
+    return response.newBuilder()
+        .body(ResponseBody.create(Okio.buffer(new CountingSource(body.source(), endpoint.bytesIn())),
+            body.contentType(), body.contentLength()))
+        .build();
+  }
+}
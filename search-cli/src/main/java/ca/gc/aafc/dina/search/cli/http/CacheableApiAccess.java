@@ -1,40 +1,466 @@
 package ca.gc.aafc.dina.search.cli.http;
 
+import ca.gc.aafc.dina.search.cli.config.ApiCacheProperties;
+import ca.gc.aafc.dina.search.cli.config.ApiResilienceProperties;
 import ca.gc.aafc.dina.search.cli.config.ApiResourceDescriptor;
 import ca.gc.aafc.dina.search.cli.exceptions.SearchApiException;
+import ca.gc.aafc.dina.search.cli.exceptions.SearchApiNotFoundException;
+import ca.gc.aafc.dina.search.cli.exceptions.SearchApiUnavailableException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import lombok.extern.log4j.Log4j2;
 import org.apache.commons.lang3.tuple.Pair;
 import org.springframework.stereotype.Component;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
 
 /**
  * Adds an indirection around {@link OpenIDHttpClient} to allow caching of the API response.
  *
+ * Responses of {@link #getFromApi} are cached by type, id, includes, optional fields and sparse fieldsets.
+ * Since the data can change at any time, the cache relies on {@link #evict(String, String)} being called
+ * when a notification is received for a document. The expiration is only there as a safety net.
+ * Hits, misses and evictions are the statistics recorded by the cache.
+ * Responses by filter are not cached.
+ *
+ * Lookups (by id or filter) that returned a 404 are remembered for a short time (api-resilience.notFoundCache)
+ * and each API (type) is protected by an {@link ApiCircuitBreaker} (api-resilience.circuitBreaker). When the circuit
+ * is open, calls fail immediately with {@link SearchApiUnavailableException}.
  */
+@Log4j2
 @Component
 public class CacheableApiAccess implements DinaApiAccess {
 
   public static final String CACHE_NAME = "apiAccess";
 
+  private static final int EVICTION_EPOCH_STRIPES = 64;
+
   private final OpenIDHttpClient client;
+  private final boolean cacheEnabled;
+
+  private final Cache<ResponseKey, String> cache;
+  // variants requested for each type so all the responses of a document can be evicted by key
+  private final ConcurrentMap<String, Set<VariantKey>> variantsByType = new ConcurrentHashMap<>();
+  // incremented when a document is evicted so a response fetched before the eviction is not cached
+  private final AtomicLongArray evictionEpochs = new AtomicLongArray(EVICTION_EPOCH_STRIPES);
+  private final AtomicLong invalidationCount = new AtomicLong();
+
+  // null when disabled
+  private final Cache<NotFoundKey, Boolean> notFoundCache;
+  // lookups by filter in the not found cache, by type, so they can be invalidated by key
+  private final ConcurrentMap<String, Set<NotFoundKey>> notFoundFiltersByType = new ConcurrentHashMap<>();
+
+  private final ApiResilienceProperties.CircuitBreaker circuitBreakerSettings;
+  private final ConcurrentMap<String, ApiCircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
 
-  public CacheableApiAccess(OpenIDHttpClient aClient) {
+  public CacheableApiAccess(OpenIDHttpClient aClient, ApiCacheProperties cacheProperties,
+                            ApiResilienceProperties resilienceProperties) {
     client = aClient;
+    cacheEnabled = cacheProperties.isEnabled();
+    cache = Caffeine.newBuilder()
+        .maximumSize(cacheProperties.getMaximumSize())
+        .expireAfterWrite(cacheProperties.getExpireAfterWrite())
+        .recordStats()
+        .build();
+
+    ApiResilienceProperties.NotFoundCache notFoundSettings = resilienceProperties.getNotFoundCache();
+    notFoundCache = notFoundSettings.isEnabled() ? Caffeine.newBuilder()
+        .maximumSize(notFoundSettings.getMaximumSize())
+        .expireAfterWrite(notFoundSettings.getExpireAfterWrite())
+        .recordStats()
+        .removalListener((NotFoundKey key, Boolean value, RemovalCause cause) -> forgetNotFoundFilter(key, cause))
+        .build() : null;
+    circuitBreakerSettings = resilienceProperties.getCircuitBreaker();
   }
 
-  // Removed @Cacheable to always fetch fresh data and avoid stale entries.
-  // Will be likely be re-enabled with value injection in the future
-  // Previously: @Cacheable(cacheNames = CACHE_NAME)
   public String getFromApi(ApiResourceDescriptor apiResourceDescriptor, Set<String> includes,
                            Map<String, List<String>> optFields, String objectId)
       throws SearchApiException {
-    return client.getDataById(apiResourceDescriptor, includes, optFields, objectId);
+
+    if (!cacheEnabled || objectId == null || apiResourceDescriptor == null) {
+      return guardedCall(apiResourceDescriptor, NotFoundKey.byId(apiResourceDescriptor, objectId),
+          () -> client.getDataById(apiResourceDescriptor, includes, optFields, objectId));
+    }
+
+    ResponseKey key = new ResponseKey(new ResourceKey(apiResourceDescriptor.type(), objectId),
+        new VariantKey(includes, optFields, null));
+    String response = cache.getIfPresent(key);
+    if (response != null) {
+      return response;
+    }
+
+    long epoch = evictionEpoch(key.resource());
+    response = guardedCall(apiResourceDescriptor, NotFoundKey.byId(apiResourceDescriptor, objectId),
+        () -> client.getDataById(apiResourceDescriptor, includes, optFields, objectId));
+    cacheResponse(key, epoch, response);
+    return response;
+  }
+
+  /**
+   * Same caching as {@link #getFromApi} but the API is called without blocking the calling thread.
+   */
+  @Override
+  public CompletableFuture<String> getFromApiAsync(ApiResourceDescriptor apiResourceDescriptor, Set<String> includes,
+                                                   Map<String, List<String>> optFields, String objectId) {
+    return cachedAsyncCall(apiResourceDescriptor, new VariantKey(includes, optFields, null), objectId,
+        () -> client.getDataByIdAsync(apiResourceDescriptor, includes, optFields, objectId));
+  }
+
+  /**
+   * Same caching as {@link #getFromApi}, documents requested with different sparse fieldsets are cached separately.
+   */
+  @Override
+  public CompletableFuture<String> getFromApiAsync(ApiResourceDescriptor apiResourceDescriptor, Set<String> includes,
+                                                   Map<String, List<String>> optFields,
+                                                   Map<String, List<String>> sparseFields, String objectId) {
+    if (sparseFields == null || sparseFields.isEmpty()) {
+      return getFromApiAsync(apiResourceDescriptor, includes, optFields, objectId);
+    }
+    return cachedAsyncCall(apiResourceDescriptor, new VariantKey(includes, optFields, sparseFields), objectId,
+        () -> client.getDataByIdAsync(apiResourceDescriptor, includes, optFields, sparseFields, objectId));
+  }
+
+  private CompletableFuture<String> cachedAsyncCall(ApiResourceDescriptor apiResourceDescriptor,
+                                                    VariantKey variantKey, String objectId,
+                                                    Supplier<CompletableFuture<String>> call) {
+
+    if (!cacheEnabled || objectId == null || apiResourceDescriptor == null) {
+      return guardedAsyncCall(apiResourceDescriptor, NotFoundKey.byId(apiResourceDescriptor, objectId), call);
+    }
+
+    ResponseKey key = new ResponseKey(new ResourceKey(apiResourceDescriptor.type(), objectId), variantKey);
+    String response = cache.getIfPresent(key);
+    if (response != null) {
+      return CompletableFuture.completedFuture(response);
+    }
+
+    long epoch = evictionEpoch(key.resource());
+    return guardedAsyncCall(apiResourceDescriptor, NotFoundKey.byId(apiResourceDescriptor, objectId), call)
+        .thenApply(fetched -> {
+          cacheResponse(key, epoch, fetched);
+          return fetched;
+        });
+  }
+
+  /**
+   * Cache a response unless its document was evicted since the fetch started (epoch changed).
+   * The check is done while holding the lock of the entry so an eviction can't be missed.
+   */
+  private void cacheResponse(ResponseKey key, long epoch, String response) {
+    if (response == null) {
+      return;
+    }
+    variantsByType.computeIfAbsent(key.resource().type(), t -> ConcurrentHashMap.newKeySet()).add(key.variant());
+    cache.asMap().compute(key, (k, current) -> evictionEpoch(k.resource()) == epoch ? response : current);
+  }
+
+  private long evictionEpoch(ResourceKey resourceKey) {
+    return evictionEpochs.get(Math.floorMod(resourceKey.hashCode(), EVICTION_EPOCH_STRIPES));
   }
 
   public String getFromApiByFilter(ApiResourceDescriptor apiResourceDescriptor,
                                    Set<String> includes, Map<String, List<String>> optFields, Pair<String, String> filter) throws SearchApiException {
-    return client.getDataByFilter(apiResourceDescriptor, includes, optFields, filter);
+    return guardedCall(apiResourceDescriptor, NotFoundKey.byFilter(apiResourceDescriptor, filter),
+        () -> client.getDataByFilter(apiResourceDescriptor, includes, optFields, filter));
+  }
+
+  @Override
+  public CompletableFuture<String> getFromApiByFilterAsync(ApiResourceDescriptor apiResourceDescriptor,
+                                                           Set<String> includes, Map<String, List<String>> optFields,
+                                                           Pair<String, String> filter) {
+    return guardedAsyncCall(apiResourceDescriptor, NotFoundKey.byFilter(apiResourceDescriptor, filter),
+        () -> client.getDataByFilterAsync(apiResourceDescriptor, includes, optFields, filter));
+  }
+
+  /**
+   * Responses by ids are not cached.
+   */
+  @Override
+  public CompletableFuture<String> getFromApiByIdsAsync(ApiResourceDescriptor apiResourceDescriptor,
+                                                        Set<String> includes, Collection<String> ids) {
+    return guardedAsyncCall(apiResourceDescriptor, null,
+        () -> client.getDataByIdsAsync(apiResourceDescriptor, includes, ids));
+  }
+
+  @Override
+  public CompletableFuture<String> getFromApiByIdsAsync(ApiResourceDescriptor apiResourceDescriptor,
+                                                        Set<String> includes,
+                                                        Map<String, List<String>> sparseFields,
+                                                        Collection<String> ids) {
+    return guardedAsyncCall(apiResourceDescriptor, null,
+        () -> client.getDataByIdsAsync(apiResourceDescriptor, includes, sparseFields, ids));
+  }
+
+  /**
+   * Cached responses are parsed from the cache. Otherwise, the response is parsed as it is received.
+   */
+  @Override
+  public CompletableFuture<JsonNode> getJsonFromApiAsync(ApiResourceDescriptor apiResourceDescriptor,
+                                                         Set<String> includes, Map<String, List<String>> optFields,
+                                                         Map<String, List<String>> sparseFields, String objectId) {
+    if (cacheEnabled && objectId != null && apiResourceDescriptor != null) {
+      return DinaApiAccess.super.getJsonFromApiAsync(apiResourceDescriptor, includes, optFields, sparseFields,
+          objectId);
+    }
+    return guardedAsyncCall(apiResourceDescriptor, NotFoundKey.byId(apiResourceDescriptor, objectId),
+        () -> client.getJsonByIdAsync(apiResourceDescriptor, includes, optFields, sparseFields, objectId));
+  }
+
+  /**
+   * Responses by ids are not cached, they are parsed as they are received.
+   */
+  @Override
+  public CompletableFuture<JsonNode> getJsonFromApiByIdsAsync(ApiResourceDescriptor apiResourceDescriptor,
+                                                              Set<String> includes,
+                                                              Map<String, List<String>> sparseFields,
+                                                              Collection<String> ids) {
+    return guardedAsyncCall(apiResourceDescriptor, null,
+        () -> client.getJsonByIdsAsync(apiResourceDescriptor, includes, sparseFields, ids));
+  }
+
+  @Override
+  public CompletableFuture<JsonNode> getJsonFromApiByFilterAsync(ApiResourceDescriptor apiResourceDescriptor,
+                                                                 Set<String> includes,
+                                                                 Map<String, List<String>> optFields,
+                                                                 Pair<String, String> filter) {
+    return guardedAsyncCall(apiResourceDescriptor, NotFoundKey.byFilter(apiResourceDescriptor, filter),
+        () -> client.getJsonByFilterAsync(apiResourceDescriptor, includes, optFields, filter));
+  }
+
+  /**
+   * Remove all the cached responses of a document.
+   * @param type the type of document (json:api type)
+   * @param objectId the identifier of the document
+   */
+  @Override
+  public void evict(String type, String objectId) {
+    if (type == null || objectId == null) {
+      return;
+    }
+    if (notFoundCache != null) {
+      // the document may have been created, lookups by filter on the type may now find something
+      notFoundCache.invalidate(new NotFoundKey(type, true, NotFoundKey.idLookup(objectId)));
+      Set<NotFoundKey> filterLookups = notFoundFiltersByType.remove(type);
+      if (filterLookups != null) {
+        notFoundCache.invalidateAll(filterLookups);
+      }
+    }
+    if (!cacheEnabled) {
+      return;
+    }
+    ResourceKey key = new ResourceKey(type, objectId);
+    // responses being fetched will not be cached
+    evictionEpochs.incrementAndGet(Math.floorMod(key.hashCode(), EVICTION_EPOCH_STRIPES));
+
+    boolean evicted = false;
+    for (VariantKey variant : variantsByType.getOrDefault(type, Set.of())) {
+      evicted |= cache.asMap().remove(new ResponseKey(key, variant)) != null;
+    }
+    if (evicted) {
+      invalidationCount.incrementAndGet();
+      log.debug("Evicted {} from cache", key);
+    }
+  }
+
+  /**
+   * Remove all cached responses.
+   */
+  public void evictAll() {
+    for (int i = 0; i < EVICTION_EPOCH_STRIPES; i++) {
+      evictionEpochs.incrementAndGet(i);
+    }
+    cache.invalidateAll();
+  }
+
+  /**
+   * Run the call unless the lookup is known to return a 404 or the circuit of the API is open.
+   * @param apiResourceDescriptor
+   * @param notFoundKey key of the lookup in the not found cache, null if the lookup should not be cached
+   * @param call
+   * @return
+   */
+  private String guardedCall(ApiResourceDescriptor apiResourceDescriptor, NotFoundKey notFoundKey,
+                             ApiCall call) throws SearchApiException {
+    checkNotFoundCache(notFoundKey);
+    ApiCircuitBreaker circuitBreaker = acquireCircuitBreaker(apiResourceDescriptor);
+    try {
+      String response = call.call();
+      if (circuitBreaker != null) {
+        circuitBreaker.onSuccess();
+      }
+      return response;
+    } catch (SearchApiException | RuntimeException ex) {
+      onCallException(circuitBreaker, notFoundKey, ex);
+      throw ex;
+    }
+  }
+
+  /**
+   * Asynchronous version of {@link #guardedCall}.
+   */
+  private <T> CompletableFuture<T> guardedAsyncCall(ApiResourceDescriptor apiResourceDescriptor,
+                                                    NotFoundKey notFoundKey,
+                                                    Supplier<CompletableFuture<T>> call) {
+    ApiCircuitBreaker circuitBreaker;
+    try {
+      checkNotFoundCache(notFoundKey);
+      circuitBreaker = acquireCircuitBreaker(apiResourceDescriptor);
+    } catch (SearchApiException ex) {
+      return CompletableFuture.failedFuture(ex);
+    }
+    CompletableFuture<T> future;
+    try {
+      future = call.get();
+    } catch (RuntimeException ex) {
+      onCallException(circuitBreaker, notFoundKey, ex);
+      throw ex;
+    }
+    return future.whenComplete((response, ex) -> {
+      if (ex == null) {
+        if (circuitBreaker != null) {
+          circuitBreaker.onSuccess();
+        }
+      } else {
+        onCallException(circuitBreaker, notFoundKey,
+            ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex);
+      }
+    });
+  }
+
+  private void checkNotFoundCache(NotFoundKey notFoundKey) throws SearchApiNotFoundException {
+    if (notFoundCache != null && notFoundKey != null && notFoundCache.getIfPresent(notFoundKey) != null) {
+      throw new SearchApiNotFoundException("Not found (cached): " + notFoundKey);
+    }
+  }
+
+  /**
+   * Get the circuit breaker of the API and check if the call can be made.
+   * @return the circuit breaker or null if circuit breakers are disabled
+   * @throws SearchApiUnavailableException if the circuit is open
+   */
+  private ApiCircuitBreaker acquireCircuitBreaker(ApiResourceDescriptor apiResourceDescriptor)
+      throws SearchApiUnavailableException {
+    if (!circuitBreakerSettings.isEnabled() || apiResourceDescriptor == null) {
+      return null;
+    }
+    ApiCircuitBreaker circuitBreaker = circuitBreakers.computeIfAbsent(apiResourceDescriptor.type(),
+        type -> new ApiCircuitBreaker(type, circuitBreakerSettings.getFailureThreshold(),
+            circuitBreakerSettings.getCoolDown()));
+    if (!circuitBreaker.tryAcquire()) {
+      throw new SearchApiUnavailableException("API of type " + apiResourceDescriptor.type() + " is unavailable");
+    }
+    return circuitBreaker;
+  }
+
+  private void onCallException(ApiCircuitBreaker circuitBreaker, NotFoundKey notFoundKey, Throwable ex) {
+    if (circuitBreaker != null) {
+      circuitBreaker.onException(ex);
+    }
+    if (notFoundCache != null && notFoundKey != null && ex instanceof SearchApiNotFoundException) {
+      if (!notFoundKey.byId()) {
+        notFoundFiltersByType.compute(notFoundKey.type(), (type, keys) -> {
+          Set<NotFoundKey> filterKeys = keys == null ? ConcurrentHashMap.newKeySet() : keys;
+          filterKeys.add(notFoundKey);
+          return filterKeys;
+        });
+      }
+      notFoundCache.put(notFoundKey, Boolean.TRUE);
+    }
+  }
+
+  /**
+   * Stop tracking a lookup by filter removed from the not found cache (expired, evicted or invalidated).
+   */
+  private void forgetNotFoundFilter(NotFoundKey key, RemovalCause cause) {
+    // the listener runs asynchronously, the lookup may have been cached again in the meantime
+    if (key == null || key.byId() || cause == RemovalCause.REPLACED || notFoundCache.asMap().containsKey(key)) {
+      return;
+    }
+    notFoundFiltersByType.computeIfPresent(key.type(), (type, keys) -> {
+      keys.remove(key);
+      return keys.isEmpty() ? null : keys;
+    });
+  }
+
+  public List<ApiCircuitBreaker.CircuitBreakerStats> getCircuitBreakerStats() {
+    return circuitBreakers.values().stream().map(ApiCircuitBreaker::getStats).toList();
+  }
+
+  public ApiCacheStats getCacheStats() {
+    CacheStats stats = cache.stats();
+    return new ApiCacheStats(stats.hitCount(), stats.missCount(), stats.evictionCount(),
+        invalidationCount.get(), cache.estimatedSize(),
+        notFoundCache == null ? 0 : notFoundCache.stats().hitCount(),
+        notFoundCache == null ? 0 : notFoundCache.estimatedSize());
+  }
+
+  /**
+   * Statistics of the api cache.
+   * @param hits responses served from the cache
+   * @param misses responses fetched from the API
+   * @param evictions documents removed due to size or expiration
+   * @param invalidations documents removed following a notification
+   * @param size number of responses currently cached
+   * @param notFoundHits lookups answered by the not found cache
+   * @param notFoundSize number of lookups currently in the not found cache
+   */
+  public record ApiCacheStats(long hits, long misses, long evictions, long invalidations, long size,
+                              long notFoundHits, long notFoundSize) {
+  }
+
+  @FunctionalInterface
+  private interface ApiCall {
+    String call() throws SearchApiException;
+  }
+
+  /**
+   * Key of a lookup in the not found cache.
+   * @param type type of the API
+   * @param byId is the lookup by id or by filter
+   * @param lookup id or filter of the lookup
+   */
+  private record NotFoundKey(String type, boolean byId, String lookup) {
+
+    static NotFoundKey byId(ApiResourceDescriptor apiResourceDescriptor, String objectId) {
+      return apiResourceDescriptor == null || objectId == null ? null :
+          new NotFoundKey(apiResourceDescriptor.type(), true, idLookup(objectId));
+    }
+
+    static NotFoundKey byFilter(ApiResourceDescriptor apiResourceDescriptor, Pair<String, String> filter) {
+      return apiResourceDescriptor == null || filter == null ? null :
+          new NotFoundKey(apiResourceDescriptor.type(), false, filter.getKey() + "=" + filter.getValue());
+    }
+
+    static String idLookup(String objectId) {
+      return "id=" + objectId;
+    }
+  }
+
+  private record ResourceKey(String type, String id) {
+  }
+
+  private record ResponseKey(ResourceKey resource, VariantKey variant) {
+  }
+
+  private record VariantKey(Set<String> includes, Map<String, List<String>> optFields,
+                            Map<String, List<String>> sparseFields) {
+    VariantKey {
+      includes = includes == null ? Set.of() : Set.copyOf(includes);
+      optFields = optFields == null ? Map.of() : Map.copyOf(optFields);
+      sparseFields = sparseFields == null ? Map.of() : Map.copyOf(sparseFields);
+    }
   }
 }
@@ -0,0 +1,151 @@
+package ca.gc.aafc.dina.search.cli.http;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.log4j.Log4j2;
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * okhttp {@link Interceptor} implementation that keeps the body and the validators (ETag or Last-Modified)
+ * of GET responses and revalidates them with conditional requests (If-None-Match/If-Modified-Since).
+ *
+ * When the API answers 304 (Not Modified), the kept body is returned as a 200 response.
+ * Only responses with a validator and a body smaller than the configured limit are kept, the total size of the
+ * kept bodies is bounded. Requests tagged with {@link SkipRevalidation} (responses already cached by the caller)
+ * are sent as-is.
+ *
+ * This class is thread-safe.
+ */
+@Log4j2
+public class ConditionalRequestInterceptor implements Interceptor {
+
+  private static final String ETAG = "ETag";
+  private static final String LAST_MODIFIED = "Last-Modified";
+  private static final String IF_NONE_MATCH = "If-None-Match";
+  private static final String IF_MODIFIED_SINCE = "If-Modified-Since";
+
+  private final Cache<HttpUrl, ValidatedResponse> responses;
+  private final long maxEntryBytes;
+
+  private final AtomicLong conditionalRequests = new AtomicLong();
+  private final AtomicLong notModified = new AtomicLong();
+  private final AtomicLong bytesSaved = new AtomicLong();
+
+  /**
+   * @param maximumBytes maximum total size of the kept bodies
+   * @param expireAfterAccess
+   * @param maxEntryBytes responses with a larger body are not kept
+   */
+  public ConditionalRequestInterceptor(long maximumBytes, Duration expireAfterAccess, long maxEntryBytes) {
+    this.responses = Caffeine.newBuilder()
+        .maximumWeight(maximumBytes)
+        .weigher((HttpUrl url, ValidatedResponse response) -> response.body().length)
+        .expireAfterAccess(expireAfterAccess)
+        .build();
+    this.maxEntryBytes = maxEntryBytes;
+  }
+
+  @Override
+  public Response intercept(Chain chain) throws IOException {
+    Request request = chain.request();
+    if (!"GET".equals(request.method()) || request.tag(SkipRevalidation.class) != null) {
+      return chain.proceed(request);
+    }
+
+    ValidatedResponse cached = responses.getIfPresent(request.url());
+    if (cached != null) {
+      Request.Builder conditionalRequest = request.newBuilder();
+      if (cached.etag() != null) {
+        conditionalRequest.header(IF_NONE_MATCH, cached.etag());
+      }
+      if (cached.lastModified() != null) {
+        conditionalRequest.header(IF_MODIFIED_SINCE, cached.lastModified());
+      }
+      request = conditionalRequest.build();
+      conditionalRequests.incrementAndGet();
+    }
+
+    Response response = chain.proceed(request);
+
+    if (response.code() == 304 && cached != null) {
+      response.close();
+      notModified.incrementAndGet();
+      bytesSaved.addAndGet(cached.body().length);
+      return response.newBuilder()
+          .code(200)
+          .message("OK")
+          .body(ResponseBody.create(cached.body(), cached.contentType()))
+          .build();
+    }
+
+    if (response.isSuccessful()) {
+      keepResponse(request.url(), response);
+    } else if (cached != null) {
+      responses.invalidate(request.url());
+    }
+    return response;
+  }
+
+  /**
+   * Keep the body of the response if it has a validator. The body is read with peekBody so the response
+   * can still be streamed by the caller.
+   */
+  private void keepResponse(HttpUrl url, Response response) throws IOException {
+    String etag = response.header(ETAG);
+    String lastModified = response.header(LAST_MODIFIED);
+    ResponseBody body = response.body();
+    if (etag == null && lastModified == null || body == null) {
+      responses.invalidate(url);
+      return;
+    }
+
+    if (body.contentLength() > maxEntryBytes) {
+      return;
+    }
+
+    byte[] bytes = response.peekBody(maxEntryBytes + 1).bytes();
+    if (bytes.length > maxEntryBytes) {
+      return;
+    }
+    responses.put(url, new ValidatedResponse(etag, lastModified, body.contentType(), bytes));
+  }
+
+  public RevalidationStats getStats() {
+    return new RevalidationStats(conditionalRequests.get(), notModified.get(), bytesSaved.get(),
+        responses.estimatedSize(), responses.policy().eviction().map(e -> e.weightedSize().orElse(0)).orElse(0L));
+  }
+
+  /**
+   * @param conditionalRequests requests sent with a validator
+   * @param notModified requests answered by 304 (served from the kept body)
+   * @param bytesSaved size of the bodies served from the kept responses
+   * @param size number of responses kept
+   * @param keptBytes total size of the kept bodies
+   */
+  public record RevalidationStats(long conditionalRequests, long notModified, long bytesSaved, long size,
+                                  long keptBytes) {
+
+    public double hitRate() {
+      return conditionalRequests == 0 ? 0 : (double) notModified / conditionalRequests;
+    }
+  }
+
+  private record ValidatedResponse(String etag, String lastModified, MediaType contentType, byte[] body) {
+  }
+
+  /**
+   * Tag of the requests that should not be revalidated.
+   */
+  public enum SkipRevalidation {
+    INSTANCE
+  }
+}
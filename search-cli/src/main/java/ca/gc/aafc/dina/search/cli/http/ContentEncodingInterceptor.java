@@ -0,0 +1,116 @@
+package ca.gc.aafc.dina.search.cli.http;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Inflater;
+
+import lombok.extern.log4j.Log4j2;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.GzipSource;
+import okio.InflaterSource;
+import okio.Okio;
+import okio.Source;
+
+/**
+ * okhttp {@link Interceptor} implementation asking for compressed responses (gzip or deflate) and decoding them.
+ *
+ * Since the Accept-Encoding header is set explicitly, okhttp doesn't decode the response by itself.
+ * The interceptor must be the last one added so the other interceptors receive decoded bodies.
+ * Bytes received and decoded are counted as the bodies are read.
+ *
+ * This class is thread-safe.
+ */
+@Log4j2
+public class ContentEncodingInterceptor implements Interceptor {
+
+  private static final String ACCEPT_ENCODING = "Accept-Encoding";
+  private static final String CONTENT_ENCODING = "Content-Encoding";
+  private static final String GZIP = "gzip";
+  private static final String DEFLATE = "deflate";
+
+  private final AtomicLong responses = new AtomicLong();
+  private final AtomicLong compressedResponses = new AtomicLong();
+  private final AtomicLong receivedBytes = new AtomicLong();
+  private final AtomicLong decodedBytes = new AtomicLong();
+
+  @Override
+  public Response intercept(Chain chain) throws IOException {
+    Request request = chain.request();
+    if (request.header(ACCEPT_ENCODING) != null) {
+      return chain.proceed(request);
+    }
+
+    Response response = chain.proceed(request.newBuilder()
+        .header(ACCEPT_ENCODING, GZIP + ", " + DEFLATE)
+        .build());
+
+    ResponseBody body = response.body();
+    if (body == null || response.code() == 204 || response.code() == 304) {
+      return response;
+    }
+    responses.incrementAndGet();
+
+    String encoding = response.header(CONTENT_ENCODING);
+    Source decoded;
+    if (GZIP.equalsIgnoreCase(encoding)) {
+      decoded = new GzipSource(new CountingSource(body.source(), receivedBytes));
+    } else if (DEFLATE.equalsIgnoreCase(encoding)) {
+      decoded = inflate(new CountingSource(body.source(), receivedBytes));
+    } else {
+      // identity or an encoding we didn't ask for, the body is returned as received
+      if (encoding != null) {
+        log.debug("Unsupported Content-Encoding {} from {}", encoding, request.url());
+      }
+      return response.newBuilder()
+          .body(ResponseBody.create(Okio.buffer(new CountingSource(body.source(), receivedBytes, decodedBytes)),
+              body.contentType(), body.contentLength()))
+          .build();
+    }
+
+    compressedResponses.incrementAndGet();
+    BufferedSource decodedSource = Okio.buffer(new CountingSource(decoded, decodedBytes));
+    return response.newBuilder()
+        .removeHeader(CONTENT_ENCODING)
+        .removeHeader("Content-Length")
+        .body(ResponseBody.create(decodedSource, body.contentType(), -1L))
+        .build();
+  }
+
+  /**
+   * Inflate a deflate body. The native memory of the inflater is released when the body is closed instead of
+   * waiting for the garbage collector.
+   */
+  private static Source inflate(Source source) {
+    Inflater inflater = new Inflater();
+    return new ForwardingSource(new InflaterSource(source, inflater)) {
+      @Override
+      public void close() throws IOException {
+        try {
+          super.close();
+        } finally {
+          inflater.end();
+        }
+      }
+    };
+  }
+
+  public CompressionStats getStats() {
+    return new CompressionStats(responses.get(), compressedResponses.get(), receivedBytes.get(),
+        decodedBytes.get());
+  }
+
+  /**
+   * @param responses responses with a body
+   * @param compressedResponses responses received compressed
+   * @param receivedBytes bytes of the bodies as received
+   * @param decodedBytes bytes of the bodies once decoded (same as received for uncompressed bodies)
+   */
+  public record CompressionStats(long responses, long compressedResponses, long receivedBytes,
+                                 long decodedBytes) {
+  }
+}
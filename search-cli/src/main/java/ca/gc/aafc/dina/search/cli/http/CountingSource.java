@@ -0,0 +1,32 @@
+package ca.gc.aafc.dina.search.cli.http;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okio.Buffer;
+import okio.ForwardingSource;
+import okio.Source;
+
+/**
+ * okio {@link Source} adding the number of bytes read from the delegate to the provided counters.
+ */
+class CountingSource extends ForwardingSource {
+
+  private final AtomicLong[] counters;
+
+  CountingSource(Source delegate, AtomicLong... counters) {
+    super(delegate);
+    this.counters = counters;
+  }
+
+  @Override
+  public long read(Buffer sink, long byteCount) throws IOException {
+    long read = super.read(sink, byteCount);
+    if (read > 0) {
+      for (AtomicLong counter : counters) {
+        counter.addAndGet(read);
+      }
+    }
+    return read;
+  }
+}
@@ -2,11 +2,17 @@ package ca.gc.aafc.dina.search.cli.http;
 
 import ca.gc.aafc.dina.search.cli.config.ApiResourceDescriptor;
 import ca.gc.aafc.dina.search.cli.exceptions.SearchApiException;
+import ca.gc.aafc.dina.search.cli.indexing.IndexableDocumentHandler;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import org.apache.commons.lang3.tuple.Pair;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 public interface DinaApiAccess {
 
@@ -25,4 +31,138 @@ public interface DinaApiAccess {
 
   String getFromApiByFilter(ApiResourceDescriptor apiResourceDescriptor,
                     Set<String> includes, Map<String, List<String>> optFields, Pair<String, String> filter) throws SearchApiException;
+
+  /**
+   * Asynchronous version of {@link #getFromApi}.
+   * Default implementation calls {@link #getFromApi} on the calling thread.
+   *
+   * @return future completed with the data retrieved from the API or completed exceptionally
+   *     with a {@link SearchApiException}.
+   */
+  default CompletableFuture<String> getFromApiAsync(ApiResourceDescriptor apiResourceDescriptor,
+                                                    Set<String> includes, Map<String, List<String>> optFields,
+                                                    String objectId) {
+    try {
+      return CompletableFuture.completedFuture(getFromApi(apiResourceDescriptor, includes, optFields, objectId));
+    } catch (SearchApiException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+  }
+
+  /**
+   * Same as {@link #getFromApiAsync(ApiResourceDescriptor, Set, Map, String)} but only the provided fields
+   * are requested for the types in sparseFields (fields[type]).
+   * Default implementation ignores the sparse fieldsets and returns complete documents.
+   *
+   * @param sparseFields optional fields to return by type
+   */
+  default CompletableFuture<String> getFromApiAsync(ApiResourceDescriptor apiResourceDescriptor,
+                                                    Set<String> includes, Map<String, List<String>> optFields,
+                                                    Map<String, List<String>> sparseFields, String objectId) {
+    return getFromApiAsync(apiResourceDescriptor, includes, optFields, objectId);
+  }
+
+  /**
+   * Asynchronous version of {@link #getFromApiByFilter}.
+   * Default implementation calls {@link #getFromApiByFilter} on the calling thread.
+   */
+  default CompletableFuture<String> getFromApiByFilterAsync(ApiResourceDescriptor apiResourceDescriptor,
+                                                            Set<String> includes,
+                                                            Map<String, List<String>> optFields,
+                                                            Pair<String, String> filter) {
+    try {
+      return CompletableFuture.completedFuture(getFromApiByFilter(apiResourceDescriptor, includes, optFields, filter));
+    } catch (SearchApiException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+  }
+
+  /**
+   * Retrieves, in a single call, the resources matching the provided identifiers (filter[id][IN]).
+   * Identifiers not found are simply missing from the returned list.
+   * Default implementation uses {@link #getFromApiByFilterAsync}.
+   *
+   * @param apiResourceDescriptor The descriptor for the resource API
+   * @param includes optional set of relationship to include
+   * @param ids identifiers of the resources
+   * @return future completed with the data retrieved from the API (json:api document with a data array)
+   */
+  default CompletableFuture<String> getFromApiByIdsAsync(ApiResourceDescriptor apiResourceDescriptor,
+                                                         Set<String> includes, Collection<String> ids) {
+    return getFromApiByFilterAsync(apiResourceDescriptor, includes, Map.of(),
+        Pair.of(OpenIDHttpClient.FILTER_ID_IN, String.join(",", ids)));
+  }
+
+  /**
+   * Same as {@link #getFromApiByIdsAsync(ApiResourceDescriptor, Set, Collection)} with sparse fieldsets.
+   * Default implementation ignores the sparse fieldsets and returns complete documents.
+   *
+   * @param sparseFields optional fields to return by type (fields[type])
+   */
+  default CompletableFuture<String> getFromApiByIdsAsync(ApiResourceDescriptor apiResourceDescriptor,
+                                                         Set<String> includes,
+                                                         Map<String, List<String>> sparseFields,
+                                                         Collection<String> ids) {
+    return getFromApiByIdsAsync(apiResourceDescriptor, includes, ids);
+  }
+
+  /**
+   * Same as {@link #getFromApiAsync(ApiResourceDescriptor, Set, Map, Map, String)} but the response is returned
+   * parsed. Implementations calling the API can parse the body as it is received instead of reading it as a String.
+   * Default implementation parses the String response.
+   *
+   * @return future completed with the parsed response or completed exceptionally with a {@link SearchApiException}
+   */
+  default CompletableFuture<JsonNode> getJsonFromApiAsync(ApiResourceDescriptor apiResourceDescriptor,
+                                                          Set<String> includes, Map<String, List<String>> optFields,
+                                                          Map<String, List<String>> sparseFields, String objectId) {
+    return getFromApiAsync(apiResourceDescriptor, includes, optFields, sparseFields, objectId)
+        .thenApply(DinaApiAccess::parse);
+  }
+
+  /**
+   * Same as {@link #getFromApiByIdsAsync(ApiResourceDescriptor, Set, Map, Collection)} but the response is
+   * returned parsed.
+   * Default implementation parses the String response.
+   */
+  default CompletableFuture<JsonNode> getJsonFromApiByIdsAsync(ApiResourceDescriptor apiResourceDescriptor,
+                                                               Set<String> includes,
+                                                               Map<String, List<String>> sparseFields,
+                                                               Collection<String> ids) {
+    return getFromApiByIdsAsync(apiResourceDescriptor, includes, sparseFields, ids)
+        .thenApply(DinaApiAccess::parse);
+  }
+
+  /**
+   * Same as {@link #getFromApiByFilterAsync} but the response is returned parsed.
+   * Default implementation parses the String response.
+   */
+  default CompletableFuture<JsonNode> getJsonFromApiByFilterAsync(ApiResourceDescriptor apiResourceDescriptor,
+                                                                  Set<String> includes,
+                                                                  Map<String, List<String>> optFields,
+                                                                  Pair<String, String> filter) {
+    return getFromApiByFilterAsync(apiResourceDescriptor, includes, optFields, filter)
+        .thenApply(DinaApiAccess::parse);
+  }
+
+  /**
+   * Parse a response, errors are thrown as {@link CompletionException} to be used in a completion stage.
+   */
+  private static JsonNode parse(String response) {
+    try {
+      return IndexableDocumentHandler.OM.readTree(response);
+    } catch (JsonProcessingException e) {
+      throw new CompletionException(new SearchApiException("Invalid json response", e));
+    }
+  }
+
+  /**
+   * Notifies that the document changed and any copy kept by the implementation should be discarded.
+   * Default implementation does nothing.
+   *
+   * @param type the type of document (json:api type)
+   * @param objectId the identifier of the document
+   */
+  default void evict(String type, String objectId) {
+  }
 }
@@ -0,0 +1,70 @@
+package ca.gc.aafc.dina.search.cli.http;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of latencies using fixed buckets (milliseconds). Percentiles are estimated as the upper bound of
+ * the bucket containing them, the maximum is used for the last (unbounded) bucket.
+ *
+ * Recording is lock-free, snapshots taken while values are recorded may be slightly inconsistent.
+ */
+class LatencyHistogram {
+
+  // upper bounds (inclusive) of the buckets
+  private static final long[] BOUNDS_MS = {1, 2, 5, 10, 25, 50, 100, 250, 500, 1_000, 2_500, 5_000, 10_000, 30_000};
+
+  private final AtomicLongArray counts = new AtomicLongArray(BOUNDS_MS.length + 1);
+  private final LongAdder totalMs = new LongAdder();
+  private final LongAccumulator maxMs = new LongAccumulator(Math::max, 0);
+
+  void record(long latencyNanos) {
+    long latencyMs = TimeUnit.NANOSECONDS.toMillis(latencyNanos);
+    int bucket = 0;
+    while (bucket < BOUNDS_MS.length && latencyMs > BOUNDS_MS[bucket]) {
+      bucket++;
+    }
+    counts.incrementAndGet(bucket);
+    totalMs.add(latencyMs);
+    maxMs.accumulate(latencyMs);
+  }
+
+  long count() {
+    long count = 0;
+    for (int i = 0; i < counts.length(); i++) {
+      count += counts.get(i);
+    }
+    return count;
+  }
+
+  long meanMs() {
+    long count = count();
+    return count == 0 ? 0 : totalMs.sum() / count;
+  }
+
+  long maxMs() {
+    return maxMs.get();
+  }
+
+  /**
+   * @param quantile between 0 and 1
+   * @return estimated latency in ms or 0 if nothing was recorded
+   */
+  long percentileMs(double quantile) {
+    long count = count();
+    if (count == 0) {
+      return 0;
+    }
+    long rank = (long) Math.ceil(quantile * count);
+    long seen = 0;
+    for (int i = 0; i < BOUNDS_MS.length; i++) {
+      seen += counts.get(i);
+      if (seen >= rank) {
+        return Math.min(BOUNDS_MS[i], maxMs());
+      }
+    }
+    return maxMs();
+  }
+}
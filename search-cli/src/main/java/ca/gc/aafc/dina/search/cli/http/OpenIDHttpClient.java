@@ -3,14 +3,26 @@ package ca.gc.aafc.dina.search.cli.http;
 import ca.gc.aafc.dina.client.AccessTokenAuthenticator;
 import ca.gc.aafc.dina.client.TokenBasedRequestBuilder;
 import ca.gc.aafc.dina.client.token.AccessTokenManager;
+import ca.gc.aafc.dina.search.cli.config.ApiCacheProperties;
 import ca.gc.aafc.dina.search.cli.config.ApiResourceDescriptor;
 import ca.gc.aafc.dina.search.cli.config.HttpClientConfig;
+import ca.gc.aafc.dina.search.cli.config.RetryProperties;
 import ca.gc.aafc.dina.search.cli.exceptions.SearchApiException;
+import ca.gc.aafc.dina.search.cli.exceptions.SearchApiHttpException;
 import ca.gc.aafc.dina.search.cli.exceptions.SearchApiNotFoundException;
+import ca.gc.aafc.dina.search.cli.indexing.IndexableDocumentHandler;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import lombok.extern.log4j.Log4j2;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
 import okhttp3.HttpUrl;
 import okhttp3.HttpUrl.Builder;
 import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
 import okhttp3.Response;
 import okhttp3.ResponseBody;
 import org.apache.commons.collections4.CollectionUtils;
@@ -19,10 +31,16 @@ import org.apache.commons.lang3.tuple.Pair;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 @Log4j2
 @Service
@@ -30,20 +48,89 @@ public class OpenIDHttpClient {
 
   private static final String ERROR_DURING_RETRIEVAL_FROM = "Error during retrieval from ";
 
+  public static final String FILTER_ID_IN = "filter[id][IN]";
+  public static final String FILTER_ID_GT = "filter[id][GT]";
+
+  private static final BodyReader<String> STRING_READER = ResponseBody::string;
+  // parse the body stream directly, the response is never materialized as a String
+  private static final BodyReader<JsonNode> JSON_READER =
+      body -> IndexableDocumentHandler.OM.readTree(body.byteStream());
+
   private final OkHttpClient httpClient;
+  private final ConnectionPool connectionPool;
+  private final Dispatcher dispatcher;
+  // null if disabled
+  private final ApiConcurrencyLimits concurrencyLimits;
+  // null if revalidation is disabled
+  private final ConditionalRequestInterceptor conditionalRequestInterceptor;
+  // null if compression negotiation is disabled
+  private final ContentEncodingInterceptor contentEncodingInterceptor;
   private final TokenBasedRequestBuilder tokenBasedRequestBuilder;
+  private final RetryPolicy retryPolicy;
+  // responses by id are cached by CacheableApiAccess (api-cache)
+  private final boolean byIdResponsesCached;
 
-  public OpenIDHttpClient(HttpClientConfig openIdConnectConfig) {
+  public OpenIDHttpClient(HttpClientConfig openIdConnectConfig, RetryProperties retryProperties,
+                          ApiMetrics apiMetrics, ApiCacheProperties apiCacheProperties) {
     AccessTokenManager accessTokenManager = new AccessTokenManager(openIdConnectConfig);
+    HttpClientConfig.Connection connectionSettings = openIdConnectConfig.getConnection();
+
+    // a single pool shared by all calls so connections (and TLS sessions) are reused between documents
+    connectionPool = new ConnectionPool(connectionSettings.getMaxIdleConnections(),
+        connectionSettings.getKeepAlive().toMillis(), TimeUnit.MILLISECONDS);
+    dispatcher = new Dispatcher();
+    dispatcher.setMaxRequests(connectionSettings.getMaxRequests());
+    dispatcher.setMaxRequestsPerHost(connectionSettings.getMaxRequestsPerHost());
+
     OkHttpClient.Builder builder = new OkHttpClient.Builder()
+        .connectionPool(connectionPool)
+        .dispatcher(dispatcher)
+        .connectTimeout(connectionSettings.getConnectTimeout())
+        .readTimeout(connectionSettings.getReadTimeout())
+        .protocols(connectionSettings.isHttp2() ? List.of(Protocol.HTTP_2, Protocol.HTTP_1_1) :
+            List.of(Protocol.HTTP_1_1))
         .authenticator(new AccessTokenAuthenticator(accessTokenManager));
 
-    if (log.isInfoEnabled()) {
-      builder.addInterceptor(new ApiLoggingInterceptor());
+    HttpClientConfig.Metrics metricsSettings = openIdConnectConfig.getMetrics();
+    ApiLoggingInterceptor loggingInterceptor = new ApiLoggingInterceptor(metricsSettings.getLogSampleRate());
+    if (loggingInterceptor.isLogging()) {
+      builder.addInterceptor(loggingInterceptor);
+    }
+
+    // network interceptor: latency and bytes of the requests actually sent
+    if (metricsSettings.isEnabled()) {
+      builder.addNetworkInterceptor(new ApiMetricsInterceptor(apiMetrics));
+    }
+
+    if (openIdConnectConfig.getLimiter().isEnabled()) {
+      concurrencyLimits = new ApiConcurrencyLimits(openIdConnectConfig.getLimiter(),
+          connectionSettings.getMaxRequestsPerHost());
+    } else {
+      concurrencyLimits = null;
+    }
+
+    HttpClientConfig.Revalidation revalidationSettings = openIdConnectConfig.getRevalidation();
+    if (revalidationSettings.isEnabled()) {
+      conditionalRequestInterceptor = new ConditionalRequestInterceptor(revalidationSettings.getMaximumBytes(),
+          revalidationSettings.getExpireAfterAccess(), revalidationSettings.getMaxEntryBytes());
+      builder.addInterceptor(conditionalRequestInterceptor);
+    } else {
+      conditionalRequestInterceptor = null;
+    }
+
+    // must be the last interceptor so the others see decoded bodies
+    if (openIdConnectConfig.getCompression().isEnabled()) {
+      contentEncodingInterceptor = new ContentEncodingInterceptor();
+      builder.addInterceptor(contentEncodingInterceptor);
+    } else {
+      contentEncodingInterceptor = null;
     }
 
     tokenBasedRequestBuilder = new TokenBasedRequestBuilder(accessTokenManager);
     httpClient = builder.build();
+    retryPolicy = new RetryPolicy("api", retryProperties.getApi(), OpenIDHttpClient::isTransientError,
+        OpenIDHttpClient::getRetryAfter);
+    byIdResponsesCached = apiCacheProperties.isEnabled();
   }
 
   public String getDataFromUrl(ApiResourceDescriptor apiResourceDescriptor, Set<String> includes, Map<String, List<String>> optFields) throws SearchApiException {
@@ -64,32 +151,418 @@ public class OpenIDHttpClient {
   public String getDataById(ApiResourceDescriptor apiResourceDescriptor,
                                Set<String> includes, Map<String, List<String>> optFields, String objectId)
       throws SearchApiException {
-    return handleCall(validateArgumentAndCreateRoute(apiResourceDescriptor, includes, optFields, objectId, null));
+    return handleCall(apiResourceDescriptor,
+        validateArgumentAndCreateRoute(apiResourceDescriptor, includes, optFields, null, objectId, null),
+        STRING_READER, byIdResponsesCached && objectId != null);
+  }
+
+  /**
+   * Same as {@link #getDataById} but the response body is parsed as it is received.
+   *
+   * @return the parsed body
+   * @throws SearchApiException in case of communication errors or if the body is not valid json.
+   */
+  public JsonNode getJsonById(ApiResourceDescriptor apiResourceDescriptor,
+                              Set<String> includes, Map<String, List<String>> optFields, String objectId)
+      throws SearchApiException {
+    return getJsonById(apiResourceDescriptor, includes, optFields, null, objectId);
+  }
+
+  /**
+   * Same as {@link #getJsonById(ApiResourceDescriptor, Set, Map, String)} with sparse fieldsets.
+   *
+   * @param sparseFields optional fields to return by type (fields[type]), types not in the map are complete
+   */
+  public JsonNode getJsonById(ApiResourceDescriptor apiResourceDescriptor,
+                              Set<String> includes, Map<String, List<String>> optFields,
+                              Map<String, List<String>> sparseFields, String objectId)
+      throws SearchApiException {
+    return handleCall(apiResourceDescriptor,
+        validateArgumentAndCreateRoute(apiResourceDescriptor, includes, optFields, sparseFields, objectId, null),
+        JSON_READER, false);
   }
 
   public String getDataByFilter(ApiResourceDescriptor apiResourceDescriptor,
                                 Set<String> includes, Map<String, List<String>> optFields, Pair<String, String> filter)
       throws SearchApiException {
-    return handleCall(validateArgumentAndCreateRoute(apiResourceDescriptor, includes, optFields, null, filter));
+    return handleCall(apiResourceDescriptor,
+        validateArgumentAndCreateRoute(apiResourceDescriptor, includes, optFields, null, null, filter),
+        STRING_READER, false);
   }
 
-  private String handleCall(HttpUrl route) throws SearchApiException {
-    try (Response response = executeGetRequest(route)) {
-      if (response.isSuccessful()) {
-        ResponseBody bodyContent = response.body();
-        if (bodyContent != null) {
-          return bodyContent.string();
-        } else {
-          throw new SearchApiException(ERROR_DURING_RETRIEVAL_FROM + route.uri());
-        }
-      } else if (response.code() == 404) {
-        throw new SearchApiNotFoundException(ERROR_DURING_RETRIEVAL_FROM + route.uri() + " status code:" + response.code());
-      } else {
-        log.warn("Status code:" + response.code() + ", Body: " + response.body());
-        throw new SearchApiException(ERROR_DURING_RETRIEVAL_FROM + route.uri() + " Status code:" + response.code());
+  /**
+   * Asynchronous version of {@link #getDataById}. The request is sent by the OkHttp dispatcher
+   * (limited by http-client.connection settings) so no thread is waiting for the response.
+   *
+   * @return future completed with the content of the returned body or completed exceptionally with
+   *     a {@link SearchApiException} (or {@link SearchApiNotFoundException}).
+   */
+  public CompletableFuture<String> getDataByIdAsync(ApiResourceDescriptor apiResourceDescriptor,
+                                                    Set<String> includes, Map<String, List<String>> optFields,
+                                                    String objectId) {
+    return getDataByIdAsync(apiResourceDescriptor, includes, optFields, null, objectId);
+  }
+
+  /**
+   * Same as {@link #getDataByIdAsync(ApiResourceDescriptor, Set, Map, String)} with sparse fieldsets.
+   *
+   * @param sparseFields optional fields to return by type (fields[type]), types not in the map are complete
+   */
+  public CompletableFuture<String> getDataByIdAsync(ApiResourceDescriptor apiResourceDescriptor,
+                                                    Set<String> includes, Map<String, List<String>> optFields,
+                                                    Map<String, List<String>> sparseFields, String objectId) {
+    try {
+      return enqueueCall(apiResourceDescriptor,
+          validateArgumentAndCreateRoute(apiResourceDescriptor, includes, optFields, sparseFields, objectId, null),
+          STRING_READER, byIdResponsesCached && objectId != null);
+    } catch (SearchApiException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+  }
+
+  /**
+   * Same as {@link #getDataByIdAsync(ApiResourceDescriptor, Set, Map, Map, String)} but the response body is
+   * parsed as it is received.
+   */
+  public CompletableFuture<JsonNode> getJsonByIdAsync(ApiResourceDescriptor apiResourceDescriptor,
+                                                      Set<String> includes, Map<String, List<String>> optFields,
+                                                      Map<String, List<String>> sparseFields, String objectId) {
+    try {
+      return enqueueCall(apiResourceDescriptor,
+          validateArgumentAndCreateRoute(apiResourceDescriptor, includes, optFields, sparseFields, objectId, null),
+          JSON_READER, false);
+    } catch (SearchApiException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+  }
+
+  /**
+   * Asynchronous version of {@link #getDataByFilter}.
+   * @see #getDataByIdAsync
+   */
+  public CompletableFuture<String> getDataByFilterAsync(ApiResourceDescriptor apiResourceDescriptor,
+                                                        Set<String> includes, Map<String, List<String>> optFields,
+                                                        Pair<String, String> filter) {
+    try {
+      return enqueueCall(apiResourceDescriptor,
+          validateArgumentAndCreateRoute(apiResourceDescriptor, includes, optFields, null, null, filter),
+          STRING_READER, false);
+    } catch (SearchApiException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+  }
+
+  /**
+   * Same as {@link #getDataByFilterAsync} but the response body is parsed as it is received.
+   */
+  public CompletableFuture<JsonNode> getJsonByFilterAsync(ApiResourceDescriptor apiResourceDescriptor,
+                                                          Set<String> includes, Map<String, List<String>> optFields,
+                                                          Pair<String, String> filter) {
+    try {
+      return enqueueCall(apiResourceDescriptor,
+          validateArgumentAndCreateRoute(apiResourceDescriptor, includes, optFields, null, null, filter),
+          JSON_READER, false);
+    } catch (SearchApiException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+  }
+
+  /**
+   * Retrieve the resources matching the provided identifiers in a single request using the
+   * filter[id][IN] filter. The page size is set to the number of identifiers.
+   *
+   * @param apiResourceDescriptor the target url endpoint
+   * @param includes optional set of relationship to include
+   * @param ids identifiers of the resources
+   * @return future completed with the content of the returned body (list of resources)
+   */
+  public CompletableFuture<String> getDataByIdsAsync(ApiResourceDescriptor apiResourceDescriptor,
+                                                     Set<String> includes, Collection<String> ids) {
+    return getDataByIdsAsync(apiResourceDescriptor, includes, null, ids);
+  }
+
+  /**
+   * Same as {@link #getDataByIdsAsync(ApiResourceDescriptor, Set, Collection)} with sparse fieldsets.
+   *
+   * @param sparseFields optional fields to return by type (fields[type]), types not in the map are complete
+   */
+  public CompletableFuture<String> getDataByIdsAsync(ApiResourceDescriptor apiResourceDescriptor,
+                                                     Set<String> includes, Map<String, List<String>> sparseFields,
+                                                     Collection<String> ids) {
+    return getByIdsAsync(apiResourceDescriptor, includes, sparseFields, ids, STRING_READER);
+  }
+
+  /**
+   * Same as {@link #getDataByIdsAsync(ApiResourceDescriptor, Set, Map, Collection)} but the response body is
+   * parsed as it is received.
+   */
+  public CompletableFuture<JsonNode> getJsonByIdsAsync(ApiResourceDescriptor apiResourceDescriptor,
+                                                       Set<String> includes, Map<String, List<String>> sparseFields,
+                                                       Collection<String> ids) {
+    return getByIdsAsync(apiResourceDescriptor, includes, sparseFields, ids, JSON_READER);
+  }
+
+  private <T> CompletableFuture<T> getByIdsAsync(ApiResourceDescriptor apiResourceDescriptor, Set<String> includes,
+                                                 Map<String, List<String>> sparseFields, Collection<String> ids,
+                                                 BodyReader<T> bodyReader) {
+    try {
+      HttpUrl route = validateArgumentAndCreateRoute(apiResourceDescriptor, includes, null, sparseFields, null,
+          Pair.of(FILTER_ID_IN, String.join(",", ids)))
+          .newBuilder()
+          .addQueryParameter("page[limit]", Integer.toString(ids.size()))
+          .build();
+      return enqueueCall(apiResourceDescriptor, route, bodyReader, false);
+    } catch (SearchApiException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+  }
+
+  /**
+   * Retrieve a page of the resources sorted by id, starting after the provided id (keyset paging).
+   * Unlike page[offset], resources deleted while walking the pages don't shift the following pages.
+   *
+   * @param apiResourceDescriptor the target url endpoint
+   * @param afterId id of the last resource of the previous page, null for the first page
+   * @param limit page[limit]
+   * @return The content of the returned body.
+   * @throws SearchApiException in case of communication errors.
+   */
+  public String getDataPage(ApiResourceDescriptor apiResourceDescriptor, String afterId, int limit)
+      throws SearchApiException {
+    HttpUrl url = validateArgumentAndCreateRoute(apiResourceDescriptor, null, null, null, null,
+        afterId == null ? null : Pair.of(FILTER_ID_GT, afterId))
+        .newBuilder()
+        .addQueryParameter("page[limit]", Integer.toString(limit))
+        .addQueryParameter("sort", "id")
+        .build();
+    return handleCall(apiResourceDescriptor, url, STRING_READER, false);
+  }
+
+  /**
+   * @return the client configured from the http-client.connection settings
+   */
+  OkHttpClient getHttpClient() {
+    return httpClient;
+  }
+
+  /**
+   * Current state of the connection pool and the dispatcher.
+   * @return
+   */
+  public ConnectionStats getConnectionStats() {
+    int total = connectionPool.connectionCount();
+    int idle = connectionPool.idleConnectionCount();
+    return new ConnectionStats(idle, total - idle, dispatcher.runningCallsCount(), dispatcher.queuedCallsCount());
+  }
+
+  /**
+   * Statistics of the conditional requests.
+   * @return the stats or null if revalidation is disabled
+   */
+  public ConditionalRequestInterceptor.RevalidationStats getRevalidationStats() {
+    return conditionalRequestInterceptor == null ? null : conditionalRequestInterceptor.getStats();
+  }
+
+  /**
+   * Statistics of the compressed responses.
+   * @return the stats or null if compression negotiation is disabled
+   */
+  public ContentEncodingInterceptor.CompressionStats getCompressionStats() {
+    return contentEncodingInterceptor == null ? null : contentEncodingInterceptor.getStats();
+  }
+
+  /**
+   * Statistics of the concurrency limiter of each API.
+   * @return the stats or an empty list if the limiter is disabled
+   */
+  public List<AdaptiveConcurrencyLimiter.LimiterStats> getLimiterStats() {
+    return concurrencyLimits == null ? List.of() : concurrencyLimits.getStats();
+  }
+
+  /**
+   * Statistics of the retries of the API calls.
+   * @return
+   */
+  public RetryPolicy.RetryStats getRetryStats() {
+    return retryPolicy.getStats();
+  }
+
+  /**
+   * Tells if the failure of an API call is transient: connectivity issue or a status code indicating the API
+   * is overloaded or temporarily unavailable. Missing documents and invalid responses are not transient.
+   * @param failure
+   * @return
+   */
+  public static boolean isTransientError(Throwable failure) {
+    for (Throwable t = failure; t != null; t = t.getCause()) {
+      if (t instanceof SearchApiHttpException httpEx) {
+        int status = httpEx.getStatusCode();
+        return status == 408 || status == 429 || status == 502 || status == 503 || status == 504;
+      }
+      if (t instanceof SearchApiNotFoundException || t instanceof JsonProcessingException) {
+        return false;
+      }
+      if (t instanceof IOException) {
+        return true;
       }
+    }
+    return false;
+  }
+
+  /**
+   * When the API asked to retry a failed call (Retry-After header).
+   * @param failure
+   * @return the delay or null if the API didn't ask for one
+   */
+  public static Duration getRetryAfter(Throwable failure) {
+    for (Throwable t = failure; t != null; t = t.getCause()) {
+      if (t instanceof SearchApiHttpException httpEx) {
+        return httpEx.getRetryAfter();
+      }
+    }
+    return null;
+  }
+
+  // GET requests are idempotent, they are always retried on transient errors
+  // cachedByCaller: the response is kept by CacheableApiAccess, the conditional request interceptor skips it
+  private <T> T handleCall(ApiResourceDescriptor apiResourceDescriptor, HttpUrl route, BodyReader<T> bodyReader,
+                           boolean cachedByCaller) throws SearchApiException {
+    return retryPolicy.execute(true, () -> executeCall(apiResourceDescriptor, route, bodyReader, cachedByCaller));
+  }
+
+  private <T> CompletableFuture<T> enqueueCall(ApiResourceDescriptor apiResourceDescriptor, HttpUrl route,
+                                               BodyReader<T> bodyReader, boolean cachedByCaller) {
+    return retryPolicy.executeAsync(true,
+        () -> enqueueSingleCall(apiResourceDescriptor, route, bodyReader, cachedByCaller));
+  }
+
+  private <T> T executeCall(ApiResourceDescriptor apiResourceDescriptor, HttpUrl route, BodyReader<T> bodyReader,
+                            boolean cachedByCaller) throws SearchApiException {
+    // synchronous calls wait for the limiter on the calling thread
+    AdaptiveConcurrencyLimiter.Permit permit = acquirePermit(apiResourceDescriptor);
+    Response response = null;
+    try {
+      response = httpClient.newCall(newRequest(apiResourceDescriptor, route, cachedByCaller)).execute();
+      return readResponse(route, response, bodyReader);
     } catch (IOException ioEx) {
       throw new SearchApiException("Exception during retrieval from " + route.uri(), ioEx);
+    } finally {
+      if (response != null) {
+        response.close();
+      }
+      releasePermit(apiResourceDescriptor, permit, response);
+    }
+  }
+
+  /**
+   * Send the call once the concurrency limiter of the API gives a permit. The call is only given to the okhttp
+   * dispatcher with a permit so no dispatcher thread waits for the limiter.
+   */
+  private <T> CompletableFuture<T> enqueueSingleCall(ApiResourceDescriptor apiResourceDescriptor, HttpUrl route,
+                                                     BodyReader<T> bodyReader, boolean cachedByCaller) {
+    CompletableFuture<T> future = new CompletableFuture<>();
+    if (concurrencyLimits == null) {
+      sendCall(apiResourceDescriptor, route, bodyReader, cachedByCaller, null, future);
+      return future;
+    }
+
+    String type = apiResourceDescriptor.type();
+    CompletableFuture<AdaptiveConcurrencyLimiter.Permit> permitFuture = concurrencyLimits.acquire(type);
+    permitFuture.whenComplete((permit, ex) -> {
+      if (ex != null) {
+        future.completeExceptionally(new SearchApiException("Exception during retrieval from " + route.uri(),
+            new InterruptedIOException("Timeout waiting for the concurrency limiter of " + type)));
+      } else if (future.isDone()) {
+        // cancelled while waiting for the permit
+        concurrencyLimits.cancel(type, permit);
+      } else {
+        sendCall(apiResourceDescriptor, route, bodyReader, cachedByCaller, permit, future);
+      }
+    });
+    // cancelling the future removes the call from the limiter queue
+    future.whenComplete((body, ex) -> {
+      if (future.isCancelled()) {
+        permitFuture.cancel(false);
+      }
+    });
+    return future;
+  }
+
+  private <T> void sendCall(ApiResourceDescriptor apiResourceDescriptor, HttpUrl route, BodyReader<T> bodyReader,
+                            boolean cachedByCaller, AdaptiveConcurrencyLimiter.Permit permit,
+                            CompletableFuture<T> future) {
+    Call call = httpClient.newCall(newRequest(apiResourceDescriptor, route, cachedByCaller));
+    call.enqueue(new Callback() {
+      @Override
+      public void onFailure(Call failedCall, IOException ioEx) {
+        releasePermit(apiResourceDescriptor, permit, null);
+        future.completeExceptionally(new SearchApiException("Exception during retrieval from " + route.uri(), ioEx));
+      }
+
+      @Override
+      public void onResponse(Call completedCall, Response response) {
+        try (response) {
+          future.complete(readResponse(route, response, bodyReader));
+        } catch (SearchApiException | IOException ex) {
+          future.completeExceptionally(ex instanceof SearchApiException ? ex :
+              new SearchApiException("Exception during retrieval from " + route.uri(), ex));
+        } finally {
+          releasePermit(apiResourceDescriptor, permit, response);
+        }
+      }
+    });
+    // cancelling the future cancels the call
+    future.whenComplete((body, ex) -> {
+      if (future.isCancelled()) {
+        call.cancel();
+      }
+    });
+  }
+
+  /**
+   * Wait for a permit of the concurrency limiter of the API.
+   * @return the permit or null if the limiter is disabled
+   */
+  private AdaptiveConcurrencyLimiter.Permit acquirePermit(ApiResourceDescriptor apiResourceDescriptor)
+      throws SearchApiException {
+    if (concurrencyLimits == null) {
+      return null;
+    }
+    String type = apiResourceDescriptor.type();
+    try {
+      return concurrencyLimits.acquire(type).get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SearchApiException("Interrupted while waiting for the concurrency limiter of " + type, e);
+    } catch (ExecutionException e) {
+      throw new SearchApiException("Can't call the API of " + type,
+          new InterruptedIOException("Timeout waiting for the concurrency limiter of " + type));
+    }
+  }
+
+  private void releasePermit(ApiResourceDescriptor apiResourceDescriptor, AdaptiveConcurrencyLimiter.Permit permit,
+                             Response response) {
+    if (permit != null) {
+      concurrencyLimits.release(apiResourceDescriptor.type(), permit, response);
+    }
+  }
+
+  private static <T> T readResponse(HttpUrl route, Response response, BodyReader<T> bodyReader)
+      throws SearchApiException, IOException {
+    if (response.isSuccessful()) {
+      ResponseBody bodyContent = response.body();
+      T content = bodyContent != null ? bodyReader.read(bodyContent) : null;
+      if (content != null && !(content instanceof JsonNode node && node.isMissingNode())) {
+        return content;
+      } else {
+        throw new SearchApiException(ERROR_DURING_RETRIEVAL_FROM + route.uri());
+      }
+    } else if (response.code() == 404) {
+      throw new SearchApiNotFoundException(ERROR_DURING_RETRIEVAL_FROM + route.uri() + " status code:" + response.code());
+    } else {
+      log.warn("Status code:" + response.code() + ", Body: " + response.body());
+      throw new SearchApiHttpException(ERROR_DURING_RETRIEVAL_FROM + route.uri() + " Status code:" + response.code(),
+          response.code(), ApiConcurrencyLimits.parseRetryAfter(response.header("Retry-After")));
     }
   }
 
@@ -103,7 +576,9 @@ public class OpenIDHttpClient {
    * @throws SearchApiException in case of a validation error.
    */
   private HttpUrl validateArgumentAndCreateRoute(ApiResourceDescriptor apiResourceDescriptor,
-                                                 Set<String> includes, Map<String, List<String>> optFields, String objectId, Pair<String, String> filter) throws SearchApiException {
+                                                 Set<String> includes, Map<String, List<String>> optFields,
+                                                 Map<String, List<String>> sparseFields, String objectId,
+                                                 Pair<String, String> filter) throws SearchApiException {
 
     String pathParam = Objects.toString(objectId, "");
     Builder urlBuilder;
@@ -129,6 +604,13 @@ public class OpenIDHttpClient {
       }
     }
 
+    // Add sparse fieldsets
+    if (MapUtils.isNotEmpty(sparseFields)) {
+      for (var entry : sparseFields.entrySet()) {
+        urlBuilder.addQueryParameter("fields[" + entry.getKey() + "]", String.join(",", entry.getValue()));
+      }
+    }
+
     if (filter != null) {
       urlBuilder.addQueryParameter(filter.getKey(), filter.getValue());
     }
@@ -140,8 +622,38 @@ public class OpenIDHttpClient {
     return urlBuilder.build();
   }
 
-  private Response executeGetRequest(HttpUrl route) throws IOException {
-    return httpClient.newCall(tokenBasedRequestBuilder.newBuilder().url(route).build()).execute();
+  /**
+   * Build the GET request with the access token. The request is tagged with the type of the API and, if its
+   * response is cached by the caller, with {@link ConditionalRequestInterceptor.SkipRevalidation} so the body
+   * is not kept twice.
+   */
+  private Request newRequest(ApiResourceDescriptor apiResourceDescriptor, HttpUrl route, boolean cachedByCaller) {
+    Request.Builder builder = tokenBasedRequestBuilder.newBuilder()
+        .url(route)
+        .tag(ApiConcurrencyLimits.ApiType.class,
+            new ApiConcurrencyLimits.ApiType(apiResourceDescriptor.type()));
+    if (cachedByCaller) {
+      builder.tag(ConditionalRequestInterceptor.SkipRevalidation.class,
+          ConditionalRequestInterceptor.SkipRevalidation.INSTANCE);
+    }
+    return builder.build();
+  }
+
+  /**
+   * Reads the body of a successful response.
+   */
+  @FunctionalInterface
+  private interface BodyReader<T> {
+    T read(ResponseBody body) throws IOException;
+  }
+
+  /**
+   * @param idleConnections connections in the pool not currently used
+   * @param activeConnections connections in the pool currently carrying a request
+   * @param runningCalls asynchronous calls currently running
+   * @param queuedCalls asynchronous calls waiting for the dispatcher limits
+   */
+  public record ConnectionStats(int idleConnections, int activeConnections, int runningCalls, int queuedCalls) {
   }
 
 }
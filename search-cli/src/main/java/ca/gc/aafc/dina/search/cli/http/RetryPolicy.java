@@ -0,0 +1,262 @@
+package ca.gc.aafc.dina.search.cli.http;
+
+import ca.gc.aafc.dina.search.cli.config.RetryProperties;
+import ca.gc.aafc.dina.search.cli.exceptions.SearchApiException;
+import lombok.extern.log4j.Log4j2;
+
+import java.net.ConnectException;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Retries calls failing with a transient error using an exponential back-off with full jitter.
+ *
+ * Retries are limited by a budget: each call adds a fraction of a retry to the budget and each retry takes
+ * a full one. When the budget is empty, failures are returned without retrying so a failing server doesn't
+ * receive more calls than usual.
+ * Calls that are not idempotent are only retried if the request was not sent (connection refused, unknown host).
+ * When the server tells when to retry (Retry-After), the retry waits at least that long, up to maxRetryAfter.
+ *
+ * This class is thread-safe.
+ */
+@Log4j2
+public class RetryPolicy {
+
+  /**
+   * Call that can be retried.
+   */
+  @FunctionalInterface
+  public interface RetryableCall<T> {
+    T call() throws SearchApiException;
+  }
+
+  private final String name;
+  private final RetryProperties.Policy settings;
+  private final Predicate<Throwable> transientError;
+  private final Function<Throwable, Duration> retryAfter;
+
+  private double budget;
+
+  private final LongAdder calls = new LongAdder();
+  private final LongAdder retries = new LongAdder();
+  private final LongAdder recovered = new LongAdder();
+  private final LongAdder exhausted = new LongAdder();
+  private final LongAdder budgetRejected = new LongAdder();
+  private final LongAdder wastedNanos = new LongAdder();
+
+  /**
+   * @param name name used in logs and stats
+   * @param settings
+   * @param transientError tells if a failure is transient and the call can be retried
+   */
+  public RetryPolicy(String name, RetryProperties.Policy settings, Predicate<Throwable> transientError) {
+    this(name, settings, transientError, failure -> null);
+  }
+
+  /**
+   * @param name name used in logs and stats
+   * @param settings
+   * @param transientError tells if a failure is transient and the call can be retried
+   * @param retryAfter returns the delay requested by the server (Retry-After) for a failure, or null
+   */
+  public RetryPolicy(String name, RetryProperties.Policy settings, Predicate<Throwable> transientError,
+                     Function<Throwable, Duration> retryAfter) {
+    this.name = name;
+    this.settings = settings;
+    this.transientError = transientError;
+    this.retryAfter = retryAfter;
+    this.budget = settings.getBudgetReserve();
+  }
+
+  public boolean isEnabled() {
+    return settings.isEnabled();
+  }
+
+  /**
+   * Make the call, retrying it on transient errors. The calling thread waits between attempts.
+   * @param idempotent can the call be made again if the request was sent
+   * @param call
+   * @return the result of the first successful attempt
+   * @throws SearchApiException the exception of the last attempt
+   */
+  public <T> T execute(boolean idempotent, RetryableCall<T> call) throws SearchApiException {
+    if (!settings.isEnabled()) {
+      return call.call();
+    }
+
+    calls.increment();
+    depositBudget();
+    long wasted = 0;
+    int attempt = 1;
+    while (true) {
+      long start = System.nanoTime();
+      try {
+        T result = call.call();
+        if (attempt > 1) {
+          recovered.increment();
+        }
+        wastedNanos.add(wasted);
+        return result;
+      } catch (SearchApiException e) {
+        wasted += System.nanoTime() - start;
+        Duration delay = nextDelay(e, idempotent, attempt);
+        if (delay == null) {
+          wastedNanos.add(wasted);
+          throw e;
+        }
+        try {
+          Thread.sleep(delay.toMillis());
+        } catch (InterruptedException iEx) {
+          Thread.currentThread().interrupt();
+          wastedNanos.add(wasted);
+          throw e;
+        }
+        wasted += delay.toNanos();
+        attempt++;
+      }
+    }
+  }
+
+  /**
+   * Asynchronous version of {@link #execute}. Retries are scheduled, no thread is waiting between attempts.
+   * Cancelling the returned future cancels the current attempt and stops the retries.
+   * @param idempotent can the call be made again if the request was sent
+   * @param call starts an attempt
+   * @return future completed with the result of the first successful attempt or the exception of the last one
+   */
+  public <T> CompletableFuture<T> executeAsync(boolean idempotent, Supplier<CompletableFuture<T>> call) {
+    if (!settings.isEnabled()) {
+      return call.get();
+    }
+
+    calls.increment();
+    depositBudget();
+    CompletableFuture<T> result = new CompletableFuture<>();
+    attemptAsync(idempotent, call, 1, 0, result);
+    return result;
+  }
+
+  private <T> void attemptAsync(boolean idempotent, Supplier<CompletableFuture<T>> call, int attempt,
+                                long previouslyWasted, CompletableFuture<T> result) {
+    long start = System.nanoTime();
+    CompletableFuture<T> attemptFuture = call.get();
+    result.whenComplete((value, ex) -> {
+      if (result.isCancelled()) {
+        attemptFuture.cancel(true);
+      }
+    });
+
+    attemptFuture.whenComplete((value, ex) -> {
+      if (ex == null) {
+        if (attempt > 1) {
+          recovered.increment();
+        }
+        wastedNanos.add(previouslyWasted);
+        result.complete(value);
+        return;
+      }
+
+      Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+      long wasted = previouslyWasted + System.nanoTime() - start;
+      Duration delay = result.isDone() ? null : nextDelay(cause, idempotent, attempt);
+      if (delay == null) {
+        wastedNanos.add(wasted);
+        result.completeExceptionally(cause);
+        return;
+      }
+      CompletableFuture.delayedExecutor(delay.toNanos(), TimeUnit.NANOSECONDS)
+          .execute(() -> attemptAsync(idempotent, call, attempt + 1, wasted + delay.toNanos(), result));
+    });
+  }
+
+  /**
+   * Decide if the failed attempt should be retried.
+   * @return the wait before the next attempt or null if the failure should be returned
+   */
+  private Duration nextDelay(Throwable failure, boolean idempotent, int attempt) {
+    if (!transientError.test(failure) || !idempotent && !isRequestNotSent(failure)) {
+      return null;
+    }
+    if (attempt >= settings.getMaxAttempts()) {
+      exhausted.increment();
+      log.warn("{}: giving up after {} attempt(s): {}", name, attempt, failure.getMessage());
+      return null;
+    }
+    if (!withdrawBudget()) {
+      budgetRejected.increment();
+      log.debug("{}: retry budget exhausted, not retrying: {}", name, failure.getMessage());
+      return null;
+    }
+    retries.increment();
+
+    long maxBackoff = settings.getMaxBackoff().toNanos();
+    long bound = Math.min(maxBackoff, settings.getInitialBackoff().toNanos() << Math.min(attempt - 1, 30));
+    // overflow of the shift
+    if (bound < 0) {
+      bound = maxBackoff;
+    }
+    Duration delay = Duration.ofNanos(ThreadLocalRandom.current().nextLong(bound + 1));
+
+    Duration requested = retryAfter.apply(failure);
+    if (requested != null) {
+      Duration honoured = requested.compareTo(settings.getMaxRetryAfter()) <= 0 ?
+          requested : settings.getMaxRetryAfter();
+      if (honoured.compareTo(delay) > 0) {
+        delay = honoured;
+      }
+    }
+    log.debug("{}: attempt {} failed, retrying in {} ms: {}", name, attempt, delay.toMillis(),
+        failure.getMessage());
+    return delay;
+  }
+
+  private synchronized void depositBudget() {
+    budget = Math.min(settings.getBudgetReserve(), budget + settings.getBudgetRatio());
+  }
+
+  private synchronized boolean withdrawBudget() {
+    if (budget < 1) {
+      return false;
+    }
+    budget--;
+    return true;
+  }
+
+  /**
+   * The request was not sent so it can be retried even if it is not idempotent.
+   */
+  private static boolean isRequestNotSent(Throwable failure) {
+    for (Throwable t = failure; t != null; t = t.getCause()) {
+      if (t instanceof ConnectException || t instanceof UnknownHostException) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  public RetryStats getStats() {
+    return new RetryStats(name, calls.sum(), retries.sum(), recovered.sum(), exhausted.sum(),
+        budgetRejected.sum(), TimeUnit.NANOSECONDS.toMillis(wastedNanos.sum()));
+  }
+
+  /**
+   * @param name name of the policy
+   * @param calls calls made through the policy
+   * @param retries attempts made after a failure
+   * @param recovered calls that succeeded after at least one retry
+   * @param exhausted calls that failed with a transient error after the maximum number of attempts
+   * @param budgetRejected retries not made because the budget was empty
+   * @param wastedMs time spent in failed attempts and waiting between attempts
+   */
+  public record RetryStats(String name, long calls, long retries, long recovered, long exhausted,
+                           long budgetRejected, long wastedMs) {
+  }
+}
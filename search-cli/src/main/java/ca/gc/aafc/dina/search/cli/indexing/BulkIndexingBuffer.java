@@ -0,0 +1,209 @@
+package ca.gc.aafc.dina.search.cli.indexing;
+
+import ca.gc.aafc.dina.search.cli.config.IndexingProperties;
+import ca.gc.aafc.dina.search.cli.exceptions.SearchApiException;
+import co.elastic.clients.util.BinaryData;
+import co.elastic.clients.util.ContentType;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import lombok.extern.log4j.Log4j2;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Accumulates {@link IndexingOperation} and sends them to the {@link DocumentIndexer} as bulk requests.
+ *
+ * The buffer is flushed when the number of operations or the size of their serialized payload reaches the configured
+ * limit or when the oldest operation has been waiting for the configured flush interval.
+ * Remaining operations are flushed on {@link #close()}.
+ * When a bulk request fails as a whole, its operations are given to the optional request failure listener.
+ * Each operation that could not be sent or indexed is given to the optional operation failure listener.
+ *
+ * This class is thread-safe.
+ */
+@Log4j2
+public class BulkIndexingBuffer implements AutoCloseable {
+
+  private final DocumentIndexer indexer;
+  private final IndexingProperties.Bulk settings;
+  private final ScheduledExecutorService scheduler;
+  private final Consumer<List<IndexingOperation>> requestFailureListener;
+  private final Consumer<IndexingOperation> operationFailureListener;
+
+  private final Object sendLock = new Object();
+
+  // guarded by this
+  private final List<BufferedOperation> operations = new ArrayList<>();
+  private long bufferedBytes = 0;
+  private ScheduledFuture<?> scheduledFlush;
+
+  private final AtomicInteger succeeded = new AtomicInteger();
+  private final AtomicInteger failed = new AtomicInteger();
+
+  public BulkIndexingBuffer(DocumentIndexer indexer, IndexingProperties.Bulk settings,
+                            ScheduledExecutorService scheduler) {
+    this(indexer, settings, scheduler, null);
+  }
+
+  /**
+   * @param requestFailureListener receives the operations of a bulk request that failed as a whole, can be null
+   */
+  public BulkIndexingBuffer(DocumentIndexer indexer, IndexingProperties.Bulk settings,
+                            ScheduledExecutorService scheduler,
+                            Consumer<List<IndexingOperation>> requestFailureListener) {
+    this(indexer, settings, scheduler, requestFailureListener, null);
+  }
+
+  /**
+   * @param requestFailureListener receives the operations of a bulk request that failed as a whole, can be null
+   * @param operationFailureListener receives each operation that was not indexed (failed item or failed request),
+   *                                 can be null
+   */
+  public BulkIndexingBuffer(DocumentIndexer indexer, IndexingProperties.Bulk settings,
+                            ScheduledExecutorService scheduler,
+                            Consumer<List<IndexingOperation>> requestFailureListener,
+                            Consumer<IndexingOperation> operationFailureListener) {
+    this.indexer = indexer;
+    this.settings = settings;
+    this.scheduler = scheduler;
+    this.requestFailureListener = requestFailureListener;
+    this.operationFailureListener = operationFailureListener;
+  }
+
+  /**
+   * Add an operation to the buffer. If a limit is reached the buffer is flushed by the calling thread.
+   * The payload is serialized once, here, and the bytes are sent as-is in the bulk request.
+   * @param operation
+   */
+  public void add(IndexingOperation operation) {
+    BufferedOperation buffered = BufferedOperation.of(operation);
+
+    boolean limitReached;
+    synchronized (this) {
+      operations.add(buffered);
+      bufferedBytes += buffered.size();
+
+      limitReached = operations.size() >= settings.getMaxActions() || bufferedBytes >= settings.getMaxBytes();
+      if (!limitReached && scheduledFlush == null) {
+        scheduledFlush = scheduler.schedule(this::flush, settings.getFlushInterval().toMillis(),
+            TimeUnit.MILLISECONDS);
+      }
+    }
+
+    if (limitReached) {
+      flush();
+    }
+  }
+
+  /**
+   * Send all buffered operations.
+   * The bulk request is sent without holding the buffer lock so other threads can keep adding operations.
+   * Bulk requests are sent one at a time, in the order the operations were added.
+   * @return true if operations were sent
+   */
+  public boolean flush() {
+    synchronized (sendLock) {
+      List<BufferedOperation> toSend = drain();
+      if (!toSend.isEmpty()) {
+        send(toSend);
+        return true;
+      }
+      return false;
+    }
+  }
+
+  private synchronized List<BufferedOperation> drain() {
+    if (scheduledFlush != null) {
+      scheduledFlush.cancel(false);
+      scheduledFlush = null;
+    }
+
+    List<BufferedOperation> toSend = List.copyOf(operations);
+    operations.clear();
+    bufferedBytes = 0;
+    return toSend;
+  }
+
+  private void send(List<BufferedOperation> toSend) {
+    try {
+      List<OperationStatus> statuses = indexer.bulk(toSend.stream().map(BufferedOperation::serialized).toList());
+      for (int i = 0; i < statuses.size(); i++) {
+        if (statuses.get(i) == OperationStatus.SUCCEEDED) {
+          succeeded.incrementAndGet();
+        } else {
+          failed.incrementAndGet();
+          log.error("Document id {} could not be sent to index {}", toSend.get(i).operation().documentId(),
+              toSend.get(i).operation().indexName());
+          if (operationFailureListener != null) {
+            operationFailureListener.accept(toSend.get(i).operation());
+          }
+        }
+      }
+    } catch (SearchApiException e) {
+      failed.addAndGet(toSend.size());
+      log.error("Bulk request of {} operation(s) failed: {}", toSend.size(), e.getMessage());
+      // the listeners receive the operations as they were added (payload not serialized)
+      List<IndexingOperation> failedOperations = toSend.stream().map(BufferedOperation::operation).toList();
+      if (requestFailureListener != null) {
+        requestFailureListener.accept(failedOperations);
+      }
+      if (operationFailureListener != null) {
+        failedOperations.forEach(operationFailureListener);
+      }
+    }
+  }
+
+  public int getSucceededCount() {
+    return succeeded.get();
+  }
+
+  public int getFailedCount() {
+    return failed.get();
+  }
+
+  @Override
+  public void close() {
+    flush();
+  }
+
+  /**
+   * Operation added to the buffer with its payload serialized.
+   * @param operation the operation as added
+   * @param payload serialized payload or null if there is no payload or it can't be serialized (the client
+   *                will then serialize it and report the error)
+   */
+  private record BufferedOperation(IndexingOperation operation, byte[] payload) {
+
+    static BufferedOperation of(IndexingOperation operation) {
+      if (operation.payload() == null || operation.payload() instanceof BinaryData) {
+        return new BufferedOperation(operation, null);
+      }
+      try {
+        return new BufferedOperation(operation, IndexableDocumentHandler.OM.writeValueAsBytes(operation.payload()));
+      } catch (JsonProcessingException e) {
+        log.debug("Can't serialize payload of document {}", operation.documentId(), e);
+        return new BufferedOperation(operation, null);
+      }
+    }
+
+    long size() {
+      return payload == null ? 0 : payload.length;
+    }
+
+    /**
+     * @return the operation to send, with the serialized payload
+     */
+    IndexingOperation serialized() {
+      if (payload == null) {
+        return operation;
+      }
+      return new IndexingOperation(operation.operationType(), operation.documentId(), operation.indexName(),
+          BinaryData.of(payload, ContentType.APPLICATION_JSON));
+    }
+  }
+}
@@ -0,0 +1,15 @@
+package ca.gc.aafc.dina.search.cli.indexing;
+
+/**
+ * Progress of the re-indexing of a set of documents.
+ *
+ * @param name name of the cascade (type/id of the document that triggered it)
+ * @param submitted number of documents submitted for re-indexing
+ * @param indexed number of documents successfully indexed
+ * @param failed number of documents that failed to be assembled or indexed
+ * @param pending number of documents waiting to be assembled
+ * @param elapsedMs time since the start of the cascade
+ */
+public record CascadeProgress(String name, int submitted, int indexed, int failed, int pending,
+                              long elapsedMs) {
+}
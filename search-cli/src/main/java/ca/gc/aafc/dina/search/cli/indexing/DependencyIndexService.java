@@ -0,0 +1,328 @@
+package ca.gc.aafc.dina.search.cli.indexing;
+
+import ca.gc.aafc.dina.jsonapi.JSONApiDocumentStructure;
+import ca.gc.aafc.dina.search.cli.config.IndexingProperties;
+import ca.gc.aafc.dina.search.cli.exceptions.SearchApiException;
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.ElasticsearchException;
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import co.elastic.clients.elasticsearch._types.query_dsl.QueryBuilders;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.elasticsearch.core.search.Hit;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Maintains a side index with one document per indexed document listing the documents it includes
+ * (included section) as "type:id" references.
+ *
+ * It answers "which documents include X" with a term query instead of a nested query on the main indices.
+ * The side index only knows about documents indexed by search-cli, it can be rebuilt from the main indices.
+ *
+ * The configured name is an alias. A rebuild fills a new timestamped index while the live operations keep going
+ * to the current one, they are recorded and applied to the new index before and right after the alias is moved.
+ * Lookups fall back to the nested query until the alias is moved.
+ */
+@Log4j2
+@Service
+public class DependencyIndexService {
+
+  public static final String REFS_FIELD = "refs";
+  public static final String INDEX_FIELD = "index";
+
+  private static final List<String> REBUILD_SOURCE_FIELDS = List.of("data.id", "data.type",
+      "included.id", "included.type");
+
+  private final ElasticsearchClient client;
+  private final ElasticSearchDocumentIndexer indexer;
+  private final ElasticSearchIndexAdmin indexAdmin;
+  private final IndexingProperties.DependencyIndex settings;
+  private final int pageSize;
+
+  private volatile boolean indexReady = false;
+
+  // live operations (by dependency document id) sent while a rebuild is running, null when no rebuild is running
+  private volatile Map<String, IndexingOperation> rebuildChanges;
+
+  public DependencyIndexService(ElasticsearchClient client, ElasticSearchDocumentIndexer indexer,
+                                ElasticSearchIndexAdmin indexAdmin, IndexingProperties indexingProperties) {
+    this.client = client;
+    this.indexer = indexer;
+    this.indexAdmin = indexAdmin;
+    this.settings = indexingProperties.getDependencyIndex();
+    this.pageSize = indexingProperties.getReindex().getScanPageSize();
+  }
+
+  public boolean isEnabled() {
+    return settings.isEnabled();
+  }
+
+  /**
+   * Can the dependency index be used to find the documents including a document. It can't while it is rebuilt.
+   * @return
+   */
+  public boolean isLookupAvailable() {
+    return settings.isEnabled() && rebuildChanges == null;
+  }
+
+  /**
+   * Build the operation recording the references of an assembled document.
+   * @param indexName the index (alias) of the document
+   * @param assembledDocument
+   * @return
+   */
+  public IndexingOperation toIndexOperation(String indexName, JsonNode assembledDocument) throws SearchApiException {
+    ensureIndex();
+    return recordChange(buildIndexOperation(indexName, assembledDocument, settings.getName()));
+  }
+
+  /**
+   * Build the operation removing the references of a document.
+   * @param indexName the index (alias) of the document
+   * @param documentId
+   * @return
+   */
+  public IndexingOperation toDeleteOperation(String indexName, String documentId) throws SearchApiException {
+    ensureIndex();
+    return recordChange(IndexingOperation.delete(dependencyDocumentId(indexName, documentId), settings.getName()));
+  }
+
+  /**
+   * Scan the documents of the provided indices that include the document identified by type and id.
+   * @param indices
+   * @param documentType
+   * @param documentId
+   * @return
+   */
+  public EmbeddedDocumentScan scanReferencingDocuments(List<String> indices, String documentType,
+                                                       String documentId) {
+    List<FieldValue> indexValues = indices.stream().map(FieldValue::of).toList();
+    Query query = QueryBuilders.bool()
+        .filter(QueryBuilders.term().field(REFS_FIELD).value(toReference(documentType, documentId)).build()._toQuery())
+        .filter(QueryBuilders.terms().field(INDEX_FIELD).terms(t -> t.value(indexValues)).build()._toQuery())
+        .build()._toQuery();
+    return indexer.scan(List.of(settings.getName()), query);
+  }
+
+  /**
+   * Refresh the dependency index so the operations sent before are visible to the next scan.
+   */
+  public void refresh() throws SearchApiException {
+    try {
+      client.indices().refresh(r -> r.index(settings.getName()));
+    } catch (ElasticsearchException | IOException e) {
+      throw new SearchApiException("Can't refresh dependency index " + settings.getName(), e);
+    }
+  }
+
+  /**
+   * Rebuild the dependency index from the documents of the provided indices into a new index and move the
+   * alias to it. Previous indices are deleted.
+   * @param indices the indices (aliases) to read
+   * @param buffer where the operations are sent, flushed before the alias is moved
+   * @return number of documents processed
+   */
+  public int rebuild(List<String> indices, BulkIndexingBuffer buffer) throws SearchApiException {
+    String alias = settings.getName();
+    Set<String> previousIndices = indexAdmin.getAliasIndices(alias);
+    // created before the alias was introduced
+    boolean concreteIndex = previousIndices.isEmpty() && indexAdmin.exists(alias);
+
+    String targetIndex = ElasticSearchIndexAdmin.newTimestampedIndexName(alias);
+    createIndex(targetIndex, false);
+
+    // started before the point in time of each index is opened so no change can be missed
+    rebuildChanges = new ConcurrentHashMap<>();
+    int count = 0;
+    try {
+      for (String indexName : indices) {
+        count += readReferences(indexName, targetIndex, buffer);
+      }
+
+      // references read from the point in time may be older than the ones sent meanwhile
+      applyChanges(drainChanges(), targetIndex, buffer::add);
+      buffer.flush();
+
+      if (concreteIndex) {
+        indexAdmin.replaceIndexWithAlias(alias, targetIndex);
+      } else {
+        indexAdmin.swapAlias(alias, targetIndex);
+      }
+      indexReady = true;
+    } catch (SearchApiException | RuntimeException e) {
+      rebuildChanges = null;
+      try {
+        indexAdmin.deleteIndex(targetIndex);
+      } catch (SearchApiException deleteEx) {
+        log.warn("Can't delete dependency index {} of the failed rebuild", targetIndex);
+      }
+      throw e;
+    }
+
+    // operations sent to the previous index between the last catch up and the swap
+    Map<String, IndexingOperation> lastChanges = rebuildChanges;
+    rebuildChanges = null;
+    List<IndexingOperation> lastOperations = new ArrayList<>();
+    applyChanges(lastChanges, targetIndex, lastOperations::add);
+    if (!lastOperations.isEmpty()) {
+      indexer.bulk(lastOperations);
+    }
+
+    for (String previous : previousIndices) {
+      if (!previous.equals(targetIndex)) {
+        indexAdmin.deleteIndex(previous);
+      }
+    }
+    log.info("Dependency index {} rebuilt into {}", alias, targetIndex);
+    return count;
+  }
+
+  private int readReferences(String indexName, String targetIndex, BulkIndexingBuffer buffer)
+      throws SearchApiException {
+    int count = 0;
+    String pitId = indexer.openPIT(List.of(indexName));
+    try {
+      List<FieldValue> searchAfter = null;
+      boolean lastPage = false;
+      while (!lastPage) {
+        SearchResponse<JsonNode> response = indexer.searchPage(List.of(indexName), pitId,
+            Query.of(q -> q.matchAll(m -> m)), pageSize, searchAfter, REBUILD_SOURCE_FIELDS);
+        List<Hit<JsonNode>> hits = response.hits().hits();
+        for (Hit<JsonNode> hit : hits) {
+          if (hit.source() != null) {
+            buffer.add(buildIndexOperation(indexName, hit.source(), targetIndex));
+            count++;
+          }
+        }
+        if (response.pitId() != null) {
+          pitId = response.pitId();
+        }
+        lastPage = hits.size() < pageSize;
+        if (!hits.isEmpty()) {
+          searchAfter = hits.get(hits.size() - 1).sort();
+        }
+      }
+    } finally {
+      indexer.closePIT(pitId);
+    }
+    log.info("Dependency index: references of {} read", indexName);
+    return count;
+  }
+
+  private IndexingOperation recordChange(IndexingOperation operation) {
+    Map<String, IndexingOperation> changes = rebuildChanges;
+    if (changes != null) {
+      changes.put(operation.documentId(), operation);
+    }
+    return operation;
+  }
+
+  private Map<String, IndexingOperation> drainChanges() {
+    Map<String, IndexingOperation> changes = rebuildChanges;
+    Map<String, IndexingOperation> drained = new HashMap<>();
+    for (String documentId : List.copyOf(changes.keySet())) {
+      IndexingOperation operation = changes.remove(documentId);
+      if (operation != null) {
+        drained.put(documentId, operation);
+      }
+    }
+    return drained;
+  }
+
+  /**
+   * Send the recorded operations to the target index.
+   */
+  private static void applyChanges(Map<String, IndexingOperation> changes, String targetIndex,
+                                   Consumer<IndexingOperation> sink) {
+    if (!changes.isEmpty()) {
+      log.info("Dependency index: applying {} reference(s) changed during the rebuild", changes.size());
+    }
+    for (IndexingOperation operation : changes.values()) {
+      sink.accept(new IndexingOperation(operation.operationType(), operation.documentId(), targetIndex,
+          operation.payload()));
+    }
+  }
+
+  private static IndexingOperation buildIndexOperation(String indexName, JsonNode assembledDocument,
+                                                       String targetIndex) {
+    JsonNode data = assembledDocument.path(JSONApiDocumentStructure.DATA);
+    String type = data.path(JSONApiDocumentStructure.TYPE).asText();
+    String id = data.path(JSONApiDocumentStructure.ID).asText();
+    return IndexingOperation.index(dependencyDocumentId(indexName, id),
+        buildDependencyDocument(indexName, type, id, assembledDocument.path(JSONApiDocumentStructure.INCLUDED)),
+        targetIndex);
+  }
+
+  private static String dependencyDocumentId(String indexName, String documentId) {
+    return indexName + ":" + documentId;
+  }
+
+  private static String toReference(String type, String id) {
+    return type + ":" + id;
+  }
+
+  private static ObjectNode buildDependencyDocument(String indexName, String type, String id, JsonNode included) {
+    Set<String> refs = new LinkedHashSet<>();
+    for (JsonNode includedDoc : included) {
+      refs.add(toReference(includedDoc.path(JSONApiDocumentStructure.TYPE).asText(),
+          includedDoc.path(JSONApiDocumentStructure.ID).asText()));
+    }
+
+    ObjectNode doc = IndexableDocumentHandler.OM.createObjectNode();
+    doc.put(INDEX_FIELD, indexName);
+    doc.putObject(JSONApiDocumentStructure.DATA)
+        .put(JSONApiDocumentStructure.TYPE, type)
+        .put(JSONApiDocumentStructure.ID, id);
+    ArrayNode refsNode = doc.putArray(REFS_FIELD);
+    refs.forEach(refsNode::add);
+    return doc;
+  }
+
+  /**
+   * Create the dependency index behind its alias if neither exists.
+   */
+  private synchronized void ensureIndex() throws SearchApiException {
+    if (indexReady) {
+      return;
+    }
+    if (!indexAdmin.exists(settings.getName())) {
+      createIndex(ElasticSearchIndexAdmin.newTimestampedIndexName(settings.getName()), true);
+    }
+    indexReady = true;
+  }
+
+  private void createIndex(String indexName, boolean withAlias) throws SearchApiException {
+    try {
+      client.indices().create(c -> {
+        c.index(indexName)
+            .mappings(m -> m
+                .properties(INDEX_FIELD, p -> p.keyword(k -> k))
+                .properties(REFS_FIELD, p -> p.keyword(k -> k))
+                .properties(JSONApiDocumentStructure.DATA, p -> p.object(o -> o
+                    .properties(JSONApiDocumentStructure.TYPE, t -> t.keyword(k -> k))
+                    .properties(JSONApiDocumentStructure.ID, t -> t.keyword(k -> k)))));
+        if (withAlias) {
+          c.aliases(settings.getName(), a -> a);
+        }
+        return c;
+      });
+      log.info("Dependency index {} created", indexName);
+    } catch (ElasticsearchException | IOException e) {
+      throw new SearchApiException("Can't create dependency index " + indexName, e);
+    }
+  }
+}
@@ -2,6 +2,8 @@ package ca.gc.aafc.dina.search.cli.indexing;
 
 import ca.gc.aafc.dina.search.cli.exceptions.SearchApiException;
 
+import java.util.List;
+
 public interface DocumentIndexer {
 
     /**
@@ -26,6 +28,16 @@ public interface DocumentIndexer {
    */
   OperationStatus deleteDocument(String documentId, String indexName) throws SearchApiException;
 
+  /**
+   * Send the provided operations to the index in a single bulk request.
+   * Items that failed with a transient error are re-sent, the other items are not.
+   *
+   * @param operations index and/or delete operations
+   * @return the status of each operation, in the same order as the provided operations
+   * @throws SearchApiException
+   */
+  List<OperationStatus> bulk(List<IndexingOperation> operations) throws SearchApiException;
+
   /**
    * Release resources created by the elasticsearch client
    */
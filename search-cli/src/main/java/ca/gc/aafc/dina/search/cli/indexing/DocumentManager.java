@@ -3,19 +3,34 @@ package ca.gc.aafc.dina.search.cli.indexing;
 import ca.gc.aafc.dina.jsonapi.JSONApiDocumentStructure;
 import ca.gc.aafc.dina.search.cli.config.ApiResourceDescriptor;
 import ca.gc.aafc.dina.search.cli.config.IndexSettingDescriptor;
+import ca.gc.aafc.dina.search.cli.config.IndexingProperties;
 import ca.gc.aafc.dina.search.cli.config.ServiceEndpointProperties;
 import ca.gc.aafc.dina.search.cli.exceptions.SearchApiException;
+import ca.gc.aafc.dina.search.cli.http.DinaApiAccess;
 import ca.gc.aafc.dina.search.cli.http.OpenIDHttpClient;
-import co.elastic.clients.elasticsearch.core.SearchResponse;
-import co.elastic.clients.elasticsearch.core.search.Hit;
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.log4j.Log4j2;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 
@@ -30,21 +45,70 @@ import java.util.stream.Collectors;
 public class DocumentManager {
 
   private final OpenIDHttpClient aClient;
+  private final DinaApiAccess apiAccess;
   private final ServiceEndpointProperties svcEndpointProps;
   private final IndexableDocumentHandler indexableDocumentHandler;
   private final ElasticSearchDocumentIndexer indexer;
+  private final DependencyIndexService dependencyIndexService;
+  private final IndexingProperties indexingProperties;
+  private final PendingDocumentRegistry pendingDocuments;
   private final List<String> indexList;
 
-  public DocumentManager(OpenIDHttpClient aClient, ServiceEndpointProperties svcEndpointProps,
-                         IndexableDocumentHandler indexableDocumentHandler, ElasticSearchDocumentIndexer indexer) {
+  // used to flush bulk buffers on a time basis
+  private final ScheduledExecutorService bulkFlushScheduler;
+  // replays the pending documents (indexing.replay.interval), null if not scheduled
+  private final ScheduledExecutorService replayScheduler;
+
+  // shared by all cascades to assemble documents
+  private final ExecutorService reIndexWorkers;
+  // runs the cascades when async is enabled
+  private final ExecutorService cascadeExecutor;
+  private final Set<ReIndexCascade> activeCascades = ConcurrentHashMap.newKeySet();
+  private final AtomicLong failedAsyncCascades = new AtomicLong();
+  // shared by all operations on the dependency index, null if the dependency index is disabled
+  private final BulkIndexingBuffer dependencyBuffer;
+  // documents changed while their index is rebuilt (see TypeReIndexService), keyed by index name
+  private final Map<String, Map<DocumentInfo, IndexingOperation.OperationType>> recordedChanges =
+      new ConcurrentHashMap<>();
+
+  public DocumentManager(OpenIDHttpClient aClient, DinaApiAccess apiAccess,
+                         ServiceEndpointProperties svcEndpointProps,
+                         IndexableDocumentHandler indexableDocumentHandler, ElasticSearchDocumentIndexer indexer,
+                         DependencyIndexService dependencyIndexService, IndexingProperties indexingProperties,
+                         PendingDocumentRegistry pendingDocuments) {
     this.aClient = aClient;
+    this.apiAccess = apiAccess;
     this.svcEndpointProps = svcEndpointProps;
     this.indexableDocumentHandler = indexableDocumentHandler;
     this.indexer = indexer;
+    this.dependencyIndexService = dependencyIndexService;
+    this.indexingProperties = indexingProperties;
+    this.pendingDocuments = pendingDocuments;
+    this.bulkFlushScheduler = Executors.newSingleThreadScheduledExecutor(namedThreadFactory("bulk-flush"));
+
+    IndexingProperties.Reindex reindexSettings = indexingProperties.getReindex();
+    this.reIndexWorkers = Executors.newFixedThreadPool(reindexSettings.getWorkers(),
+        namedThreadFactory("reindex-worker"));
+    // when too many cascades are waiting, the caller runs the cascade itself (back-pressure)
+    this.cascadeExecutor = new ThreadPoolExecutor(reindexSettings.getMaxConcurrentCascades(),
+        reindexSettings.getMaxConcurrentCascades(), 0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(reindexSettings.getMaxQueuedCascades()),
+        namedThreadFactory("reindex-cascade"), new ThreadPoolExecutor.CallerRunsPolicy());
+    this.dependencyBuffer = dependencyIndexService.isEnabled() ? newBulkIndexingBuffer() : null;
 
     indexList = new ArrayList<>();
     svcEndpointProps.getFilteredEndpointDescriptorStream(ed -> StringUtils.isNotBlank(ed.indexName()))
         .forEach(desc -> indexList.add(desc.indexName()));
+
+    Duration replayInterval = indexingProperties.getReplay().getInterval();
+    if (replayInterval != null && replayInterval.isPositive()) {
+      this.replayScheduler = Executors.newSingleThreadScheduledExecutor(namedThreadFactory("document-replay"));
+      // fixed delay: documents failing again are only replayed once the previous replay is done
+      replayScheduler.scheduleWithFixedDelay(this::scheduledReplay, replayInterval.toMillis(),
+          replayInterval.toMillis(), TimeUnit.MILLISECONDS);
+    } else {
+      this.replayScheduler = null;
+    }
   }
 
   /**
@@ -55,6 +119,27 @@ public class DocumentManager {
    */
   public JsonNode indexDocument(String type, String documentId) throws SearchApiException {
 
+    JsonNode jsonNode = assembleDocument(type, documentId);
+    IndexSettingDescriptor endpointDescriptor = svcEndpointProps.getIndexSettingDescriptorForType(type);
+
+    // Step #3: Indexing the document into elasticsearch
+    log.info("Sending document id:{} to specific index {}", documentId, endpointDescriptor.indexName());
+    indexer.indexDocument(documentId, jsonNode, endpointDescriptor.indexName());
+    recordDependencies(endpointDescriptor.indexName(), jsonNode);
+    recordChange(endpointDescriptor.indexName(), new DocumentInfo(type, documentId),
+        IndexingOperation.OperationType.INDEX);
+
+    return jsonNode;
+  }
+
+  /**
+   * Retrieve and assemble the document identified by the type and documentId without indexing it.
+   * @param type the type of document (json:api type)
+   * @param documentId the identifier of the document
+   * @return the assembled document
+   */
+  private JsonNode assembleDocument(String type, String documentId) throws SearchApiException {
+
     // Validate the type
     if (!isTypeConfigured(type)) {
       throw new SearchApiException("Unsupported endpoint type: " + type);
@@ -66,23 +151,22 @@ public class DocumentManager {
     // Step #1: get the document
     log.info("Retrieving document id:{}", documentId);
 
-    String documentToIndex = aClient.getDataById(apiResourceDescriptor, endpointDescriptor.relationships(),
-        endpointDescriptor.optionalFields(), documentId);
+    // the response is parsed as it is received
+    JsonNode documentToIndex = aClient.getJsonById(apiResourceDescriptor, endpointDescriptor.relationships(),
+        endpointDescriptor.optionalFields(), endpointDescriptor.sparseFields(), documentId);
 
     // Step #2: Assemble the document into a JSON map
     log.info("Assembling document id:{}", documentId);
-    JsonNode jsonNode;
-    try {
-      jsonNode = indexableDocumentHandler.assembleDocument(documentToIndex);
-    } catch (JsonProcessingException ex) {
-      throw new SearchApiException("Unable to parse type '" + type + "' with the id '" + documentId + "'", ex);
-    }
-
-    // Step #3: Indexing the document into elasticsearch
-    log.info("Sending document id:{} to specific index {}", documentId, endpointDescriptor.indexName());
-    indexer.indexDocument(documentId, jsonNode, endpointDescriptor.indexName());
+    return indexableDocumentHandler.assembleDocument(documentToIndex);
+  }
 
-    return jsonNode;
+  /**
+   * Discard the cached API responses of the document so the next assemblage will fetch it again.
+   * @param type the type of document (json:api type)
+   * @param documentId the identifier of the document
+   */
+  public void evictCachedDocument(String type, String documentId) {
+    apiAccess.evict(type, documentId);
   }
 
   public String deleteDocument(String type, String documentId) throws SearchApiException {
@@ -100,6 +184,11 @@ public class DocumentManager {
     if (StringUtils.isNotBlank(endpointDescriptor.indexName())) {
       log.info("Deleting document id:{} from specific index {}", documentId, endpointDescriptor.indexName());
       indexer.deleteDocument(documentId, endpointDescriptor.indexName());
+      recordChange(endpointDescriptor.indexName(), new DocumentInfo(type, documentId),
+          IndexingOperation.OperationType.DELETE);
+      if (dependencyBuffer != null) {
+        dependencyBuffer.add(dependencyIndexService.toDeleteOperation(endpointDescriptor.indexName(), documentId));
+      }
     }
     
     return processedMessage;
@@ -121,85 +210,64 @@ public class DocumentManager {
    * For example material-sample --> collecting-event (Means that material-sample contains collecting-event)
    * So when a collecting-event is updated, we will have to look for its presence the material-sample index
    * and re-index document with that specific collecting-events embedded.
-   * 
+   *
+   * If indexing.reindex.async is enabled, the re-indexing is done in the background: errors are logged and
+   * counted (see {@link #getFailedAsyncCascadeCount()}) since they can't be reported to the caller. When
+   * indexing.reindex.maxQueuedCascades cascades are already waiting, the cascade runs on the calling thread.
    */
   public void processEmbeddedDocument(List<String> indices, String documentType, String documentId) throws SearchApiException {
 
-    try {
-      long docCount = indexer.count(indices, documentType, documentId);
-      log.debug("{} embedded document(s) found. documentType:{}, documentId:{}", docCount, documentType, documentId);
+    // the embedded document changed, make sure we are not using a cached version
+    evictCachedDocument(documentType, documentId);
+
+    if (indexingProperties.getReindex().isAsync()) {
+      cascadeExecutor.execute(() -> {
+        try {
+          runEmbeddedDocumentCascade(indices, documentType, documentId);
+        } catch (SearchApiException | RuntimeException e) {
+          failedAsyncCascades.incrementAndGet();
+          log.error("Background re-indexing from embedded document id {} of type {} failed", documentId,
+              documentType, e);
+        }
+      });
+      return;
+    }
+    runEmbeddedDocumentCascade(indices, documentType, documentId);
+  }
+
+  private void runEmbeddedDocumentCascade(List<String> indices, String documentType, String documentId) throws SearchApiException {
 
-      // no paging required
-      if (docCount <= ElasticSearchDocumentIndexer.ES_PAGE_SIZE) {
-        log.debug("No paging required.");
-        processEmbeddedDocument(indexer.search(indices, documentType, documentId), documentType, documentId);
+    // references recorded for documents indexed just before must be visible to the lookup: they are sent and,
+    // since a search only sees the operations of the last refresh, the dependency index is refreshed.
+    // Without dependency index, documents indexed less than a refresh interval before may not be found.
+    if (dependencyBuffer != null && dependencyBuffer.flush()) {
+      dependencyIndexService.refresh();
+    }
+
+    // the dependency index can't be used while it is rebuilt
+    try (EmbeddedDocumentScan scan = dependencyIndexService.isLookupAvailable() ?
+        dependencyIndexService.scanReferencingDocuments(indices, documentType, documentId) :
+        indexer.scanEmbeddedDocuments(indices, documentType, documentId)) {
+      List<DocumentInfo> page = scan.nextPage();
+      if (page.isEmpty()) {
+        log.debug("No embedded document found. documentType:{}, documentId:{}", documentType, documentId);
         return;
       }
 
-      // Page through results
-      SearchResponse<JsonNode> response = indexer.searchWithPIT(indices, documentType, documentId);
-      boolean pageAvailable = response.hits().hits().size() != 0;
-      while (pageAvailable) {
-        List<DocumentInfo> documentsToIndex = new ArrayList<>();
-        for (Hit<JsonNode> hit : response.hits().hits()) {
-          documentsToIndex.add(jsonNodeToDocumentInfo(hit.source()));
-        }
-        log.debug("Paging through embedded documents. {} embedded documents", documentsToIndex.size());
-        reIndexDocuments(documentsToIndex);
-        pageAvailable = false;
-
-        int numberOfHits = response.hits().hits().size();
-        // if we have a full page, try to get the next one
-        if (ElasticSearchDocumentIndexer.ES_PAGE_SIZE == numberOfHits) {
-          Hit<JsonNode> lastHit = response.hits().hits().get(numberOfHits - 1);
-          response =
-              indexer.searchAfter(response.pitId(), documentType, documentId, lastHit.sort());
-          pageAvailable = true;
+      log.debug("re-indexing document triggered by document type:{}, id:{} update", documentType, documentId);
+      // the cascade will block the scan if too many documents are waiting to be assembled
+      try (ReIndexCascade cascade = newReIndexCascade(documentType + "/" + documentId)) {
+        while (!page.isEmpty()) {
+          page.forEach(cascade::submit);
+          page = scan.nextPage();
         }
       }
-
-      String pitId = response.pitId();
-      indexer.closePIT(pitId);
-
     } catch (SearchApiException e) {
       log.error("Error during re-indexing from embedded document id {} of type {}: {}", documentId, documentType, e.getMessage());
       throw e;
     }
   }
 
-  private void processEmbeddedDocument(SearchResponse<JsonNode> embeddedDocuments, String documentType, String documentId) {
-    List<DocumentInfo> documentsToIndex = processSearchResults(embeddedDocuments);
-    if (!documentsToIndex.isEmpty()) {
-      log.debug("re-indexing document triggered by document type:{}, id:{} update",
-          documentType, documentId);
-      reIndexDocuments(documentsToIndex);
-    }
-  }
-
-  /**
-   *
-   * @param embeddedDocuments
-   * @return
-   */
-  private List<DocumentInfo> processSearchResults(SearchResponse<JsonNode> embeddedDocuments) {
-    List<DocumentInfo> documentsToIndex = new ArrayList<>();
-    if (embeddedDocuments != null && embeddedDocuments.hits() != null) {
-      List<Hit<JsonNode>> results = embeddedDocuments.hits().hits();
-      if (!results.isEmpty()) {
-        results.forEach(curHit -> {
-          documentsToIndex.add(jsonNodeToDocumentInfo(curHit.source()));
-        });
-      }
-    }
-    return documentsToIndex;
-  }
-
-  private static DocumentInfo jsonNodeToDocumentInfo(JsonNode embeddedDocument) {
-    JsonNode dataNode = embeddedDocument.get(JSONApiDocumentStructure.DATA);
-    return new DocumentInfo(dataNode.get(JSONApiDocumentStructure.TYPE).asText(),
-        dataNode.get(JSONApiDocumentStructure.ID).asText());
-  }
-
   /**
    * Checks if a type is configured for indexing in its own index.
    * @param type
@@ -235,19 +303,302 @@ public class DocumentManager {
   }
 
   /**
-   * Triggers an indexDocument for the provided {@link DocumentInfo}
+   * Re-assembles the provided {@link DocumentInfo} in parallel and send them to elasticsearch using bulk requests.
+   * Returns when all documents are sent.
    * @param documentsToIndex document type as key and DocumentInfo as value
+   * @return the final progress including the number of failed documents
+   */
+  public CascadeProgress reIndexDocuments(List<DocumentInfo> documentsToIndex) {
+    return reIndexDocuments(documentsToIndex, null);
+  }
+
+  /**
+   * Same as {@link #reIndexDocuments(List)} but documents are sent to the provided index instead of the
+   * index configured for their type.
+   * Documents failing with a transient error are added to the {@link PendingDocumentRegistry} only when they are
+   * sent to the index configured for their type.
+   * @param documentsToIndex
+   * @param indexName name of the index to use or null to use the one configured for the type
+   * @return the final progress including the number of failed documents
    */
-  public void reIndexDocuments(List<DocumentInfo> documentsToIndex) {
-    documentsToIndex.forEach(docInfo -> {
-      // re-index the document.
+  public CascadeProgress reIndexDocuments(List<DocumentInfo> documentsToIndex, String indexName) {
+    return reIndexDocuments(documentsToIndex, indexName, null);
+  }
+
+  /**
+   * Same as {@link #reIndexDocuments(List, String)} but the documents that could not be assembled or indexed are
+   * also given to the provided listener.
+   * @param documentsToIndex
+   * @param indexName name of the index to use or null to use the one configured for the type
+   * @param failureListener receives the documents that failed, can be null
+   * @return the final progress including the number of failed documents
+   */
+  public CascadeProgress reIndexDocuments(List<DocumentInfo> documentsToIndex, String indexName,
+                                          Consumer<DocumentInfo> failureListener) {
+    ReIndexCascade cascade = newReIndexCascade("list of " + documentsToIndex.size() + " document(s)",
+        docInfo -> toIndexOperation(docInfo, indexName), indexName == null, failureListener);
+    try (cascade) {
+      documentsToIndex.forEach(cascade::submit);
+    }
+    return cascade.getProgress();
+  }
+
+  /**
+   * Progress of the re-indexing currently running.
+   * @return
+   */
+  public List<CascadeProgress> getActiveCascadesProgress() {
+    return activeCascades.stream().map(ReIndexCascade::getProgress).toList();
+  }
+
+  /**
+   * Number of cascades run in the background (indexing.reindex.async) that failed.
+   * @return
+   */
+  public long getFailedAsyncCascadeCount() {
+    return failedAsyncCascades.get();
+  }
+
+  private ReIndexCascade newReIndexCascade(String name) {
+    return newReIndexCascade(name, docInfo -> toIndexOperation(docInfo, null), true, null);
+  }
+
+  /**
+   * @param parkTransientFailures should the documents failing with a transient error be added to the
+   *                              {@link PendingDocumentRegistry}
+   * @param failureListener receives the documents that could not be assembled or indexed, can be null
+   */
+  private ReIndexCascade newReIndexCascade(String name, ReIndexCascade.OperationBuilder operationBuilder,
+                                           boolean parkTransientFailures, Consumer<DocumentInfo> failureListener) {
+    Consumer<IndexingOperation> operationFailureListener = failureListener == null ? null : operation -> {
+      DocumentInfo docInfo = toDocumentInfo(operation);
+      if (docInfo != null) {
+        failureListener.accept(docInfo);
+      }
+    };
+    BulkIndexingBuffer bulkBuffer = new BulkIndexingBuffer(indexer, indexingProperties.getBulk(),
+        bulkFlushScheduler, parkTransientFailures ? operations -> operations.forEach(this::parkOperation) : null,
+        operationFailureListener);
+    ReIndexCascade cascade = new ReIndexCascade(name, reIndexWorkers, operationBuilder,
+        bulkBuffer, indexingProperties.getReindex().getMaxPendingDocuments(),
+        activeCascades::remove, DocumentManager::isTransientError,
+        parkTransientFailures ? this::park : null, failureListener);
+    activeCascades.add(cascade);
+    return cascade;
+  }
+
+  /**
+   * Re-index the documents of the {@link PendingDocumentRegistry}.
+   * Documents failing again with a transient error, or still missing related documents, are added back.
+   * @return the final progress or null if no document was pending
+   */
+  public CascadeProgress replayPendingDocuments() {
+    List<DocumentInfo> documents = pendingDocuments.drain();
+    if (documents.isEmpty()) {
+      return null;
+    }
+    log.info("Replaying {} pending document(s)", documents.size());
+    return reIndexDocuments(documents);
+  }
+
+  private void scheduledReplay() {
+    try {
+      CascadeProgress progress = replayPendingDocuments();
+      if (progress != null) {
+        log.info("Scheduled replay of pending documents: {}", progress);
+      }
+    } catch (RuntimeException e) {
+      // an exception would cancel the next executions
+      log.error("Scheduled replay of pending documents failed", e);
+    }
+  }
+
+  /**
+   * Start recording the documents of the index changed by this instance (indexed, deleted or re-indexed by a
+   * cascade). Used while an index is rebuilt since the live changes are still sent to the current index.
+   * @param indexName index name (alias) configured for the type
+   */
+  public void startRecordingChanges(String indexName) {
+    recordedChanges.put(indexName, new ConcurrentHashMap<>());
+  }
+
+  /**
+   * Return and clear the changes recorded so far. Only the last change of a document is returned.
+   * @param indexName index name (alias) configured for the type
+   * @return document and type of its last operation, empty if the changes are not recorded
+   */
+  public Map<DocumentInfo, IndexingOperation.OperationType> drainRecordedChanges(String indexName) {
+    Map<DocumentInfo, IndexingOperation.OperationType> changes = recordedChanges.get(indexName);
+    Map<DocumentInfo, IndexingOperation.OperationType> drained = new LinkedHashMap<>();
+    if (changes != null) {
+      for (DocumentInfo docInfo : changes.keySet()) {
+        IndexingOperation.OperationType operationType = changes.remove(docInfo);
+        if (operationType != null) {
+          drained.put(docInfo, operationType);
+        }
+      }
+    }
+    return drained;
+  }
+
+  /**
+   * Stop recording the changes of the index.
+   * @param indexName index name (alias) configured for the type
+   * @return the changes recorded since the last drain
+   */
+  public Map<DocumentInfo, IndexingOperation.OperationType> stopRecordingChanges(String indexName) {
+    Map<DocumentInfo, IndexingOperation.OperationType> remaining = drainRecordedChanges(indexName);
+    recordedChanges.remove(indexName);
+    return remaining;
+  }
+
+  /**
+   * Apply recorded changes to the provided index: documents are re-assembled or deleted.
+   * @param changes as returned by {@link #drainRecordedChanges(String)}
+   * @param indexName index to apply the changes to
+   * @return the final progress including the number of failed documents
+   */
+  public CascadeProgress applyRecordedChanges(Map<DocumentInfo, IndexingOperation.OperationType> changes,
+                                              String indexName) {
+    long start = System.currentTimeMillis();
+    List<DocumentInfo> toIndex = new ArrayList<>();
+    int deleted = 0;
+    int failed = 0;
+    for (Map.Entry<DocumentInfo, IndexingOperation.OperationType> change : changes.entrySet()) {
+      if (change.getValue() == IndexingOperation.OperationType.INDEX) {
+        toIndex.add(change.getKey());
+        continue;
+      }
       try {
-        indexDocument(docInfo.type(), docInfo.id());
+        indexer.deleteDocument(change.getKey().id(), indexName);
+        deleted++;
       } catch (SearchApiException e) {
-        log.error("Document id {} of type {} could not be re-indexed. (Reason:{})", docInfo.id(), docInfo.type(),
-            e.getMessage());
+        log.error("Can't delete document {} from {}: {}", change.getKey().id(), indexName, e.getMessage());
+        failed++;
       }
-    });
+    }
+
+    CascadeProgress indexProgress = toIndex.isEmpty() ? null : reIndexDocuments(toIndex, indexName);
+    return new CascadeProgress("changes of " + indexName, changes.size(),
+        deleted + (indexProgress == null ? 0 : indexProgress.indexed()),
+        failed + (indexProgress == null ? 0 : indexProgress.failed()), 0, System.currentTimeMillis() - start);
+  }
+
+  private void recordChange(String indexName, DocumentInfo docInfo,
+                            IndexingOperation.OperationType operationType) {
+    Map<DocumentInfo, IndexingOperation.OperationType> changes = recordedChanges.get(indexName);
+    if (changes != null) {
+      changes.put(docInfo, operationType);
+    }
+  }
+
+  /**
+   * Keep a document that failed after exhausting its retries to re-index it later.
+   * @param docInfo
+   */
+  private void park(DocumentInfo docInfo) {
+    pendingDocuments.add(docInfo, PendingDocumentRegistry.Reason.RETRIES_EXHAUSTED);
+  }
+
+  /**
+   * Park the document of an index operation sent in a bulk request that failed.
+   * The type is taken from the assembled document.
+   * @param operation
+   */
+  private void parkOperation(IndexingOperation operation) {
+    DocumentInfo docInfo = toDocumentInfo(operation);
+    if (docInfo != null) {
+      park(docInfo);
+    }
+  }
+
+  /**
+   * Document of an index operation, the type is taken from the assembled document.
+   * @param operation
+   * @return the document or null if the operation is not an index operation of an assembled document
+   */
+  private static DocumentInfo toDocumentInfo(IndexingOperation operation) {
+    if (operation.operationType() == IndexingOperation.OperationType.INDEX &&
+        operation.payload() instanceof JsonNode document) {
+      return new DocumentInfo(
+          document.path(JSONApiDocumentStructure.DATA).path(JSONApiDocumentStructure.TYPE).asText(null),
+          operation.documentId());
+    }
+    return null;
+  }
+
+  /**
+   * Failure of the API or elasticsearch that could succeed later.
+   */
+  private static boolean isTransientError(Throwable failure) {
+    return OpenIDHttpClient.isTransientError(failure) || ElasticSearchDocumentIndexer.isTransientError(failure);
+  }
+
+  private IndexingOperation toIndexOperation(DocumentInfo docInfo, String indexName) throws SearchApiException {
+    JsonNode jsonNode = assembleDocument(docInfo.type(), docInfo.id());
+    String typeIndexName = svcEndpointProps.getIndexSettingDescriptorForType(docInfo.type()).indexName();
+    recordDependencies(typeIndexName, jsonNode);
+    if (indexName == null) {
+      recordChange(typeIndexName, docInfo, IndexingOperation.OperationType.INDEX);
+    }
+    return IndexingOperation.index(docInfo.id(), jsonNode, indexName != null ? indexName : typeIndexName);
+  }
+
+  /**
+   * Record the included documents of an assembled document in the dependency index (if enabled).
+   * Dependencies are always recorded under the index configured for the type (alias).
+   * @param indexName
+   * @param jsonNode
+   */
+  private void recordDependencies(String indexName, JsonNode jsonNode) throws SearchApiException {
+    if (dependencyBuffer != null) {
+      dependencyBuffer.add(dependencyIndexService.toIndexOperation(indexName, jsonNode));
+    }
+  }
+
+  /**
+   * Rebuild the dependency index from the documents of all the indices.
+   * @return number of documents processed
+   */
+  public int rebuildDependencyIndex() throws SearchApiException {
+    if (dependencyBuffer == null) {
+      throw new SearchApiException("Dependency index is not enabled");
+    }
+    dependencyBuffer.flush();
+    try (BulkIndexingBuffer bulkBuffer = newBulkIndexingBuffer()) {
+      return dependencyIndexService.rebuild(indexList.stream().distinct().toList(), bulkBuffer);
+    }
+  }
+
+  /**
+   * Creates a new {@link BulkIndexingBuffer} using the configured settings.
+   * The caller is responsible to close it.
+   * @return
+   */
+  public BulkIndexingBuffer newBulkIndexingBuffer() {
+    return new BulkIndexingBuffer(indexer, indexingProperties.getBulk(), bulkFlushScheduler);
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    if (replayScheduler != null) {
+      replayScheduler.shutdownNow();
+    }
+    cascadeExecutor.shutdown();
+    reIndexWorkers.shutdown();
+    if (dependencyBuffer != null) {
+      dependencyBuffer.close();
+    }
+    bulkFlushScheduler.shutdown();
+  }
+
+  private static ThreadFactory namedThreadFactory(String prefix) {
+    AtomicInteger counter = new AtomicInteger();
+    return r -> {
+      Thread t = new Thread(r, prefix + "-" + counter.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    };
   }
 
   public record DocumentInfo(String type, String id) {
@@ -1,6 +1,10 @@
 package ca.gc.aafc.dina.search.cli.indexing;
 
+import ca.gc.aafc.dina.search.cli.config.IndexingProperties;
+import ca.gc.aafc.dina.search.cli.config.RetryProperties;
 import ca.gc.aafc.dina.search.cli.exceptions.SearchApiException;
+import ca.gc.aafc.dina.search.cli.http.ApiConcurrencyLimits;
+import ca.gc.aafc.dina.search.cli.http.RetryPolicy;
 import ca.gc.aafc.dina.search.helper.ESClientHelper;
 import co.elastic.clients.elasticsearch.ElasticsearchClient;
 import co.elastic.clients.elasticsearch._types.ElasticsearchException;
@@ -14,32 +18,46 @@ import co.elastic.clients.elasticsearch._types.query_dsl.NestedQuery;
 import co.elastic.clients.elasticsearch._types.query_dsl.Query;
 import co.elastic.clients.elasticsearch._types.query_dsl.QueryBuilders;
 import co.elastic.clients.elasticsearch._types.query_dsl.TermQuery;
+import co.elastic.clients.elasticsearch.core.BulkResponse;
 import co.elastic.clients.elasticsearch.core.DeleteResponse;
 import co.elastic.clients.elasticsearch.core.IndexResponse;
 import co.elastic.clients.elasticsearch.core.SearchRequest;
 import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.elasticsearch.core.bulk.BulkOperation;
+import co.elastic.clients.elasticsearch.core.bulk.BulkResponseItem;
 import com.fasterxml.jackson.databind.JsonNode;
 import lombok.extern.log4j.Log4j2;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.elasticsearch.client.ResponseException;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 @Log4j2
 @Service
 public class ElasticSearchDocumentIndexer implements DocumentIndexer {
 
-  private static final SortOptions DEFAULT_SORT =
-      new SortOptions.Builder().field(fs -> fs.field("_id").order(SortOrder.Asc)).build();
+  // most efficient sort, only available with a PIT
+  private static final SortOptions SHARD_DOC_SORT =
+      new SortOptions.Builder().field(fs -> fs.field("_shard_doc").order(SortOrder.Asc)).build();
   public static final int ES_PAGE_SIZE = 20;
 
   private static final List<String> SEARCH_FIELDS_TO_RETURN = List.of("data.id", "data.type");
   private final ElasticsearchClient client;
+  private final int scanPageSize;
+  private final RetryPolicy retryPolicy;
 
-  public ElasticSearchDocumentIndexer(ElasticsearchClient client) {
+  public ElasticSearchDocumentIndexer(ElasticsearchClient client, IndexingProperties indexingProperties,
+                                      RetryProperties retryProperties) {
     this.client = client;
+    this.scanPageSize = indexingProperties.getReindex().getScanPageSize();
+    this.retryPolicy = new RetryPolicy("elasticsearch", retryProperties.getElasticsearch(),
+        ElasticSearchDocumentIndexer::isTransientError, ElasticSearchDocumentIndexer::getRetryAfter);
   }
 
   @Override
@@ -50,27 +68,30 @@ public class ElasticSearchDocumentIndexer implements DocumentIndexer {
       throw new SearchApiException("Invalid arguments, values can not be null");
     }
 
-    try {
-      // Make the call to elastic to index the document.
-      IndexResponse response = client.index(builder -> builder
-        .id(documentId)
-        .index(indexName)
-        .document(payload)
-      );
-      Result indexResult = response.result();
-
-      if (indexResult == Result.Created || indexResult == Result.Updated) {
-        log.info("Document {} in {} with id:{}", indexResult.name(), indexName, documentId);
-        return OperationStatus.SUCCEEDED;
-      } else {
-        log.error("Issue with the index operation, result:{}", indexResult);
-      }      
-    } catch (ElasticsearchException esEx) {
-      throw new SearchApiException("Elastic search could not accept or process this request", esEx);
-    } catch (IOException ioEx) {
-      throw new SearchApiException("Connectivity issue with the elasticsearch server", ioEx);
+    // indexing with an id is idempotent
+    IndexResponse response = retryPolicy.execute(true, () -> {
+      try {
+        // Make the call to elastic to index the document.
+        return client.index(builder -> builder
+          .id(documentId)
+          .index(indexName)
+          .document(payload)
+        );
+      } catch (ElasticsearchException esEx) {
+        throw new SearchApiException("Elastic search could not accept or process this request", esEx);
+      } catch (IOException ioEx) {
+        throw new SearchApiException("Connectivity issue with the elasticsearch server", ioEx);
+      }
+    });
+    Result indexResult = response.result();
+
+    if (indexResult == Result.Created || indexResult == Result.Updated) {
+      log.info("Document {} in {} with id:{}", indexResult.name(), indexName, documentId);
+      return OperationStatus.SUCCEEDED;
+    } else {
+      log.error("Issue with the index operation, result:{}", indexResult);
     }
-    
+
     return OperationStatus.FAILED;
   }
 
@@ -91,38 +112,206 @@ public class ElasticSearchDocumentIndexer implements DocumentIndexer {
       throw new SearchApiException("Invalid arguments, can not be null or blank");
     }
 
-    try {
-      // Make the call to elastic to delete the document from the index.
-      DeleteResponse deleteResponse = client.delete(builder -> builder
-        .id(documentId)
-        .index(indexName)
-      );
-      ShardStatistics deleteShards = deleteResponse.shards();
-
-      if (deleteShards.total().intValue() != deleteShards.successful().intValue()) {
-        log.warn(
-          "Document deletion for documentId:{}, not successful on all shards (total Shards:{}/Successful Shards:{}",
-          documentId, 
-          deleteShards.total(), 
-          deleteShards.successful()
+    DeleteResponse deleteResponse = retryPolicy.execute(true, () -> {
+      try {
+        // Make the call to elastic to delete the document from the index.
+        return client.delete(builder -> builder
+          .id(documentId)
+          .index(indexName)
         );
-        return OperationStatus.SUCCEEDED;
+      } catch (ElasticsearchException esEx) {
+        throw new SearchApiException("Elastic search could not accept or process this request", esEx);
+      } catch (IOException ioEx) {
+        throw new SearchApiException("Connectivity issue with the elasticsearch server", ioEx);
+      }
+    });
+    ShardStatistics deleteShards = deleteResponse.shards();
+
+    if (deleteShards.total().intValue() != deleteShards.successful().intValue()) {
+      log.warn(
+        "Document deletion for documentId:{}, not successful on all shards (total Shards:{}/Successful Shards:{}",
+        documentId, 
+        deleteShards.total(), 
+        deleteShards.successful()
+      );
+      return OperationStatus.SUCCEEDED;
+    }
+
+    // Report any shard failures.
+    if (deleteShards.failed().intValue() > 0) {
+      for (ShardFailure failedShard : deleteShards.failures()) {
+        log.warn("Shard info failure reason:{}", failedShard.reason());
+      }
+      return OperationStatus.FAILED;
+    }
+
+    return OperationStatus.FAILED;
+  }
+
+  @Override
+  public List<OperationStatus> bulk(List<IndexingOperation> operations) throws SearchApiException {
+
+    if (operations == null) {
+      throw new SearchApiException("Invalid arguments, operations can not be null");
+    }
+
+    OperationStatus[] statuses = new OperationStatus[operations.size()];
+    Arrays.fill(statuses, OperationStatus.FAILED);
+
+    // index (in operations) of the items to send
+    List<Integer> pending = new ArrayList<>(operations.size());
+    for (int i = 0; i < operations.size(); i++) {
+      IndexingOperation op = operations.get(i);
+      if (StringUtils.isBlank(op.documentId()) || StringUtils.isBlank(op.indexName())
+          || (op.operationType() == IndexingOperation.OperationType.INDEX && op.payload() == null)) {
+        log.error("Invalid bulk operation for document id:{}, it will not be sent", op.documentId());
+      } else {
+        pending.add(i);
+      }
+    }
+
+    if (!pending.isEmpty()) {
+      try {
+        // the request and its rejected items are retried by the same policy (attempts, budget and jitter),
+        // all the operations have an id so they can be sent again
+        retryPolicy.execute(true, () -> {
+          sendPending(operations, pending, statuses);
+          return null;
+        });
+      } catch (BulkItemsRejectedException e) {
+        log.error("{} bulk item(s) still failing: {}", pending.size(), e.getMessage());
       }
+    }
+
+    log.info("Bulk request of {} operation(s) sent, {} failed", operations.size(),
+        Arrays.stream(statuses).filter(s -> s == OperationStatus.FAILED).count());
+    return Arrays.asList(statuses);
+  }
 
-      // Report any shard failures.
-      if (deleteShards.failed().intValue() > 0) {
-        for (ShardFailure failedShard : deleteShards.failures()) {
-          log.warn("Shard info failure reason:{}", failedShard.reason());
-        }
-        return OperationStatus.FAILED;
+  /**
+   * Send the pending operations and record their status. Pending is left with the operations rejected with a
+   * transient error.
+   * @param operations
+   * @param pending index (in operations) of the items to send
+   * @param statuses
+   * @throws BulkItemsRejectedException if some items were rejected with a transient error
+   */
+  private void sendPending(List<IndexingOperation> operations, List<Integer> pending, OperationStatus[] statuses)
+      throws SearchApiException {
+    List<BulkResponseItem> items = sendBulk(pending.stream().map(operations::get).toList()).items();
+    List<Integer> toRetry = new ArrayList<>();
+
+    for (int i = 0; i < items.size(); i++) {
+      BulkResponseItem item = items.get(i);
+      int operationIdx = pending.get(i);
+      if (item.error() == null) {
+        statuses[operationIdx] = OperationStatus.SUCCEEDED;
+      } else if (isTransientStatus(item.status())) {
+        toRetry.add(operationIdx);
+      } else {
+        log.error("Bulk {} failed for document id:{} in {}, status:{}, reason:{}", item.operationType(),
+            item.id(), item.index(), item.status(), item.error().reason());
       }
+    }
+
+    pending.clear();
+    pending.addAll(toRetry);
+    if (!pending.isEmpty()) {
+      throw new BulkItemsRejectedException(pending.size());
+    }
+  }
+
+  private BulkResponse sendBulk(List<IndexingOperation> operations) throws SearchApiException {
+    List<BulkOperation> bulkOperations = operations.stream()
+        .map(ElasticSearchDocumentIndexer::toBulkOperation)
+        .toList();
+    try {
+      return client.bulk(builder -> builder.operations(bulkOperations));
     } catch (ElasticsearchException esEx) {
       throw new SearchApiException("Elastic search could not accept or process this request", esEx);
     } catch (IOException ioEx) {
       throw new SearchApiException("Connectivity issue with the elasticsearch server", ioEx);
     }
+  }
+
+  /**
+   * Statistics of the retries of the index, delete and bulk requests.
+   * @return
+   */
+  public RetryPolicy.RetryStats getRetryStats() {
+    return retryPolicy.getStats();
+  }
+
+  /**
+   * Tells if the failure of a request is transient: connectivity issue, elasticsearch rejecting the
+   * request (too many requests) or being unavailable, or items of a bulk request rejected for the same reasons.
+   * @param failure
+   * @return
+   */
+  public static boolean isTransientError(Throwable failure) {
+    for (Throwable t = failure; t != null; t = t.getCause()) {
+      if (t instanceof BulkItemsRejectedException) {
+        return true;
+      }
+      if (t instanceof ElasticsearchException esEx) {
+        return isTransientStatus(esEx.status());
+      }
+      if (t instanceof IOException) {
+        return true;
+      }
+    }
+    return false;
+  }
 
-    return OperationStatus.FAILED;
+  /**
+   * When the server asked to retry a failed request (Retry-After header of a 429 or 503 answer).
+   * Elasticsearch doesn't send it when rejecting a request but a proxy in front of it may. The header is only
+   * available when the low level client failed with the response.
+   * @param failure
+   * @return the delay or null if the server didn't ask for one
+   */
+  public static Duration getRetryAfter(Throwable failure) {
+    for (Throwable t = failure; t != null; t = t.getCause()) {
+      if (t instanceof ResponseException responseEx) {
+        return ApiConcurrencyLimits.parseRetryAfter(responseEx.getResponse().getHeader("Retry-After"));
+      }
+    }
+    return null;
+  }
+
+  private static BulkOperation toBulkOperation(IndexingOperation operation) {
+    return switch (operation.operationType()) {
+      case INDEX -> BulkOperation.of(b -> b.index(idx -> idx
+          .id(operation.documentId())
+          .index(operation.indexName())
+          .document(operation.payload())));
+      case DELETE -> BulkOperation.of(b -> b.delete(del -> del
+          .id(operation.documentId())
+          .index(operation.indexName())));
+    };
+  }
+
+  /**
+   * Rejected (too many requests), bad gateway, unavailable and gateway timeout are considered transient,
+   * for a request as well as for the items of a bulk request.
+   * @param status http status
+   * @return
+   */
+  public static boolean isTransientStatus(int status) {
+    return status == 429 || status == 502 || status == 503 || status == 504;
+  }
+
+  /**
+   * Some items of a bulk request were rejected with a transient error, thrown to have them retried by the
+   * retry policy.
+   */
+  private static final class BulkItemsRejectedException extends SearchApiException {
+
+    private static final long serialVersionUID = 4119846375409123617L;
+
+    BulkItemsRejectedException(int count) {
+      super(count + " bulk item(s) rejected with a transient error");
+    }
   }
 
   public SearchResponse<JsonNode> search(List<String> indexNames, String documentType, String documentId) throws SearchApiException {
@@ -140,12 +329,27 @@ public class ElasticSearchDocumentIndexer implements DocumentIndexer {
     }
   }
 
-  public long count(List<String> indexNames, String documentType, String documentId) throws SearchApiException {
-    try {
-      return client.count(cb -> cb.index(indexNames).query(buildSearchIncludedDocumentQuery(documentType, documentId))).count();
-    } catch (IOException ex) {
-      throw new SearchApiException("Error during search processing", ex);
-    }
+  /**
+   * Scan all the documents including the document identified by type and id.
+   * Only the type and id of the documents are returned. The caller is responsible to close the scan.
+   * @param indices
+   * @param documentType
+   * @param documentId
+   * @return
+   */
+  public EmbeddedDocumentScan scanEmbeddedDocuments(List<String> indices, String documentType, String documentId) {
+    return scan(indices, buildSearchIncludedDocumentQuery(documentType, documentId));
+  }
+
+  /**
+   * Scan all the documents matching the query. Only the type and id (data.type and data.id) of the documents
+   * are returned. The caller is responsible to close the scan.
+   * @param indices
+   * @param query
+   * @return
+   */
+  public EmbeddedDocumentScan scan(List<String> indices, Query query) {
+    return new EmbeddedDocumentScan(this, indices, query, scanPageSize);
   }
 
   /**
@@ -170,23 +374,63 @@ public class ElasticSearchDocumentIndexer implements DocumentIndexer {
     return nestedIncluded.build()._toQuery();
   }
 
-  public SearchResponse<JsonNode> searchWithPIT(List<String> indices, String documentType, String documentId) throws SearchApiException {
-
+  /**
+   * Open a PIT on the provided indices.
+   * @param indices
+   * @return the PIT id
+   */
+  public String openPIT(List<String> indices) throws SearchApiException {
     try {
-      // create the PIT
-      String pitId = ESClientHelper.openPointInTime(client, indices);
-      SearchRequest sr = buildSearchRequestWithPIT(pitId, buildSearchIncludedDocumentQuery(documentType, documentId),  null);
-      return client.search(sr, JsonNode.class);
-    } catch (IOException ex) {
+      return ESClientHelper.openPointInTime(client, indices);
+    } catch (IOException | ElasticsearchException ex) {
       throw new SearchApiException("Error during search processing", ex);
     }
   }
 
-  public SearchResponse<JsonNode> searchAfter(String pitId, String documentType, String documentId, List<FieldValue> sortFieldValues) throws SearchApiException {
-    SearchRequest sr = buildSearchRequestWithPIT(pitId, buildSearchIncludedDocumentQuery(documentType, documentId), sortFieldValues);
+  /**
+   * Search a page of documents returning only the type and id.
+   * @param indices indices to search, ignored if a PIT is provided
+   * @param pitId optional PIT. When provided, results are sorted by _shard_doc
+   * @param query
+   * @param size
+   * @param searchAfter sort values of the last hit of the previous page (only used with a PIT)
+   * @return
+   */
+  SearchResponse<JsonNode> searchIdentifiers(List<String> indices, String pitId, Query query, int size,
+                                             List<FieldValue> searchAfter) throws SearchApiException {
+    return searchPage(indices, pitId, query, size, searchAfter, SEARCH_FIELDS_TO_RETURN);
+  }
+
+  /**
+   * Search a page of documents returning only the provided fields of the source.
+   * @param indices indices to search, ignored if a PIT is provided
+   * @param pitId optional PIT. When provided, results are sorted by _shard_doc
+   * @param query
+   * @param size
+   * @param searchAfter sort values of the last hit of the previous page (only used with a PIT)
+   * @param sourceFields fields of the source to return
+   * @return
+   */
+  public SearchResponse<JsonNode> searchPage(List<String> indices, String pitId, Query query, int size,
+                                             List<FieldValue> searchAfter, List<String> sourceFields)
+      throws SearchApiException {
+    SearchRequest.Builder builder = new SearchRequest.Builder();
+    if (pitId == null) {
+      builder.index(indices);
+    } else {
+      ESClientHelper.setPitIdOnBuilder(builder, pitId);
+      builder.sort(SHARD_DOC_SORT);
+      if (CollectionUtils.isNotEmpty(searchAfter)) {
+        builder.searchAfter(searchAfter);
+      }
+    }
+    builder.size(size);
+    builder.query(query);
+    builder.source(sourceBuilder -> sourceBuilder.filter(filter -> filter.includes(sourceFields)));
+
     try {
-      return client.search(sr, JsonNode.class);
-    } catch (IOException ex) {
+      return client.search(builder.build(), JsonNode.class);
+    } catch (IOException | ElasticsearchException ex) {
       throw new SearchApiException("Error during search processing", ex);
     }
   }
@@ -204,19 +448,4 @@ public class ElasticSearchDocumentIndexer implements DocumentIndexer {
     }
   }
 
-  private static SearchRequest buildSearchRequestWithPIT(String pitId, Query query, List<FieldValue> searchAfter) {
-
-    SearchRequest.Builder builder = new SearchRequest.Builder();
-    ESClientHelper.setPitIdOnBuilder(builder, pitId);
-    builder.size(ES_PAGE_SIZE);
-    builder.sort(DEFAULT_SORT);
-    builder.query(query);
-
-    if (CollectionUtils.isNotEmpty(searchAfter)) {
-      builder.searchAfter(searchAfter);
-    }
-
-    return SearchRequest.of(b -> builder);
-  }
-
 }
@@ -0,0 +1,238 @@
+package ca.gc.aafc.dina.search.cli.indexing;
+
+import ca.gc.aafc.dina.search.cli.exceptions.SearchApiException;
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.ElasticsearchException;
+import co.elastic.clients.elasticsearch._types.analysis.IndexSettingsAnalysis;
+import co.elastic.clients.elasticsearch.indices.GetAliasResponse;
+import co.elastic.clients.elasticsearch.indices.GetIndexResponse;
+import co.elastic.clients.elasticsearch.indices.IndexSettings;
+import co.elastic.clients.elasticsearch.indices.IndexState;
+import co.elastic.clients.elasticsearch.indices.update_aliases.Action;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Index level operations (creation, settings, aliases) used when rebuilding an index.
+ */
+@Log4j2
+@Service
+public class ElasticSearchIndexAdmin {
+
+  // same format as es-init-container
+  private static final DateTimeFormatter INDEX_SUFFIX_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
+
+  private static final String DEFAULT_REFRESH_INTERVAL = "1s";
+  private static final String DISABLED_REFRESH_INTERVAL = "-1";
+
+  private final ElasticsearchClient client;
+
+  public ElasticSearchIndexAdmin(ElasticsearchClient client) {
+    this.client = client;
+  }
+
+  /**
+   * Generates a new index name for an alias using the current timestamp.
+   * @param alias
+   * @return
+   */
+  public static String newTimestampedIndexName(String alias) {
+    return alias + "_" + LocalDateTime.now().format(INDEX_SUFFIX_FORMATTER);
+  }
+
+  /**
+   * Create an index using a settings file (same format as the create index API body).
+   * @param indexName
+   * @param settingsFile
+   * @throws SearchApiException
+   */
+  public void createIndex(String indexName, Path settingsFile) throws SearchApiException {
+    try (InputStream is = Files.newInputStream(settingsFile)) {
+      client.indices().create(c -> c.index(indexName).withJson(is));
+      log.info("Index {} created from {}", indexName, settingsFile);
+    } catch (ElasticsearchException esEx) {
+      throw new SearchApiException("Elastic search could not create index " + indexName, esEx);
+    } catch (IOException ioEx) {
+      throw new SearchApiException("Error while creating index " + indexName, ioEx);
+    }
+  }
+
+  /**
+   * Create an index by copying the mappings and the analysis settings of the index behind an alias.
+   * @param indexName
+   * @param alias
+   * @throws SearchApiException
+   */
+  public void createIndexFromAlias(String indexName, String alias) throws SearchApiException {
+    try {
+      GetIndexResponse response = client.indices().get(g -> g.index(alias));
+      if (response.result().isEmpty()) {
+        throw new SearchApiException("No index found for " + alias);
+      }
+      IndexState source = response.result().values().iterator().next();
+      IndexSettingsAnalysis analysis = extractAnalysis(source.settings());
+
+      client.indices().create(c -> {
+        c.index(indexName);
+        if (source.mappings() != null) {
+          c.mappings(source.mappings());
+        }
+        if (analysis != null) {
+          c.settings(s -> s.analysis(analysis));
+        }
+        return c;
+      });
+      log.info("Index {} created from the mappings of {}", indexName, alias);
+    } catch (ElasticsearchException esEx) {
+      throw new SearchApiException("Elastic search could not create index " + indexName, esEx);
+    } catch (IOException ioEx) {
+      throw new SearchApiException("Connectivity issue with the elasticsearch server", ioEx);
+    }
+  }
+
+  /**
+   * Disable or restore the refresh of an index. Disabling the refresh speeds up the initial loading.
+   * @param indexName
+   * @param enabled
+   * @throws SearchApiException
+   */
+  public void setRefreshEnabled(String indexName, boolean enabled) throws SearchApiException {
+    String interval = enabled ? DEFAULT_REFRESH_INTERVAL : DISABLED_REFRESH_INTERVAL;
+    try {
+      client.indices().putSettings(p -> p.index(indexName)
+          .settings(s -> s.refreshInterval(t -> t.time(interval))));
+      if (enabled) {
+        client.indices().refresh(r -> r.index(indexName));
+      }
+    } catch (ElasticsearchException esEx) {
+      throw new SearchApiException("Elastic search could not update settings of " + indexName, esEx);
+    } catch (IOException ioEx) {
+      throw new SearchApiException("Connectivity issue with the elasticsearch server", ioEx);
+    }
+  }
+
+  /**
+   * Check if an index (or alias) exists.
+   * @param name
+   * @return
+   * @throws SearchApiException
+   */
+  public boolean exists(String name) throws SearchApiException {
+    try {
+      return client.indices().exists(e -> e.index(name)).value();
+    } catch (ElasticsearchException esEx) {
+      throw new SearchApiException("Elastic search could not check " + name, esEx);
+    } catch (IOException ioEx) {
+      throw new SearchApiException("Connectivity issue with the elasticsearch server", ioEx);
+    }
+  }
+
+  /**
+   * Get the indices currently pointed by the alias.
+   * @param alias
+   * @return the indices or an empty set if the alias doesn't exist
+   * @throws SearchApiException
+   */
+  public Set<String> getAliasIndices(String alias) throws SearchApiException {
+    try {
+      if (!client.indices().existsAlias(e -> e.name(alias)).value()) {
+        return Set.of();
+      }
+      GetAliasResponse response = client.indices().getAlias(g -> g.name(alias));
+      return response.result().keySet();
+    } catch (ElasticsearchException esEx) {
+      throw new SearchApiException("Elastic search could not get alias " + alias, esEx);
+    } catch (IOException ioEx) {
+      throw new SearchApiException("Connectivity issue with the elasticsearch server", ioEx);
+    }
+  }
+
+  /**
+   * Atomically move the alias from its current indices to the new index.
+   * Previous indices are not deleted.
+   * @param alias
+   * @param indexName the index the alias should point to
+   * @return the indices previously pointed by the alias
+   * @throws SearchApiException
+   */
+  public Set<String> swapAlias(String alias, String indexName) throws SearchApiException {
+    Set<String> previousIndices = getAliasIndices(alias);
+
+    List<Action> actions = new ArrayList<>();
+    for (String previous : previousIndices) {
+      if (!previous.equals(indexName)) {
+        actions.add(Action.of(a -> a.remove(r -> r.index(previous).alias(alias))));
+      }
+    }
+    actions.add(Action.of(a -> a.add(ad -> ad.index(indexName).alias(alias))));
+
+    try {
+      client.indices().updateAliases(u -> u.actions(actions));
+      log.info("Alias {} moved from {} to {}", alias, previousIndices, indexName);
+    } catch (ElasticsearchException esEx) {
+      throw new SearchApiException("Elastic search could not update alias " + alias, esEx);
+    } catch (IOException ioEx) {
+      throw new SearchApiException("Connectivity issue with the elasticsearch server", ioEx);
+    }
+    return previousIndices;
+  }
+
+  /**
+   * Atomically delete an index and create an alias with the same name pointing to the new index.
+   * Used to move an index created without alias behind one.
+   * @param name the index to delete, then name of the alias
+   * @param indexName the index the alias should point to
+   * @throws SearchApiException
+   */
+  public void replaceIndexWithAlias(String name, String indexName) throws SearchApiException {
+    try {
+      client.indices().updateAliases(u -> u.actions(
+          Action.of(a -> a.removeIndex(r -> r.index(name))),
+          Action.of(a -> a.add(ad -> ad.index(indexName).alias(name)))));
+      log.info("Index {} replaced by an alias to {}", name, indexName);
+    } catch (ElasticsearchException esEx) {
+      throw new SearchApiException("Elastic search could not replace index " + name, esEx);
+    } catch (IOException ioEx) {
+      throw new SearchApiException("Connectivity issue with the elasticsearch server", ioEx);
+    }
+  }
+
+  /**
+   * Delete an index.
+   * @param indexName
+   * @throws SearchApiException
+   */
+  public void deleteIndex(String indexName) throws SearchApiException {
+    try {
+      client.indices().delete(d -> d.index(indexName));
+      log.info("Index {} deleted", indexName);
+    } catch (ElasticsearchException esEx) {
+      throw new SearchApiException("Elastic search could not delete index " + indexName, esEx);
+    } catch (IOException ioEx) {
+      throw new SearchApiException("Connectivity issue with the elasticsearch server", ioEx);
+    }
+  }
+
+  /**
+   * The analysis settings can be returned at the root or under "index".
+   */
+  private static IndexSettingsAnalysis extractAnalysis(IndexSettings settings) {
+    if (settings == null) {
+      return null;
+    }
+    if (settings.analysis() != null) {
+      return settings.analysis();
+    }
+    return settings.index() != null ? settings.index().analysis() : null;
+  }
+}
@@ -0,0 +1,134 @@
+package ca.gc.aafc.dina.search.cli.indexing;
+
+import ca.gc.aafc.dina.jsonapi.JSONApiDocumentStructure;
+import ca.gc.aafc.dina.search.cli.exceptions.SearchApiException;
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.elasticsearch.core.search.Hit;
+import com.fasterxml.jackson.databind.JsonNode;
+import lombok.extern.log4j.Log4j2;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Streams the (type, id) of all the documents matching a query, page by page.
+ *
+ * The first page is requested without a point in time (PIT). A PIT is only opened if the first page is full,
+ * the scan then restarts on the PIT and skips the documents already returned by the first page.
+ * The PIT is closed once the last page is read or when the scan is closed.
+ */
+@Log4j2
+public class EmbeddedDocumentScan implements AutoCloseable {
+
+  private final ElasticSearchDocumentIndexer indexer;
+  private final List<String> indices;
+  private final Query query;
+  private final int pageSize;
+
+  private boolean firstPageRead = false;
+  private boolean exhausted = false;
+  private String pitId;
+  private List<FieldValue> searchAfter;
+  private Set<DocumentManager.DocumentInfo> firstPage = Set.of();
+
+  EmbeddedDocumentScan(ElasticSearchDocumentIndexer indexer, List<String> indices, Query query, int pageSize) {
+    this.indexer = indexer;
+    this.indices = indices;
+    this.query = query;
+    this.pageSize = pageSize;
+  }
+
+  /**
+   * Get the next page of documents.
+   * @return the documents or an empty list if there is no more documents
+   * @throws SearchApiException
+   */
+  public List<DocumentManager.DocumentInfo> nextPage() throws SearchApiException {
+    if (!firstPageRead) {
+      firstPageRead = true;
+      List<Hit<JsonNode>> hits = hits(indexer.searchIdentifiers(indices, null, query, pageSize, null));
+      List<DocumentManager.DocumentInfo> documents = toDocumentInfo(hits);
+      if (hits.size() < pageSize) {
+        exhausted = true;
+      } else {
+        firstPage = new HashSet<>(documents);
+      }
+      return documents;
+    }
+
+    // documents of the first page are skipped so we loop until we get new documents
+    List<DocumentManager.DocumentInfo> documents = new ArrayList<>();
+    while (documents.isEmpty() && !exhausted) {
+      if (pitId == null) {
+        pitId = indexer.openPIT(indices);
+      }
+      SearchResponse<JsonNode> response = indexer.searchIdentifiers(indices, pitId, query, pageSize, searchAfter);
+      if (response != null && response.pitId() != null) {
+        pitId = response.pitId();
+      }
+
+      List<Hit<JsonNode>> hits = hits(response);
+      if (!hits.isEmpty()) {
+        searchAfter = hits.get(hits.size() - 1).sort();
+      }
+      for (DocumentManager.DocumentInfo docInfo : toDocumentInfo(hits)) {
+        if (!firstPage.contains(docInfo)) {
+          documents.add(docInfo);
+        }
+      }
+
+      if (hits.size() < pageSize) {
+        exhausted = true;
+        closePIT();
+      }
+    }
+    return documents;
+  }
+
+  /**
+   * @return true if all the documents have been returned
+   */
+  public boolean isExhausted() {
+    return exhausted;
+  }
+
+  @Override
+  public void close() {
+    closePIT();
+  }
+
+  private void closePIT() {
+    if (pitId == null) {
+      return;
+    }
+    try {
+      indexer.closePIT(pitId);
+    } catch (SearchApiException e) {
+      log.warn("Can't close PIT: {}", e.getMessage());
+    }
+    pitId = null;
+  }
+
+  private static List<Hit<JsonNode>> hits(SearchResponse<JsonNode> response) {
+    if (response == null || response.hits() == null || response.hits().hits() == null) {
+      return List.of();
+    }
+    return response.hits().hits();
+  }
+
+  private static List<DocumentManager.DocumentInfo> toDocumentInfo(List<Hit<JsonNode>> hits) {
+    List<DocumentManager.DocumentInfo> documents = new ArrayList<>(hits.size());
+    for (Hit<JsonNode> hit : hits) {
+      JsonNode dataNode = hit.source() == null ? null : hit.source().get(JSONApiDocumentStructure.DATA);
+      if (dataNode != null) {
+        documents.add(new DocumentManager.DocumentInfo(dataNode.get(JSONApiDocumentStructure.TYPE).asText(),
+            dataNode.get(JSONApiDocumentStructure.ID).asText()));
+      }
+    }
+    return documents;
+  }
+}
@@ -2,14 +2,16 @@ package ca.gc.aafc.dina.search.cli.indexing;
 
 import ca.gc.aafc.dina.json.JsonHelper;
 import ca.gc.aafc.dina.jsonapi.JSONApiDocumentStructure;
-import ca.gc.aafc.dina.jsonapi.JsonApiCompoundDocument;
 import ca.gc.aafc.dina.search.cli.config.ApiResourceDescriptor;
 import ca.gc.aafc.dina.search.cli.config.AugmentedRelationship;
 import ca.gc.aafc.dina.search.cli.config.IndexSettingDescriptor;
+import ca.gc.aafc.dina.search.cli.config.IndexingProperties;
 import ca.gc.aafc.dina.search.cli.config.ReverseRelationship;
 import ca.gc.aafc.dina.search.cli.config.ServiceEndpointProperties;
 import ca.gc.aafc.dina.search.cli.exceptions.SearchApiException;
+import ca.gc.aafc.dina.search.cli.exceptions.SearchApiHttpException;
 import ca.gc.aafc.dina.search.cli.exceptions.SearchApiNotFoundException;
+import ca.gc.aafc.dina.search.cli.exceptions.SearchApiUnavailableException;
 import ca.gc.aafc.dina.search.cli.http.DinaApiAccess;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
@@ -18,15 +20,25 @@ import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import lombok.extern.log4j.Log4j2;
 import org.apache.commons.collections4.CollectionUtils;
+import org.apache.commons.collections4.ListUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.StreamSupport;
 
 /**
@@ -37,7 +49,7 @@ import java.util.stream.StreamSupport;
  * The assembling process is taking advantage of the included section defined in any JSON API
  * compliant document.
  * 
- * For more information see {@link #assembleDocument(String) assembleDocument} method.
+ * For more information see {@link #assembleDocument(JsonNode) assembleDocument} method.
  * 
  */
 @Log4j2
@@ -54,11 +66,18 @@ public class IndexableDocumentHandler {
 
   private final DinaApiAccess apiAccess;
   private final ServiceEndpointProperties svcEndpointProps;
+  private final IndexingProperties.Assembly assemblySettings;
+  private final PendingDocumentRegistry pendingDocuments;
   private final AtomicBoolean reverseRelationshipErrorReported = new AtomicBoolean(false);
+  // types for which the API rejected a batch fetch (filter[id][IN])
+  private final Set<String> batchFetchUnsupportedTypes = ConcurrentHashMap.newKeySet();
 
-  public IndexableDocumentHandler(DinaApiAccess apiAccess, ServiceEndpointProperties svcEndpointProps) {
+  public IndexableDocumentHandler(DinaApiAccess apiAccess, ServiceEndpointProperties svcEndpointProps,
+                                  IndexingProperties indexingProperties, PendingDocumentRegistry pendingDocuments) {
     this.apiAccess = apiAccess;
     this.svcEndpointProps = svcEndpointProps;
+    this.assemblySettings = indexingProperties.getAssembly();
+    this.pendingDocuments = pendingDocuments;
   }
 
   /**
@@ -69,6 +88,10 @@ public class IndexableDocumentHandler {
    * assembling/insertion. If the document type is matching a type supported for assembling, a call 
    * to the service supporting that document will be done to get its attributes. If successfully retrieved
    * the attributes will then be inserted into the document.
+   *
+   * All the related documents (external, reverse and augmented relationships) are fetched concurrently
+   * using the asynchronous api access (up to the configured maximum in flight per document) and merged
+   * in a fixed order once all fetches are completed.
    * 
    * Once all the included section is done, some cleanup is done on the "meta" section.
    * 
@@ -79,8 +102,19 @@ public class IndexableDocumentHandler {
    */
   public ObjectNode assembleDocument(String rawPayload)
       throws SearchApiException, JsonProcessingException {
+    return assembleDocument(OM.readTree(rawPayload));
+  }
+
+  /**
+   * Same as {@link #assembleDocument(String)} but from an already parsed document.
+   * The provided document is modified and parts of it are reused in the returned document.
+   *
+   * @param document the JSON:API document as received from the API
+   * @return document as {@link ObjectNode}
+   * @throws SearchApiException
+   */
+  public ObjectNode assembleDocument(JsonNode document) throws SearchApiException {
 
-    JsonNode document = OM.readTree(rawPayload);
     ObjectNode newData = OM.createObjectNode();
 
     JsonNode dataSection = JsonHelper.atJsonPtr(document, JSONApiDocumentStructure.DATA_PTR)
@@ -93,29 +127,49 @@ public class IndexableDocumentHandler {
     ArrayNode includedArray = (ArrayNode) JsonHelper.atJsonPtr(document, JSONApiDocumentStructure.INCLUDED_PTR)
         .orElseGet(OM::createArrayNode);
 
-    // Parse document type for augmented relationships lookup
-    JsonApiCompoundDocument jsonApiCompoundDocument = OM.readValue(rawPayload, JsonApiCompoundDocument.class);
-    String documentType = jsonApiCompoundDocument.getType();
-
-    // relationship is optional - process external relationships and add them to included
-    JsonHelper.atJsonPtr(document, JSONApiDocumentStructure.RELATIONSHIP_PTR).ifPresent( rel -> {
-      processExternalRelationships(rel, includedArray);
-    });
-    
-    // Only add included section if it has items
-    if (!includedArray.isEmpty()) {
-      newData.set(JSONApiDocumentStructure.INCLUDED, includedArray);
+    // Document type for augmented relationships lookup
+    String documentType = dataSection.path(JSONApiDocumentStructure.TYPE).asText(null);
+    String documentId = dataSection.path(JSONApiDocumentStructure.ID).asText(null);
+
+    // relationship is optional
+    JsonNode relationshipsNode = JsonHelper.atJsonPtr(document, JSONApiDocumentStructure.RELATIONSHIP_PTR)
+        .orElse(null);
+
+    // Start all the fetches, they will run concurrently
+    FetchContext fetchContext = newFetchContext();
+    List<PendingFetch> externalFetches = startExternalRelationshipFetches(relationshipsNode, includedArray, fetchContext);
+    List<CompletableFuture<List<JsonNode>>> reverseFetches =
+        startReverseRelationshipFetches(documentType, documentId, fetchContext);
+    List<PendingFetch> augmentedFetches = startAugmentedRelationshipFetches(documentType, relationshipsNode,
+        includedArray, externalFetches, fetchContext);
+
+    // documents not returned by their batch are fetched one by one once the batch is completed
+    externalFetches = startFallbackFetches(externalFetches, fetchContext);
+
+    // Merge the results in a fixed order: external, reverse and then augmented relationships
+    mergeExternalRelationships(externalFetches, includedArray);
+    for (CompletableFuture<List<JsonNode>> reverseFetch : reverseFetches) {
+      join(reverseFetch).forEach(dataItem -> {
+        log.debug("Adding the following reverse relationship data item: {}", dataItem::toString);
+        includedArray.add(dataItem);
+      });
     }
+    mergeAugmentedRelationships(augmentedFetches, includedArray);
 
-    // Parse it as json:api document to make it easier
-    processReverseRelationships(documentType, jsonApiCompoundDocument.getIdAsStr(), newData);
-
-    // Process augmented relationships - enrich already-included documents with nested relationship references
-    processAugmentedRelationships(documentType, newData);
+    // some related documents were skipped, the document will need to be re-indexed later
+    if (fetchContext.apiUnavailable().get()) {
+      pendingDocuments.add(new DocumentManager.DocumentInfo(documentType, documentId),
+          PendingDocumentRegistry.Reason.API_UNAVAILABLE);
+    }
 
     // Process included section to apply Node transformations if needed (ex: coordinate extraction for geospatial fields)
     applyNodeTransformations(includedArray);
 
+    // Only add included section if it has items
+    if (!includedArray.isEmpty()) {
+      newData.set(JSONApiDocumentStructure.INCLUDED, includedArray);
+    }
+
     JsonNode metaNode = JsonHelper.atJsonPtr(document, JSONApiDocumentStructure.META_PTR)
         .orElseThrow(() -> new SearchApiException("JSON:API meta section missing"));
     processMeta(metaNode);
@@ -132,58 +186,120 @@ public class IndexableDocumentHandler {
    * @param includeOverride optional override for relationships to include:
    *        - Optional.empty(): use IndexSettingDescriptor defaults (for root document indexing)
    *        - Optional.of(includes): use ApiResourceDescriptor with specified includes (for augmentation/external relationships)
-   * @return the parsed JSON document, or empty if the fetch fails
+   * @return future of the parsed JSON document, or empty if the fetch fails
    */
-  private Optional<JsonNode> fetchDocument(String type, String id, Optional<Set<String>> includeOverride) {
-    try {
-      // Get API resource descriptor (required for all fetches)
-      ApiResourceDescriptor apiResource = svcEndpointProps.getApiResourceDescriptorForType(type);
-      if (apiResource == null) {
-        log.warn("No ApiResourceDescriptor found for type={}, cannot fetch document id={}", type, id);
-        return Optional.empty();
-      }
-      
-      // Determine includes and optionalFields based on mode
-      Set<String> includes;
-      Map<String, List<String>> optionalFields;
+  private CompletableFuture<Optional<JsonNode>> fetchDocument(String type, String id,
+                                                              Optional<Set<String>> includeOverride,
+                                                              FetchContext fetchContext) {
+    // Get API resource descriptor (required for all fetches)
+    ApiResourceDescriptor apiResource = svcEndpointProps.getApiResourceDescriptorForType(type);
+    if (apiResource == null) {
+      log.warn("No ApiResourceDescriptor found for type={}, cannot fetch document id={}", type, id);
+      return CompletableFuture.completedFuture(Optional.empty());
+    }
       
-      if (includeOverride.isPresent()) {
-        // Custom includes mode: use provided includes (may be empty set)
-        includes = includeOverride.get();
-        optionalFields = null;
-      } else {
-        // Normal mode: use IndexSettingDescriptor defaults
-        IndexSettingDescriptor indexSettingDescriptor = svcEndpointProps.getIndexSettingDescriptorForType(type);
-        if (indexSettingDescriptor == null) {
-          log.warn("No IndexSettingDescriptor found for type={}, cannot fetch document id={}", type, id);
-          return Optional.empty();
-        }
-        includes = indexSettingDescriptor.relationships();
-        optionalFields = indexSettingDescriptor.optionalFields();
+    // Determine includes, optionalFields and sparseFields based on mode
+    Set<String> includes;
+    Map<String, List<String>> optionalFields;
+    Map<String, List<String>> sparseFields;
+
+    if (includeOverride.isPresent()) {
+      // Custom includes mode: use provided includes (may be empty set)
+      includes = includeOverride.get();
+      optionalFields = null;
+      sparseFields = apiResource.getRelatedSparseFields();
+    } else {
+      // Normal mode: use IndexSettingDescriptor defaults
+      IndexSettingDescriptor indexSettingDescriptor = svcEndpointProps.getIndexSettingDescriptorForType(type);
+      if (indexSettingDescriptor == null) {
+        log.warn("No IndexSettingDescriptor found for type={}, cannot fetch document id={}", type, id);
+        return CompletableFuture.completedFuture(Optional.empty());
       }
-      
-      String rawPayload = apiAccess.getFromApi(apiResource, includes, optionalFields, id);
-      return Optional.of(OM.readTree(rawPayload));
-      
-    } catch (SearchApiException | JsonProcessingException ex) {
-      log.error("Error fetching document type={}, id={}, message={}", type, id, ex.getMessage());
-      return Optional.empty();
+      includes = indexSettingDescriptor.relationships();
+      optionalFields = indexSettingDescriptor.optionalFields();
+      sparseFields = indexSettingDescriptor.sparseFields();
     }
+
+    return apiAccess.getJsonFromApiAsync(apiResource, includes, optionalFields, sparseFields, id)
+        .thenApply(Optional::of)
+        .exceptionally(ex -> {
+          Throwable cause = unwrap(ex);
+          if (cause instanceof SearchApiUnavailableException) {
+            fetchContext.apiUnavailable().set(true);
+            log.debug("Skipped fetching document type={}, id={}, message={}", type, id, cause.getMessage());
+          } else {
+            log.error("Error fetching document type={}, id={}, message={}", type, id, cause.getMessage());
+          }
+          return Optional.empty();
+        });
   }
   
+  /**
+   * Fetch the documents of the provided type and ids in a single request.
+   * If the request fails, an empty map is returned so the documents are fetched one by one. If the API rejected
+   * the request (400), batch fetching is disabled for the type.
+   *
+   * @param type the document type
+   * @param ids the documents ids
+   * @return future of the found documents (each wrapped in a data section) by id
+   */
+  private CompletableFuture<Map<String, JsonNode>> fetchDocumentsByIds(String type, List<String> ids,
+                                                                       FetchContext fetchContext) {
+    ApiResourceDescriptor apiResource = svcEndpointProps.getApiResourceDescriptorForType(type);
+    return apiAccess.getJsonFromApiByIdsAsync(apiResource, Set.of(), apiResource.getRelatedSparseFields(), ids)
+        .thenApply(response -> {
+          Map<String, JsonNode> found = new HashMap<>();
+          for (JsonNode dataItem : response.path(JSONApiDocumentStructure.DATA)) {
+            ObjectNode document = OM.createObjectNode();
+            document.set(JSONApiDocumentStructure.DATA, dataItem);
+            found.put(dataItem.path(JSONApiDocumentStructure.ID).asText(), document);
+          }
+          return found;
+        })
+        .exceptionally(ex -> {
+          Throwable cause = unwrap(ex);
+          if (cause instanceof SearchApiUnavailableException) {
+            fetchContext.apiUnavailable().set(true);
+          } else if (cause instanceof SearchApiHttpException httpEx && httpEx.getStatusCode() == 400
+              && batchFetchUnsupportedTypes.add(type)) {
+            log.warn("Batch fetch rejected by the API for type={}, documents will be fetched one by one", type);
+          } else {
+            log.debug("Batch fetch failed for type={}, ids={}, message={}", type, ids, cause.getMessage());
+          }
+          return Map.of();
+        });
+  }
+
+  private boolean isBatchFetchEnabled(String type) {
+    ApiResourceDescriptor apiResource = svcEndpointProps.getApiResourceDescriptorForType(type);
+    return assemblySettings.getBatchSize() > 1 && apiResource != null && apiResource.isBatchFetchEnabled(true)
+        && !batchFetchUnsupportedTypes.contains(type);
+  }
+
   /**
    * Processing of the external relationships (objects in other APIs) of a DINA compliant json api object.
    * 
-   * Fetches relationship documents and adds them to the included section.
+   * Starts the fetch of each relationship document that is not already in the included section.
+   * When more than one document of the same type is missing, they are fetched in batches using a single
+   * request per batch (filter[id][IN]). Documents not returned by the batch must then be fetched one by one
+   * using {@link #startFallbackFetches}.
    * 
    * @param relationshipsNode Node containing the relationships section
    * @param includedArray Array containing included json spec objects
+   * @param fetchContext permits limiting the number of concurrent fetches and unavailable API flag
+   * @return the started fetches in the order the relationships were found
    */
-  private void processExternalRelationships(JsonNode relationshipsNode, JsonNode includedArray) {
+  private List<PendingFetch> startExternalRelationshipFetches(JsonNode relationshipsNode, JsonNode includedArray,
+                                                              FetchContext fetchContext) {
+    List<PendingFetch> fetches = new ArrayList<>();
     if (relationshipsNode == null || !relationshipsNode.isObject()) {
-      return;
+      return fetches;
     }
 
+    // missing documents in the order they are found, and grouped by type
+    List<Pair<String, String>> missing = new ArrayList<>();
+    Map<String, Set<String>> missingByType = new LinkedHashMap<>();
+
     // Iterate over each relationship
     relationshipsNode.fields().forEachRemaining(relationshipEntry -> {
       JsonNode relationshipData = relationshipEntry.getValue().get(JSONApiDocumentStructure.DATA);
@@ -203,17 +319,9 @@ public class IndexableDocumentHandler {
         String relationshipId = curObject.get(JSONApiDocumentStructure.ID).asText();
         String relationshipType = curObject.get(JSONApiDocumentStructure.TYPE).asText();
         
-        // Check if the document is already in the includedArray (by id and type)
-        boolean found = false;
-        for (JsonNode includedObject : includedArray) {
-          if (JsonHelper.safeTextEquals(includedObject, JSONApiDocumentStructure.ID, relationshipId)
-            && JsonHelper.safeTextEquals(includedObject, JSONApiDocumentStructure.TYPE, relationshipType)) {
-            found = true;
-            break;
-          }
-        }
-        
-        if (found) {
+        // Check if the document is already in the includedArray or about to be fetched (by id and type)
+        if (findDocumentIndex((ArrayNode) includedArray, relationshipType, relationshipId) != -1
+            || missingByType.getOrDefault(relationshipType, Set.of()).contains(relationshipId)) {
           continue;
         }
         
@@ -221,62 +329,165 @@ public class IndexableDocumentHandler {
         if (svcEndpointProps.getApiResourceDescriptorForType(relationshipType) == null) {
           continue;
         }
-        
-        // Fetch the relationship document
-        Optional<JsonNode> fullDocumentOpt = fetchDocument(relationshipType, relationshipId, Optional.of(Set.of()));
-        if (fullDocumentOpt.isEmpty()) {
-          log.warn("Failed to fetch document: type={}, id={}", relationshipType, relationshipId);
-          continue;
-        }
-        
-        JsonNode fullDocument = fullDocumentOpt.get();
-        
-        // Extract the data section and add to parent's includedArray
-        Optional<JsonNode> dataOpt = JsonHelper.atJsonPtr(fullDocument, JSONApiDocumentStructure.DATA_PTR);
-        if (dataOpt.isPresent()) {
-          ((ArrayNode) includedArray).add(dataOpt.get());
-          log.info("Added document to included: type={}, id={}", relationshipType, relationshipId);
+
+        missing.add(Pair.of(relationshipType, relationshipId));
+        missingByType.computeIfAbsent(relationshipType, k -> new LinkedHashSet<>()).add(relationshipId);
+      }
+    });
+
+    // Start the batch fetches
+    Map<Pair<String, String>, CompletableFuture<Map<String, JsonNode>>> batchByTypeAndId = new HashMap<>();
+    missingByType.forEach((type, ids) -> {
+      if (ids.size() > 1 && isBatchFetchEnabled(type)) {
+        for (List<String> chunk : ListUtils.partition(List.copyOf(ids), assemblySettings.getBatchSize())) {
+          CompletableFuture<Map<String, JsonNode>> batch =
+              fetchWithPermit(fetchContext, () -> fetchDocumentsByIds(type, chunk, fetchContext));
+          chunk.forEach(id -> batchByTypeAndId.put(Pair.of(type, id), batch));
         }
       }
     });
+
+    // Create the fetches in the order the relationships were found
+    for (Pair<String, String> ref : missing) {
+      String type = ref.getLeft();
+      String id = ref.getRight();
+      CompletableFuture<Map<String, JsonNode>> batch = batchByTypeAndId.get(ref);
+      if (batch == null) {
+        fetches.add(new PendingFetch(type, id, fetchWithPermit(fetchContext,
+            () -> fetchDocument(type, id, Optional.of(Set.of()), fetchContext))));
+      } else {
+        fetches.add(new PendingFetch(type, id, batch.thenApply(found -> Optional.ofNullable(found.get(id))),
+            true));
+      }
+    }
+    return fetches;
+  }
+
+  /**
+   * Wait for the batches and start a fetch by id for each document not returned by its batch.
+   * The fetches are started by the calling thread so they are limited by the permits like the others.
+   *
+   * @param fetches fetches started by {@link #startExternalRelationshipFetches}
+   * @param fetchContext permits limiting the number of concurrent fetches and unavailable API flag
+   * @return the fetches with the documents missing from their batch replaced by a fetch by id
+   */
+  private List<PendingFetch> startFallbackFetches(List<PendingFetch> fetches, FetchContext fetchContext) {
+    List<PendingFetch> withFallbacks = new ArrayList<>(fetches.size());
+    for (PendingFetch fetch : fetches) {
+      if (fetch.batched() && join(fetch.result()).isEmpty()) {
+        withFallbacks.add(new PendingFetch(fetch.type(), fetch.id(), fetchWithPermit(fetchContext,
+            () -> fetchDocument(fetch.type(), fetch.id(), Optional.of(Set.of()), fetchContext))));
+      } else {
+        withFallbacks.add(fetch);
+      }
+    }
+    return withFallbacks;
+  }
+
+  /**
+   * Wait for the external relationships fetches and add the fetched documents to the included section.
+   *
+   * @param fetches fetches started by {@link #startExternalRelationshipFetches}
+   * @param includedArray Array containing included json spec objects
+   */
+  private void mergeExternalRelationships(List<PendingFetch> fetches, ArrayNode includedArray) {
+    for (PendingFetch fetch : fetches) {
+      Optional<JsonNode> fullDocumentOpt = join(fetch.result());
+      if (fullDocumentOpt.isEmpty()) {
+        log.warn("Failed to fetch document: type={}, id={}", fetch.type(), fetch.id());
+        continue;
+      }
+
+      // Extract the data section and add to parent's includedArray
+      Optional<JsonNode> dataOpt = JsonHelper.atJsonPtr(fullDocumentOpt.get(), JSONApiDocumentStructure.DATA_PTR);
+      if (dataOpt.isPresent()) {
+        includedArray.add(dataOpt.get());
+        log.info("Added document to included: type={}, id={}", fetch.type(), fetch.id());
+      }
+    }
   }
   
   /**
    * Process augmented relationships by re-fetching documents already in the included section
-   * with additional nested relationship references. Replaces the existing entry with the enriched version
-   * that contains relationship type/id references in the relationships section.
+   * with additional nested relationship references.
+   * Only documents that are in the included section or about to be added by an external relationship fetch
+   * are re-fetched.
    * 
    * @param documentType The type of the parent document
-   * @param assembledDoc The assembled document with included section
+   * @param relationshipsNode Node containing the relationships section
+   * @param includedArray Array containing included json spec objects
+   * @param externalFetches fetches started by {@link #startExternalRelationshipFetches}
+   * @param fetchContext permits limiting the number of concurrent fetches and unavailable API flag
+   * @return the started fetches
    */
-  private void processAugmentedRelationships(String documentType, JsonNode assembledDoc) {
+  private List<PendingFetch> startAugmentedRelationshipFetches(String documentType, JsonNode relationshipsNode,
+                                                               ArrayNode includedArray,
+                                                               List<PendingFetch> externalFetches,
+                                                               FetchContext fetchContext) {
+    List<PendingFetch> fetches = new ArrayList<>();
     IndexSettingDescriptor indexSettings = svcEndpointProps.getIndexSettingDescriptorForType(documentType);
     if (indexSettings == null || CollectionUtils.isEmpty(indexSettings.augmentedRelationships())) {
-      return;
-    }
-    
-    JsonNode includedNode = assembledDoc.get(JSONApiDocumentStructure.INCLUDED);
-    if (includedNode == null || !includedNode.isArray()) {
-      return;
+      return fetches;
     }
-    
-    JsonNode relationshipsNode = assembledDoc.at("/data/relationships");
-    if (relationshipsNode.isMissingNode() || !relationshipsNode.isObject()) {
-      return;
+
+    if (relationshipsNode == null || !relationshipsNode.isObject()) {
+      return fetches;
     }
     
-    ArrayNode includedArray = (ArrayNode) includedNode;
-    
-    // For each configured augmented relationship, find and enrich the corresponding documents
+    // For each configured augmented relationship, find the corresponding documents
     for (AugmentedRelationship augmentedRel : indexSettings.augmentedRelationships()) {
       JsonNode relationship = relationshipsNode.get(augmentedRel.relationshipName());
       if (relationship == null) {
         continue;
       }
-      
-      List<JsonNode> relationshipRefs = extractRelationshipReferences(relationship);
-      for (JsonNode ref : relationshipRefs) {
-        augmentDocumentInIncluded(includedArray, ref, augmentedRel.nestedRelationships());
+
+      Set<String> includes = Set.copyOf(augmentedRel.nestedRelationships());
+      for (JsonNode ref : extractRelationshipReferences(relationship)) {
+        String type = ref.get(JSONApiDocumentStructure.TYPE).asText();
+        String id = ref.get(JSONApiDocumentStructure.ID).asText();
+
+        if (findDocumentIndex(includedArray, type, id) == -1
+            && externalFetches.stream().noneMatch(f -> f.matches(type, id))) {
+          continue; // Not in included array
+        }
+
+        // Re-fetch with nested includes
+        log.info("Augmenting document: type={}, id={} with nested includes: {}", type, id, includes);
+        fetches.add(new PendingFetch(type, id, fetchWithPermit(fetchContext,
+            () -> fetchDocument(type, id, Optional.of(includes), fetchContext))));
+      }
+    }
+    return fetches;
+  }
+
+  /**
+   * Wait for the augmented relationships fetches and replace the existing entries in the included section
+   * with the enriched version that contains relationship type/id references in the relationships section.
+   *
+   * @param fetches fetches started by {@link #startAugmentedRelationshipFetches}
+   * @param includedArray the included array to search and modify
+   */
+  private void mergeAugmentedRelationships(List<PendingFetch> fetches, ArrayNode includedArray) {
+    for (PendingFetch fetch : fetches) {
+      Optional<JsonNode> enrichedDocOpt = join(fetch.result());
+
+      // Find the document in included array
+      int index = findDocumentIndex(includedArray, fetch.type(), fetch.id());
+      if (index == -1) {
+        continue; // external fetch of the document failed
+      }
+
+      if (enrichedDocOpt.isEmpty()) {
+        log.warn("Failed to fetch augmented document: type={}, id={}", fetch.type(), fetch.id());
+        continue;
+      }
+
+      // Extract and replace with enriched data
+      Optional<JsonNode> enrichedDataOpt = JsonHelper.atJsonPtr(enrichedDocOpt.get(), JSONApiDocumentStructure.DATA_PTR);
+      if (enrichedDataOpt.isPresent()) {
+        includedArray.set(index, enrichedDataOpt.get());
+      } else {
+        log.warn("No data section in enriched document for type={}, id={}", fetch.type(), fetch.id());
       }
     }
   }
@@ -305,42 +516,6 @@ public class IndexableDocumentHandler {
     return List.of();
   }
   
-  /**
-   * Find and augment a document in the included array with nested relationship references.
-   * 
-   * @param includedArray the included array to search and modify
-   * @param reference the reference object containing type and id
-   * @param nestedRelationships the nested relationships to include when fetching
-   */
-  private void augmentDocumentInIncluded(ArrayNode includedArray, JsonNode reference, List<String> nestedRelationships) {
-    String type = reference.get(JSONApiDocumentStructure.TYPE).asText();
-    String id = reference.get(JSONApiDocumentStructure.ID).asText();
-    
-    // Find the document in included array
-    int index = findDocumentIndex(includedArray, type, id);
-    if (index == -1) {
-      return; // Not in included array
-    }
-    
-    // Re-fetch with nested includes
-    Set<String> includes = Set.copyOf(nestedRelationships);
-    log.info("Augmenting document: type={}, id={} with nested includes: {}", type, id, includes);
-    
-    Optional<JsonNode> enrichedDocOpt = fetchDocument(type, id, Optional.of(includes));
-    if (enrichedDocOpt.isEmpty()) {
-      log.warn("Failed to fetch augmented document: type={}, id={}", type, id);
-      return;
-    }
-    
-    // Extract and replace with enriched data
-    Optional<JsonNode> enrichedDataOpt = JsonHelper.atJsonPtr(enrichedDocOpt.get(), JSONApiDocumentStructure.DATA_PTR);
-    if (enrichedDataOpt.isPresent()) {
-      includedArray.set(index, enrichedDataOpt.get());
-    } else {
-      log.warn("No data section in enriched document for type={}, id={}", type, id);
-    }
-  }
-  
   /**
    * Find the index of a document in the included array by type and id.
    * 
@@ -403,51 +578,127 @@ public class IndexableDocumentHandler {
    * @throws SearchApiException
    */
   public void processReverseRelationships(String documentType, String documentId, JsonNode newDoc) throws SearchApiException {
+    FetchContext fetchContext = newFetchContext();
+    for (CompletableFuture<List<JsonNode>> reverseFetch : startReverseRelationshipFetches(documentType, documentId, fetchContext)) {
+      for (JsonNode dataItem : join(reverseFetch)) {
+        // Check if included section exists within the current document
+        if (newDoc.has(JSONApiDocumentStructure.INCLUDED)) {
+          log.debug("Included section exists already, adding the following data item: {}", dataItem::toString);
+          JsonNode included = newDoc.get(JSONApiDocumentStructure.INCLUDED);
+          if (included.isArray()) {
+            ((ArrayNode) included).add(dataItem);
+          } else {
+            log.error("Error processing reverse relationships : Included section is not an array");
+          }
+        } else {
+          // Create the included section if it does not exist.
+          log.debug("Create the included section, adding the following data item: {}", dataItem::toString);
+          ArrayNode included = OM.createArrayNode();
+          included.add(dataItem);
+          ((ObjectNode) newDoc).set(JSONApiDocumentStructure.INCLUDED, included);
+        }
+      }
+    }
+    if (fetchContext.apiUnavailable().get()) {
+      pendingDocuments.add(new DocumentManager.DocumentInfo(documentType, documentId),
+          PendingDocumentRegistry.Reason.API_UNAVAILABLE);
+    }
+  }
+
+  /**
+   * Starts the fetch of each reverse relationship configured for the provided type.
+   * Each fetch returns the data items found or an empty list.
+   *
+   * @param documentType
+   * @param documentId
+   * @param fetchContext permits limiting the number of concurrent fetches and unavailable API flag
+   * @return the started fetches in the order of the configuration
+   */
+  private List<CompletableFuture<List<JsonNode>>> startReverseRelationshipFetches(String documentType, String documentId,
+                                                                                FetchContext fetchContext) {
+    List<CompletableFuture<List<JsonNode>>> fetches = new ArrayList<>();
     IndexSettingDescriptor indexSettingDescriptor = svcEndpointProps.getIndexSettingDescriptorForType(documentType);
 
     if (indexSettingDescriptor != null && CollectionUtils.isNotEmpty(indexSettingDescriptor.reverseRelationships())) {
       for (ReverseRelationship rr : indexSettingDescriptor.reverseRelationships()) {
         ApiResourceDescriptor apiRd = svcEndpointProps.getApiResourceDescriptorForType(rr.type());
         if (apiRd != null && apiRd.isEnabled(true)) {
-          try {
-            log.debug("Checking for reverse relationship type:{}, relationshipName:{}, id: {}", apiRd.type(),rr.relationshipName(), documentId);
-            String rawPayload = apiAccess.getFromApiByFilter(apiRd, null, Map.of(), Pair.of("filter[" + rr.relationshipName() + "]", documentId));
-
-            // this is expected to be an array
-            JsonNode document = OM.readTree(rawPayload);
-            if (JsonHelper.hasFieldAndIsArray(document, JSONApiDocumentStructure.DATA)) {
-              JsonNode dataArray = document.get(JSONApiDocumentStructure.DATA);
-              for (JsonNode dataItem : dataArray) {
-                // Check if included section exists within the current document
-                if (newDoc.has(JSONApiDocumentStructure.INCLUDED)) {
-                  log.debug("Included section exists already, adding the following data item: {}", dataItem::toString);
-                  JsonNode included = newDoc.get(JSONApiDocumentStructure.INCLUDED);
-                  if (included.isArray()) {
-                    ((ArrayNode) included).add(dataItem);
-                  } else {
-                    log.error("Error processing reverse relationships : Included section is not an array");
-                  }
-                } else {
-                  // Create the included section if it does not exist.
-                  log.debug("Create the included section, adding the following data item: {}", dataItem::toString);
-                  ArrayNode included = OM.createArrayNode();
-                  included.add(dataItem);
-                  ((ObjectNode) newDoc).set(JSONApiDocumentStructure.INCLUDED, included);
-                }
-              }
-            }
-          } catch (SearchApiNotFoundException ex) {
+          fetches.add(fetchWithPermit(fetchContext, () -> fetchReverseRelationship(apiRd, rr, documentId, fetchContext)));
+        }
+      }
+    }
+    return fetches;
+  }
+
+  private CompletableFuture<List<JsonNode>> fetchReverseRelationship(ApiResourceDescriptor apiRd, ReverseRelationship rr,
+                                                                   String documentId, FetchContext fetchContext) {
+    log.debug("Checking for reverse relationship type:{}, relationshipName:{}, id: {}", apiRd.type(),rr.relationshipName(), documentId);
+    return apiAccess.getJsonFromApiByFilterAsync(apiRd, null, Map.of(), Pair.of("filter[" + rr.relationshipName() + "]", documentId))
+        .thenApply(document -> {
+          // this is expected to be an array
+          List<JsonNode> dataItems = new ArrayList<>();
+          if (JsonHelper.hasFieldAndIsArray(document, JSONApiDocumentStructure.DATA)) {
+            document.get(JSONApiDocumentStructure.DATA).forEach(dataItems::add);
+          }
+          return dataItems;
+        })
+        .exceptionally(ex -> {
+          Throwable cause = unwrap(ex);
+          if (cause instanceof SearchApiNotFoundException) {
             // no-op
             log.debug("No reverse relationship found for type:{}, relationshipName:{}, id: {}", apiRd.type(),rr.relationshipName(), documentId);
-          } catch (SearchApiException ex) {
+          } else if (cause instanceof SearchApiUnavailableException) {
+            fetchContext.apiUnavailable().set(true);
+            log.debug("Skipped reverse relationship type:{}, id: {}, API unavailable", apiRd.type(), documentId);
+          } else if (cause instanceof SearchApiException) {
             if (reverseRelationshipErrorReported.compareAndSet(false, true)) {
-              log.error("Exception processing reverse relationships. This won't be reported again.", ex);
+              log.error("Exception processing reverse relationships. This won't be reported again.", cause);
             }
-          } catch (JsonProcessingException e) {
-            throw new RuntimeException(e);
+          } else {
+            throw new CompletionException(new RuntimeException(cause));
           }
-        }
+          return List.of();
+        });
+  }
+
+  /**
+   * Start the fetch once a permit is available. The permit is released when the fetch completes.
+   * The calling thread is blocked while the maximum number of fetches are in flight.
+   * @param fetchContext
+   * @param fetch
+   * @return
+   */
+  private static <T> CompletableFuture<T> fetchWithPermit(FetchContext fetchContext,
+                                                          Supplier<CompletableFuture<T>> fetch) {
+    Semaphore fetchPermits = fetchContext.permits();
+    fetchPermits.acquireUninterruptibly();
+    CompletableFuture<T> future;
+    try {
+      future = fetch.get();
+    } catch (RuntimeException ex) {
+      fetchPermits.release();
+      throw ex;
+    }
+    return future.whenComplete((result, ex) -> fetchPermits.release());
+  }
+
+  private static Throwable unwrap(Throwable ex) {
+    return ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+  }
+
+  /**
+   * Wait for the result of the future. Unchecked exception thrown by the fetch are re-thrown as is.
+   * @param future
+   * @return
+   */
+  private static <T> T join(CompletableFuture<T> future) {
+    try {
+      return future.join();
+    } catch (CompletionException ex) {
+      if (ex.getCause() instanceof RuntimeException rEx) {
+        throw rEx;
       }
+      throw ex;
     }
   }
 
@@ -470,6 +721,33 @@ public class IndexableDocumentHandler {
     }
   }
 
+  private FetchContext newFetchContext() {
+    return new FetchContext(new Semaphore(assemblySettings.getMaxConcurrentFetches()), new AtomicBoolean(false));
+  }
+
+  /**
+   * State shared by the fetches of a single document.
+   * @param permits limiting the number of concurrent fetches
+   * @param apiUnavailable set when a fetch was skipped because the API is unavailable
+   */
+  record FetchContext(Semaphore permits, AtomicBoolean apiUnavailable) {
+  }
+
   record JsonNodeTransformation(String nodeName, String attribute, Function<JsonNode, JsonNode> transformer) {
   }
+
+  /**
+   * Fetch of a related document that is running or completed.
+   * @param batched the document is taken from a batch and must be fetched by id if the batch didn't return it
+   */
+  record PendingFetch(String type, String id, CompletableFuture<Optional<JsonNode>> result, boolean batched) {
+
+    PendingFetch(String type, String id, CompletableFuture<Optional<JsonNode>> result) {
+      this(type, id, result, false);
+    }
+
+    boolean matches(String otherType, String otherId) {
+      return type.equals(otherType) && id.equals(otherId);
+    }
+  }
 }
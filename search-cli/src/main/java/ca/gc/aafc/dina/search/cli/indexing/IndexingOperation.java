@@ -0,0 +1,26 @@
+package ca.gc.aafc.dina.search.cli.indexing;
+
+/**
+ * Operation to be sent to the index as part of a bulk request.
+ *
+ * @param operationType type of operation
+ * @param documentId document identifier
+ * @param indexName index targeted by the operation
+ * @param payload document to index, null for delete operations
+ */
+public record IndexingOperation(OperationType operationType, String documentId, String indexName,
+                                Object payload) {
+
+  public enum OperationType {
+    INDEX,
+    DELETE
+  }
+
+  public static IndexingOperation index(String documentId, Object payload, String indexName) {
+    return new IndexingOperation(OperationType.INDEX, documentId, indexName, payload);
+  }
+
+  public static IndexingOperation delete(String documentId, String indexName) {
+    return new IndexingOperation(OperationType.DELETE, documentId, indexName, null);
+  }
+}
@@ -0,0 +1,94 @@
+package ca.gc.aafc.dina.search.cli.indexing;
+
+import ca.gc.aafc.dina.search.cli.config.IndexingProperties;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps track of the documents that need to be re-indexed later:
+ * - documents that could not be re-indexed because of a transient error that persisted after all the retries
+ * - documents indexed without some related documents because the API serving them was unavailable
+ *
+ * The registry is bounded, documents added once it is full are dropped (and counted).
+ */
+@Log4j2
+@Component
+public class PendingDocumentRegistry {
+
+  public enum Reason {
+    RETRIES_EXHAUSTED,
+    API_UNAVAILABLE
+  }
+
+  private final int maxSize;
+  private final Map<DocumentManager.DocumentInfo, Reason> pending = new ConcurrentHashMap<>();
+  private final Map<Reason, AtomicLong> addedCounts = new EnumMap<>(Reason.class);
+  private final AtomicLong droppedCount = new AtomicLong();
+
+  public PendingDocumentRegistry(IndexingProperties indexingProperties) {
+    this.maxSize = indexingProperties.getReplay().getMaxDocuments();
+    for (Reason reason : Reason.values()) {
+      addedCounts.put(reason, new AtomicLong());
+    }
+  }
+
+  /**
+   * Add a document to re-index later.
+   * @param docInfo
+   * @param reason
+   */
+  public void add(DocumentManager.DocumentInfo docInfo, Reason reason) {
+    if (docInfo == null || docInfo.type() == null || docInfo.id() == null) {
+      return;
+    }
+    if (pending.size() >= maxSize) {
+      if (droppedCount.getAndIncrement() == 0) {
+        log.warn("Too many documents pending re-indexing ({}), new ones will be dropped", maxSize);
+      }
+      return;
+    }
+    if (pending.putIfAbsent(docInfo, reason) == null) {
+      addedCounts.get(reason).incrementAndGet();
+      log.debug("Document type:{}, id:{} pending re-indexing ({})", docInfo.type(), docInfo.id(), reason);
+    }
+  }
+
+  /**
+   * Remove and return all the pending documents.
+   * @return
+   */
+  public List<DocumentManager.DocumentInfo> drain() {
+    List<DocumentManager.DocumentInfo> drained = new ArrayList<>();
+    for (DocumentManager.DocumentInfo docInfo : pending.keySet()) {
+      if (pending.remove(docInfo) != null) {
+        drained.add(docInfo);
+      }
+    }
+    return drained;
+  }
+
+  public int size() {
+    return pending.size();
+  }
+
+  public PendingDocumentStats getStats() {
+    return new PendingDocumentStats(pending.size(), addedCounts.get(Reason.RETRIES_EXHAUSTED).get(),
+        addedCounts.get(Reason.API_UNAVAILABLE).get(), droppedCount.get());
+  }
+
+  /**
+   * @param pending documents currently waiting
+   * @param retriesExhausted total number of documents added after exhausting their retries
+   * @param apiUnavailable total number of documents added because a related API was unavailable
+   * @param dropped documents not added because the registry was full
+   */
+  public record PendingDocumentStats(int pending, long retriesExhausted, long apiUnavailable, long dropped) {
+  }
+}
@@ -0,0 +1,148 @@
+package ca.gc.aafc.dina.search.cli.indexing;
+
+import ca.gc.aafc.dina.search.cli.exceptions.SearchApiException;
+import lombok.extern.log4j.Log4j2;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Re-indexing of a set of documents triggered by the change of a single document.
+ *
+ * Documents are assembled by a shared pool of workers and sent to the index through a {@link BulkIndexingBuffer}.
+ * The number of documents waiting to be assembled is bounded: {@link #submit(DocumentManager.DocumentInfo)}
+ * blocks until a worker is done with a previous document.
+ * Documents failing with a transient error are given to the optional transient failure listener, all the documents
+ * that could not be assembled to the optional failure listener.
+ */
+@Log4j2
+class ReIndexCascade implements AutoCloseable {
+
+  /**
+   * Builds the operation to send to the index for a document.
+   */
+  @FunctionalInterface
+  interface OperationBuilder {
+    IndexingOperation build(DocumentManager.DocumentInfo docInfo) throws SearchApiException;
+  }
+
+  private final String name;
+  private final ExecutorService workers;
+  private final OperationBuilder operationBuilder;
+  private final BulkIndexingBuffer bulkBuffer;
+  private final int maxPending;
+  private final Semaphore pendingPermits;
+  private final Consumer<ReIndexCascade> onClose;
+  private final Predicate<Throwable> transientError;
+  private final Consumer<DocumentManager.DocumentInfo> transientFailureListener;
+  private final Consumer<DocumentManager.DocumentInfo> failureListener;
+  private final long startTime = System.currentTimeMillis();
+
+  private final AtomicInteger submitted = new AtomicInteger();
+  private final AtomicInteger assemblyFailed = new AtomicInteger();
+
+  /**
+   * @param transientError tells if a failure is transient
+   * @param transientFailureListener receives the documents that failed with a transient error, can be null
+   */
+  ReIndexCascade(String name, ExecutorService workers, OperationBuilder operationBuilder,
+                 BulkIndexingBuffer bulkBuffer, int maxPending, Consumer<ReIndexCascade> onClose,
+                 Predicate<Throwable> transientError,
+                 Consumer<DocumentManager.DocumentInfo> transientFailureListener) {
+    this(name, workers, operationBuilder, bulkBuffer, maxPending, onClose, transientError,
+        transientFailureListener, null);
+  }
+
+  /**
+   * @param transientError tells if a failure is transient
+   * @param transientFailureListener receives the documents that failed with a transient error, can be null
+   * @param failureListener receives all the documents that could not be assembled or submitted, can be null.
+   *                        Failures to index are reported by the {@link BulkIndexingBuffer}.
+   */
+  ReIndexCascade(String name, ExecutorService workers, OperationBuilder operationBuilder,
+                 BulkIndexingBuffer bulkBuffer, int maxPending, Consumer<ReIndexCascade> onClose,
+                 Predicate<Throwable> transientError,
+                 Consumer<DocumentManager.DocumentInfo> transientFailureListener,
+                 Consumer<DocumentManager.DocumentInfo> failureListener) {
+    this.name = name;
+    this.workers = workers;
+    this.operationBuilder = operationBuilder;
+    this.bulkBuffer = bulkBuffer;
+    this.maxPending = maxPending;
+    this.pendingPermits = new Semaphore(maxPending);
+    this.onClose = onClose;
+    this.transientError = transientError;
+    this.transientFailureListener = transientFailureListener;
+    this.failureListener = failureListener;
+  }
+
+  /**
+   * Submit a document to be re-indexed. Blocks if the maximum number of pending documents is reached.
+   * @param docInfo
+   */
+  void submit(DocumentManager.DocumentInfo docInfo) {
+    pendingPermits.acquireUninterruptibly();
+    submitted.incrementAndGet();
+    try {
+      workers.execute(() -> {
+        try {
+          bulkBuffer.add(operationBuilder.build(docInfo));
+        } catch (SearchApiException | RuntimeException e) {
+          assemblyFailed.incrementAndGet();
+          log.error("Document id {} of type {} could not be re-indexed. (Reason:{})", docInfo.id(), docInfo.type(),
+              e.getMessage());
+          if (transientFailureListener != null && transientError.test(e)) {
+            transientFailureListener.accept(docInfo);
+          }
+          if (failureListener != null) {
+            failureListener.accept(docInfo);
+          }
+        } finally {
+          pendingPermits.release();
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      assemblyFailed.incrementAndGet();
+      pendingPermits.release();
+      log.error("Document id {} of type {} could not be submitted for re-indexing", docInfo.id(), docInfo.type());
+      if (failureListener != null) {
+        failureListener.accept(docInfo);
+      }
+    }
+  }
+
+  /**
+   * Wait until all submitted documents are assembled.
+   */
+  void awaitAssembled() {
+    pendingPermits.acquireUninterruptibly(maxPending);
+    pendingPermits.release(maxPending);
+  }
+
+  CascadeProgress getProgress() {
+    return new CascadeProgress(name, submitted.get(), bulkBuffer.getSucceededCount(),
+        assemblyFailed.get() + bulkBuffer.getFailedCount(), maxPending - pendingPermits.availablePermits(),
+        System.currentTimeMillis() - startTime);
+  }
+
+  /**
+   * Wait for all the documents to be assembled and sent to the index.
+   */
+  @Override
+  public void close() {
+    try {
+      awaitAssembled();
+      bulkBuffer.close();
+    } finally {
+      onClose.accept(this);
+    }
+
+    CascadeProgress progress = getProgress();
+    log.info("Re-indexing triggered by {} completed: {} submitted, {} indexed, {} failed in {} ms",
+        name, progress.submitted(), progress.indexed(), progress.failed(), progress.elapsedMs());
+  }
+}
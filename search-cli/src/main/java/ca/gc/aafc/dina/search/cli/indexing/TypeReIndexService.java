@@ -0,0 +1,216 @@
+package ca.gc.aafc.dina.search.cli.indexing;
+
+import ca.gc.aafc.dina.jsonapi.JSONApiDocumentStructure;
+import ca.gc.aafc.dina.search.cli.config.ApiResourceDescriptor;
+import ca.gc.aafc.dina.search.cli.config.IndexSettingDescriptor;
+import ca.gc.aafc.dina.search.cli.config.IndexingProperties;
+import ca.gc.aafc.dina.search.cli.config.ServiceEndpointProperties;
+import ca.gc.aafc.dina.search.cli.exceptions.SearchApiException;
+import ca.gc.aafc.dina.search.cli.http.OpenIDHttpClient;
+import com.fasterxml.jackson.databind.JsonNode;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Rebuilds the index of a type from the source API.
+ *
+ * The source API is walked by id (keyset paging: each page starts after the last id of the previous one so deleted
+ * documents can't shift the pages), documents of each page are assembled in parallel and sent to a
+ * new timestamped index using bulk requests. Once all pages are processed, the alias is moved to the new index.
+ * A checkpoint file is written after each page so an interrupted re-index can be resumed.
+ *
+ * Documents changed by this instance during the re-index (messages, cascades) are still sent to the current index.
+ * They are recorded and applied to the new index before and right after the alias is moved. Changes made while no
+ * re-index is running (e.g. between an interruption and the resume) or by other instances are not caught up.
+ */
+@Log4j2
+@Service
+public class TypeReIndexService {
+
+  private final OpenIDHttpClient aClient;
+  private final ServiceEndpointProperties svcEndpointProps;
+  private final DocumentManager documentManager;
+  private final ElasticSearchIndexAdmin indexAdmin;
+  private final IndexingProperties.FullReindex settings;
+
+  public TypeReIndexService(OpenIDHttpClient aClient, ServiceEndpointProperties svcEndpointProps,
+                            DocumentManager documentManager, ElasticSearchIndexAdmin indexAdmin,
+                            IndexingProperties indexingProperties) {
+    this.aClient = aClient;
+    this.svcEndpointProps = svcEndpointProps;
+    this.documentManager = documentManager;
+    this.indexAdmin = indexAdmin;
+    this.settings = indexingProperties.getFullReindex();
+  }
+
+  /**
+   * Re-index all the documents of a type into a new index and move the alias to it.
+   *
+   * @param type the type of document (json:api type)
+   * @param settingsFile optional file with the settings and mappings of the new index. If null, the mappings of
+   *                     the current index are copied.
+   * @param resume resume from the checkpoint file if there is one
+   * @param force move the alias even if some documents failed. Otherwise, the alias is not moved and the
+   *              checkpoint is kept so the re-index can be resumed (and forced).
+   * @return the checkpoint representing the final state
+   * @throws SearchApiException
+   */
+  public ReIndexCheckpoint reIndexType(String type, Path settingsFile, boolean resume, boolean force)
+      throws SearchApiException {
+
+    if (!documentManager.isTypeConfigured(type)) {
+      throw new SearchApiException("Unsupported endpoint type: " + type);
+    }
+
+    IndexSettingDescriptor indexSettingDescriptor = svcEndpointProps.getIndexSettingDescriptorForType(type);
+    ApiResourceDescriptor apiResourceDescriptor = svcEndpointProps.getApiResourceDescriptorForType(type);
+    String alias = indexSettingDescriptor.indexName();
+
+    Set<String> currentIndices = indexAdmin.getAliasIndices(alias);
+    if (currentIndices.isEmpty() && indexAdmin.exists(alias)) {
+      throw new SearchApiException(alias + " is an index, not an alias. It can't be swapped.");
+    }
+
+    Path checkpointFile = getCheckpointFile(type);
+    ReIndexCheckpoint checkpoint = resume ? readCheckpoint(checkpointFile) : null;
+
+    if (checkpoint == null) {
+      String targetIndex = ElasticSearchIndexAdmin.newTimestampedIndexName(alias);
+      if (settingsFile != null) {
+        indexAdmin.createIndex(targetIndex, settingsFile);
+      } else {
+        indexAdmin.createIndexFromAlias(targetIndex, alias);
+      }
+      checkpoint = new ReIndexCheckpoint(type, targetIndex, null, 0, 0, 0);
+      writeCheckpoint(checkpointFile, checkpoint);
+    } else {
+      log.info("Resuming re-index of {} into {} after id {}", type, checkpoint.targetIndex(),
+          checkpoint.lastId());
+    }
+
+    indexAdmin.setRefreshEnabled(checkpoint.targetIndex(), false);
+
+    documentManager.startRecordingChanges(alias);
+    try {
+      boolean lastPage = false;
+      while (!lastPage) {
+        List<DocumentManager.DocumentInfo> documents = getPage(apiResourceDescriptor, type, checkpoint.lastId());
+        lastPage = documents.size() < settings.getPageSize();
+
+        if (!documents.isEmpty()) {
+          CascadeProgress progress = documentManager.reIndexDocuments(documents, checkpoint.targetIndex());
+          checkpoint = new ReIndexCheckpoint(type, checkpoint.targetIndex(),
+              documents.getLast().id(), checkpoint.processed() + documents.size(),
+              checkpoint.indexed() + progress.indexed(), checkpoint.failed() + progress.failed());
+          writeCheckpoint(checkpointFile, checkpoint);
+          log.info("Re-index of {}: {} document(s) processed, {} failed", type, checkpoint.processed(),
+              checkpoint.failed());
+        }
+      }
+
+      // documents changed during the walk may have been read before their change
+      checkpoint = applyChanges(checkpoint, documentManager.drainRecordedChanges(alias));
+      writeCheckpoint(checkpointFile, checkpoint);
+
+      indexAdmin.setRefreshEnabled(checkpoint.targetIndex(), true);
+      if (checkpoint.failed() > 0 && !force) {
+        throw new SearchApiException("Re-index of " + type + ": " + checkpoint.failed() +
+            " document(s) failed, the alias is not moved to " + checkpoint.targetIndex() +
+            ". Resume the re-index with force to move it anyway.");
+      }
+
+      Set<String> previousIndices = indexAdmin.swapAlias(alias, checkpoint.targetIndex());
+      // changes sent to the previous index between the last catch up and the swap
+      checkpoint = applyChanges(checkpoint, documentManager.stopRecordingChanges(alias));
+      log.info("Re-index of {} completed: {} indexed, {} failed. Previous index(es) {} can be deleted.", type,
+          checkpoint.indexed(), checkpoint.failed(), previousIndices);
+    } finally {
+      documentManager.stopRecordingChanges(alias);
+    }
+
+    try {
+      Files.deleteIfExists(checkpointFile);
+    } catch (IOException e) {
+      log.warn("Can't delete checkpoint file {}", checkpointFile);
+    }
+    return checkpoint;
+  }
+
+  private ReIndexCheckpoint applyChanges(ReIndexCheckpoint checkpoint,
+                                         Map<DocumentManager.DocumentInfo, IndexingOperation.OperationType> changes) {
+    if (changes.isEmpty()) {
+      return checkpoint;
+    }
+    log.info("Re-index of {}: applying {} document(s) changed during the re-index", checkpoint.type(),
+        changes.size());
+    CascadeProgress progress = documentManager.applyRecordedChanges(changes, checkpoint.targetIndex());
+    return new ReIndexCheckpoint(checkpoint.type(), checkpoint.targetIndex(), checkpoint.lastId(),
+        checkpoint.processed(), checkpoint.indexed() + progress.indexed(), checkpoint.failed() + progress.failed());
+  }
+
+  private List<DocumentManager.DocumentInfo> getPage(ApiResourceDescriptor apiResourceDescriptor, String type,
+                                                     String afterId) throws SearchApiException {
+    String page = aClient.getDataPage(apiResourceDescriptor, afterId, settings.getPageSize());
+
+    List<DocumentManager.DocumentInfo> documents = new ArrayList<>();
+    try {
+      JsonNode data = IndexableDocumentHandler.OM.readTree(page).path(JSONApiDocumentStructure.DATA);
+      for (JsonNode resource : data) {
+        documents.add(new DocumentManager.DocumentInfo(type, resource.path(JSONApiDocumentStructure.ID).asText()));
+      }
+    } catch (IOException e) {
+      throw new SearchApiException("Unable to parse page of type '" + type + "' after id " + afterId, e);
+    }
+    return documents;
+  }
+
+  private Path getCheckpointFile(String type) {
+    return Path.of(settings.getCheckpointDirectory(), "reindex-" + type + ".checkpoint.json");
+  }
+
+  private static ReIndexCheckpoint readCheckpoint(Path checkpointFile) throws SearchApiException {
+    if (!Files.exists(checkpointFile)) {
+      return null;
+    }
+    try {
+      return IndexableDocumentHandler.OM.readValue(checkpointFile.toFile(), ReIndexCheckpoint.class);
+    } catch (IOException e) {
+      throw new SearchApiException("Can't read checkpoint file " + checkpointFile, e);
+    }
+  }
+
+  private static void writeCheckpoint(Path checkpointFile, ReIndexCheckpoint checkpoint)
+      throws SearchApiException {
+    try {
+      // write to a temporary file first so an interruption can't leave a partial checkpoint
+      Path tmp = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+      IndexableDocumentHandler.OM.writeValue(tmp.toFile(), checkpoint);
+      Files.move(tmp, checkpointFile, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      throw new SearchApiException("Can't write checkpoint file " + checkpointFile, e);
+    }
+  }
+
+  /**
+   * State of a re-index of a type.
+   *
+   * @param type the type being re-indexed
+   * @param targetIndex the new index
+   * @param lastId id of the last document processed, the next page starts after it. Null before the first page.
+   * @param processed number of documents processed
+   * @param indexed number of documents indexed
+   * @param failed number of documents that failed
+   */
+  public record ReIndexCheckpoint(String type, String targetIndex, String lastId, int processed, int indexed, int failed) {
+  }
+}
@@ -0,0 +1,75 @@
+package ca.gc.aafc.dina.search.cli.messaging;
+
+import ca.gc.aafc.dina.messaging.config.RabbitMQQueueProperties;
+import ca.gc.aafc.dina.messaging.message.DocumentOperationNotification;
+import ca.gc.aafc.dina.search.cli.config.SearchQueueConsumerConfiguration;
+import com.rabbitmq.client.Channel;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.support.AmqpHeaders;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.messaging.Message;
+import org.springframework.stereotype.Service;
+
+import lombok.extern.log4j.Log4j2;
+
+import jakarta.inject.Named;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Batch version of {@link DocumentOperationNotificationConsumer}.
+ * Enabled by dina.messaging.listener.batch.enabled.
+ *
+ * Messages are acknowledged individually (manual acknowledgement): the messages of the notifications that could
+ * not be processed are rejected without being requeued (dead-lettered), the others are acknowledged.
+ */
+@Log4j2
+@Service
+@ConditionalOnExpression("${dina.messaging.isConsumer:false} and ${dina.messaging.listener.batch.enabled:false}")
+public class DocumentOperationNotificationBatchConsumer {
+
+  private final IMessageProcessor messageProcessor;
+
+  /**
+   * Constructor
+   * @param messageProcessor
+   * @param queueProperties not used directly, but we take it to make sure we have it available for receiveMessages method
+   */
+  public DocumentOperationNotificationBatchConsumer(IMessageProcessor messageProcessor,
+                                                    @Named("searchQueueProperties") RabbitMQQueueProperties queueProperties) {
+    this.messageProcessor = messageProcessor;
+  }
+
+  @RabbitListener(queues = "#{searchQueueProperties.getQueue()}",
+      containerFactory = SearchQueueConsumerConfiguration.BATCH_CONTAINER_FACTORY)
+  public void receiveMessages(final List<Message<DocumentOperationNotification>> messages, Channel channel)
+      throws IOException {
+    log.info("Received batch of {} message(s)", messages.size());
+
+    List<DocumentOperationNotification> docOperationMessages = messages.stream().map(Message::getPayload).toList();
+
+    // processMessages returns the instances it received
+    Set<DocumentOperationNotification> failed = Collections.newSetFromMap(new IdentityHashMap<>());
+    try {
+      // Delegate to the message processor
+      failed.addAll(messageProcessor.processMessages(docOperationMessages));
+    } catch (RuntimeException e) {
+      log.error("Batch of {} message(s) could not be processed", messages.size(), e);
+      failed.addAll(docOperationMessages);
+    }
+
+    for (Message<DocumentOperationNotification> message : messages) {
+      Long deliveryTag = message.getHeaders().get(AmqpHeaders.DELIVERY_TAG, Long.class);
+      if (failed.contains(message.getPayload())) {
+        log.warn("Rejecting message: {}", message.getPayload());
+        channel.basicNack(deliveryTag, false, false);
+      } else {
+        channel.basicAck(deliveryTag, false);
+      }
+    }
+  }
+
+}
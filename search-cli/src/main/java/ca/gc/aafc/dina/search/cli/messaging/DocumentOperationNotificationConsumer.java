@@ -1,20 +1,21 @@
 package ca.gc.aafc.dina.search.cli.messaging;
 
 import ca.gc.aafc.dina.messaging.config.RabbitMQQueueProperties;
-import ca.gc.aafc.dina.messaging.consumer.RabbitMQMessageConsumer;
 import ca.gc.aafc.dina.messaging.message.DocumentOperationNotification;
+import ca.gc.aafc.dina.search.cli.config.SearchQueueConsumerConfiguration;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
-import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
 import org.springframework.stereotype.Service;
 
 import lombok.extern.log4j.Log4j2;
 
 import jakarta.inject.Named;
+import java.util.concurrent.CompletableFuture;
 
 @Log4j2
 @Service
-@ConditionalOnProperty(prefix = "dina.messaging", name = "isConsumer", havingValue = "true")
-public class DocumentOperationNotificationConsumer implements RabbitMQMessageConsumer<DocumentOperationNotification> {
+@ConditionalOnExpression("${dina.messaging.isConsumer:false} and !${dina.messaging.listener.batch.enabled:false}")
+public class DocumentOperationNotificationConsumer {
   
   private final IMessageProcessor messageProcessor;
 
@@ -28,12 +29,13 @@ public class DocumentOperationNotificationConsumer implements RabbitMQMessageCon
     this.messageProcessor = messageProcessor;
   }
   
-  @RabbitListener(queues = "#{searchQueueProperties.getQueue()}")
-  public void receiveMessage(final DocumentOperationNotification docOperationMessage) {
+  @RabbitListener(queues = "#{searchQueueProperties.getQueue()}",
+      containerFactory = SearchQueueConsumerConfiguration.CONTAINER_FACTORY)
+  public CompletableFuture<Void> receiveMessage(final DocumentOperationNotification docOperationMessage) {
     log.info("Received message and deserialized to : {}", docOperationMessage::toString);
 
-    // Delegate to the message processor
-    messageProcessor.processMessage(docOperationMessage);
+    // Delegate to the message processor, the message is acknowledged (or rejected) when the future completes
+    return messageProcessor.processMessageAsync(docOperationMessage);
   }
 
 }
@@ -2,6 +2,10 @@ package ca.gc.aafc.dina.search.cli.messaging;
 
 import ca.gc.aafc.dina.messaging.message.DocumentOperationNotification;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 public interface IMessageProcessor {
 
   /**
@@ -10,5 +14,41 @@ public interface IMessageProcessor {
    * @param docOpMessage details about the operation done on the document.
    */
   void processMessage(DocumentOperationNotification docOpMessage);
-  
+
+  /**
+   * Processing of an incoming document operation notification that can complete later.
+   * Default implementation processes the message immediately.
+   *
+   * @param docOpMessage details about the operation done on the document.
+   * @return completes when the notification is processed, exceptionally if it could not be processed
+   */
+  default CompletableFuture<Void> processMessageAsync(DocumentOperationNotification docOpMessage) {
+    try {
+      processMessage(docOpMessage);
+      return CompletableFuture.completedFuture(null);
+    } catch (Exception e) {
+      // implementations can throw checked exceptions (SneakyThrows)
+      return CompletableFuture.failedFuture(e);
+    }
+  }
+
+  /**
+   * Processing of a batch of document operation notifications.
+   * Default implementation processes the messages one by one.
+   *
+   * @param docOpMessages notifications in the order they were received.
+   * @return the notifications (instances of docOpMessages) that could not be processed
+   */
+  default List<DocumentOperationNotification> processMessages(List<DocumentOperationNotification> docOpMessages) {
+    List<DocumentOperationNotification> failed = new ArrayList<>();
+    for (DocumentOperationNotification docOpMessage : docOpMessages) {
+      try {
+        processMessage(docOpMessage);
+      } catch (Exception e) {
+        failed.add(docOpMessage);
+      }
+    }
+    return failed;
+  }
+
 }
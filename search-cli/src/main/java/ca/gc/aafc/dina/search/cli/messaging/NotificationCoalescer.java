@@ -0,0 +1,188 @@
+package ca.gc.aafc.dina.search.cli.messaging;
+
+import ca.gc.aafc.dina.messaging.message.DocumentOperationNotification;
+import lombok.extern.log4j.Log4j2;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Delays document notifications for a window of time and keeps only the last one per document (type and id).
+ * The window starts with the first notification received for a document.
+ *
+ * Notifications are emitted to the handler by a single background thread. The future returned by
+ * {@link #submit(DocumentOperationNotification)} completes when the notification, or the one that replaced it, has
+ * been processed so the message can be acknowledged (or rejected) only then.
+ * When the maximum number of windows is open, notifications of other documents are processed immediately by the
+ * calling thread.
+ */
+@Log4j2
+public class NotificationCoalescer implements AutoCloseable {
+
+  public static final int DEFAULT_MAX_PENDING = 1000;
+
+  private final long windowNanos;
+  private final int maxPending;
+  private final Consumer<DocumentOperationNotification> handler;
+
+  private final ConcurrentMap<DocumentKey, PendingNotification> pending = new ConcurrentHashMap<>();
+  private final DelayQueue<PendingNotification> delayQueue = new DelayQueue<>();
+  private final Thread emitter;
+
+  private final AtomicLong delayedCount = new AtomicLong();
+  private final AtomicLong collapsedCount = new AtomicLong();
+  private final AtomicLong emittedCount = new AtomicLong();
+  private final AtomicLong overflowCount = new AtomicLong();
+
+  public NotificationCoalescer(Duration window, Consumer<DocumentOperationNotification> handler) {
+    this(window, DEFAULT_MAX_PENDING, handler);
+  }
+
+  /**
+   * @param window
+   * @param maxPending maximum number of windows open at the same time
+   * @param handler
+   */
+  public NotificationCoalescer(Duration window, int maxPending, Consumer<DocumentOperationNotification> handler) {
+    this.windowNanos = window.toNanos();
+    this.maxPending = maxPending;
+    this.handler = handler;
+    this.emitter = new Thread(this::emitLoop, "notification-coalescer");
+    this.emitter.setDaemon(true);
+    this.emitter.start();
+  }
+
+  /**
+   * Add the notification to the window of its document, it replaces the notification already in the window.
+   * @param docOpMessage
+   * @return completes when the notification (or the one replacing it) is processed, exceptionally if the
+   *         processing failed
+   */
+  public CompletableFuture<Void> submit(DocumentOperationNotification docOpMessage) {
+    DocumentKey key = new DocumentKey(docOpMessage.getDocumentType(), docOpMessage.getDocumentId());
+    CompletableFuture<Void> processed = new CompletableFuture<>();
+    PendingNotification window = pending.compute(key, (k, existing) -> {
+      if (existing == null) {
+        if (pending.size() >= maxPending) {
+          return null;
+        }
+        PendingNotification p = new PendingNotification(k, docOpMessage, System.nanoTime() + windowNanos);
+        p.waiting.add(processed);
+        delayQueue.add(p);
+        delayedCount.incrementAndGet();
+        return p;
+      }
+      // the last notification wins
+      collapsedCount.incrementAndGet();
+      existing.notification = docOpMessage;
+      existing.waiting.add(processed);
+      return existing;
+    });
+
+    if (window == null) {
+      overflowCount.incrementAndGet();
+      process(docOpMessage, List.of(processed));
+    }
+    return processed;
+  }
+
+  public CoalescerStats getStats() {
+    return new CoalescerStats(delayedCount.get(), collapsedCount.get(), emittedCount.get(), overflowCount.get(),
+        pending.size());
+  }
+
+  /**
+   * Stop the background thread and emit all pending notifications immediately.
+   */
+  @Override
+  public void close() {
+    emitter.interrupt();
+    try {
+      emitter.join(TimeUnit.SECONDS.toMillis(5));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    // drainTo only returns the expired windows
+    List<PendingNotification> remaining = new ArrayList<>(pending.values());
+    delayQueue.clear();
+    remaining.forEach(this::emit);
+  }
+
+  private void emitLoop() {
+    while (!Thread.currentThread().isInterrupted()) {
+      try {
+        emit(delayQueue.take());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private void emit(PendingNotification p) {
+    // once removed, the notification can't be changed anymore
+    if (!pending.remove(p.key, p)) {
+      return;
+    }
+    emittedCount.incrementAndGet();
+    process(p.notification, p.waiting);
+  }
+
+  private void process(DocumentOperationNotification notification, List<CompletableFuture<Void>> waiting) {
+    try {
+      handler.accept(notification);
+      waiting.forEach(f -> f.complete(null));
+    } catch (Exception e) {
+      // the handler can throw checked exceptions (SneakyThrows)
+      log.error("Error while processing delayed notification {}", notification, e);
+      waiting.forEach(f -> f.completeExceptionally(e));
+    }
+  }
+
+  /**
+   * Statistics of the coalescer.
+   * @param delayed notifications that started a window
+   * @param collapsed notifications merged into an existing window
+   * @param emitted notifications sent to the handler
+   * @param overflow notifications processed immediately because too many windows were open
+   * @param pending windows currently open
+   */
+  public record CoalescerStats(long delayed, long collapsed, long emitted, long overflow, int pending) {
+  }
+
+  private record DocumentKey(String type, String id) {
+  }
+
+  private static final class PendingNotification implements Delayed {
+    private final DocumentKey key;
+    private final long dueNanos;
+    private volatile DocumentOperationNotification notification;
+    // futures of all the notifications merged in the window, only modified under the lock of the pending map
+    private final List<CompletableFuture<Void>> waiting = new ArrayList<>();
+
+    PendingNotification(DocumentKey key, DocumentOperationNotification notification, long dueNanos) {
+      this.key = key;
+      this.notification = notification;
+      this.dueNanos = dueNanos;
+    }
+
+    @Override
+    public long getDelay(TimeUnit unit) {
+      return unit.convert(dueNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public int compareTo(Delayed o) {
+      return Long.compare(getDelay(TimeUnit.NANOSECONDS), o.getDelay(TimeUnit.NANOSECONDS));
+    }
+  }
+}
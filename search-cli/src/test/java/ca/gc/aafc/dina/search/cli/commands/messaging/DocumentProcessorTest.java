@@ -0,0 +1,100 @@
+package ca.gc.aafc.dina.search.cli.commands.messaging;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+
+import ca.gc.aafc.dina.messaging.message.DocumentOperationNotification;
+import ca.gc.aafc.dina.messaging.message.DocumentOperationType;
+import ca.gc.aafc.dina.search.cli.config.SearchQueueListenerProperties;
+import ca.gc.aafc.dina.search.cli.exceptions.SearchApiException;
+import ca.gc.aafc.dina.search.cli.indexing.CascadeProgress;
+import ca.gc.aafc.dina.search.cli.indexing.DocumentManager;
+
+public class DocumentProcessorTest {
+
+  @DisplayName("Test batch processing collapses duplicated notifications")
+  @Test
+  @SuppressWarnings("unchecked")
+  public void processMessages_duplicatedNotifications_collapsed() throws SearchApiException {
+    DocumentManager documentManager = mock(DocumentManager.class);
+    when(documentManager.isTypeConfigured(anyString())).thenReturn(true);
+    when(documentManager.getIndexForRelationshipType(anyString())).thenReturn(List.of());
+    when(documentManager.reIndexDocuments(anyList(), isNull(), any()))
+        .thenReturn(new CascadeProgress("test", 2, 2, 0, 0, 0));
+
+    DocumentProcessor documentProcessor = new DocumentProcessor(documentManager, new SearchQueueListenerProperties());
+    List<DocumentOperationNotification> failed = documentProcessor.processMessages(List.of(
+        notification("1", DocumentOperationType.UPDATE),
+        notification("1", DocumentOperationType.UPDATE),
+        notification("2", DocumentOperationType.ADD),
+        notification("1", DocumentOperationType.UPDATE),
+        notification("3", DocumentOperationType.DELETE)));
+
+    ArgumentCaptor<List<DocumentManager.DocumentInfo>> captor = ArgumentCaptor.forClass(List.class);
+    InOrder inOrder = inOrder(documentManager);
+    // index operations received before the delete are sent first
+    inOrder.verify(documentManager).reIndexDocuments(captor.capture(), isNull(), any());
+    inOrder.verify(documentManager).deleteDocument("person", "3");
+
+    assertEquals(List.of(new DocumentManager.DocumentInfo("person", "2"),
+        new DocumentManager.DocumentInfo("person", "1")), captor.getValue());
+    verify(documentManager, times(1)).reIndexDocuments(anyList(), isNull(), any());
+    assertEquals(List.of(), failed);
+  }
+
+  @DisplayName("Test only the notifications of the failed documents returned")
+  @Test
+  @SuppressWarnings("unchecked")
+  public void processMessages_documentFailed_onlyItsNotificationsReturned() throws SearchApiException {
+    DocumentManager documentManager = mock(DocumentManager.class);
+    when(documentManager.isTypeConfigured(anyString())).thenReturn(true);
+    when(documentManager.getIndexForRelationshipType(anyString())).thenReturn(List.of());
+    when(documentManager.reIndexDocuments(anyList(), isNull(), any())).thenAnswer(invocation -> {
+      Consumer<DocumentManager.DocumentInfo> failureListener = invocation.getArgument(2);
+      failureListener.accept(new DocumentManager.DocumentInfo("person", "2"));
+      return new CascadeProgress("test", 2, 1, 1, 0, 0);
+    });
+    when(documentManager.deleteDocument("person", "3")).thenThrow(new SearchApiException("unavailable"));
+
+    DocumentOperationNotification update1 = notification("1", DocumentOperationType.UPDATE);
+    DocumentOperationNotification add2 = notification("2", DocumentOperationType.ADD);
+    DocumentOperationNotification update2 = notification("2", DocumentOperationType.UPDATE);
+    DocumentOperationNotification delete3 = notification("3", DocumentOperationType.DELETE);
+
+    DocumentProcessor documentProcessor = new DocumentProcessor(documentManager, new SearchQueueListenerProperties());
+    List<DocumentOperationNotification> failed =
+        documentProcessor.processMessages(List.of(update1, add2, update2, delete3));
+
+    // the other notifications of the batch are still processed
+    assertEquals(3, failed.size());
+    assertSame(add2, failed.get(0));
+    assertSame(update2, failed.get(1));
+    assertSame(delete3, failed.get(2));
+  }
+
+  private static DocumentOperationNotification notification(String id, DocumentOperationType operationType) {
+    return DocumentOperationNotification.builder()
+        .documentType("person")
+        .documentId(id)
+        .operationType(operationType)
+        .dryRun(false)
+        .build();
+  }
+}
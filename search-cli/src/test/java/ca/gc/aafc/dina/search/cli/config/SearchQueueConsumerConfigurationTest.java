@@ -0,0 +1,86 @@
+package ca.gc.aafc.dina.search.cli.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.AcknowledgeMode;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.boot.autoconfigure.amqp.RabbitProperties;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class SearchQueueConsumerConfigurationTest {
+
+  private static SearchQueueConsumerConfiguration newConfiguration(SearchQueueListenerProperties listenerProperties) {
+    SearchQueueProperties queueProperties = new SearchQueueProperties();
+    queueProperties.setQueue("dina.search.queue");
+    return new SearchQueueConsumerConfiguration(queueProperties, listenerProperties);
+  }
+
+  private static SearchQueueListenerProperties listenerProperties(int concurrency, int maxConcurrency,
+                                                                  boolean singleActiveConsumer) {
+    SearchQueueListenerProperties listenerProperties = new SearchQueueListenerProperties();
+    listenerProperties.setConcurrency(concurrency);
+    listenerProperties.setMaxConcurrency(maxConcurrency);
+    listenerProperties.setPrefetch(10);
+    listenerProperties.setSingleActiveConsumer(singleActiveConsumer);
+    return listenerProperties;
+  }
+
+  @DisplayName("Test the queue is declared with single active consumer only when enabled")
+  @Test
+  public void createQueue_singleActiveConsumer_argumentAdded() {
+    Queue queue = newConfiguration(listenerProperties(1, 1, true)).createQueue();
+    assertEquals("dina.search.queue", queue.getName());
+    assertEquals(true, queue.getArguments().get(SearchQueueConsumerConfiguration.SINGLE_ACTIVE_CONSUMER_ARGUMENT));
+
+    queue = newConfiguration(listenerProperties(1, 1, false)).createQueue();
+    assertNull(queue.getArguments().get(SearchQueueConsumerConfiguration.SINGLE_ACTIVE_CONSUMER_ARGUMENT));
+  }
+
+  @DisplayName("Test ordering is only guaranteed with a single consumer or a single active consumer")
+  @Test
+  public void isOrderingGuaranteed_consumers_onlyWithSingleConsumer() {
+    assertTrue(listenerProperties(1, 1, false).isOrderingGuaranteed());
+    assertFalse(listenerProperties(1, 4, false).isOrderingGuaranteed());
+    assertFalse(listenerProperties(2, 1, false).isOrderingGuaranteed());
+    assertTrue(listenerProperties(2, 4, true).isOrderingGuaranteed());
+  }
+
+  @DisplayName("Test the container factory uses the listener settings and acknowledges manually")
+  @Test
+  public void createContainerFactory_listenerSettings_applied() {
+    SearchQueueListenerProperties listenerProperties = listenerProperties(2, 4, false);
+    SimpleRabbitListenerContainerFactory factory = newConfiguration(listenerProperties).createContainerFactory(
+        new SimpleRabbitListenerContainerFactoryConfigurer(new RabbitProperties()), mock(ConnectionFactory.class),
+        listenerProperties);
+
+    assertEquals(2, ReflectionTestUtils.getField(factory, "concurrentConsumers"));
+    assertEquals(4, ReflectionTestUtils.getField(factory, "maxConcurrentConsumers"));
+    assertEquals(10, ReflectionTestUtils.getField(factory, "prefetchCount"));
+    assertEquals(AcknowledgeMode.MANUAL, ReflectionTestUtils.getField(factory, "acknowledgeMode"));
+  }
+
+  @DisplayName("Test the max concurrency of the container factory is never lower than the concurrency")
+  @Test
+  public void createBatchContainerFactory_maxConcurrencyLower_concurrencyUsed() {
+    SearchQueueListenerProperties listenerProperties = listenerProperties(3, 1, false);
+    listenerProperties.getBatch().setSize(20);
+    SimpleRabbitListenerContainerFactory factory = newConfiguration(listenerProperties).createBatchContainerFactory(
+        new SimpleRabbitListenerContainerFactoryConfigurer(new RabbitProperties()), mock(ConnectionFactory.class),
+        listenerProperties);
+
+    assertEquals(3, ReflectionTestUtils.getField(factory, "concurrentConsumers"));
+    assertEquals(3, ReflectionTestUtils.getField(factory, "maxConcurrentConsumers"));
+    assertEquals(20, ReflectionTestUtils.getField(factory, "batchSize"));
+    assertEquals(true, ReflectionTestUtils.getField(factory, "consumerBatchEnabled"));
+    assertEquals(AcknowledgeMode.MANUAL, ReflectionTestUtils.getField(factory, "acknowledgeMode"));
+  }
+}
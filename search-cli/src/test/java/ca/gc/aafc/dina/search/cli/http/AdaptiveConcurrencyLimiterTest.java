@@ -0,0 +1,123 @@
+package ca.gc.aafc.dina.search.cli.http;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class AdaptiveConcurrencyLimiterTest {
+
+  private static final Duration WAIT = Duration.ofMinutes(1);
+  private static final long FAST = Duration.ofMillis(10).toNanos();
+
+  @DisplayName("Test limit increased on success and decreased when a call is dropped")
+  @Test
+  public void release_successThenDropped_limitAdjusted() {
+    AtomicLong clock = new AtomicLong();
+    AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("person", 2, 1, 10, 0.5,
+        Duration.ofSeconds(1), clock::get);
+
+    clock.addAndGet(FAST);
+    CompletableFuture<AdaptiveConcurrencyLimiter.Permit> first = limiter.acquire(WAIT);
+    CompletableFuture<AdaptiveConcurrencyLimiter.Permit> second = limiter.acquire(WAIT);
+    CompletableFuture<AdaptiveConcurrencyLimiter.Permit> third = limiter.acquire(WAIT);
+    assertTrue(first.isDone());
+    assertTrue(second.isDone());
+    assertFalse(third.isDone());
+    assertEquals(1, limiter.getStats().queued());
+
+    // the released permit is given to the waiting call
+    clock.addAndGet(FAST);
+    limiter.release(first.join(), AdaptiveConcurrencyLimiter.Outcome.SUCCESS);
+    assertEquals(3, limiter.getStats().limit());
+    assertTrue(third.isDone());
+
+    clock.addAndGet(FAST);
+    limiter.release(second.join(), AdaptiveConcurrencyLimiter.Outcome.DROPPED);
+    assertEquals(1, limiter.getStats().limit());
+    limiter.release(third.join(), AdaptiveConcurrencyLimiter.Outcome.SUCCESS);
+    assertEquals(0, limiter.getStats().inFlight());
+
+    // slow calls are handled as dropped
+    clock.addAndGet(FAST);
+    CompletableFuture<AdaptiveConcurrencyLimiter.Permit> slow = limiter.acquire(WAIT);
+    clock.addAndGet(Duration.ofSeconds(2).toNanos());
+    limiter.release(slow.join(), AdaptiveConcurrencyLimiter.Outcome.SUCCESS);
+    assertEquals(1, limiter.getStats().limit());
+  }
+
+  @DisplayName("Test the limit is decreased once for the calls started before the last decrease")
+  @Test
+  public void release_droppedInSameRoundTrip_decreasedOnce() {
+    AtomicLong clock = new AtomicLong();
+    AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("person", 8, 1, 10, 0.5,
+        Duration.ofSeconds(1), clock::get);
+
+    clock.addAndGet(FAST);
+    CompletableFuture<AdaptiveConcurrencyLimiter.Permit> first = limiter.acquire(WAIT);
+    CompletableFuture<AdaptiveConcurrencyLimiter.Permit> second = limiter.acquire(WAIT);
+
+    clock.addAndGet(FAST);
+    limiter.release(first.join(), AdaptiveConcurrencyLimiter.Outcome.DROPPED);
+    limiter.release(second.join(), AdaptiveConcurrencyLimiter.Outcome.DROPPED);
+    assertEquals(4, limiter.getStats().limit());
+
+    // a call started after the decrease decreases it again
+    clock.addAndGet(FAST);
+    CompletableFuture<AdaptiveConcurrencyLimiter.Permit> third = limiter.acquire(WAIT);
+    clock.addAndGet(FAST);
+    limiter.release(third.join(), AdaptiveConcurrencyLimiter.Outcome.DROPPED);
+    assertEquals(2, limiter.getStats().limit());
+  }
+
+  @DisplayName("Test no permit given while paused by Retry-After")
+  @Test
+  public void acquire_paused_queuedUntilResumed() {
+    AtomicLong clock = new AtomicLong();
+    AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("person", 4, 1, 10, 0.5,
+        Duration.ofSeconds(1), clock::get);
+
+    limiter.pause(Duration.ofSeconds(30));
+    CompletableFuture<AdaptiveConcurrencyLimiter.Permit> paused = limiter.acquire(WAIT);
+    assertFalse(paused.isDone());
+    assertEquals(30_000, limiter.getStats().pausedForMs());
+    assertEquals(0, limiter.getStats().inFlight());
+
+    clock.addAndGet(Duration.ofSeconds(30).toNanos());
+    CompletableFuture<AdaptiveConcurrencyLimiter.Permit> resumed = limiter.acquire(WAIT);
+    assertTrue(paused.isDone());
+    assertTrue(resumed.isDone());
+    assertEquals(2, limiter.getStats().inFlight());
+  }
+
+  @DisplayName("Test a cancelled permit is given back without changing the limit")
+  @Test
+  public void cancel_permitGivenBack() {
+    AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("person", 1, 1, 10, 0.5,
+        Duration.ofSeconds(1));
+
+    CompletableFuture<AdaptiveConcurrencyLimiter.Permit> first = limiter.acquire(WAIT);
+    CompletableFuture<AdaptiveConcurrencyLimiter.Permit> second = limiter.acquire(WAIT);
+    assertFalse(second.isDone());
+
+    limiter.cancel(first.join());
+    assertTrue(second.isDone());
+    assertEquals(1, limiter.getStats().limit());
+    assertEquals(1, limiter.getStats().inFlight());
+  }
+
+  @DisplayName("Test Retry-After header parsing")
+  @Test
+  public void parseRetryAfter_secondsOrDate() {
+    assertEquals(Duration.ofSeconds(120), ApiConcurrencyLimits.parseRetryAfter("120"));
+    assertEquals(Duration.ZERO, ApiConcurrencyLimits.parseRetryAfter("Wed, 21 Oct 2015 07:28:00 GMT"));
+    assertNull(ApiConcurrencyLimits.parseRetryAfter("soon"));
+  }
+}
@@ -0,0 +1,54 @@
+package ca.gc.aafc.dina.search.cli.http;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import ca.gc.aafc.dina.search.cli.exceptions.SearchApiHttpException;
+import ca.gc.aafc.dina.search.cli.exceptions.SearchApiNotFoundException;
+
+public class ApiCircuitBreakerTest {
+
+  @DisplayName("Test circuit opens after consecutive failures and closes after a successful probe")
+  @Test
+  public void circuitBreaker_consecutiveFailures_openThenClose() {
+    AtomicLong clock = new AtomicLong();
+    ApiCircuitBreaker breaker = new ApiCircuitBreaker("run-summary", 3, Duration.ofSeconds(10), clock::get);
+
+    for (int i = 0; i < 3; i++) {
+      assertTrue(breaker.tryAcquire());
+      breaker.onException(new SearchApiHttpException("unavailable", 503));
+    }
+    assertEquals(ApiCircuitBreaker.State.OPEN, breaker.getStats().state());
+    assertFalse(breaker.tryAcquire());
+
+    // a single probe after the cool-down
+    clock.addAndGet(Duration.ofSeconds(10).toNanos());
+    assertTrue(breaker.tryAcquire());
+    assertFalse(breaker.tryAcquire());
+    breaker.onSuccess();
+
+    assertEquals(ApiCircuitBreaker.State.CLOSED, breaker.getStats().state());
+    assertTrue(breaker.tryAcquire());
+    assertEquals(2, breaker.getStats().skippedCalls());
+    assertEquals(1, breaker.getStats().openedCount());
+  }
+
+  @DisplayName("Test not found and client errors are not failures")
+  @Test
+  public void circuitBreaker_notFound_staysClosed() {
+    ApiCircuitBreaker breaker = new ApiCircuitBreaker("person", 2, Duration.ofSeconds(10));
+    for (int i = 0; i < 5; i++) {
+      assertTrue(breaker.tryAcquire());
+      breaker.onException(i % 2 == 0 ? new SearchApiNotFoundException("404") :
+          new SearchApiHttpException("bad request", 400));
+    }
+    assertEquals(ApiCircuitBreaker.State.CLOSED, breaker.getStats().state());
+  }
+}
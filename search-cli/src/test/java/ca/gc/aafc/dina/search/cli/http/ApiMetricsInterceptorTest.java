@@ -0,0 +1,82 @@
+package ca.gc.aafc.dina.search.cli.http;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+public class ApiMetricsInterceptorTest {
+
+  private static final MediaType JSON = MediaType.get("application/vnd.api+json");
+  private static final String BODY = "{\"data\":{\"type\":\"person\",\"id\":\"1\"}}";
+
+  @DisplayName("Test status codes, errors and bytes recorded by endpoint")
+  @Test
+  public void intercept_responsesAndErrors_recorded() throws IOException {
+    ApiMetrics metrics = new ApiMetrics();
+    ApiMetricsInterceptor interceptor = new ApiMetricsInterceptor(metrics);
+    Request request = new Request.Builder().url("http://localhost:8082/api/v1/person/1")
+        .tag(ApiConcurrencyLimits.ApiType.class, new ApiConcurrencyLimits.ApiType("person"))
+        .build();
+
+    Interceptor.Chain chain = mock(Interceptor.Chain.class);
+    when(chain.request()).thenReturn(request);
+    when(chain.proceed(any()))
+        .thenAnswer(invocation -> new Response.Builder()
+            .request(invocation.getArgument(0))
+            .protocol(Protocol.HTTP_1_1)
+            .code(200)
+            .message("OK")
+            .body(ResponseBody.create(BODY, JSON))
+            .build())
+        .thenThrow(new SocketTimeoutException());
+
+    try (Response response = interceptor.intercept(chain)) {
+      assertEquals(BODY, response.body().string());
+    }
+    assertThrows(SocketTimeoutException.class, () -> interceptor.intercept(chain));
+
+    List<ApiMetrics.EndpointStats> stats = metrics.getStats();
+    assertEquals(1, stats.size());
+    ApiMetrics.EndpointStats person = stats.get(0);
+    assertEquals("person", person.endpoint());
+    assertEquals(2, person.requests());
+    assertEquals(Map.of(200, 1L), person.statusCodes());
+    assertEquals(1, person.ioErrors());
+    assertEquals(BODY.length(), person.bytesIn());
+  }
+
+  @DisplayName("Test percentiles estimated from the buckets")
+  @Test
+  public void percentileMs_recordedLatencies_upperBoundOfBucket() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 0; i < 98; i++) {
+      histogram.record(TimeUnit.MILLISECONDS.toNanos(8));
+    }
+    histogram.record(TimeUnit.MILLISECONDS.toNanos(400));
+    histogram.record(TimeUnit.MILLISECONDS.toNanos(45_000));
+
+    assertEquals(100, histogram.count());
+    assertEquals(10, histogram.percentileMs(0.5));
+    assertEquals(500, histogram.percentileMs(0.99));
+    assertEquals(45_000, histogram.percentileMs(1));
+    assertEquals(45_000, histogram.maxMs());
+  }
+}
@@ -0,0 +1,158 @@
+package ca.gc.aafc.dina.search.cli.http;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anySet;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import ca.gc.aafc.dina.search.cli.config.ApiCacheProperties;
+import ca.gc.aafc.dina.search.cli.config.ApiResilienceProperties;
+import ca.gc.aafc.dina.search.cli.config.ApiResourceDescriptor;
+import ca.gc.aafc.dina.search.cli.exceptions.SearchApiException;
+import ca.gc.aafc.dina.search.cli.exceptions.SearchApiNotFoundException;
+
+public class CacheableApiAccessTest {
+
+  private static final ApiResourceDescriptor PERSON =
+      new ApiResourceDescriptor("person", "http://localhost:8082/api/v1/person", true);
+
+  @DisplayName("Test cached responses are evicted by type and id")
+  @Test
+  public void getFromApi_onEvict_responseFetchedAgain() throws SearchApiException {
+    OpenIDHttpClient client = mock(OpenIDHttpClient.class);
+    when(client.getDataById(any(), anySet(), anyMap(), eq("1"))).thenReturn("{\"v\":1}", "{\"v\":2}");
+
+    ApiCacheProperties props = new ApiCacheProperties();
+    props.setEnabled(true);
+    CacheableApiAccess apiAccess = new CacheableApiAccess(client, props, new ApiResilienceProperties());
+
+    assertEquals("{\"v\":1}", apiAccess.getFromApi(PERSON, Set.of("organizations"), Map.of(), "1"));
+    assertEquals("{\"v\":1}", apiAccess.getFromApi(PERSON, Set.of("organizations"), Map.of(), "1"));
+    verify(client, times(1)).getDataById(any(), anySet(), anyMap(), eq("1"));
+
+    // other types are not affected
+    apiAccess.evict("organization", "1");
+    assertEquals("{\"v\":1}", apiAccess.getFromApi(PERSON, Set.of("organizations"), Map.of(), "1"));
+
+    apiAccess.evict("person", "1");
+    assertEquals("{\"v\":2}", apiAccess.getFromApi(PERSON, Set.of("organizations"), Map.of(), "1"));
+
+    CacheableApiAccess.ApiCacheStats stats = apiAccess.getCacheStats();
+    assertEquals(2, stats.hits());
+    assertEquals(2, stats.misses());
+    assertEquals(1, stats.invalidations());
+  }
+
+  @DisplayName("Test responses are not cached when the cache is disabled")
+  @Test
+  public void getFromApi_cacheDisabled_alwaysFetched() throws SearchApiException {
+    OpenIDHttpClient client = mock(OpenIDHttpClient.class);
+    when(client.getDataById(any(), anySet(), anyMap(), eq("1"))).thenReturn("{}");
+
+    CacheableApiAccess apiAccess = new CacheableApiAccess(client, new ApiCacheProperties(), new ApiResilienceProperties());
+    apiAccess.getFromApi(PERSON, Set.of(), Map.of(), "1");
+    apiAccess.getFromApi(PERSON, Set.of(), Map.of(), "1");
+    verify(client, times(2)).getDataById(any(), anySet(), anyMap(), eq("1"));
+  }
+
+  @DisplayName("Test asynchronous responses share the cache of the blocking calls")
+  @Test
+  public void getFromApiAsync_cacheEnabled_responseCached() throws SearchApiException {
+    OpenIDHttpClient client = mock(OpenIDHttpClient.class);
+    when(client.getDataByIdAsync(any(), anySet(), anyMap(), eq("1")))
+        .thenReturn(CompletableFuture.completedFuture("{\"v\":1}"));
+
+    ApiCacheProperties props = new ApiCacheProperties();
+    props.setEnabled(true);
+    CacheableApiAccess apiAccess = new CacheableApiAccess(client, props, new ApiResilienceProperties());
+
+    assertEquals("{\"v\":1}", apiAccess.getFromApiAsync(PERSON, Set.of(), Map.of(), "1").join());
+    assertEquals("{\"v\":1}", apiAccess.getFromApi(PERSON, Set.of(), Map.of(), "1"));
+    assertEquals("{\"v\":1}", apiAccess.getFromApiAsync(PERSON, Set.of(), Map.of(), "1").join());
+
+    verify(client, times(1)).getDataByIdAsync(any(), anySet(), anyMap(), eq("1"));
+    verify(client, times(0)).getDataById(any(), anySet(), anyMap(), eq("1"));
+  }
+
+  @DisplayName("Test response fetched while its document is evicted not cached")
+  @Test
+  public void getFromApiAsync_evictedDuringFetch_notCached() throws SearchApiException {
+    OpenIDHttpClient client = mock(OpenIDHttpClient.class);
+    CompletableFuture<String> inFlight = new CompletableFuture<>();
+    when(client.getDataByIdAsync(any(), anySet(), anyMap(), eq("1")))
+        .thenReturn(inFlight, CompletableFuture.completedFuture("{\"v\":2}"));
+
+    ApiCacheProperties props = new ApiCacheProperties();
+    props.setEnabled(true);
+    CacheableApiAccess apiAccess = new CacheableApiAccess(client, props, new ApiResilienceProperties());
+
+    CompletableFuture<String> response = apiAccess.getFromApiAsync(PERSON, Set.of(), Map.of(), "1");
+    apiAccess.evict("person", "1");
+    inFlight.complete("{\"v\":1}");
+    assertEquals("{\"v\":1}", response.join());
+
+    // the stale response was not cached
+    assertEquals("{\"v\":2}", apiAccess.getFromApiAsync(PERSON, Set.of(), Map.of(), "1").join());
+    assertEquals(2, apiAccess.getCacheStats().misses());
+  }
+
+  @DisplayName("Test lookups returning a 404 are not repeated until the document changes")
+  @Test
+  public void getFromApiByFilter_notFound_cached() throws SearchApiException {
+    OpenIDHttpClient client = mock(OpenIDHttpClient.class);
+    Pair<String, String> filter = Pair.of("filter[materialSample]", "1");
+    when(client.getDataByFilter(any(), isNull(), anyMap(), eq(filter)))
+        .thenThrow(new SearchApiNotFoundException("404"));
+
+    ApiResilienceProperties resilienceProps = new ApiResilienceProperties();
+    resilienceProps.getNotFoundCache().setEnabled(true);
+    CacheableApiAccess apiAccess = new CacheableApiAccess(client, new ApiCacheProperties(), resilienceProps);
+
+    assertThrows(SearchApiNotFoundException.class, () -> apiAccess.getFromApiByFilter(PERSON, null, Map.of(), filter));
+    assertThrows(SearchApiNotFoundException.class, () -> apiAccess.getFromApiByFilter(PERSON, null, Map.of(), filter));
+    verify(client, times(1)).getDataByFilter(any(), isNull(), anyMap(), eq(filter));
+    assertEquals(1, apiAccess.getCacheStats().notFoundHits());
+
+    // a notification on the type clears the lookups by filter
+    apiAccess.evict("person", "2");
+    assertThrows(SearchApiNotFoundException.class, () -> apiAccess.getFromApiByFilter(PERSON, null, Map.of(), filter));
+    verify(client, times(2)).getDataByFilter(any(), isNull(), anyMap(), eq(filter));
+  }
+
+  @DisplayName("Test only the lookup by id of the evicted document is removed from the not found cache")
+  @Test
+  public void getFromApi_notFoundThenEvicted_onlyEvictedIdFetchedAgain() throws SearchApiException {
+    OpenIDHttpClient client = mock(OpenIDHttpClient.class);
+    when(client.getDataById(any(), anySet(), anyMap(), any())).thenThrow(new SearchApiNotFoundException("404"));
+
+    ApiResilienceProperties resilienceProps = new ApiResilienceProperties();
+    resilienceProps.getNotFoundCache().setEnabled(true);
+    CacheableApiAccess apiAccess = new CacheableApiAccess(client, new ApiCacheProperties(), resilienceProps);
+
+    assertThrows(SearchApiNotFoundException.class, () -> apiAccess.getFromApi(PERSON, Set.of(), Map.of(), "1"));
+    assertThrows(SearchApiNotFoundException.class, () -> apiAccess.getFromApi(PERSON, Set.of(), Map.of(), "2"));
+
+    apiAccess.evict("person", "1");
+    assertThrows(SearchApiNotFoundException.class, () -> apiAccess.getFromApi(PERSON, Set.of(), Map.of(), "1"));
+    assertThrows(SearchApiNotFoundException.class, () -> apiAccess.getFromApi(PERSON, Set.of(), Map.of(), "2"));
+
+    verify(client, times(2)).getDataById(any(), anySet(), anyMap(), eq("1"));
+    verify(client, times(1)).getDataById(any(), anySet(), anyMap(), eq("2"));
+    assertEquals(1, apiAccess.getCacheStats().notFoundHits());
+  }
+}
@@ -0,0 +1,96 @@
+package ca.gc.aafc.dina.search.cli.http;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+public class ConditionalRequestInterceptorTest {
+
+  private static final MediaType JSON = MediaType.get("application/vnd.api+json");
+  private static final String BODY = "{\"data\":{\"type\":\"person\",\"id\":\"1\"}}";
+
+  private static Response.Builder response(Request request, int code) {
+    return new Response.Builder()
+        .request(request)
+        .protocol(Protocol.HTTP_1_1)
+        .code(code)
+        .message(code == 200 ? "OK" : "Not Modified");
+  }
+
+  @DisplayName("Test 304 answers are served from the kept body")
+  @Test
+  public void intercept_notModified_keptBodyReturned() throws IOException {
+    ConditionalRequestInterceptor interceptor =
+        new ConditionalRequestInterceptor(1024, Duration.ofMinutes(1), 1024);
+    Request request = new Request.Builder().url("http://localhost:8082/api/v1/person/1").build();
+    List<Request> sentRequests = new ArrayList<>();
+    Interceptor.Chain chain = mockChain(request, sentRequests);
+
+    try (Response first = interceptor.intercept(chain)) {
+      assertEquals(BODY, first.body().string());
+    }
+    try (Response second = interceptor.intercept(chain)) {
+      assertEquals(200, second.code());
+      assertEquals(BODY, second.body().string());
+    }
+
+    assertNull(sentRequests.get(0).header("If-None-Match"));
+    assertEquals("\"v1\"", sentRequests.get(1).header("If-None-Match"));
+
+    ConditionalRequestInterceptor.RevalidationStats stats = interceptor.getStats();
+    assertEquals(1, stats.conditionalRequests());
+    assertEquals(1, stats.notModified());
+    assertEquals(BODY.length(), stats.bytesSaved());
+  }
+
+  @DisplayName("Test requests cached by the caller are not revalidated and their body is not kept")
+  @Test
+  public void intercept_skipRevalidationTag_bodyNotKept() throws IOException {
+    ConditionalRequestInterceptor interceptor =
+        new ConditionalRequestInterceptor(1024, Duration.ofMinutes(1), 1024);
+    Request request = new Request.Builder().url("http://localhost:8082/api/v1/person/1")
+        .tag(ConditionalRequestInterceptor.SkipRevalidation.class,
+            ConditionalRequestInterceptor.SkipRevalidation.INSTANCE)
+        .build();
+    List<Request> sentRequests = new ArrayList<>();
+    Interceptor.Chain chain = mockChain(request, sentRequests);
+
+    interceptor.intercept(chain).close();
+    interceptor.intercept(chain).close();
+
+    assertNull(sentRequests.get(1).header("If-None-Match"));
+    assertEquals(0, interceptor.getStats().size());
+    assertEquals(0, interceptor.getStats().conditionalRequests());
+  }
+
+  private static Interceptor.Chain mockChain(Request request, List<Request> sentRequests) throws IOException {
+    Interceptor.Chain chain = mock(Interceptor.Chain.class);
+    when(chain.request()).thenReturn(request);
+    when(chain.proceed(any())).thenAnswer(invocation -> {
+      Request sent = invocation.getArgument(0);
+      sentRequests.add(sent);
+      if (sent.header("If-None-Match") != null) {
+        return response(sent, 304).body(ResponseBody.create(new byte[0], null)).build();
+      }
+      return response(sent, 200).header("ETag", "\"v1\"").body(ResponseBody.create(BODY, JSON)).build();
+    });
+    return chain;
+  }
+}
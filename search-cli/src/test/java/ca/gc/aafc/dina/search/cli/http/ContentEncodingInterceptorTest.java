@@ -0,0 +1,77 @@
+package ca.gc.aafc.dina.search.cli.http;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.GzipSink;
+import okio.Okio;
+
+public class ContentEncodingInterceptorTest {
+
+  private static final MediaType JSON = MediaType.get("application/vnd.api+json");
+  private static final String BODY = "{\"data\":{\"type\":\"person\",\"id\":\"1\",\"attributes\":" +
+      "{\"displayName\":\"" + "a".repeat(500) + "\"}}}";
+
+  private static byte[] gzip(String content) throws IOException {
+    Buffer compressed = new Buffer();
+    try (BufferedSink sink = Okio.buffer(new GzipSink(compressed))) {
+      sink.writeString(content, StandardCharsets.UTF_8);
+    }
+    return compressed.readByteArray();
+  }
+
+  @DisplayName("Test compressed responses requested and decoded")
+  @Test
+  public void intercept_gzipResponse_bodyDecoded() throws IOException {
+    ContentEncodingInterceptor interceptor = new ContentEncodingInterceptor();
+    Request request = new Request.Builder().url("http://localhost:8082/api/v1/person/1").build();
+    byte[] compressed = gzip(BODY);
+    List<Request> sentRequests = new ArrayList<>();
+
+    Interceptor.Chain chain = mock(Interceptor.Chain.class);
+    when(chain.request()).thenReturn(request);
+    when(chain.proceed(any())).thenAnswer(invocation -> {
+      Request sent = invocation.getArgument(0);
+      sentRequests.add(sent);
+      return new Response.Builder()
+          .request(sent)
+          .protocol(Protocol.HTTP_1_1)
+          .code(200)
+          .message("OK")
+          .header("Content-Encoding", "gzip")
+          .header("Content-Length", Integer.toString(compressed.length))
+          .body(ResponseBody.create(compressed, JSON))
+          .build();
+    });
+
+    try (Response response = interceptor.intercept(chain)) {
+      assertNull(response.header("Content-Encoding"));
+      assertEquals(BODY, response.body().string());
+    }
+    assertEquals("gzip, deflate", sentRequests.get(0).header("Accept-Encoding"));
+
+    ContentEncodingInterceptor.CompressionStats stats = interceptor.getStats();
+    assertEquals(1, stats.compressedResponses());
+    assertEquals(compressed.length, stats.receivedBytes());
+    assertEquals(BODY.length(), stats.decodedBytes());
+  }
+}
@@ -0,0 +1,149 @@
+package ca.gc.aafc.dina.search.cli.http;
+
+import ca.gc.aafc.dina.search.cli.config.ApiCacheProperties;
+import ca.gc.aafc.dina.search.cli.config.HttpClientConfig;
+import ca.gc.aafc.dina.search.cli.config.RetryProperties;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockserver.integration.ClientAndServer;
+import org.mockserver.model.HttpRequest;
+import org.mockserver.model.HttpResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ContextConfiguration;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = {
+    "spring.shell.interactive.enabled=false",
+    "http-client.connection.maxIdleConnections=1",
+    "http-client.connection.keepAlive=2s",
+    "http-client.connection.maxRequests=10",
+    "http-client.connection.maxRequestsPerHost=1",
+    "http-client.connection.connectTimeout=3s",
+    "http-client.connection.readTimeout=7s",
+    "http-client.connection.http2=false"})
+@EnableAutoConfiguration(exclude = {DataSourceAutoConfiguration.class})
+@ContextConfiguration(classes = {OpenIDHttpClient.class, HttpClientConfig.class, RetryProperties.class,
+    ApiMetrics.class, ApiCacheProperties.class})
+public class OpenIDHttpClientConnectionTest {
+
+  @Autowired
+  private OpenIDHttpClient openIdClient;
+
+  private ClientAndServer mockServer;
+
+  @BeforeEach
+  public void startServer() {
+    mockServer = ClientAndServer.startClientAndServer();
+    mockServer.when(HttpRequest.request().withPath("/slow"))
+        .respond(HttpResponse.response().withStatusCode(200).withBody("{}").withDelay(TimeUnit.MILLISECONDS, 500));
+    mockServer.when(HttpRequest.request().withPath("/fast"))
+        .respond(HttpResponse.response().withStatusCode(200).withBody("{}"));
+  }
+
+  @AfterEach
+  public void stopServer() {
+    openIdClient.getHttpClient().connectionPool().evictAll();
+    mockServer.stop();
+  }
+
+  @DisplayName("Test the dispatcher limits, timeouts and protocols taken from the connection settings")
+  @Test
+  public void httpClient_connectionSettings_applied() {
+    OkHttpClient client = openIdClient.getHttpClient();
+    assertEquals(10, client.dispatcher().getMaxRequests());
+    assertEquals(1, client.dispatcher().getMaxRequestsPerHost());
+    assertEquals(3_000, client.connectTimeoutMillis());
+    assertEquals(7_000, client.readTimeoutMillis());
+    assertEquals(List.of(Protocol.HTTP_1_1), client.protocols());
+  }
+
+  @DisplayName("Test the idle connections bounded by the pool size and closed after the keep alive")
+  @Test
+  public void connectionPool_connectionSettings_applied() throws IOException, InterruptedException {
+    // 2 hosts for the same server, one connection each
+    call("localhost", "/fast");
+    call("127.0.0.1", "/fast");
+
+    assertTrue(waitFor(() -> openIdClient.getConnectionStats().idleConnections() == 1, 1_000),
+        "Only maxIdleConnections connections should be kept");
+    assertTrue(waitFor(() -> openIdClient.getConnectionStats().idleConnections() == 0, 4_000),
+        "Idle connections should be closed after the keep alive");
+  }
+
+  @DisplayName("Test the connection stats reporting the running, queued, active and idle connections")
+  @Test
+  public void getConnectionStats_callsInFlight_reported() throws InterruptedException {
+    OkHttpClient client = openIdClient.getHttpClient();
+    CountDownLatch completed = new CountDownLatch(3);
+    for (int i = 0; i < 3; i++) {
+      client.newCall(request("localhost", "/slow")).enqueue(new Callback() {
+        @Override
+        public void onFailure(Call call, IOException e) {
+          completed.countDown();
+        }
+
+        @Override
+        public void onResponse(Call call, Response response) {
+          response.close();
+          completed.countDown();
+        }
+      });
+    }
+
+    // a single call at a time to the host
+    OpenIDHttpClient.ConnectionStats stats = openIdClient.getConnectionStats();
+    assertEquals(1, stats.runningCalls());
+    assertEquals(2, stats.queuedCalls());
+    assertTrue(waitFor(() -> openIdClient.getConnectionStats().activeConnections() == 1, 1_000));
+    assertEquals(0, openIdClient.getConnectionStats().idleConnections());
+
+    assertTrue(completed.await(10, TimeUnit.SECONDS));
+    assertTrue(waitFor(() -> openIdClient.getConnectionStats().runningCalls() == 0, 1_000));
+    stats = openIdClient.getConnectionStats();
+    assertEquals(0, stats.queuedCalls());
+    assertEquals(0, stats.activeConnections());
+    // the connection is reused by the queued calls
+    assertEquals(1, stats.idleConnections());
+  }
+
+  private void call(String host, String path) throws IOException {
+    try (Response response = openIdClient.getHttpClient().newCall(request(host, path)).execute()) {
+      assertEquals(200, response.code());
+      response.body().string();
+    }
+  }
+
+  private Request request(String host, String path) {
+    return new Request.Builder().url("http://" + host + ":" + mockServer.getPort() + path).build();
+  }
+
+  private static boolean waitFor(BooleanSupplier condition, long timeoutMs) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + timeoutMs;
+    while (!condition.getAsBoolean()) {
+      if (System.currentTimeMillis() > deadline) {
+        return false;
+      }
+      Thread.sleep(20);
+    }
+    return true;
+  }
+}
@@ -1,10 +1,19 @@
 package ca.gc.aafc.dina.search.cli.http;
 
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 
 import ca.gc.aafc.dina.search.cli.TestConstants;
+import ca.gc.aafc.dina.search.cli.config.ApiCacheProperties;
 import ca.gc.aafc.dina.search.cli.config.HttpClientConfig;
 import ca.gc.aafc.dina.search.cli.config.IndexSettingDescriptor;
+import ca.gc.aafc.dina.search.cli.config.RetryProperties;
+import ca.gc.aafc.dina.search.cli.exceptions.SearchApiException;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.apache.commons.lang3.tuple.Pair;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -24,7 +33,9 @@ import ca.gc.aafc.dina.search.cli.config.ServiceEndpointProperties;
 import ca.gc.aafc.dina.search.cli.utils.MockKeyCloakAuthentication;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 @SpringBootTest(properties = "spring.shell.interactive.enabled=false")
 @EnableAutoConfiguration(exclude={DataSourceAutoConfiguration.class})
@@ -33,7 +44,8 @@ import static org.junit.jupiter.api.Assertions.assertNotNull;
 @AutoConfigureMockMvc
 @ContextConfiguration(
   classes = { 
-    OpenIDHttpClient.class, HttpClientConfig.class, ServiceEndpointProperties.class})
+    OpenIDHttpClient.class, HttpClientConfig.class, ServiceEndpointProperties.class, RetryProperties.class,
+    ApiMetrics.class, ApiCacheProperties.class})
 public class OpenIDHttpClientRestTest {
 
   private static final String FAKE_RESPONSE_FAKE_RESPONSE = "{fakeResponse: 'fakeResponse'}";
@@ -83,4 +95,47 @@ public class OpenIDHttpClientRestTest {
     assertEquals(FAKE_RESPONSE_FAKE_RESPONSE, dataFromPerson);
   }
 
+  @DisplayName("Test the response stream parsed into a JsonNode")
+  @Test
+  public void getJsonByIdsAsync_response_parsedFromStream() throws Exception {
+    MockKeyCloakAuthentication.mockKeycloak(client);
+    client
+        .when(
+            MockKeyCloakAuthentication.setupMockRequest()
+            .withMethod("GET")
+            .withPath("/api/v1/person")
+            .withQueryStringParameter(OpenIDHttpClient.FILTER_ID_IN, "p1,p2"))
+          .respond(HttpResponse.response()
+            .withStatusCode(200)
+            .withBody("{\"data\": [{\"type\": \"person\", \"id\": \"p1\"}, " +
+                "{\"type\": \"person\", \"id\": \"p2\"}]}"));
+
+    JsonNode response = openIdClient.getJsonByIdsAsync(
+        serviceEndpointProperties.getApiResourceDescriptorForType("person"), Set.of(), null, List.of("p1", "p2"))
+        .get(10, TimeUnit.SECONDS);
+
+    assertEquals(2, response.path("data").size());
+    assertEquals("p2", response.at("/data/1/id").asText());
+  }
+
+  @DisplayName("Test an invalid json response stream fails with a SearchApiException")
+  @Test
+  public void getJsonByFilterAsync_invalidJson_searchApiException() throws Exception {
+    MockKeyCloakAuthentication.mockKeycloak(client);
+    client
+        .when(
+            MockKeyCloakAuthentication.setupMockRequest()
+            .withMethod("GET")
+            .withPath("/api/v1/person")
+            .withQueryStringParameter("filter[organization]", "o1"))
+          .respond(HttpResponse.response()
+            .withStatusCode(200)
+            .withBody("{\"data\": [{\"type\": \"person\""));
+
+    ExecutionException ex = assertThrows(ExecutionException.class, () -> openIdClient.getJsonByFilterAsync(
+        serviceEndpointProperties.getApiResourceDescriptorForType("person"), null, null,
+        Pair.of("filter[organization]", "o1")).get(10, TimeUnit.SECONDS));
+    assertInstanceOf(SearchApiException.class, ex.getCause());
+    assertInstanceOf(JsonProcessingException.class, ex.getCause().getCause());
+  }
 }
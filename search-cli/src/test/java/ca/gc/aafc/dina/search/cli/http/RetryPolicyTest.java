@@ -0,0 +1,176 @@
+package ca.gc.aafc.dina.search.cli.http;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import ca.gc.aafc.dina.search.cli.config.RetryProperties;
+import ca.gc.aafc.dina.search.cli.exceptions.SearchApiException;
+import ca.gc.aafc.dina.search.cli.exceptions.SearchApiHttpException;
+import ca.gc.aafc.dina.search.cli.exceptions.SearchApiNotFoundException;
+
+public class RetryPolicyTest {
+
+  private static RetryPolicy newPolicy(int maxAttempts, int budgetReserve) {
+    RetryProperties.Policy settings = new RetryProperties.Policy();
+    settings.setEnabled(true);
+    settings.setMaxAttempts(maxAttempts);
+    settings.setInitialBackoff(Duration.ofMillis(1));
+    settings.setMaxBackoff(Duration.ofMillis(5));
+    settings.setBudgetReserve(budgetReserve);
+    return new RetryPolicy("test", settings, OpenIDHttpClient::isTransientError);
+  }
+
+  private static SearchApiException connectivityIssue() {
+    return new SearchApiException("Exception during retrieval", new SocketTimeoutException());
+  }
+
+  @DisplayName("Test transient failures retried until the call succeeds")
+  @Test
+  public void execute_transientFailure_retried() throws SearchApiException {
+    RetryPolicy policy = newPolicy(3, 10);
+    AtomicInteger attempts = new AtomicInteger();
+
+    String result = policy.execute(true, () -> {
+      if (attempts.incrementAndGet() < 3) {
+        throw connectivityIssue();
+      }
+      return "ok";
+    });
+
+    assertEquals("ok", result);
+    assertEquals(3, attempts.get());
+    RetryPolicy.RetryStats stats = policy.getStats();
+    assertEquals(2, stats.retries());
+    assertEquals(1, stats.recovered());
+    assertEquals(0, stats.exhausted());
+  }
+
+  @DisplayName("Test not found and client errors not retried")
+  @Test
+  public void execute_nonTransientFailure_notRetried() {
+    RetryPolicy policy = newPolicy(3, 10);
+    AtomicInteger attempts = new AtomicInteger();
+
+    assertThrows(SearchApiNotFoundException.class, () -> policy.execute(true, () -> {
+      attempts.incrementAndGet();
+      throw new SearchApiNotFoundException("not found");
+    }));
+    assertThrows(SearchApiHttpException.class, () -> policy.execute(true, () -> {
+      attempts.incrementAndGet();
+      throw new SearchApiHttpException("bad request", 400);
+    }));
+    assertEquals(2, attempts.get());
+    assertEquals(0, policy.getStats().retries());
+  }
+
+  @DisplayName("Test last failure returned when the attempts are exhausted")
+  @Test
+  public void execute_alwaysFailing_exhausted() {
+    RetryPolicy policy = newPolicy(2, 10);
+    AtomicInteger attempts = new AtomicInteger();
+    SearchApiException unavailable = new SearchApiHttpException("unavailable", 503);
+
+    SearchApiException thrown = assertThrows(SearchApiException.class, () -> policy.execute(true, () -> {
+      attempts.incrementAndGet();
+      throw unavailable;
+    }));
+
+    assertSame(unavailable, thrown);
+    assertEquals(2, attempts.get());
+    assertEquals(1, policy.getStats().exhausted());
+  }
+
+  @DisplayName("Test retries stopped when the budget is empty")
+  @Test
+  public void execute_emptyBudget_notRetried() {
+    RetryPolicy policy = newPolicy(5, 1);
+    AtomicInteger attempts = new AtomicInteger();
+
+    assertThrows(SearchApiException.class, () -> policy.execute(true, () -> {
+      attempts.incrementAndGet();
+      throw connectivityIssue();
+    }));
+
+    // a single retry was available
+    assertEquals(2, attempts.get());
+    assertEquals(1, policy.getStats().budgetRejected());
+  }
+
+  @DisplayName("Test non idempotent calls only retried if the request was not sent")
+  @Test
+  public void execute_notIdempotent_retriedOnConnectionRefused() {
+    RetryPolicy policy = newPolicy(2, 10);
+    AtomicInteger attempts = new AtomicInteger();
+
+    assertThrows(SearchApiException.class, () -> policy.execute(false, () -> {
+      attempts.incrementAndGet();
+      throw connectivityIssue();
+    }));
+    assertEquals(1, attempts.get());
+
+    assertThrows(SearchApiException.class, () -> policy.execute(false, () -> {
+      attempts.incrementAndGet();
+      throw new SearchApiException("Exception during retrieval", new ConnectException());
+    }));
+    assertEquals(3, attempts.get());
+  }
+
+  @DisplayName("Test asynchronous calls retried")
+  @Test
+  public void executeAsync_transientFailure_retried() throws Exception {
+    RetryPolicy policy = newPolicy(3, 10);
+    AtomicInteger attempts = new AtomicInteger();
+
+    CompletableFuture<String> result = policy.executeAsync(true, () -> attempts.incrementAndGet() < 2 ?
+        CompletableFuture.failedFuture(new SearchApiException("Exception during retrieval", new IOException())) :
+        CompletableFuture.completedFuture("ok"));
+
+    assertEquals("ok", result.get(5, TimeUnit.SECONDS));
+    assertEquals(2, attempts.get());
+
+    CompletableFuture<String> failed = policy.executeAsync(true,
+        () -> CompletableFuture.failedFuture(new SearchApiNotFoundException("not found")));
+    ExecutionException thrown = assertThrows(ExecutionException.class, () -> failed.get(5, TimeUnit.SECONDS));
+    assertEquals(SearchApiNotFoundException.class, thrown.getCause().getClass());
+  }
+
+  @DisplayName("Test the retry waits for the Retry-After delay, up to maxRetryAfter")
+  @Test
+  public void execute_retryAfter_honoured() throws SearchApiException {
+    RetryProperties.Policy settings = new RetryProperties.Policy();
+    settings.setEnabled(true);
+    settings.setInitialBackoff(Duration.ofMillis(1));
+    settings.setMaxBackoff(Duration.ofMillis(5));
+    settings.setMaxRetryAfter(Duration.ofMillis(300));
+    RetryPolicy policy = new RetryPolicy("test", settings, OpenIDHttpClient::isTransientError,
+        OpenIDHttpClient::getRetryAfter);
+
+    for (Duration retryAfter : new Duration[] {Duration.ofMillis(200), Duration.ofHours(1)}) {
+      AtomicInteger attempts = new AtomicInteger();
+      long start = System.nanoTime();
+      policy.execute(true, () -> {
+        if (attempts.incrementAndGet() == 1) {
+          throw new SearchApiHttpException("too many requests", 429, retryAfter);
+        }
+        return "ok";
+      });
+      long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+      assertTrue(elapsedMs >= Math.min(retryAfter.toMillis(), 300));
+      assertTrue(elapsedMs < 5_000);
+    }
+  }
+}
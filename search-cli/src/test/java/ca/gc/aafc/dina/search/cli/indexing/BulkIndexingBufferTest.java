@@ -0,0 +1,201 @@
+package ca.gc.aafc.dina.search.cli.indexing;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import ca.gc.aafc.dina.search.cli.config.IndexingProperties;
+import ca.gc.aafc.dina.search.cli.exceptions.SearchApiException;
+import co.elastic.clients.util.BinaryData;
+
+public class BulkIndexingBufferTest {
+
+  private static final String INDEX_NAME = "index";
+
+  private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+  @AfterEach
+  public void tearDown() {
+    scheduler.shutdownNow();
+  }
+
+  private static IndexingProperties.Bulk settings(int maxActions, long maxBytes) {
+    IndexingProperties.Bulk settings = new IndexingProperties.Bulk();
+    settings.setMaxActions(maxActions);
+    settings.setMaxBytes(maxBytes);
+    // only flushed by the limits or explicitly
+    settings.setFlushInterval(Duration.ofHours(1));
+    return settings;
+  }
+
+  private static IndexingOperation indexOperation(String id) {
+    ObjectNode doc = IndexableDocumentHandler.OM.createObjectNode();
+    doc.putObject("data").put("type", "person").put("id", id);
+    return IndexingOperation.index(id, doc, INDEX_NAME);
+  }
+
+  private static JsonNode readPayload(IndexingOperation operation) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ((BinaryData) operation.payload()).writeTo(out);
+    return IndexableDocumentHandler.OM.readTree(out.toByteArray());
+  }
+
+  @DisplayName("Test buffer flushed when the maximum number of actions is reached")
+  @Test
+  public void add_maxActionsReached_flushedWithSerializedPayloads() throws Exception {
+    RecordingIndexer indexer = new RecordingIndexer();
+    BulkIndexingBuffer buffer = new BulkIndexingBuffer(indexer, settings(2, Long.MAX_VALUE), scheduler);
+
+    IndexingOperation op1 = indexOperation("1");
+    buffer.add(op1);
+    assertEquals(0, indexer.requests.size());
+
+    buffer.add(IndexingOperation.delete("2", INDEX_NAME));
+    assertEquals(1, indexer.requests.size());
+
+    List<IndexingOperation> sent = indexer.requests.getFirst();
+    assertEquals(2, sent.size());
+    // payload serialized once by the buffer and sent as-is
+    assertInstanceOf(BinaryData.class, sent.get(0).payload());
+    assertEquals(op1.payload(), readPayload(sent.get(0)));
+    assertEquals(IndexingOperation.OperationType.DELETE, sent.get(1).operationType());
+    assertEquals(2, buffer.getSucceededCount());
+    // nothing left to send
+    assertFalse(buffer.flush());
+  }
+
+  @DisplayName("Test buffer flushed when the size of the serialized payloads reaches the limit")
+  @Test
+  public void add_maxBytesReached_flushed() throws Exception {
+    IndexingOperation op = indexOperation("1");
+    int payloadSize = IndexableDocumentHandler.OM.writeValueAsBytes(op.payload()).length;
+
+    RecordingIndexer indexer = new RecordingIndexer();
+    BulkIndexingBuffer buffer = new BulkIndexingBuffer(indexer, settings(100, payloadSize * 2L), scheduler);
+
+    buffer.add(op);
+    assertEquals(0, indexer.requests.size());
+    buffer.add(indexOperation("2"));
+    assertEquals(1, indexer.requests.size());
+    assertEquals(2, indexer.requests.getFirst().size());
+  }
+
+  @DisplayName("Test remaining operations sent on close and failures reported")
+  @Test
+  public void close_requestFailed_originalOperationsGivenToListener() throws Exception {
+    RecordingIndexer indexer = new RecordingIndexer();
+    indexer.failure = new SearchApiException("elasticsearch unavailable");
+    List<IndexingOperation> failedOperations = new ArrayList<>();
+
+    BulkIndexingBuffer buffer = new BulkIndexingBuffer(indexer, settings(100, Long.MAX_VALUE), scheduler,
+        failedOperations::addAll);
+    IndexingOperation op = indexOperation("1");
+    buffer.add(op);
+    buffer.close();
+
+    assertEquals(1, indexer.requests.size());
+    assertEquals(1, buffer.getFailedCount());
+    // the listener receives the operation as added, not its serialized form
+    assertEquals(1, failedOperations.size());
+    assertSame(op, failedOperations.getFirst());
+  }
+
+  @DisplayName("Test operations can be added while a bulk request is being sent")
+  @Test
+  public void add_duringFlush_notBlocked() throws Exception {
+    CountDownLatch sending = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    RecordingIndexer indexer = new RecordingIndexer();
+    indexer.onBulk = () -> {
+      sending.countDown();
+      release.await();
+    };
+    BulkIndexingBuffer buffer = new BulkIndexingBuffer(indexer, settings(1, Long.MAX_VALUE), scheduler);
+
+    Thread flushing = new Thread(() -> buffer.add(indexOperation("1")));
+    flushing.start();
+    assertTrue(sending.await(5, TimeUnit.SECONDS));
+
+    // the first bulk request is still being sent, the buffer lock must be available
+    indexer.onBulk = null;
+    assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+      synchronized (buffer) {
+        assertEquals(1, indexer.requests.size());
+      }
+    });
+
+    release.countDown();
+    flushing.join();
+    buffer.add(indexOperation("2"));
+
+    assertEquals(2, indexer.requests.size());
+    assertEquals("1", indexer.requests.get(0).getFirst().documentId());
+    assertEquals("2", indexer.requests.get(1).getFirst().documentId());
+  }
+
+  private interface BulkHook {
+    void run() throws InterruptedException;
+  }
+
+  /**
+   * Records the bulk requests, all operations succeed unless a failure is set.
+   */
+  private static class RecordingIndexer implements DocumentIndexer {
+
+    private final List<List<IndexingOperation>> requests = Collections.synchronizedList(new ArrayList<>());
+    private volatile BulkHook onBulk;
+    private volatile SearchApiException failure;
+
+    @Override
+    public OperationStatus indexDocument(String documentId, Object payload, String indexName) {
+      return OperationStatus.SUCCEEDED;
+    }
+
+    @Override
+    public OperationStatus deleteDocument(String documentId, String indexName) {
+      return OperationStatus.SUCCEEDED;
+    }
+
+    @Override
+    public List<OperationStatus> bulk(List<IndexingOperation> operations) throws SearchApiException {
+      requests.add(operations);
+      BulkHook hook = onBulk;
+      if (hook != null) {
+        try {
+          hook.run();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      if (failure != null) {
+        throw failure;
+      }
+      return Collections.nCopies(operations.size(), OperationStatus.SUCCEEDED);
+    }
+
+    @Override
+    public void releaseResources() {
+    }
+  }
+}
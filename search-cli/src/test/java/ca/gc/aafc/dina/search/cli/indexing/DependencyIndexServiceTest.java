@@ -0,0 +1,155 @@
+package ca.gc.aafc.dina.search.cli.indexing;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import ca.gc.aafc.dina.search.cli.config.IndexingProperties;
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.elasticsearch.core.search.Hit;
+import co.elastic.clients.transport.endpoints.BooleanResponse;
+
+public class DependencyIndexServiceTest {
+
+  @DisplayName("Test dependency document built from the included section")
+  @Test
+  @SuppressWarnings("unchecked")
+  public void toIndexOperation_includedDocuments_refsRecorded() throws Exception {
+    ElasticsearchClient client = mock(ElasticsearchClient.class, RETURNS_DEEP_STUBS);
+    when(client.indices().exists(any(Function.class))).thenReturn(new BooleanResponse(true));
+
+    IndexingProperties properties = new IndexingProperties();
+    properties.getDependencyIndex().setEnabled(true);
+    DependencyIndexService service = new DependencyIndexService(client,
+        mock(ElasticSearchDocumentIndexer.class), mock(ElasticSearchIndexAdmin.class), properties);
+
+    ObjectNode doc = IndexableDocumentHandler.OM.createObjectNode();
+    doc.putObject("data").put("type", "material-sample").put("id", "ms1");
+    doc.putArray("included")
+        .add(IndexableDocumentHandler.OM.createObjectNode().put("type", "collecting-event").put("id", "ce1"))
+        .add(IndexableDocumentHandler.OM.createObjectNode().put("type", "organism").put("id", "o1"))
+        .add(IndexableDocumentHandler.OM.createObjectNode().put("type", "collecting-event").put("id", "ce1"));
+
+    IndexingOperation operation = service.toIndexOperation("dina_material_sample_index", doc);
+
+    assertEquals("dina_material_sample_index:ms1", operation.documentId());
+    assertEquals(properties.getDependencyIndex().getName(), operation.indexName());
+
+    JsonNode payload = (JsonNode) operation.payload();
+    assertEquals("dina_material_sample_index", payload.get(DependencyIndexService.INDEX_FIELD).asText());
+    assertEquals("ms1", payload.at("/data/id").asText());
+    assertEquals(List.of("collecting-event:ce1", "organism:o1"),
+        IndexableDocumentHandler.OM.convertValue(payload.get(DependencyIndexService.REFS_FIELD), List.class));
+  }
+
+  @DisplayName("Test operations sent while the index is rebuilt are applied to the new index and lookups fall back")
+  @Test
+  @SuppressWarnings("unchecked")
+  public void rebuild_writesDuringRebuild_appliedToNewIndex() throws Exception {
+    String alias = new IndexingProperties().getDependencyIndex().getName();
+    String previousIndex = alias + "_20240101000000";
+    String mainIndex = "dina_material_sample_index";
+
+    ElasticsearchClient client = mock(ElasticsearchClient.class, RETURNS_DEEP_STUBS);
+    ElasticSearchDocumentIndexer indexer = mock(ElasticSearchDocumentIndexer.class);
+    ElasticSearchIndexAdmin indexAdmin = mock(ElasticSearchIndexAdmin.class);
+    BulkIndexingBuffer buffer = mock(BulkIndexingBuffer.class);
+    when(indexAdmin.getAliasIndices(alias)).thenReturn(Set.of(previousIndex));
+    when(indexAdmin.exists(alias)).thenReturn(true);
+
+    IndexingProperties properties = new IndexingProperties();
+    properties.getDependencyIndex().setEnabled(true);
+    DependencyIndexService service = new DependencyIndexService(client, indexer, indexAdmin, properties);
+
+    List<Boolean> lookupAvailable = new ArrayList<>();
+    when(indexer.openPIT(List.of(mainIndex))).thenReturn("pit");
+    when(indexer.searchPage(eq(List.of(mainIndex)), eq("pit"), any(), anyInt(), any(), anyList()))
+        .thenAnswer(invocation -> {
+          lookupAvailable.add(service.isLookupAvailable());
+          // live indexing while the references are read: ms1 changed after the point in time, ms2 deleted
+          service.toIndexOperation(mainIndex, document("ms1", "organism:o2"));
+          service.toDeleteOperation(mainIndex, "ms2");
+          return SearchResponse.<JsonNode>of(r -> r.took(1).timedOut(false)
+              .shards(sh -> sh.total(1).successful(1).failed(0))
+              .hits(h -> h.hits(List.of(
+                  Hit.<JsonNode>of(hit -> hit.index(mainIndex).id("ms1").source(document("ms1", "organism:o1"))),
+                  Hit.<JsonNode>of(hit -> hit.index(mainIndex).id("ms2").source(document("ms2", "organism:o1")))))));
+        });
+    when(indexAdmin.swapAlias(eq(alias), anyString())).thenAnswer(invocation -> {
+      // sent to the previous index between the catch up and the swap
+      service.toDeleteOperation(mainIndex, "ms3");
+      return Set.of(previousIndex);
+    });
+
+    assertEquals(2, service.rebuild(List.of(mainIndex), buffer));
+
+    ArgumentCaptor<String> targetIndex = ArgumentCaptor.forClass(String.class);
+    verify(indexAdmin).swapAlias(eq(alias), targetIndex.capture());
+    assertTrue(targetIndex.getValue().startsWith(alias + "_"));
+    assertNotEquals(previousIndex, targetIndex.getValue());
+
+    // read references first, then the changes sent meanwhile, all flushed before the alias is moved
+    ArgumentCaptor<IndexingOperation> sent = ArgumentCaptor.forClass(IndexingOperation.class);
+    InOrder inOrder = inOrder(buffer, indexAdmin);
+    inOrder.verify(buffer, times(4)).add(sent.capture());
+    inOrder.verify(buffer).flush();
+    inOrder.verify(indexAdmin).swapAlias(eq(alias), anyString());
+    List<IndexingOperation> operations = sent.getAllValues();
+    assertTrue(operations.stream().allMatch(op -> op.indexName().equals(targetIndex.getValue())));
+    assertEquals(List.of(mainIndex + ":ms1", mainIndex + ":ms2"),
+        operations.subList(0, 2).stream().map(IndexingOperation::documentId).toList());
+    IndexingOperation ms1 = operations.subList(2, 4).stream()
+        .filter(op -> op.documentId().equals(mainIndex + ":ms1")).findFirst().orElseThrow();
+    assertEquals(List.of("organism:o2"), IndexableDocumentHandler.OM.convertValue(
+        ((JsonNode) ms1.payload()).get(DependencyIndexService.REFS_FIELD), List.class));
+    assertTrue(operations.subList(2, 4).stream().anyMatch(op -> op.documentId().equals(mainIndex + ":ms2")
+        && op.operationType() == IndexingOperation.OperationType.DELETE));
+
+    // changes sent just before the swap applied to the new index, then the previous index is deleted
+    ArgumentCaptor<List<IndexingOperation>> lastChanges = ArgumentCaptor.forClass(List.class);
+    verify(indexer).bulk(lastChanges.capture());
+    assertEquals(List.of(IndexingOperation.delete(mainIndex + ":ms3", targetIndex.getValue())),
+        lastChanges.getValue());
+    verify(indexAdmin).deleteIndex(previousIndex);
+
+    assertEquals(List.of(false), lookupAvailable);
+    assertTrue(service.isLookupAvailable());
+  }
+
+  private static ObjectNode document(String id, String... refs) {
+    ObjectNode doc = IndexableDocumentHandler.OM.createObjectNode();
+    doc.putObject("data").put("type", "material-sample").put("id", id);
+    ArrayNode included = doc.putArray("included");
+    for (String ref : refs) {
+      String[] typeAndId = ref.split(":");
+      included.add(IndexableDocumentHandler.OM.createObjectNode().put("type", typeAndId[0]).put("id", typeAndId[1]));
+    }
+    return doc;
+  }
+}
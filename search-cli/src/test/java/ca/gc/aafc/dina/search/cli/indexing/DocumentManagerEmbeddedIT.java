@@ -1,6 +1,8 @@
 package ca.gc.aafc.dina.search.cli.indexing;
 
 import ca.gc.aafc.dina.search.cli.TestConstants;
+import ca.gc.aafc.dina.search.cli.config.ApiCacheProperties;
+import ca.gc.aafc.dina.search.cli.config.ApiResilienceProperties;
 import ca.gc.aafc.dina.search.cli.config.ApiResourceDescriptor;
 import ca.gc.aafc.dina.search.cli.config.CacheConfiguration;
 import ca.gc.aafc.dina.search.cli.config.IndexSettingDescriptor;
@@ -277,7 +279,7 @@ public class DocumentManagerEmbeddedIT {
                                                      Map<String, List<String>> optFields, String objectId) {
     CacheConfiguration.MethodBasedKeyGenerator keyGen = new CacheConfiguration.MethodBasedKeyGenerator();
     // dummy instance only used to generate the key
-    CacheableApiAccess cacheableApiAccess = new CacheableApiAccess(null);
+    CacheableApiAccess cacheableApiAccess = new CacheableApiAccess(null, new ApiCacheProperties(), new ApiResilienceProperties());
     return keyGen.generate(cacheableApiAccess, CacheableApiAccess.class.getMethod("getFromApi", ApiResourceDescriptor.class, Set.class, Map.class, String.class),
         apiResourceDescriptor, includes, optFields, objectId).toString();
   }
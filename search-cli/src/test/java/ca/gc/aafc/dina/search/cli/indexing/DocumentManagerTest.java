@@ -4,6 +4,7 @@ import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.fail;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -12,6 +13,7 @@ import java.util.List;
 
 import com.fasterxml.jackson.databind.JsonNode;
 
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -52,6 +54,16 @@ public class DocumentManagerTest {
   @MockBean
   private ElasticSearchDocumentIndexer indexer;
 
+  private EmbeddedDocumentScan mockScan;
+
+  @BeforeEach
+  public void setupScan() throws SearchApiException {
+    // by default, no embedded document found
+    mockScan = mock(EmbeddedDocumentScan.class);
+    when(mockScan.nextPage()).thenReturn(List.of());
+    when(indexer.scanEmbeddedDocuments(anyList(), any(String.class), any(String.class))).thenReturn(mockScan);
+  }
+
   @DisplayName("Test processEmbedded invalid document type")
   @Test
   public void processEmbeddedDocumentInvalidDocumentType() {
@@ -99,12 +111,12 @@ public class DocumentManagerTest {
     assertNotNull(documentManager);
     try {
 
-      when(indexer.search(anyList(), any(String.class), any(String.class))).thenReturn(null);
-
       documentManager.processEmbeddedDocument("collecting-event", "documentId");
       
       verify(documentManager, times(0)).indexDocument(any(String.class), any(String.class));
       verify(documentManager, times(0)).reIndexDocuments(any());
+      // the scan must always be closed
+      verify(mockScan, times(1)).close();
 
     } catch (SearchApiException e) {
       fail();
@@ -118,8 +130,7 @@ public class DocumentManagerTest {
 
     assertNotNull(documentManager);
     try {
-      when(indexer.search(anyList(), any(String.class), any(String.class))).thenReturn(mockResponse);
-      when(mockListHitsJson.isEmpty()).thenReturn(true);
+      when(mockScan.nextPage()).thenReturn(List.of());
 
       documentManager.processEmbeddedDocument("collecting-event", "documentId");
       
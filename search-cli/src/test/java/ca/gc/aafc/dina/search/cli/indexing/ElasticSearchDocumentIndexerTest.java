@@ -0,0 +1,109 @@
+package ca.gc.aafc.dina.search.cli.indexing;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import ca.gc.aafc.dina.search.cli.config.IndexingProperties;
+import ca.gc.aafc.dina.search.cli.config.RetryProperties;
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch.core.BulkResponse;
+import co.elastic.clients.elasticsearch.core.bulk.BulkResponseItem;
+import co.elastic.clients.elasticsearch.core.bulk.OperationType;
+
+public class ElasticSearchDocumentIndexerTest {
+
+  private static final String INDEX_NAME = "index";
+
+  private static BulkResponseItem item(String id, int status) {
+    return BulkResponseItem.of(i -> {
+      i.operationType(OperationType.Index).index(INDEX_NAME).id(id).status(status);
+      if (status >= 300) {
+        i.error(e -> e.type("es_rejected_execution_exception").reason("rejected"));
+      }
+      return i;
+    });
+  }
+
+  private static ElasticSearchDocumentIndexer newIndexer(ElasticsearchClient client, int maxAttempts) {
+    RetryProperties retryProperties = new RetryProperties();
+    retryProperties.getElasticsearch().setEnabled(true);
+    retryProperties.getElasticsearch().setMaxAttempts(maxAttempts);
+    retryProperties.getElasticsearch().setInitialBackoff(Duration.ZERO);
+    return new ElasticSearchDocumentIndexer(client, new IndexingProperties(), retryProperties);
+  }
+
+  private static BulkResponse response(BulkResponseItem... items) {
+    return BulkResponse.of(b -> b.took(1).errors(false).items(List.of(items)));
+  }
+
+  @DisplayName("Test bulk items rejected with a transient error re-sent, the others not")
+  @Test
+  @SuppressWarnings("unchecked")
+  public void bulk_transientItemFailure_onlyFailedItemsRetried() throws Exception {
+    ElasticsearchClient client = mock(ElasticsearchClient.class);
+    when(client.bulk(any(Function.class)))
+        .thenReturn(response(item("1", 201), item("2", 429), item("3", 400)))
+        .thenReturn(response(item("2", 201)));
+
+    ElasticSearchDocumentIndexer indexer = newIndexer(client, 3);
+
+    List<OperationStatus> statuses = indexer.bulk(List.of(
+        IndexingOperation.index("1", "{}", INDEX_NAME),
+        IndexingOperation.index("2", "{}", INDEX_NAME),
+        IndexingOperation.index("3", "{}", INDEX_NAME),
+        // invalid, not sent
+        IndexingOperation.index("4", null, INDEX_NAME)));
+
+    assertEquals(List.of(OperationStatus.SUCCEEDED, OperationStatus.SUCCEEDED, OperationStatus.FAILED,
+        OperationStatus.FAILED), statuses);
+    verify(client, times(2)).bulk(any(Function.class));
+  }
+
+  @DisplayName("Test a failed bulk request and rejected bulk items share the attempts of the retry policy")
+  @Test
+  @SuppressWarnings("unchecked")
+  public void bulk_requestAndItemFailures_sameRetryPolicy() throws Exception {
+    ElasticsearchClient client = mock(ElasticsearchClient.class);
+    when(client.bulk(any(Function.class)))
+        .thenThrow(new IOException("connection reset"))
+        .thenReturn(response(item("1", 201), item("2", 503)))
+        .thenReturn(response(item("2", 503)));
+
+    ElasticSearchDocumentIndexer indexer = newIndexer(client, 3);
+
+    List<OperationStatus> statuses = indexer.bulk(List.of(
+        IndexingOperation.index("1", "{}", INDEX_NAME),
+        IndexingOperation.index("2", "{}", INDEX_NAME)));
+
+    assertEquals(List.of(OperationStatus.SUCCEEDED, OperationStatus.FAILED), statuses);
+    verify(client, times(3)).bulk(any(Function.class));
+    assertEquals(1, indexer.getRetryStats().exhausted());
+  }
+
+  @DisplayName("Test bulk items failing with a status that is not transient are not re-sent")
+  @Test
+  @SuppressWarnings("unchecked")
+  public void bulk_nonTransientItemFailure_notRetried() throws Exception {
+    ElasticsearchClient client = mock(ElasticsearchClient.class);
+    when(client.bulk(any(Function.class)))
+        .thenReturn(response(item("1", 500)));
+
+    List<OperationStatus> statuses = newIndexer(client, 3).bulk(List.of(
+        IndexingOperation.index("1", "{}", INDEX_NAME)));
+
+    assertEquals(List.of(OperationStatus.FAILED), statuses);
+    verify(client, times(1)).bulk(any(Function.class));
+  }
+}
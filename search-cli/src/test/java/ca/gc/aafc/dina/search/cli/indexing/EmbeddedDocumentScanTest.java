@@ -0,0 +1,115 @@
+package ca.gc.aafc.dina.search.cli.indexing;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import ca.gc.aafc.dina.search.cli.exceptions.SearchApiException;
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.elasticsearch.core.search.Hit;
+import co.elastic.clients.elasticsearch.core.search.HitsMetadata;
+
+public class EmbeddedDocumentScanTest {
+
+  private static final Query QUERY = Query.of(q -> q.matchAll(m -> m));
+  private static final List<String> INDICES = List.of("index");
+
+  @DisplayName("Test scan without PIT when the first page is not full")
+  @Test
+  public void nextPage_partialFirstPage_noPIT() throws SearchApiException {
+    ElasticSearchDocumentIndexer indexer = mock(ElasticSearchDocumentIndexer.class);
+    SearchResponse<JsonNode> firstPage = response(null, "1", "2");
+    when(indexer.searchIdentifiers(eq(INDICES), isNull(), any(), anyInt(), isNull())).thenReturn(firstPage);
+
+    try (EmbeddedDocumentScan scan = new EmbeddedDocumentScan(indexer, INDICES, QUERY, 3)) {
+      assertEquals(2, scan.nextPage().size());
+      assertTrue(scan.isExhausted());
+      assertTrue(scan.nextPage().isEmpty());
+    }
+    verify(indexer, never()).openPIT(anyList());
+  }
+
+  @DisplayName("Test scan opens a PIT when the first page is full, skips duplicates and closes the PIT")
+  @Test
+  public void nextPage_fullFirstPage_PITUsedAndClosed() throws SearchApiException {
+    ElasticSearchDocumentIndexer indexer = mock(ElasticSearchDocumentIndexer.class);
+    SearchResponse<JsonNode> firstPage = response(null, "1", "2");
+    SearchResponse<JsonNode> pitPage1 = response("pit", "2", "1");
+    SearchResponse<JsonNode> pitPage2 = response("pit", "3");
+
+    when(indexer.searchIdentifiers(eq(INDICES), isNull(), any(), anyInt(), isNull())).thenReturn(firstPage);
+    when(indexer.openPIT(INDICES)).thenReturn("pit");
+    when(indexer.searchIdentifiers(eq(INDICES), eq("pit"), any(), anyInt(), any())).thenReturn(pitPage1, pitPage2);
+
+    List<DocumentManager.DocumentInfo> documents = new ArrayList<>();
+    try (EmbeddedDocumentScan scan = new EmbeddedDocumentScan(indexer, INDICES, QUERY, 2)) {
+      List<DocumentManager.DocumentInfo> page = scan.nextPage();
+      while (!page.isEmpty()) {
+        documents.addAll(page);
+        page = scan.nextPage();
+      }
+    }
+
+    assertEquals(List.of(new DocumentManager.DocumentInfo("person", "1"),
+        new DocumentManager.DocumentInfo("person", "2"),
+        new DocumentManager.DocumentInfo("person", "3")), documents);
+    verify(indexer, times(1)).closePIT("pit");
+  }
+
+  @DisplayName("Test PIT is closed on error")
+  @Test
+  public void nextPage_error_PITClosed() throws SearchApiException {
+    ElasticSearchDocumentIndexer indexer = mock(ElasticSearchDocumentIndexer.class);
+    SearchResponse<JsonNode> firstPage = response(null, "1", "2");
+    when(indexer.searchIdentifiers(eq(INDICES), isNull(), any(), anyInt(), isNull())).thenReturn(firstPage);
+    when(indexer.openPIT(INDICES)).thenReturn("pit");
+    when(indexer.searchIdentifiers(eq(INDICES), eq("pit"), any(), anyInt(), any()))
+        .thenThrow(new SearchApiException("test"));
+
+    try (EmbeddedDocumentScan scan = new EmbeddedDocumentScan(indexer, INDICES, QUERY, 2)) {
+      scan.nextPage();
+      assertThrows(SearchApiException.class, scan::nextPage);
+    }
+    verify(indexer, times(1)).closePIT("pit");
+  }
+
+  @SuppressWarnings("unchecked")
+  private static SearchResponse<JsonNode> response(String pitId, String... ids) {
+    List<Hit<JsonNode>> hits = new ArrayList<>();
+    for (String id : ids) {
+      ObjectNode source = IndexableDocumentHandler.OM.createObjectNode();
+      source.putObject("data").put("type", "person").put("id", id);
+      Hit<JsonNode> hit = mock(Hit.class);
+      when(hit.source()).thenReturn(source);
+      when(hit.sort()).thenReturn(List.of(FieldValue.of(id)));
+      hits.add(hit);
+    }
+    HitsMetadata<JsonNode> hitsMetadata = mock(HitsMetadata.class);
+    when(hitsMetadata.hits()).thenReturn(hits);
+    SearchResponse<JsonNode> response = mock(SearchResponse.class);
+    when(response.hits()).thenReturn(hitsMetadata);
+    when(response.pitId()).thenReturn(pitId);
+    return response;
+  }
+}
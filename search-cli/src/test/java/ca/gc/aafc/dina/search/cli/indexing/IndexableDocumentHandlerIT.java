@@ -4,6 +4,7 @@ import ca.gc.aafc.dina.json.JsonHelper;
 import ca.gc.aafc.dina.jsonapi.JSONApiDocumentStructure;
 import ca.gc.aafc.dina.search.cli.TestConstants;
 import ca.gc.aafc.dina.search.cli.config.ApiResourceDescriptor;
+import ca.gc.aafc.dina.search.cli.config.IndexingProperties;
 import ca.gc.aafc.dina.search.cli.config.ServiceEndpointProperties;
 import ca.gc.aafc.dina.search.cli.exceptions.SearchApiException;
 import ca.gc.aafc.dina.search.cli.http.DinaApiAccess;
@@ -112,7 +113,9 @@ public class IndexableDocumentHandlerIT {
             return "";
           }
         },
-        svcEndpointProps
+        svcEndpointProps,
+        new IndexingProperties(),
+        new PendingDocumentRegistry(new IndexingProperties())
     );
   }
 }
@@ -0,0 +1,262 @@
+package ca.gc.aafc.dina.search.cli.indexing;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import ca.gc.aafc.dina.search.cli.config.ApiResourceDescriptor;
+import ca.gc.aafc.dina.search.cli.config.IndexingProperties;
+import ca.gc.aafc.dina.search.cli.config.ServiceEndpointProperties;
+import ca.gc.aafc.dina.search.cli.exceptions.SearchApiException;
+import ca.gc.aafc.dina.search.cli.exceptions.SearchApiHttpException;
+import ca.gc.aafc.dina.search.cli.http.DinaApiAccess;
+
+public class IndexableDocumentHandlerTest {
+
+  private static final String DOCUMENT = """
+      {"data": {"type": "material-sample", "id": "ms1", "attributes": {},
+        "relationships": {"preparedBy": {"data": [
+          {"type": "person", "id": "p1"}, {"type": "person", "id": "p2"}, {"type": "person", "id": "p3"}]}}},
+       "meta": {}}
+      """;
+
+  private static ServiceEndpointProperties newEndpointProperties() {
+    return new ServiceEndpointProperties(
+        new ArrayList<>(List.of(new ApiResourceDescriptor("person", "http://localhost:8082/api/v1/person", true))),
+        new ArrayList<>());
+  }
+
+  private static PendingDocumentRegistry newPendingDocuments() {
+    return new PendingDocumentRegistry(new IndexingProperties());
+  }
+
+  private static String person(String id) {
+    return "{\"type\": \"person\", \"id\": \"" + id + "\", \"attributes\": {\"displayName\": \"" + id + "\"}}";
+  }
+
+  @DisplayName("Test related documents of the same type fetched in a single request")
+  @Test
+  public void assembleDocument_sameTypeRelationships_fetchedInBatch() throws Exception {
+    AtomicInteger singleCalls = new AtomicInteger();
+    List<Collection<String>> batchCalls = new ArrayList<>();
+
+    IndexableDocumentHandler handler = new IndexableDocumentHandler(new TestApiAccess(singleCalls) {
+      @Override
+      public CompletableFuture<String> getFromApiByIdsAsync(ApiResourceDescriptor apiResourceDescriptor,
+                                                            Set<String> includes, Collection<String> ids) {
+        batchCalls.add(ids);
+        // p3 is not returned and will be fetched by id
+        return CompletableFuture.completedFuture("{\"data\": [" + person("p2") + "," + person("p1") + "]}");
+      }
+    }, newEndpointProperties(), new IndexingProperties(), newPendingDocuments());
+
+    JsonNode result = handler.assembleDocument(DOCUMENT);
+
+    assertEquals(List.of(List.of("p1", "p2", "p3")), batchCalls);
+    assertEquals(1, singleCalls.get());
+    // order of the relationships is kept
+    assertEquals("p1", result.at("/included/0/id").asText());
+    assertEquals("p2", result.at("/included/1/id").asText());
+    assertEquals("p3", result.at("/included/2/id").asText());
+  }
+
+  @DisplayName("Test fallback to one request per document when the API rejects the batch")
+  @Test
+  public void assembleDocument_batchRejected_fetchedById() throws Exception {
+    AtomicInteger singleCalls = new AtomicInteger();
+    AtomicInteger batchCalls = new AtomicInteger();
+
+    IndexableDocumentHandler handler = new IndexableDocumentHandler(new TestApiAccess(singleCalls) {
+      @Override
+      public CompletableFuture<String> getFromApiByIdsAsync(ApiResourceDescriptor apiResourceDescriptor,
+                                                            Set<String> includes, Collection<String> ids) {
+        batchCalls.incrementAndGet();
+        return CompletableFuture.failedFuture(new SearchApiHttpException("bad request", 400));
+      }
+    }, newEndpointProperties(), new IndexingProperties(), newPendingDocuments());
+
+    assertEquals(3, handler.assembleDocument(DOCUMENT).get("included").size());
+    assertEquals(3, singleCalls.get());
+
+    // batch is no longer tried for that type
+    handler.assembleDocument(DOCUMENT);
+    assertEquals(1, batchCalls.get());
+    assertEquals(6, singleCalls.get());
+  }
+
+  @DisplayName("Test fetches by id of the documents missing from a batch limited by the fetch permits")
+  @Test
+  public void assembleDocument_batchFailed_fallbackFetchesLimited() throws Exception {
+    AtomicInteger singleCalls = new AtomicInteger();
+    AtomicInteger inFlight = new AtomicInteger();
+    AtomicInteger maxInFlight = new AtomicInteger();
+
+    IndexingProperties properties = new IndexingProperties();
+    properties.getAssembly().setMaxConcurrentFetches(1);
+
+    IndexableDocumentHandler handler = new IndexableDocumentHandler(new TestApiAccess(singleCalls) {
+      @Override
+      public CompletableFuture<String> getFromApiAsync(ApiResourceDescriptor apiResourceDescriptor,
+                                                       Set<String> includes, Map<String, List<String>> optFields,
+                                                       String objectId) {
+        maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+        // completed later by another thread, like an http call
+        return CompletableFuture.supplyAsync(() -> {
+          inFlight.decrementAndGet();
+          singleCalls.incrementAndGet();
+          return "{\"data\": " + person(objectId) + "}";
+        }, CompletableFuture.delayedExecutor(20, TimeUnit.MILLISECONDS));
+      }
+
+      @Override
+      public CompletableFuture<String> getFromApiByIdsAsync(ApiResourceDescriptor apiResourceDescriptor,
+                                                            Set<String> includes, Collection<String> ids) {
+        return CompletableFuture.failedFuture(new SearchApiHttpException("server error", 500));
+      }
+    }, newEndpointProperties(), properties, new PendingDocumentRegistry(properties));
+
+    assertEquals(3, handler.assembleDocument(DOCUMENT).get("included").size());
+    assertEquals(3, singleCalls.get());
+    assertEquals(1, maxInFlight.get());
+  }
+
+  @DisplayName("Test related documents fetched concurrently and merged in the same order when completed in reverse")
+  @Test
+  public void assembleDocument_fetchesCompletedInReverse_sameDocument() throws Exception {
+    IndexingProperties properties = new IndexingProperties();
+    properties.getAssembly().setBatchSize(1);
+    properties.getAssembly().setMaxConcurrentFetches(3);
+
+    DeferredApiAccess inOrderAccess = new DeferredApiAccess();
+    CompletableFuture<ObjectNode> inOrder = assembleAsync(new IndexableDocumentHandler(inOrderAccess,
+        newEndpointProperties(), properties, new PendingDocumentRegistry(properties)));
+    // all the fetches are started before any of them completes
+    inOrderAccess.awaitStarted(3);
+    inOrderAccess.complete("p1", "p2", "p3");
+
+    DeferredApiAccess reverseAccess = new DeferredApiAccess();
+    CompletableFuture<ObjectNode> reverse = assembleAsync(new IndexableDocumentHandler(reverseAccess,
+        newEndpointProperties(), properties, new PendingDocumentRegistry(properties)));
+    reverseAccess.awaitStarted(3);
+    reverseAccess.complete("p3", "p2", "p1");
+
+    ObjectNode expected = inOrder.get(5, TimeUnit.SECONDS);
+    assertEquals(List.of("p1", "p2", "p3"), List.of(expected.at("/included/0/id").asText(),
+        expected.at("/included/1/id").asText(), expected.at("/included/2/id").asText()));
+    assertEquals(expected, reverse.get(5, TimeUnit.SECONDS));
+  }
+
+  @DisplayName("Test no more fetches than maxConcurrentFetches are in flight for a document")
+  @Test
+  public void assembleDocument_maxConcurrentFetches_honoured() throws Exception {
+    IndexingProperties properties = new IndexingProperties();
+    properties.getAssembly().setBatchSize(1);
+    properties.getAssembly().setMaxConcurrentFetches(2);
+
+    DeferredApiAccess apiAccess = new DeferredApiAccess();
+    CompletableFuture<ObjectNode> assembled = assembleAsync(new IndexableDocumentHandler(apiAccess,
+        newEndpointProperties(), properties, new PendingDocumentRegistry(properties)));
+
+    apiAccess.awaitStarted(2);
+    Thread.sleep(200);
+    assertEquals(List.of("p1", "p2"), apiAccess.startedIds());
+
+    // a permit is released, the last fetch can start
+    apiAccess.complete("p2");
+    apiAccess.awaitStarted(3);
+    apiAccess.complete("p3", "p1");
+
+    assertEquals(3, assembled.get(5, TimeUnit.SECONDS).get("included").size());
+  }
+
+  private static CompletableFuture<ObjectNode> assembleAsync(IndexableDocumentHandler handler) {
+    return CompletableFuture.supplyAsync(() -> {
+      try {
+        return handler.assembleDocument(DOCUMENT);
+      } catch (Exception e) {
+        throw new CompletionException(e);
+      }
+    });
+  }
+
+  /**
+   * Fetches by id completed by the test.
+   */
+  private static class DeferredApiAccess extends TestApiAccess {
+    private final Map<String, CompletableFuture<String>> started = new ConcurrentHashMap<>();
+    private final List<String> startedIds = new CopyOnWriteArrayList<>();
+
+    DeferredApiAccess() {
+      super(new AtomicInteger());
+    }
+
+    @Override
+    public CompletableFuture<String> getFromApiAsync(ApiResourceDescriptor apiResourceDescriptor,
+                                                     Set<String> includes, Map<String, List<String>> optFields,
+                                                     String objectId) {
+      CompletableFuture<String> future = new CompletableFuture<>();
+      started.put(objectId, future);
+      startedIds.add(objectId);
+      return future;
+    }
+
+    List<String> startedIds() {
+      return List.copyOf(startedIds);
+    }
+
+    void awaitStarted(int count) throws InterruptedException {
+      long deadline = System.currentTimeMillis() + 5000;
+      while (startedIds.size() < count) {
+        if (System.currentTimeMillis() > deadline) {
+          throw new AssertionError(count + " fetches expected, started: " + startedIds);
+        }
+        Thread.sleep(10);
+      }
+    }
+
+    void complete(String... ids) {
+      for (String id : ids) {
+        started.get(id).complete("{\"data\": " + person(id) + "}");
+      }
+    }
+  }
+
+  private static class TestApiAccess implements DinaApiAccess {
+    private final AtomicInteger singleCalls;
+
+    TestApiAccess(AtomicInteger singleCalls) {
+      this.singleCalls = singleCalls;
+    }
+
+    @Override
+    public String getFromApi(ApiResourceDescriptor apiResourceDescriptor, Set<String> includes,
+                             Map<String, List<String>> optFields, String objectId) {
+      singleCalls.incrementAndGet();
+      return "{\"data\": " + person(objectId) + "}";
+    }
+
+    @Override
+    public String getFromApiByFilter(ApiResourceDescriptor apiResourceDescriptor, Set<String> includes,
+                                     Map<String, List<String>> optFields, Pair<String, String> filter)
+        throws SearchApiException {
+      throw new SearchApiException("not expected");
+    }
+  }
+}
@@ -0,0 +1,153 @@
+package ca.gc.aafc.dina.search.cli.indexing;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import ca.gc.aafc.dina.search.cli.config.IndexingProperties;
+import ca.gc.aafc.dina.search.cli.exceptions.SearchApiException;
+
+public class ReIndexCascadeTest {
+
+  private static final String INDEX_NAME = "index";
+
+  private final ExecutorService workers = Executors.newFixedThreadPool(2);
+  private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+  @AfterEach
+  public void tearDown() {
+    workers.shutdownNow();
+    scheduler.shutdownNow();
+  }
+
+  private BulkIndexingBuffer newBuffer(List<IndexingOperation> sent) throws SearchApiException {
+    DocumentIndexer indexer = mock(DocumentIndexer.class);
+    when(indexer.bulk(anyList())).thenAnswer(invocation -> {
+      List<IndexingOperation> operations = invocation.getArgument(0);
+      sent.addAll(operations);
+      return Collections.nCopies(operations.size(), OperationStatus.SUCCEEDED);
+    });
+    IndexingProperties.Bulk settings = new IndexingProperties.Bulk();
+    settings.setFlushInterval(Duration.ofHours(1));
+    return new BulkIndexingBuffer(indexer, settings, scheduler);
+  }
+
+  private static DocumentManager.DocumentInfo docInfo(String id) {
+    return new DocumentManager.DocumentInfo("material-sample", id);
+  }
+
+  @DisplayName("Test all submitted documents sent when the cascade is closed")
+  @Test
+  public void close_documentsSubmitted_allSentAndProgressReported() throws Exception {
+    List<IndexingOperation> sent = Collections.synchronizedList(new ArrayList<>());
+    List<ReIndexCascade> closed = new ArrayList<>();
+
+    ReIndexCascade cascade = new ReIndexCascade("test", workers,
+        doc -> IndexingOperation.index(doc.id(), "{}", INDEX_NAME), newBuffer(sent), 2, closed::add,
+        e -> false, null);
+    try (cascade) {
+      for (int i = 0; i < 5; i++) {
+        cascade.submit(docInfo(Integer.toString(i)));
+      }
+    }
+
+    assertEquals(5, sent.size());
+    assertEquals(List.of(cascade), closed);
+    CascadeProgress progress = cascade.getProgress();
+    assertEquals(5, progress.submitted());
+    assertEquals(5, progress.indexed());
+    assertEquals(0, progress.failed());
+    assertEquals(0, progress.pending());
+  }
+
+  @DisplayName("Test only documents failing with a transient error given to the failure listener")
+  @Test
+  public void submit_assemblyFailure_transientFailuresReported() throws Exception {
+    List<IndexingOperation> sent = Collections.synchronizedList(new ArrayList<>());
+    List<DocumentManager.DocumentInfo> transientFailures = Collections.synchronizedList(new ArrayList<>());
+
+    ReIndexCascade cascade = new ReIndexCascade("test", workers,
+        doc -> switch (doc.id()) {
+          case "transient" -> throw new SearchApiException("unavailable", new IOException("timeout"));
+          case "permanent" -> throw new SearchApiException("not found");
+          default -> IndexingOperation.index(doc.id(), "{}", INDEX_NAME);
+        }, newBuffer(sent), 10, c -> { }, e -> e.getCause() instanceof IOException, transientFailures::add);
+    try (cascade) {
+      cascade.submit(docInfo("ok"));
+      cascade.submit(docInfo("transient"));
+      cascade.submit(docInfo("permanent"));
+    }
+
+    assertEquals(1, sent.size());
+    assertEquals(List.of(docInfo("transient")), transientFailures);
+    assertEquals(2, cascade.getProgress().failed());
+  }
+
+  @DisplayName("Test submit blocked while the maximum number of documents are waiting to be assembled")
+  @Test
+  public void submit_maxPendingReached_blocked() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    List<IndexingOperation> sent = Collections.synchronizedList(new ArrayList<>());
+
+    ReIndexCascade cascade = new ReIndexCascade("test", workers, doc -> {
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      return IndexingOperation.index(doc.id(), "{}", INDEX_NAME);
+    }, newBuffer(sent), 1, c -> { }, e -> false, null);
+
+    cascade.submit(docInfo("1"));
+    CountDownLatch secondSubmitted = new CountDownLatch(1);
+    Thread submitter = new Thread(() -> {
+      cascade.submit(docInfo("2"));
+      secondSubmitted.countDown();
+    });
+    submitter.start();
+
+    assertFalse(secondSubmitted.await(200, TimeUnit.MILLISECONDS));
+    assertEquals(1, cascade.getProgress().pending());
+
+    release.countDown();
+    assertTrue(secondSubmitted.await(5, TimeUnit.SECONDS));
+    cascade.close();
+    assertEquals(2, sent.size());
+  }
+
+  @DisplayName("Test document rejected by the workers counted as failed")
+  @Test
+  public void submit_workersShutdown_failed() throws Exception {
+    List<IndexingOperation> sent = Collections.synchronizedList(new ArrayList<>());
+    workers.shutdown();
+
+    ReIndexCascade cascade = new ReIndexCascade("test", workers,
+        doc -> IndexingOperation.index(doc.id(), "{}", INDEX_NAME), newBuffer(sent), 2, c -> { },
+        e -> false, null);
+    try (cascade) {
+      cascade.submit(docInfo("1"));
+    }
+
+    assertEquals(0, sent.size());
+    assertEquals(1, cascade.getProgress().failed());
+    assertEquals(0, cascade.getProgress().pending());
+  }
+}
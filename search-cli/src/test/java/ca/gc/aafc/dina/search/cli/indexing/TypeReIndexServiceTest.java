@@ -0,0 +1,192 @@
+package ca.gc.aafc.dina.search.cli.indexing;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+
+import ca.gc.aafc.dina.search.cli.config.ApiResourceDescriptor;
+import ca.gc.aafc.dina.search.cli.config.IndexSettingDescriptor;
+import ca.gc.aafc.dina.search.cli.config.IndexingProperties;
+import ca.gc.aafc.dina.search.cli.config.ServiceEndpointProperties;
+import ca.gc.aafc.dina.search.cli.exceptions.SearchApiException;
+import ca.gc.aafc.dina.search.cli.http.OpenIDHttpClient;
+
+public class TypeReIndexServiceTest {
+
+  private static final String TYPE = "material-sample";
+  private static final String ALIAS = "dina_material_sample_index";
+  private static final String CURRENT_INDEX = ALIAS + "_1";
+
+  @TempDir
+  private Path checkpointDirectory;
+
+  private OpenIDHttpClient aClient;
+  private DocumentManager documentManager;
+  private ElasticSearchIndexAdmin indexAdmin;
+  private ApiResourceDescriptor apiResourceDescriptor;
+  private TypeReIndexService service;
+
+  @BeforeEach
+  public void setup() throws SearchApiException {
+    aClient = mock(OpenIDHttpClient.class);
+    documentManager = mock(DocumentManager.class);
+    indexAdmin = mock(ElasticSearchIndexAdmin.class);
+    ServiceEndpointProperties svcEndpointProps = mock(ServiceEndpointProperties.class);
+
+    apiResourceDescriptor = new ApiResourceDescriptor(TYPE, "http://localhost/api/" + TYPE, true);
+    when(svcEndpointProps.getApiResourceDescriptorForType(TYPE)).thenReturn(apiResourceDescriptor);
+    when(svcEndpointProps.getIndexSettingDescriptorForType(TYPE)).thenReturn(
+        new IndexSettingDescriptor(ALIAS, TYPE, null, null, null, null, null, null));
+    when(documentManager.isTypeConfigured(TYPE)).thenReturn(true);
+    when(indexAdmin.getAliasIndices(ALIAS)).thenReturn(Set.of(CURRENT_INDEX));
+
+    // every document is indexed unless a test says otherwise
+    when(documentManager.reIndexDocuments(anyList(), anyString())).thenAnswer(invocation ->
+        progress(((List<?>) invocation.getArgument(0)).size(), 0));
+
+    IndexingProperties indexingProperties = new IndexingProperties();
+    indexingProperties.getFullReindex().setPageSize(2);
+    indexingProperties.getFullReindex().setCheckpointDirectory(checkpointDirectory.toString());
+
+    service = new TypeReIndexService(aClient, svcEndpointProps, documentManager, indexAdmin, indexingProperties);
+  }
+
+  private static CascadeProgress progress(int indexed, int failed) {
+    return new CascadeProgress("test", indexed + failed, indexed, failed, 0, 0);
+  }
+
+  private void mockPage(String afterId, String... ids) throws SearchApiException {
+    String data = List.of(ids).stream()
+        .map(id -> "{\"id\":\"" + id + "\",\"type\":\"" + TYPE + "\"}")
+        .collect(Collectors.joining(","));
+    when(aClient.getDataPage(apiResourceDescriptor, afterId, 2)).thenReturn("{\"data\":[" + data + "]}");
+  }
+
+  private Path checkpointFile() {
+    return checkpointDirectory.resolve("reindex-" + TYPE + ".checkpoint.json");
+  }
+
+  @DisplayName("Test all the pages are indexed into a new index and the alias is moved to it")
+  @Test
+  public void reIndexType_allIndexed_aliasSwapped() throws SearchApiException {
+    mockPage(null, "1", "2");
+    mockPage("2", "3");
+
+    TypeReIndexService.ReIndexCheckpoint checkpoint = service.reIndexType(TYPE, null, false, false);
+
+    ArgumentCaptor<String> targetIndex = ArgumentCaptor.forClass(String.class);
+    verify(indexAdmin).createIndexFromAlias(targetIndex.capture(), eq(ALIAS));
+    assertTrue(targetIndex.getValue().startsWith(ALIAS + "_"));
+    assertEquals(targetIndex.getValue(), checkpoint.targetIndex());
+
+    verify(documentManager, times(2)).reIndexDocuments(anyList(), eq(checkpoint.targetIndex()));
+    verify(indexAdmin).setRefreshEnabled(checkpoint.targetIndex(), true);
+    verify(indexAdmin).swapAlias(ALIAS, checkpoint.targetIndex());
+    verify(documentManager).startRecordingChanges(ALIAS);
+    assertEquals("3", checkpoint.lastId());
+    assertEquals(3, checkpoint.processed());
+    assertEquals(3, checkpoint.indexed());
+    assertEquals(0, checkpoint.failed());
+    assertFalse(Files.exists(checkpointFile()));
+  }
+
+  @DisplayName("Test documents changed during the re-index are applied to the new index")
+  @Test
+  public void reIndexType_changesRecorded_appliedToNewIndex() throws SearchApiException {
+    mockPage(null, "1");
+    Map<DocumentManager.DocumentInfo, IndexingOperation.OperationType> beforeSwap =
+        Map.of(new DocumentManager.DocumentInfo(TYPE, "10"), IndexingOperation.OperationType.INDEX);
+    Map<DocumentManager.DocumentInfo, IndexingOperation.OperationType> afterSwap =
+        Map.of(new DocumentManager.DocumentInfo(TYPE, "11"), IndexingOperation.OperationType.DELETE);
+    when(documentManager.drainRecordedChanges(ALIAS)).thenReturn(beforeSwap);
+    when(documentManager.stopRecordingChanges(ALIAS)).thenReturn(afterSwap, Map.of());
+    when(documentManager.applyRecordedChanges(any(), anyString())).thenReturn(progress(1, 0));
+
+    TypeReIndexService.ReIndexCheckpoint checkpoint = service.reIndexType(TYPE, null, false, false);
+
+    verify(documentManager).applyRecordedChanges(beforeSwap, checkpoint.targetIndex());
+    verify(documentManager).applyRecordedChanges(afterSwap, checkpoint.targetIndex());
+    assertEquals(3, checkpoint.indexed());
+  }
+
+  @DisplayName("Test an interrupted re-index is resumed from the checkpoint")
+  @Test
+  public void reIndexType_resume_continuesFromCheckpoint() throws SearchApiException, IOException {
+    String targetIndex = ALIAS + "_20240101000000";
+    IndexableDocumentHandler.OM.writeValue(checkpointFile().toFile(),
+        new TypeReIndexService.ReIndexCheckpoint(TYPE, targetIndex, "2", 2, 2, 0));
+    mockPage("2", "3");
+
+    TypeReIndexService.ReIndexCheckpoint checkpoint = service.reIndexType(TYPE, null, true, false);
+
+    verify(indexAdmin, never()).createIndexFromAlias(anyString(), anyString());
+    verify(aClient, never()).getDataPage(any(), isNull(), anyInt());
+    verify(documentManager).reIndexDocuments(anyList(), eq(targetIndex));
+    verify(indexAdmin).swapAlias(ALIAS, targetIndex);
+    assertEquals("3", checkpoint.lastId());
+    assertEquals(3, checkpoint.processed());
+    assertEquals(3, checkpoint.indexed());
+  }
+
+  @DisplayName("Test the alias is not moved when documents failed unless forced")
+  @Test
+  public void reIndexType_failures_swappedOnlyWhenForced() throws SearchApiException {
+    mockPage(null, "1", "2");
+    mockPage("2");
+    when(documentManager.reIndexDocuments(anyList(), anyString())).thenReturn(progress(1, 1));
+
+    assertThrows(SearchApiException.class, () -> service.reIndexType(TYPE, null, false, false));
+    verify(indexAdmin, never()).swapAlias(anyString(), anyString());
+    verify(documentManager).stopRecordingChanges(ALIAS);
+    assertTrue(Files.exists(checkpointFile()));
+
+    // resumed at the end of the pages, only the swap is left
+    TypeReIndexService.ReIndexCheckpoint checkpoint = service.reIndexType(TYPE, null, true, true);
+    verify(indexAdmin).swapAlias(ALIAS, checkpoint.targetIndex());
+    assertEquals(1, checkpoint.failed());
+    assertFalse(Files.exists(checkpointFile()));
+  }
+
+  @DisplayName("Test a document deleted from a page already processed doesn't make the next page skip a document")
+  @Test
+  @SuppressWarnings("unchecked")
+  public void reIndexType_documentDeletedWhilePaging_noDocumentSkipped() throws SearchApiException {
+    mockPage(null, "1", "2");
+    // "1" deleted after the first page: an offset of 2 would start at "4"
+    mockPage("2", "3", "4");
+    mockPage("4");
+
+    service.reIndexType(TYPE, null, false, false);
+
+    ArgumentCaptor<List<DocumentManager.DocumentInfo>> pages = ArgumentCaptor.forClass(List.class);
+    verify(documentManager, times(2)).reIndexDocuments(pages.capture(), anyString());
+    assertEquals(List.of("1", "2", "3", "4"), pages.getAllValues().stream()
+        .flatMap(List::stream).map(DocumentManager.DocumentInfo::id).toList());
+  }
+}
@@ -0,0 +1,125 @@
+package ca.gc.aafc.dina.search.cli.messaging;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import ca.gc.aafc.dina.messaging.message.DocumentOperationNotification;
+import ca.gc.aafc.dina.messaging.message.DocumentOperationType;
+
+public class NotificationCoalescerTest {
+
+  @DisplayName("Test notifications of the same document are collapsed and the last one wins")
+  @Test
+  public void submit_sameDocument_lastEmitted() throws InterruptedException {
+    List<DocumentOperationNotification> emitted = new CopyOnWriteArrayList<>();
+    CountDownLatch latch = new CountDownLatch(2);
+
+    try (NotificationCoalescer coalescer = new NotificationCoalescer(Duration.ofMillis(200), n -> {
+      emitted.add(n);
+      latch.countDown();
+    })) {
+      coalescer.submit(notification("1", DocumentOperationType.ADD));
+      coalescer.submit(notification("1", DocumentOperationType.UPDATE));
+      coalescer.submit(notification("2", DocumentOperationType.UPDATE));
+      coalescer.submit(notification("2", DocumentOperationType.DELETE));
+      coalescer.submit(notification("2", DocumentOperationType.ADD));
+
+      assertTrue(latch.await(5, TimeUnit.SECONDS));
+
+      assertEquals(DocumentOperationType.UPDATE, emitted.get(0).getOperationType());
+      assertEquals(DocumentOperationType.ADD, emitted.get(1).getOperationType());
+
+      NotificationCoalescer.CoalescerStats stats = coalescer.getStats();
+      assertEquals(2, stats.delayed());
+      assertEquals(3, stats.collapsed());
+      assertEquals(2, stats.emitted());
+      assertEquals(0, stats.pending());
+    }
+  }
+
+  @DisplayName("Test futures of collapsed notifications complete once the last one is processed")
+  @Test
+  public void submit_collapsed_futuresCompletedAfterProcessing() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    try (NotificationCoalescer coalescer = new NotificationCoalescer(Duration.ofMillis(50), n -> {
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    })) {
+      CompletableFuture<Void> first = coalescer.submit(notification("1", DocumentOperationType.ADD));
+      CompletableFuture<Void> second = coalescer.submit(notification("1", DocumentOperationType.UPDATE));
+
+      // not acknowledged before the notification is processed
+      Thread.sleep(200);
+      assertFalse(first.isDone());
+      assertFalse(second.isDone());
+
+      release.countDown();
+      first.get(5, TimeUnit.SECONDS);
+      second.get(5, TimeUnit.SECONDS);
+    }
+  }
+
+  @DisplayName("Test futures of collapsed notifications failed when the processing fails")
+  @Test
+  public void submit_processingFailed_futuresFailed() {
+    try (NotificationCoalescer coalescer = new NotificationCoalescer(Duration.ofMillis(50), n -> {
+      throw new IllegalStateException("failed");
+    })) {
+      CompletableFuture<Void> first = coalescer.submit(notification("1", DocumentOperationType.ADD));
+      CompletableFuture<Void> second = coalescer.submit(notification("1", DocumentOperationType.UPDATE));
+
+      assertThrows(ExecutionException.class, () -> first.get(5, TimeUnit.SECONDS));
+      assertThrows(ExecutionException.class, () -> second.get(5, TimeUnit.SECONDS));
+    }
+  }
+
+  @DisplayName("Test notifications processed immediately when the maximum number of windows is open")
+  @Test
+  public void submit_maxPendingReached_processedImmediately() {
+    List<DocumentOperationNotification> emitted = new CopyOnWriteArrayList<>();
+    try (NotificationCoalescer coalescer = new NotificationCoalescer(Duration.ofHours(1), 1, emitted::add)) {
+      CompletableFuture<Void> delayed = coalescer.submit(notification("1", DocumentOperationType.ADD));
+      CompletableFuture<Void> overflow = coalescer.submit(notification("2", DocumentOperationType.ADD));
+      // an open window still collapses the notifications of its document
+      coalescer.submit(notification("1", DocumentOperationType.UPDATE));
+
+      assertTrue(overflow.isDone());
+      assertFalse(delayed.isDone());
+      assertEquals(1, emitted.size());
+      assertEquals("2", emitted.getFirst().getDocumentId());
+      assertEquals(1, coalescer.getStats().overflow());
+      assertEquals(1, coalescer.getStats().pending());
+
+      // windows not expired yet are emitted on close
+      coalescer.close();
+      assertTrue(delayed.isDone());
+      assertEquals(2, emitted.size());
+      assertEquals(DocumentOperationType.UPDATE, emitted.get(1).getOperationType());
+    }
+  }
+
+  private static DocumentOperationNotification notification(String id, DocumentOperationType operationType) {
+    return DocumentOperationNotification.builder()
+        .documentType("person")
+        .documentId(id)
+        .operationType(operationType)
+        .dryRun(false)
+        .build();
+  }
+}
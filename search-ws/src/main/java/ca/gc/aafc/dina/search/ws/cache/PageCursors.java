@@ -0,0 +1,104 @@
+package ca.gc.aafc.dina.search.ws.cache;
+
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Cursors (searchAfter values) of the pages of a single query, sorted by page number, and the point in time
+ * (PIT) they were computed in, if any.
+ *
+ * Page numbers are stored in a sorted primitive array so the nearest cached page before any page is found
+ * by binary search, without boxing. Insertions shift the arrays, which is fine for the number of pages
+ * walked by a query.
+ *
+ * Thread-safe.
+ */
+class PageCursors {
+
+  private static final int INITIAL_CAPACITY = 8;
+
+  private int[] pages = new int[INITIAL_CAPACITY];
+  private Object[] cursors = new Object[INITIAL_CAPACITY];
+  private int size;
+
+  private volatile String pointInTimeId;
+  private volatile long pointInTimeOpenedAt;
+
+  /**
+   * @param pageNumber
+   * @return the cursor of the page or null
+   */
+  @SuppressWarnings("unchecked")
+  synchronized List<FieldValue> get(int pageNumber) {
+    int idx = Arrays.binarySearch(pages, 0, size, pageNumber);
+    return idx >= 0 ? (List<FieldValue>) cursors[idx] : null;
+  }
+
+  /**
+   * Find the cursor of the highest page lower than pageNumber.
+   * @param pageNumber
+   * @return page number and cursor or null if there is no such page
+   */
+  @SuppressWarnings("unchecked")
+  synchronized Pair<Integer, List<FieldValue>> lower(int pageNumber) {
+    int idx = Arrays.binarySearch(pages, 0, size, pageNumber);
+    // exact match: previous element, otherwise: element before the insertion point
+    int lowerIdx = idx >= 0 ? idx - 1 : -idx - 2;
+    return lowerIdx >= 0 ? Pair.of(pages[lowerIdx], (List<FieldValue>) cursors[lowerIdx]) : null;
+  }
+
+  synchronized void put(int pageNumber, List<FieldValue> cursor) {
+    int idx = Arrays.binarySearch(pages, 0, size, pageNumber);
+    if (idx >= 0) {
+      cursors[idx] = cursor;
+      return;
+    }
+
+    int insertionPoint = -idx - 1;
+    if (size == pages.length) {
+      pages = Arrays.copyOf(pages, size * 2);
+      cursors = Arrays.copyOf(cursors, size * 2);
+    }
+    System.arraycopy(pages, insertionPoint, pages, insertionPoint + 1, size - insertionPoint);
+    System.arraycopy(cursors, insertionPoint, cursors, insertionPoint + 1, size - insertionPoint);
+    pages[insertionPoint] = pageNumber;
+    cursors[insertionPoint] = cursor;
+    size++;
+  }
+
+  synchronized int size() {
+    return size;
+  }
+
+  String getPointInTimeId() {
+    return pointInTimeId;
+  }
+
+  /**
+   * Set the latest id of the PIT, the PIT keeps its opening time.
+   * @param pointInTimeId
+   */
+  void setPointInTimeId(String pointInTimeId) {
+    this.pointInTimeId = pointInTimeId;
+  }
+
+  /**
+   * @return ticker time (nanoseconds) the PIT was opened at, meaningless without PIT
+   */
+  long getPointInTimeOpenedAt() {
+    return pointInTimeOpenedAt;
+  }
+
+  /**
+   * Set the PIT the cursors are computed in.
+   * @param pointInTimeId
+   * @param openedAt ticker time (nanoseconds) the PIT was opened at
+   */
+  void setPointInTime(String pointInTimeId, long openedAt) {
+    this.pointInTimeOpenedAt = openedAt;
+    this.pointInTimeId = pointInTimeId;
+  }
+}
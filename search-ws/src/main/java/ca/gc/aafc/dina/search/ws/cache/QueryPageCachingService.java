@@ -1,48 +1,149 @@
 package ca.gc.aafc.dina.search.ws.cache;
 
+import ca.gc.aafc.dina.search.ws.config.DeepPagingProperties;
 import co.elastic.clients.elasticsearch._types.FieldValue;
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.Scheduler;
+import com.github.benmanes.caffeine.cache.Ticker;
 import lombok.extern.log4j.Log4j2;
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.lang3.tuple.Pair;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
 
+/**
+ * Cache of the searchAfter cursors of the pages of the queries.
+ *
+ * There is one entry per query holding the cursors of its pages ({@link PageCursors}). Entries are weighted by
+ * their number of cursors so the cache is bounded by the total number of cursors. An entry holding a point in
+ * time (PIT) also weighs {@value #POINT_IN_TIME_WEIGHT} cursors: it keeps search contexts open in elasticsearch,
+ * so the number of open PITs is bounded too and the least used ones are closed first.
+ *
+ * Entries expire a fixed time after the first cursor of the query, adding cursors doesn't extend it.
+ * When the pages are walked inside a point in time (PIT), the entry also holds the PIT id. Entries then expire
+ * when they are not used for the PIT keep alive, or when the PIT reaches its maximum lifetime even if it is still
+ * used so the deep pages don't serve an old snapshot of the index forever. The PIT is closed when its entry is
+ * removed, the next request opens a new one.
+ */
 @Service
 @Log4j2
 public class QueryPageCachingService {
 
-  private final Cache<String, List<FieldValue>> searchAfterCache;
+  private final Cache<String, PageCursors> searchAfterCache;
   private static final long CACHE_TTL = 60; // minutes
-  private static final int MAX_CACHE_SIZE = 10000;
-  private static final int NEAREST_PAGE_SEARCH_RANGE = 20;
-  private static final String CACHE_KEY_FORMAT = "%s:page_%d";
-
-  public QueryPageCachingService() {
-    this.searchAfterCache = Caffeine.newBuilder()
-        .maximumSize(MAX_CACHE_SIZE)
-        .expireAfterWrite(CACHE_TTL, TimeUnit.MINUTES)
+  private static final int MAX_CACHE_SIZE = 10000; // cursors
+  private static final int POINT_IN_TIME_WEIGHT = 100; // cursors, at most 100 PITs open
+
+  private final Ticker ticker;
+  private volatile Consumer<String> pointInTimeCloser;
+
+  @Autowired
+  public QueryPageCachingService(DeepPagingProperties deepPagingProperties) {
+    this(deepPagingProperties, Ticker.systemTicker(), ForkJoinPool.commonPool());
+  }
+
+  QueryPageCachingService(DeepPagingProperties deepPagingProperties, Ticker ticker, Executor executor) {
+    this.ticker = ticker;
+    Caffeine<String, PageCursors> builder = Caffeine.newBuilder()
+        .maximumWeight(MAX_CACHE_SIZE)
         .recordStats()
-        .build();
+        .ticker(ticker)
+        .executor(executor)
+        .weigher((String queryHash, PageCursors cursors) -> weigh(cursors))
+        .removalListener(this::onRemoval);
+
+    if (deepPagingProperties.isPointInTime()) {
+      // follow the PIT keep alive and expire on time so the PIT are closed even if the cache is idle
+      builder.scheduler(Scheduler.systemScheduler());
+      this.searchAfterCache = builder
+          .expireAfter(new CursorsExpiry(deepPagingProperties.getPointInTimeKeepAlive(), true,
+              deepPagingProperties.getPointInTimeMaxLifetime()))
+          .build();
+    } else {
+      this.searchAfterCache = builder
+          .expireAfter(new CursorsExpiry(Duration.ofMinutes(CACHE_TTL), false, null))
+          .build();
+    }
+
+    log.info("QueryCacheService initialized with max size: {} cursors, TTL: {} minutes",
+        MAX_CACHE_SIZE, deepPagingProperties.isPointInTime() ?
+            deepPagingProperties.getPointInTimeKeepAlive().toMinutes() : CACHE_TTL);
+  }
+
+  /**
+   * Set the function closing the PIT of the entries removed from the cache.
+   * @param pointInTimeCloser receives the id of the PIT to close
+   */
+  public void setPointInTimeCloser(Consumer<String> pointInTimeCloser) {
+    this.pointInTimeCloser = pointInTimeCloser;
+  }
+
+  /**
+   * Get the id of the PIT the cursors of a query are computed in.
+   * @param queryHash
+   * @return the PIT id or null
+   */
+  public String getPointInTime(String queryHash) {
+    PageCursors cursors = searchAfterCache.getIfPresent(queryHash);
+    return cursors != null ? cursors.getPointInTimeId() : null;
+  }
+
+  /**
+   * Set the PIT of a query unless the query already has one.
+   * Cursors computed outside a PIT are discarded since they can't be used with it.
+   *
+   * @param queryHash
+   * @param pointInTimeId
+   * @return the PIT id of the query, if it is not pointInTimeId the caller should close pointInTimeId
+   */
+  public String setPointInTimeIfAbsent(String queryHash, String pointInTimeId) {
+    PageCursors cursors = searchAfterCache.asMap().compute(queryHash, (k, current) -> {
+      if (current != null && current.getPointInTimeId() != null) {
+        return current;
+      }
+      PageCursors withPit = new PageCursors();
+      withPit.setPointInTime(pointInTimeId, ticker.read());
+      return withPit;
+    });
+    return cursors.getPointInTimeId();
+  }
 
-    log.info("QueryCacheService initialized with max size: {}, TTL: {} minutes",
-        MAX_CACHE_SIZE, CACHE_TTL);
+  /**
+   * Record the latest id returned by elasticsearch for the PIT of a query (the id can change between requests).
+   * @param queryHash
+   * @param previousId id used for the request
+   * @param latestId id returned by the request
+   */
+  public void updatePointInTime(String queryHash, String previousId, String latestId) {
+    searchAfterCache.asMap().computeIfPresent(queryHash, (k, cursors) -> {
+      if (previousId.equals(cursors.getPointInTimeId())) {
+        cursors.setPointInTimeId(latestId);
+      }
+      return cursors;
+    });
   }
 
   /**
    * Get searchAfter from cache for a specific page for a query
    */
   public List<FieldValue> getSearchAfter(String queryHash, int pageNumber) {
-    String cacheKey = getCacheKey(queryHash, pageNumber);
-    List<FieldValue> cached = searchAfterCache.getIfPresent(cacheKey);
+    PageCursors cursors = searchAfterCache.getIfPresent(queryHash);
+    List<FieldValue> cached = cursors != null ? cursors.get(pageNumber) : null;
 
     if (cached != null) {
-      log.debug("Cache hit: {}", cacheKey);
+      log.debug("Cache hit: {} page {}", queryHash, pageNumber);
     } else {
-      log.debug("Cache miss: {}", cacheKey);
+      log.debug("Cache miss: {} page {}", queryHash, pageNumber);
     }
     return cached;
   }
@@ -51,6 +152,18 @@ public class QueryPageCachingService {
    * Store pageNumber/searchAfter in cache for specific query
    */
   public void setSearchAfter(String queryHash, Pair<Integer, List<FieldValue>> searchAfter) {
+    setSearchAfter(queryHash, null, searchAfter);
+  }
+
+  /**
+   * Store pageNumber/searchAfter in cache for specific query, computed in a PIT.
+   * The cursor is ignored if the entry of the query is not (anymore) using the same PIT.
+   *
+   * @param queryHash
+   * @param pointInTimeId id of the PIT the cursor was computed in or null
+   * @param searchAfter
+   */
+  public void setSearchAfter(String queryHash, String pointInTimeId, Pair<Integer, List<FieldValue>> searchAfter) {
     if (searchAfter == null) {
       log.warn("Attempting to cache null search_after");
       return;
@@ -61,31 +174,35 @@ public class QueryPageCachingService {
       return;
     }
 
-    String cacheKey = getCacheKey(queryHash, searchAfter.getKey());
-    searchAfterCache.put(cacheKey, searchAfter.getValue());
+    // compute so the entry is weighed again with its new cursor
+    searchAfterCache.asMap().compute(queryHash, (k, cursors) -> {
+      if (cursors == null && pointInTimeId != null) {
+        // the PIT was evicted (and closed) in the meantime
+        return null;
+      }
+      PageCursors updated = cursors != null ? cursors : new PageCursors();
+      if (!Objects.equals(updated.getPointInTimeId(), pointInTimeId)) {
+        return updated;
+      }
+      updated.put(searchAfter.getKey(), searchAfter.getValue());
+      return updated;
+    });
   }
 
   /**
    * Get nearest cached page for a query (for optimization)
-   * Returns the searchAfter for the highest page number less than pageNumber
-   * Searches backwards up to NEAREST_PAGE_SEARCH_RANGE pages
+   * Returns the searchAfter for the highest page number less than pageNumber, at any distance
    */
   public Pair<Integer, List<FieldValue>> getNearestSearchAfter(String queryHash, int pageNumber) {
-    int startPage = pageNumber - 1;
-    int endPage = Math.max(1, pageNumber - NEAREST_PAGE_SEARCH_RANGE);
-
-    for (int p = startPage; p >= endPage; p--) {
-      String cacheKey = getCacheKey(queryHash, p);
-      List<FieldValue> searchAfter = searchAfterCache.getIfPresent(cacheKey);
+    PageCursors cursors = searchAfterCache.getIfPresent(queryHash);
+    Pair<Integer, List<FieldValue>> nearest = cursors != null ? cursors.lower(pageNumber) : null;
 
-      if (searchAfter != null) {
-        log.debug("Found nearest cached cursor at page {} for target page {}", p, pageNumber);
-        return Pair.of(p, searchAfter);
-      }
+    if (nearest != null) {
+      log.debug("Found nearest cached cursor at page {} for target page {}", nearest.getKey(), pageNumber);
+    } else {
+      log.debug("No nearest cached cursor found for page {}", pageNumber);
     }
-
-    log.debug("No nearest cached cursor found for page {}", pageNumber);
-    return null;
+    return nearest;
   }
 
 
@@ -94,13 +211,87 @@ public class QueryPageCachingService {
    */
   public void invalidateQueryCache(String queryHash) {
     log.info("Invalidating cache for query: {}", queryHash);
+    searchAfterCache.invalidate(queryHash);
+  }
+
+  /**
+   * Invalidate the cache entry of a query if it still uses a given PIT. A PIT replaced in the meantime (e.g. after
+   * reaching its maximum lifetime) doesn't remove the entry of the new one.
+   * @param queryHash
+   * @param pointInTimeId
+   */
+  public void invalidatePointInTime(String queryHash, String pointInTimeId) {
+    searchAfterCache.asMap().computeIfPresent(queryHash, (k, cursors) -> {
+      if (pointInTimeId.equals(cursors.getPointInTimeId())) {
+        log.info("Invalidating cache for query: {}", queryHash);
+        return null;
+      }
+      return cursors;
+    });
+  }
+
+  private static int weigh(PageCursors cursors) {
+    return cursors.size() + (cursors.getPointInTimeId() != null ? POINT_IN_TIME_WEIGHT : 0);
+  }
+
+  private void onRemoval(String queryHash, PageCursors cursors, RemovalCause cause) {
+    // entries are only replaced by compute returning the same instance, the PIT is still in use
+    if (cause == RemovalCause.REPLACED || cursors == null || cursors.getPointInTimeId() == null) {
+      return;
+    }
+    Consumer<String> closer = pointInTimeCloser;
+    if (closer != null) {
+      log.debug("Closing the point in time of query {} ({})", queryHash, cause);
+      closer.accept(cursors.getPointInTimeId());
+    }
+  }
 
-    searchAfterCache.asMap().keySet().stream()
-        .filter(key -> key.startsWith(queryHash + ":"))
-        .forEach(key -> {
-          searchAfterCache.invalidate(key);
-          log.debug("Invalidated cache key: {}", key);
-        });
+  /**
+   * Expiry of the entries. The entries are updated (compute) every time a cursor is added, expireAfterWrite
+   * would keep the cursors of a query walked regularly forever.
+   */
+  private static final class CursorsExpiry implements Expiry<String, PageCursors> {
+
+    private final long durationNanos;
+    private final boolean extendedOnUse;
+    private final long maxLifetimeNanos;
+
+    /**
+     * @param duration time to live of an entry
+     * @param extendedOnUse should reading or updating an entry restart its time to live
+     * @param pointInTimeMaxLifetime maximum age of the PIT of an entry, using the entry doesn't extend it.
+     *                               null for no maximum
+     */
+    CursorsExpiry(Duration duration, boolean extendedOnUse, Duration pointInTimeMaxLifetime) {
+      this.durationNanos = duration.toNanos();
+      this.extendedOnUse = extendedOnUse;
+      this.maxLifetimeNanos = pointInTimeMaxLifetime != null ? pointInTimeMaxLifetime.toNanos() : Long.MAX_VALUE;
+    }
+
+    @Override
+    public long expireAfterCreate(String queryHash, PageCursors cursors, long currentTime) {
+      return capToPointInTimeLifetime(cursors, currentTime, durationNanos);
+    }
+
+    @Override
+    public long expireAfterUpdate(String queryHash, PageCursors cursors, long currentTime,
+                                  long currentDuration) {
+      return extendedOnUse ? capToPointInTimeLifetime(cursors, currentTime, durationNanos) : currentDuration;
+    }
+
+    @Override
+    public long expireAfterRead(String queryHash, PageCursors cursors, long currentTime,
+                                long currentDuration) {
+      return extendedOnUse ? capToPointInTimeLifetime(cursors, currentTime, durationNanos) : currentDuration;
+    }
+
+    private long capToPointInTimeLifetime(PageCursors cursors, long currentTime, long duration) {
+      if (cursors.getPointInTimeId() == null || maxLifetimeNanos == Long.MAX_VALUE) {
+        return duration;
+      }
+      long remainingLifetime = maxLifetimeNanos - (currentTime - cursors.getPointInTimeOpenedAt());
+      return Math.max(0, Math.min(duration, remainingLifetime));
+    }
   }
 
   /**
@@ -119,13 +310,9 @@ public class QueryPageCachingService {
   }
 
   /**
-   * Get current cache size
+   * Get current cache size (number of cursors)
    */
   public long getCacheSize() {
-    return searchAfterCache.asMap().size();
-  }
-
-  private String getCacheKey(String queryHash, int pageNumber) {
-    return String.format(CACHE_KEY_FORMAT, queryHash, pageNumber);
+    return searchAfterCache.asMap().values().stream().mapToLong(PageCursors::size).sum();
   }
 }
@@ -0,0 +1,37 @@
+package ca.gc.aafc.dina.search.ws.config;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Configuration of the cursor-based pagination used past the elasticsearch result window.
+ */
+@Component
+@ConfigurationProperties(prefix = "deep-paging")
+@Getter
+@Setter
+public class DeepPagingProperties {
+
+  /**
+   * Walk the pages of a query inside a point in time (PIT) opened on the first deep page request.
+   * Results stay stable while the index is updated, the PIT is closed when the cursors of the query are
+   * evicted from the cache.
+   */
+  private boolean pointInTime = false;
+
+  /**
+   * How long the PIT (and the cached cursors of the query) are kept without being used.
+   */
+  private Duration pointInTimeKeepAlive = Duration.ofMinutes(5);
+
+  /**
+   * Maximum age of a PIT. Using the PIT keeps it alive up to this age, then the cursors of the query are dropped
+   * and a new PIT is opened so the deep pages see the updates of the index.
+   */
+  private Duration pointInTimeMaxLifetime = Duration.ofMinutes(30);
+}
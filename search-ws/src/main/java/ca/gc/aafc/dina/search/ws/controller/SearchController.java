@@ -4,7 +4,9 @@ import ca.gc.aafc.dina.security.TextHtmlSanitizer;
 import org.apache.commons.lang3.StringUtils;
 import org.jsoup.safety.Safelist;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.InputStreamResource;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -68,7 +70,7 @@ public class SearchController {
   }
     
   @PostMapping(path = "/search", consumes = "application/json")
-  public ResponseEntity<String> search(@RequestBody String query, @RequestParam String indexName) {
+  public ResponseEntity<?> search(@RequestBody String query, @RequestParam String indexName) {
 
     log.info("indexName={}, query={}", indexName, query);
     try {
@@ -76,7 +78,10 @@ public class SearchController {
       validateAlphanumericInputs(indexName);
 
       String[] indices = StringUtils.split(indexName, ',');
-      return new ResponseEntity<>(searchService.search(Arrays.asList(indices), query), HttpStatus.ACCEPTED);
+      // the elasticsearch response is copied to the client as it is read
+      return ResponseEntity.status(HttpStatus.ACCEPTED)
+          .contentType(MediaType.APPLICATION_JSON)
+          .body(new InputStreamResource(searchService.searchAsStream(Arrays.asList(indices), query)));
     } catch (SearchApiException e) {
       log.error("SearchApiException cause {}", e.getCause() != null ? e.getCause().getMessage() : e.getMessage());
       return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
@@ -1,20 +1,19 @@
 package ca.gc.aafc.dina.search.ws.services;
 
 import ca.gc.aafc.dina.search.ws.cache.QueryPageCachingService;
+import ca.gc.aafc.dina.search.ws.config.DeepPagingProperties;
 import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.ElasticsearchException;
+import co.elastic.clients.elasticsearch._types.ErrorCause;
 import co.elastic.clients.elasticsearch._types.FieldValue;
 import co.elastic.clients.elasticsearch.core.SearchRequest;
 import co.elastic.clients.elasticsearch.core.SearchResponse;
 import co.elastic.clients.elasticsearch.core.search.Hit;
 import lombok.extern.log4j.Log4j2;
-import org.apache.commons.codec.digest.DigestUtils;
-import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
-import java.io.Reader;
-import java.io.StringReader;
 import java.util.List;
 
 /**
@@ -23,6 +22,10 @@ import java.util.List;
  * <p>Handles arbitrary page jumps by caching cursors and iterating from the
  * nearest cached page. Supports pagination of any depth without performance degradation.</p>
  *
+ * <p>Optionally (deep-paging.point-in-time), the pages are walked inside a point in time (PIT) opened on the
+ * first deep page request of a query so concurrent indexing doesn't shift the results between pages. The PIT
+ * is cached with the cursors and closed when they are evicted.</p>
+ *
  * @see QueryPageCachingService
  */
 @Log4j2
@@ -30,105 +33,251 @@ import java.util.List;
 public class ESSearchPagingService {
 
   private static final int MIN_PAGE_NUMBER = 1;
+  private static final String SEARCH_CONTEXT_MISSING = "search_context_missing_exception";
 
   private final ElasticsearchClient client;
   private final QueryPageCachingService queryPageCachingService;
 
+  private final boolean usePointInTime;
+  private final String pointInTimeKeepAlive;
+
   public ESSearchPagingService(ElasticsearchClient client,
-                               QueryPageCachingService queryPageCachingService) {
+                               QueryPageCachingService queryPageCachingService,
+                               DeepPagingProperties deepPagingProperties) {
     this.client = client;
     this.queryPageCachingService = queryPageCachingService;
+    this.usePointInTime = deepPagingProperties.isPointInTime();
+    // elasticsearch keeps the PIT a bit longer than the cache so it is still there when the entry is used
+    this.pointInTimeKeepAlive = deepPagingProperties.getPointInTimeKeepAlive().plusMinutes(1).toSeconds() + "s";
+
+    queryPageCachingService.setPointInTimeCloser(this::closePointInTime);
   }
 
   /**
    * Translates paging to searchAfter.
    * Handles arbitrary page jumps by iterating from nearest cached page
+   *
+   * @return the cursor of the page, see {@link #pagingToCursor(ParsedSearchQuery, String, int, int)}
    */
-  public List<FieldValue> pagingToSearchAfter(
+  public PageCursor pagingToCursor(
       String queryJson,
       String indexName,
       int pageNumber,
       int pageSize) throws IOException {
+    return pagingToCursor(ParsedSearchQuery.parse(List.of(indexName), queryJson, client._jsonpMapper()), indexName,
+        pageNumber, pageSize);
+  }
+
+  /**
+   * Translates paging to searchAfter for a query already parsed.
+   * When the pages are walked inside a PIT, the request of the page must use the returned PIT since the
+   * searchAfter values include its tiebreaker.
+   *
+   * @return the cursor of the page. searchAfter is null for the first page.
+   */
+  public PageCursor pagingToCursor(
+      ParsedSearchQuery parsedQuery,
+      String indexName,
+      int pageNumber,
+      int pageSize) throws IOException {
 
     // Page 1 is a special case - no search_after needed
     if (pageNumber == MIN_PAGE_NUMBER) {
       log.debug("Requested page 1, no search_after needed");
-      return null;
+      return new PageCursor(null, null);
     }
 
-    String queryHash = DigestUtils.md5Hex(queryJson);
+    String queryHash = cursorKey(parsedQuery, pageSize);
+    String pointInTimeId = usePointInTime ? openPointInTime(queryHash, indexName) : null;
 
     // Try to find cursor for this exact page
     List<FieldValue> searchAfter = queryPageCachingService.getSearchAfter(queryHash, pageNumber);
 
     if (searchAfter == null) {
-      // Find nearest cached page and iterate from there
-      Pair<Integer, List<FieldValue>> nearestSearchAfter = queryPageCachingService.getNearestSearchAfter(queryHash, pageNumber);
-
-      if (nearestSearchAfter != null) {
-        int nearestPage = nearestSearchAfter.getKey();
-        log.debug("Found nearest cached cursor at page {}, iterating to page {}",
-            nearestPage, pageNumber);
-        searchAfter = iterateToPage(queryJson, indexName, pageNumber, nearestPage,
-            pageSize, queryHash, nearestSearchAfter.getValue());
-      } else {
-        // Start from page 1
-        log.debug("No cached cursor found, starting from page 1");
-        searchAfter = iterateToPage(queryJson, indexName, pageNumber, MIN_PAGE_NUMBER,
-            pageSize, queryHash, null);
+      PageCursor cursor;
+      try {
+        // Find nearest cached page and iterate from there
+        Pair<Integer, List<FieldValue>> nearestSearchAfter = queryPageCachingService.getNearestSearchAfter(queryHash, pageNumber);
+
+        if (nearestSearchAfter != null) {
+          int nearestPage = nearestSearchAfter.getKey();
+          log.debug("Found nearest cached cursor at page {}, iterating to page {}",
+              nearestPage, pageNumber);
+          cursor = iterateToPage(parsedQuery, indexName, pageNumber, nearestPage,
+              pageSize, queryHash, new PageCursor(nearestSearchAfter.getValue(), pointInTimeId));
+        } else {
+          // Start from page 1
+          log.debug("No cached cursor found, starting from page 1");
+          cursor = iterateToPage(parsedQuery, indexName, pageNumber, MIN_PAGE_NUMBER,
+              pageSize, queryHash, new PageCursor(null, pointInTimeId));
+        }
+      } catch (ElasticsearchException e) {
+        if (pointInTimeId != null && isPointInTimeMissing(e)) {
+          // the PIT is gone (expired, elasticsearch restarted), the next request will open a new one
+          queryPageCachingService.invalidateQueryCache(queryHash);
+        }
+        throw e;
       }
 
-      if (searchAfter == null) {
+      if (cursor.searchAfter() == null) {
         log.warn("Failed to compute search_after for page {}", pageNumber);
       }
+      return cursor;
+    }
+    return new PageCursor(searchAfter, pointInTimeId);
+  }
+
+  /**
+   * @return keep alive to send with the requests using a PIT returned by this service
+   */
+  public String getPointInTimeKeepAlive() {
+    return pointInTimeKeepAlive;
+  }
+
+  /**
+   * Discard the cached cursors (and PIT) used for a query. To be called when the PIT returned by
+   * {@link #pagingToCursor(ParsedSearchQuery, String, int, int)} can't be used anymore.
+   */
+  public void discardCursors(ParsedSearchQuery parsedQuery, int pageSize) {
+    queryPageCachingService.invalidateQueryCache(cursorKey(parsedQuery, pageSize));
+  }
+
+  /**
+   * Same as {@link #discardCursors(ParsedSearchQuery, int)} if the cursors are still computed in a given PIT.
+   * @param pointInTimeId PIT returned by {@link #pagingToCursor(ParsedSearchQuery, String, int, int)}
+   */
+  public void discardCursors(ParsedSearchQuery parsedQuery, int pageSize, String pointInTimeId) {
+    queryPageCachingService.invalidatePointInTime(cursorKey(parsedQuery, pageSize), pointInTimeId);
+  }
+
+  /**
+   * Record the PIT id returned by elasticsearch for a page requested with a cursor of this service.
+   * Elasticsearch can return a new id with each response, the latest one must be used for the next requests.
+   *
+   * @param parsedQuery
+   * @param pageSize
+   * @param usedId PIT id of the cursor, nothing is done if null
+   * @param returnedId pit_id of the response
+   */
+  public void updatePointInTime(ParsedSearchQuery parsedQuery, int pageSize, String usedId, String returnedId) {
+    updatePointInTime(cursorKey(parsedQuery, pageSize), usedId, returnedId);
+  }
+
+  /**
+   * Check if a request failed because its PIT doesn't exist anymore (expired, closed or elasticsearch restarted).
+   * Other errors (e.g. an invalid query) don't mean the PIT can't be used.
+   *
+   * @param e error of a request using a PIT, an ElasticsearchException or the IOException of a streamed request
+   *          (holding the body of the error response)
+   * @return
+   */
+  public static boolean isPointInTimeMissing(Exception e) {
+    if (e instanceof ElasticsearchException esException) {
+      return isSearchContextMissing(esException.error());
+    }
+    return e.getMessage() != null && e.getMessage().contains(SEARCH_CONTEXT_MISSING);
+  }
+
+  private static boolean isSearchContextMissing(ErrorCause error) {
+    if (error == null) {
+      return false;
     }
-    return searchAfter;
+    // reported as root cause of a search_phase_execution_exception
+    return SEARCH_CONTEXT_MISSING.equals(error.type()) || isSearchContextMissing(error.causedBy()) ||
+        error.rootCause().stream().anyMatch(ESSearchPagingService::isSearchContextMissing);
   }
 
+  private void updatePointInTime(String queryHash, String usedId, String returnedId) {
+    if (usedId != null && returnedId != null && !usedId.equals(returnedId)) {
+      queryPageCachingService.updatePointInTime(queryHash, usedId, returnedId);
+    }
+  }
+
+  private static String cursorKey(ParsedSearchQuery parsedQuery, int pageSize) {
+    // the canonical fingerprint ignores the pagination but the cursor of a page depends on its size
+    return parsedQuery.getHash() + "/" + pageSize;
+  }
 
   /**
    * Iterate from startPage to targetPage, caching cursors along the way
    */
-  private List<FieldValue> iterateToPage(
-      String queryJson,
+  private PageCursor iterateToPage(
+      ParsedSearchQuery parsedQuery,
       String indexName,
       int targetPage,
       int startPage,
       int pageSize,
       String queryHash,
-      List<FieldValue> initialSearchAfter) throws IOException {
+      PageCursor initialCursor) throws IOException {
 
-    List<FieldValue> currentSearchAfter = initialSearchAfter;
+    List<FieldValue> currentSearchAfter = initialCursor.searchAfter();
+    String pointInTimeId = initialCursor.pointInTimeId();
 
     for (int currentPage = startPage; currentPage < targetPage; currentPage++) {
-      Reader strReader = new StringReader(queryJson);
+      SearchRequest pageRequest = pointInTimeId == null ?
+          parsedQuery.pageWalkRequest(indexName, pageSize, currentSearchAfter) :
+          parsedQuery.pageWalkRequest(pointInTimeId, pointInTimeKeepAlive, pageSize, currentSearchAfter);
 
-      SearchRequest.Builder searchBuilder = new SearchRequest.Builder();
-      searchBuilder.withJson(strReader)
-          .size(pageSize)
-          .from(null) // Explicitly set from to null to remove it in case it was provided
-          .source(s -> s.fetch(false)) // Disable _source retrieval - we only need sort values
-          .index(indexName);
-
-      if (CollectionUtils.isNotEmpty(currentSearchAfter)) {
-        searchBuilder.searchAfter(currentSearchAfter);
-      }
-
-      SearchResponse<?> response = client.search(searchBuilder.build(), Object.class);
+      SearchResponse<?> response = client.search(pageRequest, Object.class);
       if (response.hits().hits().isEmpty()) {
         log.warn("No results found at page {}, stopping iteration", currentPage);
-        return null;
+        return new PageCursor(null, pointInTimeId);
+      }
+
+      // always use the latest PIT id returned by elasticsearch
+      if (pointInTimeId != null && response.pitId() != null) {
+        updatePointInTime(queryHash, pointInTimeId, response.pitId());
+        pointInTimeId = response.pitId();
       }
 
       Hit<?> lastHit = response.hits().hits().getLast();
       currentSearchAfter = lastHit.sort();
 
       // Cache this page
-      queryPageCachingService.setSearchAfter(queryHash, Pair.of(currentPage + 1, currentSearchAfter));
+      queryPageCachingService.setSearchAfter(queryHash, pointInTimeId, Pair.of(currentPage + 1, currentSearchAfter));
 
       log.debug("Iterated to page {}, cached cursor", currentPage + 1);
     }
 
-    return currentSearchAfter;
+    return new PageCursor(currentSearchAfter, pointInTimeId);
+  }
+
+  /**
+   * Get the PIT of the query or open a new one.
+   * @return the PIT id
+   */
+  private String openPointInTime(String queryHash, String indexName) throws IOException {
+    String pointInTimeId = queryPageCachingService.getPointInTime(queryHash);
+    if (pointInTimeId != null) {
+      return pointInTimeId;
+    }
+
+    String opened = client.openPointInTime(o -> o
+        .index(indexName)
+        .keepAlive(k -> k.time(pointInTimeKeepAlive))).id();
+    log.debug("Opened a point in time on {} for query {}", indexName, queryHash);
+
+    pointInTimeId = queryPageCachingService.setPointInTimeIfAbsent(queryHash, opened);
+    if (!opened.equals(pointInTimeId)) {
+      // opened concurrently by another request
+      closePointInTime(opened);
+    }
+    return pointInTimeId;
+  }
+
+  private void closePointInTime(String pointInTimeId) {
+    try {
+      client.closePointInTime(c -> c.id(pointInTimeId));
+    } catch (IOException | ElasticsearchException e) {
+      // elasticsearch will close it when the keep alive expires
+      log.warn("Can't close point in time: {}", e.getMessage());
+    }
+  }
+
+  /**
+   * @param searchAfter sort values of the last hit of the previous page or null
+   * @param pointInTimeId PIT the searchAfter values were computed in or null
+   */
+  public record PageCursor(List<FieldValue> searchAfter, String pointInTimeId) {
   }
 }
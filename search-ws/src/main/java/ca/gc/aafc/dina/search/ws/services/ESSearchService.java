@@ -19,20 +19,32 @@ import co.elastic.clients.elasticsearch.indices.GetMappingResponse;
 import co.elastic.clients.json.JsonpMapper;
 import co.elastic.clients.json.JsonpMappingException;
 import co.elastic.clients.transport.endpoints.BooleanResponse;
+import co.elastic.clients.transport.rest_client.RestClientTransport;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import com.github.benmanes.caffeine.cache.LoadingCache;
+import jakarta.json.JsonException;
 import jakarta.json.stream.JsonGenerator;
 import lombok.extern.log4j.Log4j2;
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.elasticsearch.client.Cancellable;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.ResponseListener;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.Reader;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -42,6 +54,8 @@ import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.Stack;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 @Log4j2
 @Service
@@ -56,6 +70,9 @@ public class ESSearchService implements SearchService {
   private static final int DEFAULT_PAGE_SIZE = 20;
   private static final int MAX_PAGE_SIZE = 5000;
 
+  // buffer between the elasticsearch connection and the client of a streamed search
+  private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+
   private final ElasticsearchClient client;
   private final JsonpMapper jsonpMapper;
 
@@ -171,47 +188,214 @@ public class ESSearchService implements SearchService {
    */
   @Override
   public String search(List<String> indices, String queryJson) throws SearchApiException {
+    ParsedSearchQuery parsedQuery = parseQuery(indices, queryJson);
+    SearchPaging paging = resolvePaging(parsedQuery);
+    try {
+      SearchResponse<?> response = client.search(buildPageRequest(parsedQuery, paging), JsonNode.class);
+      recordPointInTime(parsedQuery, paging, response);
+      StringWriter writer = new StringWriter();
+      try (JsonGenerator generator = jsonpMapper.jsonProvider().createGenerator(writer)) {
+        jsonpMapper.serialize(response, generator);
+      }
+      return writer.toString();
+    } catch (IOException | ElasticsearchException | JsonException e) {
+      discardPointInTime(parsedQuery, paging, e);
+      throw new SearchApiException("Error during search processing", e);
+    }
+  }
 
-    try (Reader strReader = new StringReader(queryJson)) {
-      SearchRequest sr = SearchRequest.of(b -> b
-          .withJson(strReader).index(indices));
+  /**
+   * Executes a search query and returns the raw Elasticsearch response body.
+   *
+   * <p>Same validation and pagination as {@link #search(List, String)} but the request is sent through
+   * the low-level RestClient so the response is never deserialized: the bytes received from Elasticsearch
+   * are given to the caller while they are received, the body is not buffered. If the transport is not based
+   * on the low-level RestClient, the typed response is serialized instead.</p>
+   *
+   * @param indices the target Elasticsearch index names; must not be null or empty
+   * @param queryJson the search query in JSON format; must not be null or empty
+   *
+   * @return the response body, to be closed by the caller. Closing it before the end cancels the request.
+   *
+   * @throws SearchApiException if pagination parameters are invalid or search execution fails
+   */
+  @Override
+  public InputStream searchAsStream(List<String> indices, String queryJson) throws SearchApiException {
+    if (!(client._transport() instanceof RestClientTransport transport)) {
+      return new ByteArrayInputStream(search(indices, queryJson).getBytes(StandardCharsets.UTF_8));
+    }
 
-      // Validate pagination parameters (if any)
-      Integer from = sr.from();
-      Integer pageSize = sr.size() != null ? sr.size() : DEFAULT_PAGE_SIZE;
-      if (pageSize < 0 || pageSize > MAX_PAGE_SIZE) {
-        throw new SearchApiException("Invalid page size: " + pageSize +
-            ". Must be between 0 and " + MAX_PAGE_SIZE);
+    ParsedSearchQuery parsedQuery = parseQuery(indices, queryJson);
+    SearchPaging paging = resolvePaging(parsedQuery);
+    try {
+      SearchRequest searchRequest = buildPageRequest(parsedQuery, paging);
+      StringWriter body = new StringWriter();
+      try (JsonGenerator generator = jsonpMapper.jsonProvider().createGenerator(body)) {
+        searchRequest.serialize(generator, jsonpMapper);
       }
 
-      // Check if we are about to hit deep paging limitation
-      List<FieldValue> searchAfter = null;
-      if (from != null && from * pageSize >= MAX_RESULT_WINDOW) {
+      // a request inside a point in time has no index
+      Request request = new Request("POST", searchRequest.index().isEmpty() ? "/_search" :
+          "/" + String.join(",", searchRequest.index()) + "/_search");
+      // same as the Java client, aggregation names are prefixed by their type (e.g. sterms#name)
+      request.addParameter("typed_keys", "true");
+      request.setJsonEntity(body.toString());
+      // the body is not parsed so the pit_id of the response is not recorded: the next pages keep using the id
+      // of the cursors and, if elasticsearch doesn't accept it anymore, the cursors are discarded
+      return performStreamedRequest(transport, request);
+    } catch (IOException | JsonException e) {
+      discardPointInTime(parsedQuery, paging, e);
+      throw new SearchApiException("Error during search processing", e);
+    }
+  }
+
+  /**
+   * Send the request and return the body of the response as soon as the headers are received.
+   * @return the body of a successful response, while it is received
+   * @throws IOException if the request failed or elasticsearch answered with an error
+   */
+  private static InputStream performStreamedRequest(RestClientTransport transport, Request request)
+      throws IOException {
+    CompletableFuture<StreamingResponseConsumer> headersReceived = new CompletableFuture<>();
+    request.setOptions(RequestOptions.DEFAULT.toBuilder().setHttpAsyncResponseConsumerFactory(
+        () -> new StreamingResponseConsumer(STREAM_BUFFER_SIZE, headersReceived)));
+
+    Cancellable call = transport.restClient().performRequestAsync(request, new ResponseListener() {
+      @Override
+      public void onSuccess(Response response) {
+        // the body is read from the consumer
+      }
 
-        if (from % pageSize != 0) {
-          throw new SearchApiException("Invalid pagination: 'from' must be a multiple of 'size' for cursor-based pagination.");
-        }
+      @Override
+      public void onFailure(Exception exception) {
+        // no effect if the headers were received
+        headersReceived.completeExceptionally(exception);
+      }
+    });
 
-        if (indices.size() > 1) {
-          throw new SearchApiException("Invalid pagination: 'can't page on multiple index.");
-        }
+    StreamingResponseConsumer consumer;
+    try {
+      consumer = headersReceived.get();
+    } catch (InterruptedException e) {
+      call.cancel();
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for elasticsearch");
+    } catch (ExecutionException e) {
+      throw e.getCause() instanceof IOException ioEx ? ioEx : new IOException(e.getCause());
+    }
 
-        int pageNumber = (from / pageSize) + 1; // Convert from to page number
-        log.debug("Using cursor pagination for from={}, converting to page={}", from, pageNumber);
-        searchAfter = esSearchPagingService.pagingToSearchAfter(queryJson, indices.getFirst(), pageNumber, pageSize);
+    if (consumer.getStatusCode() >= 300) {
+      // error responses are small, read them to report the cause
+      try (InputStream errorBody = consumer.getBody()) {
+        throw new IOException("Elasticsearch answered with status " + consumer.getStatusCode() + ": " +
+            new String(errorBody.readAllBytes(), StandardCharsets.UTF_8));
       }
+    }
 
-      SearchResponse<?> response = executeSearch(indices, queryJson, pageSize, searchAfter);
-      StringWriter writer = new StringWriter();
-      try (JsonGenerator generator = jsonpMapper.jsonProvider().createGenerator(writer)) {
-        jsonpMapper.serialize(response, generator);
+    return new FilterInputStream(consumer.getBody()) {
+      @Override
+      public void close() throws IOException {
+        // the client went away before the end of the response
+        if (!consumer.isCompleted()) {
+          call.cancel();
+        }
+        super.close();
       }
-      return writer.toString();
-    } catch (IOException | ElasticsearchException | JsonpMappingException e) {
+    };
+  }
+
+  /**
+   * Request of the page, inside the point in time the searchAfter values were computed in (if any).
+   */
+  private SearchRequest buildPageRequest(ParsedSearchQuery parsedQuery, SearchPaging paging) {
+    return parsedQuery.searchRequest(paging.pageSize(), paging.searchAfter(), paging.pointInTimeId(),
+        esSearchPagingService.getPointInTimeKeepAlive());
+  }
+
+  /**
+   * Keep the latest id of the point in time returned with the page (if any) for the next pages.
+   */
+  private void recordPointInTime(ParsedSearchQuery parsedQuery, SearchPaging paging, SearchResponse<?> response) {
+    if (paging.pointInTimeId() != null && paging.pageSize() != null) {
+      esSearchPagingService.updatePointInTime(parsedQuery, paging.pageSize(), paging.pointInTimeId(),
+          response.pitId());
+    }
+  }
+
+  /**
+   * If the request failed because the point in time is gone (expired, elasticsearch restarted), discard it so the
+   * next request opens a new one. Other errors keep the point in time and the cursors computed in it.
+   */
+  private void discardPointInTime(ParsedSearchQuery parsedQuery, SearchPaging paging, Exception e) {
+    if (paging.pointInTimeId() != null && paging.pageSize() != null &&
+        ESSearchPagingService.isPointInTimeMissing(e)) {
+      esSearchPagingService.discardCursors(parsedQuery, paging.pageSize(), paging.pointInTimeId());
+    }
+  }
+
+  /**
+   * Parse the query JSON once for all the stages of the search.
+   * @param indices the target Elasticsearch index names
+   * @param queryJson the search query in JSON format
+   * @return
+   * @throws SearchApiException if the query can't be parsed
+   */
+  private ParsedSearchQuery parseQuery(List<String> indices, String queryJson) throws SearchApiException {
+    try {
+      return ParsedSearchQuery.parse(indices, queryJson, jsonpMapper);
+    } catch (JsonException e) { // JsonpMappingException or invalid JSON
       throw new SearchApiException("Error during search processing", e);
     }
   }
 
+  /**
+   * Validates the pagination parameters of the query and, when the result window exceeds the maximum
+   * allowed offset, computes the searchAfter values of the requested page.
+   *
+   * @param parsedQuery the search query. May contain {@code from} and {@code size} parameters
+   * @return the page size, the searchAfter values (null when cursor-based pagination is not required) and the
+   *         point in time they were computed in (if any)
+   * @throws SearchApiException if pagination parameters are invalid
+   */
+  private SearchPaging resolvePaging(ParsedSearchQuery parsedQuery) throws SearchApiException {
+    SearchRequest sr = parsedQuery.getTemplate();
+    List<String> indices = sr.index();
+
+    // Validate pagination parameters (if any)
+    Integer from = sr.from();
+    Integer pageSize = sr.size() != null ? sr.size() : DEFAULT_PAGE_SIZE;
+    if (pageSize < 0 || pageSize > MAX_PAGE_SIZE) {
+      throw new SearchApiException("Invalid page size: " + pageSize +
+          ". Must be between 0 and " + MAX_PAGE_SIZE);
+    }
+
+    // Check if we are about to hit deep paging limitation
+    List<FieldValue> searchAfter = null;
+    String pointInTimeId = null;
+    if (from != null && from * pageSize >= MAX_RESULT_WINDOW) {
+
+      if (from % pageSize != 0) {
+        throw new SearchApiException("Invalid pagination: 'from' must be a multiple of 'size' for cursor-based pagination.");
+      }
+
+      if (indices.size() > 1) {
+        throw new SearchApiException("Invalid pagination: 'can't page on multiple index.");
+      }
+
+      int pageNumber = (from / pageSize) + 1; // Convert from to page number
+      log.debug("Using cursor pagination for from={}, converting to page={}", from, pageNumber);
+      try {
+        ESSearchPagingService.PageCursor cursor =
+            esSearchPagingService.pagingToCursor(parsedQuery, indices.getFirst(), pageNumber, pageSize);
+        searchAfter = cursor.searchAfter();
+        pointInTimeId = cursor.pointInTimeId();
+      } catch (IOException | ElasticsearchException e) {
+        throw new SearchApiException("Error during search processing", e);
+      }
+    }
+    return new SearchPaging(pageSize, searchAfter, pointInTimeId);
+  }
+
   /**
    * Executes an Elasticsearch search request with optional cursor-based pagination.
    *
@@ -221,33 +405,36 @@ public class ESSearchService implements SearchService {
    * @param indexNames the target Elasticsearch index name; must not be null or empty
    * @param queryJson the search query in JSON format; must not be null or empty
    * @param pageSize maximum number of documents to return; if null, Elasticsearch default is used
-   * @param searchAfter the sort values from the previous page for cursor-based pagination;
-   *                    null for the first page
+   * @param cursor the cursor of the page returned by {@link ESSearchPagingService} for cursor-based pagination,
+   *               the page is searched in its point in time (if any); null for the first page
    *
    * @return the search response containing matching documents and metadata
    *
    * @throws SearchApiException if the search execution fails
    */
-  public SearchResponse<JsonNode> executeSearch(List<String> indexNames, String queryJson, Integer pageSize, List<FieldValue> searchAfter) throws SearchApiException {
-    try (Reader strReader = new StringReader(queryJson)) {
-      SearchRequest.Builder searchBuilder = new SearchRequest.Builder();
-      searchBuilder.withJson(strReader)
-          .index(indexNames);
-
-      if (pageSize != null) {
-        searchBuilder.size(pageSize);
-      }
-      if (CollectionUtils.isNotEmpty(searchAfter)) {
-        searchBuilder.from(null); // Explicitly set from to null to remove it in case it was provided
-        searchBuilder.searchAfter(searchAfter);
-      }
-
-      return client.search(searchBuilder.build(), JsonNode.class);
-    } catch (IOException | ElasticsearchException e) {
+  public SearchResponse<JsonNode> executeSearch(List<String> indexNames, String queryJson, Integer pageSize,
+                                                ESSearchPagingService.PageCursor cursor) throws SearchApiException {
+    ParsedSearchQuery parsedQuery = parseQuery(indexNames, queryJson);
+    SearchPaging paging = cursor == null ? new SearchPaging(pageSize, null, null) :
+        new SearchPaging(pageSize, cursor.searchAfter(), cursor.pointInTimeId());
+    try {
+      SearchResponse<JsonNode> response = client.search(buildPageRequest(parsedQuery, paging), JsonNode.class);
+      recordPointInTime(parsedQuery, paging, response);
+      return response;
+    } catch (IOException | ElasticsearchException | JsonException e) {
+      discardPointInTime(parsedQuery, paging, e);
       throw new SearchApiException("Error during search processing", e);
     }
   }
 
+  /**
+   * @param pageSize number of documents to return
+   * @param searchAfter sort values of the previous page or null
+   * @param pointInTimeId point in time the searchAfter values were computed in or null
+   */
+  private record SearchPaging(Integer pageSize, List<FieldValue> searchAfter, String pointInTimeId) {
+  }
+
   /**
    * Send a _count request to ElasticSearch using the http api since the Java Client doesn't
    * support query as json string at the moment.
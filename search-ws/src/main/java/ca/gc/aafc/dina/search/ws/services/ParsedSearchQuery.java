@@ -0,0 +1,257 @@
+package ca.gc.aafc.dina.search.ws.services;
+
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import co.elastic.clients.elasticsearch.core.SearchRequest;
+import co.elastic.clients.json.JsonpMapper;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import jakarta.json.JsonException;
+import jakarta.json.stream.JsonGenerator;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.collections.CollectionUtils;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Search query parsed once per request and shared by the different stages of a search (validation,
+ * cursor-based paging and the search itself).
+ *
+ * The parsed {@link SearchRequest} is immutable and used as a template: the requests of each stage are
+ * derived from it by copying its elements, the query JSON is never parsed again.
+ *
+ * The hash is a canonical fingerprint of the elements deciding which documents are returned and in which
+ * order (index, query, post_filter, sort, rescore, knn ...). Pagination (from, size, search_after), aggregations,
+ * highlight and formatting (whitespace, key order, shortcut notations) are not part of it so equivalent
+ * queries share the same cursors.
+ */
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+@Getter
+public final class ParsedSearchQuery {
+
+  private static final ObjectMapper CANONICAL_MAPPER = JsonMapper.builder()
+      .enable(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS)
+      .build();
+
+  private final String json;
+  private final SearchRequest template;
+  @Getter(AccessLevel.NONE)
+  private final JsonpMapper jsonpMapper;
+
+  // computed on first use, only deep paging needs it
+  @Getter(AccessLevel.NONE)
+  private volatile String hash;
+
+  /**
+   * Parse the query JSON.
+   * @param indices index names the query targets
+   * @param queryJson the search query in JSON format
+   * @param jsonpMapper mapper of the elasticsearch client, used to compute the fingerprint when needed
+   * @return
+   * @throws co.elastic.clients.json.JsonpMappingException if the query is not a valid search request
+   * @throws jakarta.json.stream.JsonParsingException if the query is not valid JSON
+   */
+  public static ParsedSearchQuery parse(List<String> indices, String queryJson, JsonpMapper jsonpMapper) {
+    SearchRequest template = SearchRequest.of(b -> b
+        .withJson(new StringReader(queryJson)).index(indices));
+    return new ParsedSearchQuery(queryJson, template, jsonpMapper);
+  }
+
+  /**
+   * Canonical fingerprint of the query, see {@link #fingerprint(SearchRequest, JsonpMapper)}.
+   * @return
+   */
+  public String getHash() {
+    String computed = hash;
+    if (computed == null) {
+      // computing it twice concurrently gives the same value
+      computed = fingerprint(template, jsonpMapper);
+      hash = computed;
+    }
+    return computed;
+  }
+
+  /**
+   * Compute the canonical fingerprint of a search request.
+   * The typed request normalizes the notations (e.g. {"id": "asc"} and {"id": {"order": "asc"}} in sort)
+   * and the keys of the serialized JSON are then sorted.
+   *
+   * @param request
+   * @param jsonpMapper
+   * @return md5 of the canonical form
+   */
+  static String fingerprint(SearchRequest request, JsonpMapper jsonpMapper) {
+    SearchRequest orderingElements = copyOrderingElements(request, new SearchRequest.Builder()).build();
+
+    StringWriter writer = new StringWriter();
+    try (JsonGenerator generator = jsonpMapper.jsonProvider().createGenerator(writer)) {
+      orderingElements.serialize(generator, jsonpMapper);
+    }
+
+    String canonical;
+    try {
+      canonical = CANONICAL_MAPPER.writeValueAsString(CANONICAL_MAPPER.readValue(writer.toString(), Object.class));
+    } catch (JsonProcessingException e) {
+      throw new JsonException("Can't compute the canonical form of the query", e);
+    }
+    return DigestUtils.md5Hex(String.join(",", new TreeSet<>(request.index())) + "|" + canonical);
+  }
+
+  /**
+   * Request returning the requested page with all the elements of the query (aggregations, highlight ...).
+   * The template is returned as-is if it already matches the page, otherwise its elements are copied to a new
+   * request (the parsed elements are immutable and shared).
+   *
+   * @param pageSize number of documents to return; if null, the size of the query is used
+   * @param searchAfter sort values of the previous page for cursor-based pagination or null
+   * @return
+   */
+  public SearchRequest searchRequest(Integer pageSize, List<FieldValue> searchAfter) {
+    return searchRequest(pageSize, searchAfter, null, null);
+  }
+
+  /**
+   * Same as {@link #searchRequest(Integer, List)} but searching inside a point in time (PIT) instead of the
+   * index when pointInTimeId is provided.
+   *
+   * @param pageSize number of documents to return; if null, the size of the query is used
+   * @param searchAfter sort values of the previous page for cursor-based pagination or null
+   * @param pointInTimeId id of the PIT or null
+   * @param keepAlive how long elasticsearch should keep the PIT (e.g. 5m), ignored without PIT
+   * @return
+   */
+  public SearchRequest searchRequest(Integer pageSize, List<FieldValue> searchAfter, String pointInTimeId,
+                                     String keepAlive) {
+    boolean sameSize = pageSize == null || pageSize.equals(template.size());
+    if (sameSize && CollectionUtils.isEmpty(searchAfter) && pointInTimeId == null) {
+      return template;
+    }
+
+    SearchRequest.Builder searchBuilder = copyBodyElements(template, new SearchRequest.Builder());
+    searchInto(searchBuilder, template.index(), pointInTimeId, keepAlive);
+
+    if (pageSize != null) {
+      searchBuilder.size(pageSize);
+    }
+    if (CollectionUtils.isNotEmpty(searchAfter)) {
+      searchBuilder.from(null); // Explicitly set from to null to remove it in case it was provided
+      searchBuilder.searchAfter(searchAfter);
+    } else {
+      searchBuilder.searchAfter(template.searchAfter());
+    }
+    return searchBuilder.build();
+  }
+
+  /**
+   * Lightweight request only used to walk the pages in order to get the sort values of their last hit.
+   * Only the elements of the template deciding which documents are returned, and in which order, are copied.
+   * Aggregations, highlight, _source and total hits are not computed.
+   *
+   * @param indexName index to walk
+   * @param pageSize number of documents per page
+   * @param searchAfter sort values of the previous page or null for the first page
+   * @return
+   */
+  public SearchRequest pageWalkRequest(String indexName, int pageSize, List<FieldValue> searchAfter) {
+    return pageWalkRequest(List.of(indexName), null, null, pageSize, searchAfter);
+  }
+
+  /**
+   * Same as {@link #pageWalkRequest(String, int, List)} but walking the pages of a point in time (PIT).
+   * Elasticsearch adds a tiebreaker to the sort, its value is included in the searchAfter values.
+   *
+   * @param pointInTimeId id of the PIT
+   * @param keepAlive how long elasticsearch should keep the PIT (e.g. 5m)
+   * @param pageSize number of documents per page
+   * @param searchAfter sort values of the previous page or null for the first page
+   * @return
+   */
+  public SearchRequest pageWalkRequest(String pointInTimeId, String keepAlive, int pageSize,
+                                       List<FieldValue> searchAfter) {
+    return pageWalkRequest(List.of(), pointInTimeId, keepAlive, pageSize, searchAfter);
+  }
+
+  private SearchRequest pageWalkRequest(List<String> indexNames, String pointInTimeId, String keepAlive,
+                                        int pageSize, List<FieldValue> searchAfter) {
+    SearchRequest.Builder searchBuilder = copyOrderingElements(template, new SearchRequest.Builder())
+        .size(pageSize)
+        .source(s -> s.fetch(false)) // Disable _source retrieval - we only need sort values
+        .trackTotalHits(t -> t.enabled(false));
+    searchInto(searchBuilder, indexNames, pointInTimeId, keepAlive);
+
+    if (CollectionUtils.isNotEmpty(searchAfter)) {
+      searchBuilder.searchAfter(searchAfter);
+    }
+    return searchBuilder.build();
+  }
+
+  /**
+   * Target the indices or, if provided, the PIT (a request with a PIT can't specify indices).
+   */
+  private static void searchInto(SearchRequest.Builder searchBuilder, List<String> indexNames,
+                                 String pointInTimeId, String keepAlive) {
+    if (pointInTimeId != null) {
+      searchBuilder.pit(p -> p.id(pointInTimeId).keepAlive(k -> k.time(keepAlive)));
+    } else {
+      searchBuilder.index(indexNames);
+    }
+  }
+
+  /**
+   * Copy all the elements of the request body except searchAfter (the list setters of the builder add to the
+   * list) and the target (index or PIT), see
+   * {@link #searchInto(SearchRequest.Builder, List, String, String)}.
+   */
+  private static SearchRequest.Builder copyBodyElements(SearchRequest from, SearchRequest.Builder to) {
+    return copyOrderingElements(from, to)
+        .from(from.from())
+        .size(from.size())
+        .slice(from.slice())
+        .terminateAfter(from.terminateAfter())
+        .timeout(from.timeout())
+        .retriever(from.retriever())
+        .rank(from.rank())
+        // computed with the hits
+        .aggregations(from.aggregations())
+        .suggest(from.suggest())
+        .highlight(from.highlight())
+        .trackTotalHits(from.trackTotalHits())
+        .trackScores(from.trackScores())
+        .explain(from.explain())
+        .profile(from.profile())
+        .stats(from.stats())
+        .ext(from.ext())
+        // content of the hits
+        .source(from.source())
+        .fields(from.fields())
+        .docvalueFields(from.docvalueFields())
+        .storedFields(from.storedFields())
+        .scriptFields(from.scriptFields())
+        .version(from.version())
+        .seqNoPrimaryTerm(from.seqNoPrimaryTerm());
+  }
+
+  /**
+   * Copy the elements of the request deciding which documents are returned and in which order.
+   */
+  private static SearchRequest.Builder copyOrderingElements(SearchRequest from, SearchRequest.Builder to) {
+    return to
+        .query(from.query())
+        .postFilter(from.postFilter())
+        .sort(from.sort())
+        .collapse(from.collapse())
+        .minScore(from.minScore())
+        .runtimeMappings(from.runtimeMappings())
+        // change the scores, and the order, of the hits
+        .rescore(from.rescore())
+        .indicesBoost(from.indicesBoost())
+        .knn(from.knn());
+  }
+}
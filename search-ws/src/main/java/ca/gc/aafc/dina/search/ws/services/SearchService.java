@@ -2,6 +2,7 @@ package ca.gc.aafc.dina.search.ws.services;
 
 import ca.gc.aafc.dina.search.ws.exceptions.SearchApiException;
 
+import java.io.InputStream;
 import java.util.List;
 
 public interface SearchService {
@@ -62,6 +63,18 @@ public interface SearchService {
 
   String search(String indexNames, String query) throws SearchApiException;
 
+  /**
+   * Same as {@link #search(List, String)} but the response of the elasticsearch API is returned as-is,
+   * without being deserialized, so it can be streamed to the client.
+   *
+   * @param indices Index name to use for the search.
+   * @param query JSON query to forward to the elasticsearch API.
+   *
+   * @return JSON response body of the elasticsearch query. Must be closed by the caller.
+   * @throws SearchApiException in case of connectivity issues and/or malformed queries.
+   */
+  InputStream searchAsStream(List<String> indices, String query) throws SearchApiException;
+
   /**
    * count takes the provided json text query and forward it to the configured API to get a document count.
    * @param indexName
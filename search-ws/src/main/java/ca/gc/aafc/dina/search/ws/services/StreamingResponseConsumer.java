@@ -0,0 +1,121 @@
+package ca.gc.aafc.dina.search.ws.services;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.entity.ContentType;
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.protocol.AbstractAsyncResponseConsumer;
+import org.apache.http.nio.util.SharedInputBuffer;
+import org.apache.http.protocol.HttpContext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Response consumer of the elasticsearch low-level RestClient giving access to the body while it is received.
+ * The default consumer buffers the whole body in memory before returning the response.
+ *
+ * The body goes through a bounded buffer: when it is full, the connection stops reading until the body is read
+ * by the caller. The response is not given to the RestClient listener (its entity is not set): the status and
+ * the body are read from this consumer once the headers are received.
+ */
+final class StreamingResponseConsumer extends AbstractAsyncResponseConsumer<HttpResponse> {
+
+  private final SharedInputBuffer buffer;
+  private final CompletableFuture<StreamingResponseConsumer> headersReceived;
+
+  private volatile HttpResponse response;
+  private volatile boolean completed = false;
+  private volatile boolean aborted = false;
+
+  /**
+   * @param bufferSize size of the buffer between the connection and the reader
+   * @param headersReceived completed with this consumer when the headers of the response are received
+   */
+  StreamingResponseConsumer(int bufferSize, CompletableFuture<StreamingResponseConsumer> headersReceived) {
+    this.buffer = new SharedInputBuffer(bufferSize);
+    this.headersReceived = headersReceived;
+  }
+
+  /**
+   * @return status code of the response
+   */
+  int getStatusCode() {
+    return response.getStatusLine().getStatusCode();
+  }
+
+  /**
+   * Body of the response, read while it is received. Reading fails if the response is interrupted.
+   * @return
+   */
+  InputStream getBody() {
+    return new BodyInputStream();
+  }
+
+  /**
+   * @return true if the whole body was received
+   */
+  boolean isCompleted() {
+    return completed;
+  }
+
+  @Override
+  protected void onResponseReceived(HttpResponse httpResponse) {
+    this.response = httpResponse;
+  }
+
+  @Override
+  protected void onEntityEnclosed(HttpEntity entity, ContentType contentType) {
+    headersReceived.complete(this);
+  }
+
+  @Override
+  protected void onContentReceived(ContentDecoder decoder, IOControl ioControl) throws IOException {
+    // suspends the input when the buffer is full, the reader asks for more input
+    buffer.consumeContent(decoder, ioControl);
+  }
+
+  @Override
+  protected HttpResponse buildResult(HttpContext context) {
+    completed = true;
+    // response without body
+    headersReceived.complete(this);
+    return response;
+  }
+
+  @Override
+  protected void releaseResources() {
+    if (!completed) {
+      // failed or cancelled, unblock the reader
+      aborted = true;
+      buffer.shutdown();
+    }
+  }
+
+  private final class BodyInputStream extends InputStream {
+
+    @Override
+    public int read() throws IOException {
+      return checkEndOfStream(buffer.read());
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      return checkEndOfStream(buffer.read(b, off, len));
+    }
+
+    private int checkEndOfStream(int read) throws IOException {
+      if (read == -1 && aborted) {
+        throw new IOException("The elasticsearch response was interrupted");
+      }
+      return read;
+    }
+
+    @Override
+    public void close() {
+      buffer.close();
+    }
+  }
+}
@@ -0,0 +1,51 @@
+package ca.gc.aafc.dina.search.ws.cache;
+
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class PageCursorsTest {
+
+  private static List<FieldValue> cursor(int page) {
+    return List.of(FieldValue.of(page));
+  }
+
+  @DisplayName("Test nearest lower page found at any distance")
+  @Test
+  public void lower_anyDistance_nearestPageReturned() {
+    PageCursors cursors = new PageCursors();
+    // inserted out of order and beyond the initial capacity
+    for (int page : new int[] {50, 2, 30, 10, 40, 20, 3, 4, 5, 6, 7}) {
+      cursors.put(page, cursor(page));
+    }
+
+    assertEquals(11, cursors.size());
+    assertEquals(cursor(30), cursors.get(30));
+    assertNull(cursors.get(31));
+
+    Pair<Integer, List<FieldValue>> nearest = cursors.lower(600);
+    assertEquals(50, nearest.getKey());
+    assertEquals(cursor(50), nearest.getValue());
+
+    assertEquals(20, cursors.lower(30).getKey());
+    assertEquals(30, cursors.lower(31).getKey());
+    assertNull(cursors.lower(2));
+  }
+
+  @DisplayName("Test cursor of an existing page replaced")
+  @Test
+  public void put_existingPage_replaced() {
+    PageCursors cursors = new PageCursors();
+    cursors.put(5, cursor(5));
+    cursors.put(5, cursor(6));
+
+    assertEquals(1, cursors.size());
+    assertEquals(cursor(6), cursors.get(5));
+  }
+}
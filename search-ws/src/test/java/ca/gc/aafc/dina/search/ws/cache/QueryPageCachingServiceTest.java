@@ -0,0 +1,119 @@
+package ca.gc.aafc.dina.search.ws.cache;
+
+import ca.gc.aafc.dina.search.ws.config.DeepPagingProperties;
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import com.github.benmanes.caffeine.cache.Ticker;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class QueryPageCachingServiceTest {
+
+  private static final String QUERY_HASH = "abc/20";
+
+  private static List<FieldValue> cursor(int page) {
+    return List.of(FieldValue.of(page));
+  }
+
+  @DisplayName("Test adding cursors doesn't extend the time to live of the query entry")
+  @Test
+  public void setSearchAfter_newCursors_ttlNotExtended() {
+    AtomicLong ticker = new AtomicLong();
+    QueryPageCachingService service = new QueryPageCachingService(new DeepPagingProperties(), ticker::get, Runnable::run);
+
+    service.setSearchAfter(QUERY_HASH, Pair.of(2, cursor(2)));
+    ticker.addAndGet(Duration.ofMinutes(40).toNanos());
+    service.setSearchAfter(QUERY_HASH, Pair.of(3, cursor(3)));
+    assertNotNull(service.getSearchAfter(QUERY_HASH, 2));
+
+    ticker.addAndGet(Duration.ofMinutes(30).toNanos());
+    assertNull(service.getSearchAfter(QUERY_HASH, 3));
+  }
+
+  @DisplayName("Test the entry of a query walked in a point in time kept while it is used")
+  @Test
+  public void getPointInTime_used_ttlExtended() {
+    AtomicLong ticker = new AtomicLong();
+    DeepPagingProperties properties = new DeepPagingProperties();
+    properties.setPointInTime(true);
+    properties.setPointInTimeKeepAlive(Duration.ofMinutes(5));
+    QueryPageCachingService service = new QueryPageCachingService(properties, ticker::get, Runnable::run);
+
+    service.setPointInTimeIfAbsent(QUERY_HASH, "pit-1");
+    for (int i = 0; i < 3; i++) {
+      ticker.addAndGet(Duration.ofMinutes(4).toNanos());
+      assertEquals("pit-1", service.getPointInTime(QUERY_HASH));
+    }
+
+    ticker.addAndGet(Duration.ofMinutes(6).toNanos());
+    assertNull(service.getPointInTime(QUERY_HASH));
+  }
+
+  @DisplayName("Test the point in time of a query used continuously is replaced after its maximum lifetime")
+  @Test
+  public void getPointInTime_usedPastMaxLifetime_removedAndClosed() {
+    AtomicLong ticker = new AtomicLong();
+    DeepPagingProperties properties = new DeepPagingProperties();
+    properties.setPointInTime(true);
+    properties.setPointInTimeKeepAlive(Duration.ofMinutes(5));
+    properties.setPointInTimeMaxLifetime(Duration.ofMinutes(10));
+    QueryPageCachingService service = new QueryPageCachingService(properties, ticker::get, Runnable::run);
+    List<String> closed = new ArrayList<>();
+    service.setPointInTimeCloser(closed::add);
+
+    service.setPointInTimeIfAbsent(QUERY_HASH, "pit-1");
+    service.setSearchAfter(QUERY_HASH, "pit-1", Pair.of(2, cursor(2)));
+    for (int i = 0; i < 2; i++) {
+      ticker.addAndGet(Duration.ofMinutes(4).toNanos());
+      assertEquals("pit-1", service.getPointInTime(QUERY_HASH));
+    }
+
+    // used 2 minutes ago but opened 10 minutes ago
+    ticker.addAndGet(Duration.ofMinutes(2).toNanos());
+    assertNull(service.getPointInTime(QUERY_HASH));
+    assertNull(service.getSearchAfter(QUERY_HASH, 2));
+
+    assertEquals("pit-2", service.setPointInTimeIfAbsent(QUERY_HASH, "pit-2"));
+    assertEquals(List.of("pit-1"), closed);
+  }
+
+  @DisplayName("Test the cursors of a replaced point in time are not invalidated by a request using the old one")
+  @Test
+  public void invalidatePointInTime_otherPointInTime_kept() {
+    DeepPagingProperties properties = new DeepPagingProperties();
+    properties.setPointInTime(true);
+    QueryPageCachingService service = new QueryPageCachingService(properties, Ticker.systemTicker(), Runnable::run);
+
+    service.setPointInTimeIfAbsent(QUERY_HASH, "pit-2");
+    service.invalidatePointInTime(QUERY_HASH, "pit-1");
+    assertEquals("pit-2", service.getPointInTime(QUERY_HASH));
+
+    service.invalidatePointInTime(QUERY_HASH, "pit-2");
+    assertNull(service.getPointInTime(QUERY_HASH));
+  }
+
+  @DisplayName("Test the point in time of a query is closed when the cache holds too many of them")
+  @Test
+  public void setPointInTimeIfAbsent_tooManyPointInTime_evictedAndClosed() {
+    DeepPagingProperties properties = new DeepPagingProperties();
+    properties.setPointInTime(true);
+    QueryPageCachingService service = new QueryPageCachingService(properties, Ticker.systemTicker(), Runnable::run);
+    List<String> closed = new ArrayList<>();
+    service.setPointInTimeCloser(closed::add);
+
+    // entries without cursors, only weighed by their PIT
+    for (int i = 0; i <= 100; i++) {
+      service.setPointInTimeIfAbsent("query" + i + "/20", "pit-" + i);
+    }
+    assertEquals(1, closed.size());
+  }
+}
@@ -61,8 +61,8 @@ public class ESSearchPagingServiceIT extends ElasticSearchBackedTest {
     int pageSize = 20;
 
     long startTime = System.currentTimeMillis();
-    List<FieldValue> searchAfter = esSearchPagingService.pagingToSearchAfter(
-        queryJson, TEST_INDEX, targetPage, pageSize);
+    List<FieldValue> searchAfter = esSearchPagingService.pagingToCursor(
+        queryJson, TEST_INDEX, targetPage, pageSize).searchAfter();
     long firstRequestDuration = System.currentTimeMillis() - startTime;
 
     assertNotNull(searchAfter, "Should return search_after for page " + targetPage);
@@ -72,8 +72,8 @@ public class ESSearchPagingServiceIT extends ElasticSearchBackedTest {
 
     // Second request to same page should be faster (cached)
     startTime = System.currentTimeMillis();
-    List<FieldValue> cachedSearchAfter = esSearchPagingService.pagingToSearchAfter(
-        queryJson, TEST_INDEX, targetPage, pageSize);
+    List<FieldValue> cachedSearchAfter = esSearchPagingService.pagingToCursor(
+        queryJson, TEST_INDEX, targetPage, pageSize).searchAfter();
     long cachedRequestDuration = System.currentTimeMillis() - startTime;
 
     assertEquals(searchAfter, cachedSearchAfter, "Cached result should match first result");
@@ -87,9 +87,9 @@ public class ESSearchPagingServiceIT extends ElasticSearchBackedTest {
     // Make sure that from is ignored
     String filteredQueryWithFrom = "{\"from\": 50, \"query\":{\"match_all\": {}}, \"sort\": [{\"id\": \"asc\"}]}";
 
-    List<FieldValue> searchAfterWithFrom = esSearchPagingService.pagingToSearchAfter(filteredQueryWithFrom,
-        TEST_INDEX, targetPage, pageSize);
-    assertEquals(searchAfter.getFirst()._toJsonString(), searchAfterWithFrom.getFirst()._toJsonString(), "from should be ignored by pagingToSearchAfter");
+    List<FieldValue> searchAfterWithFrom = esSearchPagingService.pagingToCursor(filteredQueryWithFrom,
+        TEST_INDEX, targetPage, pageSize).searchAfter();
+    assertEquals(searchAfter.getFirst()._toJsonString(), searchAfterWithFrom.getFirst()._toJsonString(), "from should be ignored by pagingToCursor");
   }
 
   @Test
@@ -112,8 +112,9 @@ public class ESSearchPagingServiceIT extends ElasticSearchBackedTest {
     }
 
     for (int page = 2; page <= expectedPages; page++) {
-      List<FieldValue> searchAfter = esSearchPagingService.pagingToSearchAfter(
+      ESSearchPagingService.PageCursor cursor = esSearchPagingService.pagingToCursor(
           queryJson, TEST_INDEX, page, pageSize);
+      List<FieldValue> searchAfter = cursor.searchAfter();
 
       assertNotNull(searchAfter, "Page " + page + " should return search_after");
       assertFalse(searchAfter.isEmpty(), "search_after for page " + page + " should not be empty");
@@ -123,7 +124,7 @@ public class ESSearchPagingServiceIT extends ElasticSearchBackedTest {
             "Page " + page + " should have different cursor than page " + (page - 1));
       }
 
-      response = esSearchService.executeSearch(List.of(TEST_INDEX), queryJson, pageSize, searchAfter);
+      response = esSearchService.executeSearch(List.of(TEST_INDEX), queryJson, pageSize, cursor);
       // Collect document IDs for this page
       for (var hit : response.hits().hits()) {
         allDocumentIds.add(hit.id());
@@ -156,8 +157,8 @@ public class ESSearchPagingServiceIT extends ElasticSearchBackedTest {
     int pageSize = 20;
 
     // Filter by status="active"
-    List<FieldValue> searchAfter = esSearchPagingService.pagingToSearchAfter(
-        queryJson, TEST_INDEX, 2, pageSize);
+    List<FieldValue> searchAfter = esSearchPagingService.pagingToCursor(
+        queryJson, TEST_INDEX, 2, pageSize).searchAfter();
 
     // If there are enough matching documents, we should get results
     // If not, searchAfter might be null (fewer than 2 pages of results)
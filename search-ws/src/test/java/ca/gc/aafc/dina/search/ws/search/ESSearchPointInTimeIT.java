@@ -0,0 +1,174 @@
+package ca.gc.aafc.dina.search.ws.search;
+
+import ca.gc.aafc.dina.search.ws.exceptions.SearchApiException;
+import ca.gc.aafc.dina.search.ws.services.ESSearchPagingService;
+import ca.gc.aafc.dina.search.ws.services.ESSearchService;
+import ca.gc.aafc.dina.search.ws.services.ParsedSearchQuery;
+import ca.gc.aafc.dina.testsupport.elasticsearch.ElasticSearchContainerInitializer;
+import co.elastic.clients.elasticsearch._types.ElasticsearchException;
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.elasticsearch.core.search.Hit;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ContextConfiguration;
+
+import jakarta.inject.Inject;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Deep paging inside a point in time (deep-paging.point-in-time).
+ */
+@SpringBootTest(properties = "deep-paging.point-in-time=true")
+@ContextConfiguration(initializers = { ElasticSearchContainerInitializer.class })
+public class ESSearchPointInTimeIT extends ElasticSearchBackedTest {
+
+  private static final String TEST_INDEX = "test-pit-documents";
+  private static final int TEST_DOCUMENT_COUNT = 100;
+  private static final int PAGE_SIZE = 20;
+  private static final String QUERY = "{\"query\": {\"match_all\": {}}, \"sort\": [{\"id\": \"asc\"}]}";
+
+  @Inject
+  private ESSearchPagingService esSearchPagingService;
+
+  @Inject
+  private ESSearchService esSearchService;
+
+  @BeforeEach
+  public void beforeEach() throws IOException {
+    createTestIndex(TEST_INDEX);
+    for (int i = 1; i <= TEST_DOCUMENT_COUNT; i++) {
+      indexTestDocument(String.format("doc-%03d", i));
+    }
+    client.indices().refresh(r -> r.index(TEST_INDEX));
+  }
+
+  @AfterEach
+  public void afterEach() throws IOException {
+    esSearchPagingService.discardCursors(parseQuery(), PAGE_SIZE);
+    dropIndex(TEST_INDEX);
+  }
+
+  @DisplayName("Test a point in time is opened for the query, reused for its pages and closed with its cursors")
+  @Test
+  public void pagingToCursor_pointInTime_openedReusedAndClosed() throws IOException, InterruptedException {
+    ESSearchPagingService.PageCursor page3 = esSearchPagingService.pagingToCursor(QUERY, TEST_INDEX, 3, PAGE_SIZE);
+    assertNotNull(page3.pointInTimeId());
+
+    ESSearchPagingService.PageCursor page5 = esSearchPagingService.pagingToCursor(QUERY, TEST_INDEX, 5, PAGE_SIZE);
+    assertEquals(page3.pointInTimeId(), page5.pointInTimeId());
+    assertTrue(isPointInTimeOpen(page5.pointInTimeId()));
+
+    esSearchPagingService.discardCursors(parseQuery(), PAGE_SIZE);
+    // closed by the removal listener of the cache, asynchronously
+    boolean open = true;
+    for (int i = 0; i < 20 && open; i++) {
+      Thread.sleep(250);
+      open = isPointInTimeOpen(page5.pointInTimeId());
+    }
+    assertFalse(open, "The point in time should be closed once the cursors are discarded");
+
+    ESSearchPagingService.PageCursor reopened = esSearchPagingService.pagingToCursor(QUERY, TEST_INDEX, 3,
+        PAGE_SIZE);
+    assertNotEquals(page3.pointInTimeId(), reopened.pointInTimeId());
+  }
+
+  @DisplayName("Test the pages don't change when documents are indexed while the query is paged")
+  @Test
+  public void executeSearch_documentsIndexedWhilePaging_pagesStable() throws IOException, SearchApiException {
+    List<String> page3Before = pageIds(esSearchService.executeSearch(List.of(TEST_INDEX), QUERY, PAGE_SIZE,
+        esSearchPagingService.pagingToCursor(QUERY, TEST_INDEX, 3, PAGE_SIZE)));
+
+    // sorted inside page 3, searchAfter alone would shift it
+    indexTestDocument("doc-045a");
+    indexTestDocument("doc-050a");
+    client.indices().refresh(r -> r.index(TEST_INDEX));
+
+    ESSearchPagingService.PageCursor page3 = esSearchPagingService.pagingToCursor(QUERY, TEST_INDEX, 3, PAGE_SIZE);
+    SearchResponse<JsonNode> response = esSearchService.executeSearch(List.of(TEST_INDEX), QUERY, PAGE_SIZE, page3);
+    assertEquals(page3Before, pageIds(response));
+    assertEquals("doc-041", response.hits().hits().getFirst().id());
+    assertEquals(TEST_DOCUMENT_COUNT, response.hits().total().value());
+
+    // a later page walked after the indexing is in the same point in time
+    List<String> page4 = pageIds(esSearchService.executeSearch(List.of(TEST_INDEX), QUERY, PAGE_SIZE,
+        esSearchPagingService.pagingToCursor(QUERY, TEST_INDEX, 4, PAGE_SIZE)));
+    assertEquals("doc-061", page4.getFirst());
+  }
+
+  @DisplayName("Test an expired point in time is discarded and a new one opened by the next request")
+  @Test
+  public void executeSearch_expiredPointInTime_discardedAndReopened() throws IOException, SearchApiException {
+    ESSearchPagingService.PageCursor cursor = esSearchPagingService.pagingToCursor(QUERY, TEST_INDEX, 3, PAGE_SIZE);
+    String expired = cursor.pointInTimeId();
+    // same as an expired keep alive for elasticsearch
+    client.closePointInTime(c -> c.id(expired));
+
+    SearchApiException ex = assertThrows(SearchApiException.class,
+        () -> esSearchService.executeSearch(List.of(TEST_INDEX), QUERY, PAGE_SIZE, cursor));
+    assertTrue(ESSearchPagingService.isPointInTimeMissing((Exception) ex.getCause()));
+
+    ESSearchPagingService.PageCursor reopened = esSearchPagingService.pagingToCursor(QUERY, TEST_INDEX, 3,
+        PAGE_SIZE);
+    assertNotEquals(expired, reopened.pointInTimeId());
+    SearchResponse<JsonNode> response = esSearchService.executeSearch(List.of(TEST_INDEX), QUERY, PAGE_SIZE,
+        reopened);
+    assertEquals("doc-041", response.hits().hits().getFirst().id());
+  }
+
+  @DisplayName("Test a request failing for another reason keeps the point in time of the cursors")
+  @Test
+  public void executeSearch_invalidRequest_pointInTimeKept() throws IOException {
+    ESSearchPagingService.PageCursor cursor = esSearchPagingService.pagingToCursor(QUERY, TEST_INDEX, 3, PAGE_SIZE);
+    // the sort has 2 values with the tiebreaker of the point in time
+    ESSearchPagingService.PageCursor invalid = new ESSearchPagingService.PageCursor(
+        List.of(FieldValue.of("doc-040")), cursor.pointInTimeId());
+    assertThrows(SearchApiException.class,
+        () -> esSearchService.executeSearch(List.of(TEST_INDEX), QUERY, PAGE_SIZE, invalid));
+
+    assertEquals(cursor.pointInTimeId(),
+        esSearchPagingService.pagingToCursor(QUERY, TEST_INDEX, 3, PAGE_SIZE).pointInTimeId());
+  }
+
+  private ParsedSearchQuery parseQuery() {
+    return ParsedSearchQuery.parse(List.of(TEST_INDEX), QUERY, client._jsonpMapper());
+  }
+
+  private boolean isPointInTimeOpen(String pointInTimeId) throws IOException {
+    try {
+      client.search(s -> s.pit(p -> p.id(pointInTimeId)).size(0), JsonNode.class);
+      return true;
+    } catch (ElasticsearchException e) {
+      if (ESSearchPagingService.isPointInTimeMissing(e)) {
+        return false;
+      }
+      throw e;
+    }
+  }
+
+  private void indexTestDocument(String id) throws IOException {
+    client.index(idx -> idx
+        .index(TEST_INDEX)
+        .id(id)
+        .document(Map.of("id", id, "title", "Document " + id, "status", "active",
+            "timestamp", System.currentTimeMillis()))
+    );
+  }
+
+  private static List<String> pageIds(SearchResponse<JsonNode> response) {
+    return response.hits().hits().stream().map(Hit::id).toList();
+  }
+}
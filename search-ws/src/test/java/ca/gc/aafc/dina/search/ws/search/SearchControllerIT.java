@@ -2,6 +2,7 @@ package ca.gc.aafc.dina.search.ws.search;
 
 import ca.gc.aafc.dina.testsupport.elasticsearch.ElasticSearchContainerInitializer;
 import ca.gc.aafc.dina.testsupport.elasticsearch.ElasticSearchTestUtils;
+import com.fasterxml.jackson.databind.JsonNode;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
@@ -10,6 +11,9 @@ import org.springframework.http.MediaType;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.web.servlet.MockMvc;
 
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
@@ -111,4 +115,53 @@ public class SearchControllerIT extends ElasticSearchBackedTest {
     assertTrue(response.contains("Yves computer <em>science</em>"));
 
   }
+
+  @Test
+  public void searchStreamed_responseLargerThanBuffer_completeResponse() throws Exception {
+    String indexName = "index_search_controller_stream_it";
+    deleteIndexIfExists(indexName);
+    createTestIndex(indexName);
+
+    // ~300KB of hits, larger than the buffer between elasticsearch and the client
+    int numberOfDocuments = 300;
+    String title = "streamed ".repeat(100);
+    client.bulk(b -> {
+      for (int i = 0; i < numberOfDocuments; i++) {
+        String id = "doc-" + i;
+        b.operations(op -> op.index(idx -> idx.index(indexName).id(id)
+            .document(Map.of("id", id, "title", title, "status", "active"))));
+      }
+      return b;
+    });
+    client.indices().refresh(r -> r.index(indexName));
+
+    String response = mvc.perform(post("/search-ws/search?indexName=" + indexName)
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("{\"size\": " + numberOfDocuments + ", \"query\": {\"match_all\": {}}}")
+        )
+        .andExpect(status().isAccepted())
+        .andReturn().getResponse().getContentAsString();
+
+    JsonNode hits = OM.readTree(response).path("hits").path("hits");
+    assertEquals(numberOfDocuments, hits.size());
+    assertEquals(title, hits.get(numberOfDocuments - 1).path("_source").path("title").asText());
+
+    dropIndex(indexName);
+  }
+
+  @Test
+  public void searchStreamed_elasticsearchError_badRequest() throws Exception {
+    String indexName = "index_search_controller_error_it";
+    deleteIndexIfExists(indexName);
+    createTestIndex(indexName);
+
+    // sorting on a text field is rejected by elasticsearch
+    mvc.perform(post("/search-ws/search?indexName=" + indexName)
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("{\"query\": {\"match_all\": {}}, \"sort\": [{\"title\": \"asc\"}]}")
+        )
+        .andExpect(status().isBadRequest());
+
+    dropIndex(indexName);
+  }
 }
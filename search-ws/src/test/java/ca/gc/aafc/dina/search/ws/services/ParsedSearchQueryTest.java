@@ -0,0 +1,148 @@
+package ca.gc.aafc.dina.search.ws.services;
+
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import co.elastic.clients.elasticsearch.core.SearchRequest;
+import co.elastic.clients.json.JsonpMapper;
+import co.elastic.clients.json.jackson.JacksonJsonpMapper;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ParsedSearchQueryTest {
+
+  private static final JsonpMapper MAPPER = new JacksonJsonpMapper();
+  private static final List<String> INDEX = List.of("dina_material_sample_index");
+
+  private static String hash(List<String> indices, String queryJson) {
+    return ParsedSearchQuery.parse(indices, queryJson, MAPPER).getHash();
+  }
+
+  @DisplayName("Test equivalent queries sharing the same fingerprint")
+  @Test
+  public void fingerprint_equivalentQueries_sameHash() {
+    String query = """
+        {"query": {"bool": {"must": [{"match": {"data.attributes.name": "abc"}}],
+          "filter": [{"term": {"data.attributes.group": "aafc"}}]}},
+         "sort": [{"data.attributes.createdOn": "desc"}]}""";
+
+    // different key order, whitespace, notation and pagination
+    String equivalentQuery = "{\"size\":50,\"from\":10000,\"sort\":[{\"data.attributes.createdOn\":{\"order\":\"desc\"}}]," +
+        "\"query\":{\"bool\":{\"filter\":[{\"term\":{\"data.attributes.group\":\"aafc\"}}]," +
+        "\"must\":[{\"match\":{\"data.attributes.name\":\"abc\"}}]}}," +
+        "\"aggs\":{\"by_type\":{\"terms\":{\"field\":\"data.type\"}}}}";
+
+    assertEquals(hash(INDEX, query), hash(INDEX, equivalentQuery));
+  }
+
+  @DisplayName("Test queries returning different documents having different fingerprints")
+  @Test
+  public void fingerprint_differentQueries_differentHash() {
+    String query = "{\"query\":{\"match_all\":{}},\"sort\":[{\"id\":\"asc\"}]}";
+
+    assertNotEquals(hash(INDEX, query), hash(INDEX, "{\"query\":{\"match_all\":{}},\"sort\":[{\"id\":\"desc\"}]}"));
+    assertNotEquals(hash(INDEX, query), hash(INDEX,
+        "{\"query\":{\"match_all\":{}},\"post_filter\":{\"term\":{\"status\":\"active\"}},\"sort\":[{\"id\":\"asc\"}]}"));
+    assertNotEquals(hash(INDEX, query), hash(List.of("dina_agent_index"), query));
+  }
+
+  @DisplayName("Test the template returned as-is when it matches the requested page")
+  @Test
+  public void searchRequest_samePage_templateReused() {
+    ParsedSearchQuery parsedQuery = ParsedSearchQuery.parse(INDEX,
+        "{\"size\": 20, \"query\": {\"match_all\": {}}}", MAPPER);
+
+    assertSame(parsedQuery.getTemplate(), parsedQuery.searchRequest(20, null));
+    assertSame(parsedQuery.getTemplate(), parsedQuery.searchRequest(null, List.of()));
+  }
+
+  @DisplayName("Test the request rebuilt with the page size and cursor, other elements kept")
+  @Test
+  public void searchRequest_otherSizeOrCursor_rebuilt() {
+    ParsedSearchQuery parsedQuery = ParsedSearchQuery.parse(INDEX, """
+        {"from": 10000, "size": 20, "query": {"match_all": {}}, "sort": [{"id": "asc"}],
+         "aggs": {"by_type": {"terms": {"field": "data.type"}}}}""", MAPPER);
+
+    SearchRequest request = parsedQuery.searchRequest(50, List.of(FieldValue.of("a")));
+    assertNotSame(parsedQuery.getTemplate(), request);
+    assertEquals(50, request.size());
+    assertNull(request.from());
+    assertEquals("a", request.searchAfter().getFirst().stringValue());
+    assertEquals(INDEX, request.index());
+    assertTrue(request.aggregations().containsKey("by_type"));
+
+    // inside a point in time, no index
+    SearchRequest pitRequest = parsedQuery.searchRequest(20, List.of(FieldValue.of("a")), "pit-id", "5m");
+    assertTrue(pitRequest.index().isEmpty());
+    assertEquals("pit-id", pitRequest.pit().id());
+    assertEquals(20, pitRequest.size());
+  }
+
+  @DisplayName("Test the deep page request built from the parsed elements without parsing the query again")
+  @Test
+  public void searchRequest_searchAfter_elementsShared() {
+    ParsedSearchQuery parsedQuery = ParsedSearchQuery.parse(INDEX, """
+        {"from": 10000, "query": {"match": {"data.attributes.name": "abc"}}, "sort": [{"id": "asc"}],
+         "aggs": {"by_type": {"terms": {"field": "data.type"}}},
+         "highlight": {"fields": {"data.attributes.name": {}}},
+         "_source": ["data.attributes.name"], "track_total_hits": true}""", MAPPER);
+    SearchRequest template = parsedQuery.getTemplate();
+
+    // no size in the query, the default page size is requested
+    for (SearchRequest request : List.of(parsedQuery.searchRequest(20, List.of(FieldValue.of("a"))),
+        parsedQuery.searchRequest(20, List.of(FieldValue.of("a")), "pit-id", "5m"))) {
+      // parsing the JSON again would create new instances
+      assertSame(template.query(), request.query());
+      assertSame(template.aggregations().get("by_type"), request.aggregations().get("by_type"));
+      assertSame(template.highlight(), request.highlight());
+      assertSame(template.source(), request.source());
+      assertSame(template.trackTotalHits(), request.trackTotalHits());
+      assertSame(template.sort().getFirst(), request.sort().getFirst());
+      assertEquals(20, request.size());
+      assertNull(request.from());
+      assertEquals(1, request.searchAfter().size());
+    }
+  }
+
+  @DisplayName("Test the page walk request only keeping the elements deciding the order of the hits")
+  @Test
+  public void pageWalkRequest_orderingElementsCopied() {
+    ParsedSearchQuery parsedQuery = ParsedSearchQuery.parse(INDEX, """
+        {"from": 10000, "size": 20, "query": {"match": {"data.attributes.name": "abc"}},
+         "sort": [{"_score": "desc"}, {"id": "asc"}],
+         "rescore": [{"window_size": 50, "query": {"rescore_query": {"match": {"data.attributes.remarks": "abc"}}}}],
+         "indices_boost": [{"dina_material_sample_index": 1.5}],
+         "knn": [{"field": "vector", "query_vector": [1.0, 2.0], "k": 10, "num_candidates": 50}],
+         "aggs": {"by_type": {"terms": {"field": "data.type"}}},
+         "highlight": {"fields": {"data.attributes.name": {}}}}""", MAPPER);
+
+    SearchRequest request = parsedQuery.pageWalkRequest(INDEX.getFirst(), 100, List.of(FieldValue.of(1.0),
+        FieldValue.of("a")));
+    assertEquals(INDEX, request.index());
+    assertEquals(100, request.size());
+    assertNull(request.from());
+    assertEquals(2, request.searchAfter().size());
+    assertEquals(2, request.sort().size());
+    assertEquals(1, request.rescore().size());
+    assertEquals(1.5, request.indicesBoost().getFirst().get("dina_material_sample_index"));
+    assertEquals("vector", request.knn().getFirst().field());
+    assertFalse(request.source().fetch());
+    assertFalse(request.trackTotalHits().enabled());
+    assertTrue(request.aggregations().isEmpty());
+    assertNull(request.highlight());
+
+    // the rescore changes the order so it is part of the fingerprint
+    assertNotEquals(parsedQuery.getHash(), hash(INDEX, """
+        {"query": {"match": {"data.attributes.name": "abc"}}, "sort": [{"_score": "desc"}, {"id": "asc"}],
+         "indices_boost": [{"dina_material_sample_index": 1.5}],
+         "knn": [{"field": "vector", "query_vector": [1.0, 2.0], "k": 10, "num_candidates": 50}]}"""));
+  }
+}